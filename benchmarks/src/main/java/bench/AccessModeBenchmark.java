@@ -0,0 +1,77 @@
+package bench;
+
+import db.AccessMode;
+import db.DBManager;
+import db.MutationResult;
+import db.PlanCacheStats;
+import db.Training;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Хранимые функции через dblink против прямых запросов к таблице.
+// Обе реализации работают с таблицей trainings в базе trainings (туда подключаются функции через dblink).
+// После прогона хранимых функций выводится доля выполнений подготовленных запросов с планом из кэша.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessModeBenchmark {
+    private static final String DB_NAME = "trainings";
+
+    @Param({"STORED_FUNCTIONS", "DIRECT"})
+    public AccessMode mode;
+
+    @Param({"1000"})
+    public int rows;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        DBManager.setAccessMode(mode);
+    }
+
+    @Benchmark
+    public List<Training> getAllTrainings() {
+        return DBManager.getAllTrainings(DB_NAME, BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public List<Training> searchTrainingByField() {
+        return DBManager.searchTrainingByField(DB_NAME, "trainer_name", "Тренер 42",
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public MutationResult updateTrainingByField() {
+        return DBManager.updateTrainingByField(DB_NAME, 1, "title", "Растяжка",
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @TearDown
+    public void printPlanCacheStats() {
+        if (mode != AccessMode.STORED_FUNCTIONS) {
+            return;
+        }
+        System.out.println(DBManager.getPoolStats());
+        for (PlanCacheStats stats : DBManager.getPlanCacheStats(BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD)) {
+            System.out.printf("%s: выполнений %d, с планом из кэша %.1f%%%n",
+                    stats.statement(), stats.executions(), stats.hitRatio() * 100);
+        }
+    }
+}
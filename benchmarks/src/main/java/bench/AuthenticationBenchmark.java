@@ -0,0 +1,65 @@
+package bench;
+
+import db.DBManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// Задержка аутентификации перед действием: старый путь (новое соединение + конкатенация),
+// подготовленный запрос через пул без кэша и попадание в кэш ролей
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+    private static final String USERNAME = "bench_guest";
+    private static final String PASSWORD = "bench_guest";
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.ensureUserRow(USERNAME, PASSWORD, "guest");
+    }
+
+    // Реализация до появления кэша: суперпользовательское соединение на каждое действие
+    @Benchmark
+    public String legacyAuthenticate() throws SQLException {
+        String role = null;
+        try (Connection conn = DriverManager.getConnection(BenchmarkDatabase.URL,
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT role FROM users WHERE username = '" + USERNAME
+                    + "' AND password = '" + PASSWORD + "'");
+            if (rs.next()) {
+                role = rs.getString("role");
+            }
+        }
+        return role;
+    }
+
+    @Benchmark
+    public String pooledUncachedAuthenticate() {
+        DBManager.invalidateAuthCache();
+        return DBManager.authenticateUser(USERNAME, PASSWORD);
+    }
+
+    @Benchmark
+    public String cachedAuthenticate() {
+        return DBManager.authenticateUser(USERNAME, PASSWORD);
+    }
+}
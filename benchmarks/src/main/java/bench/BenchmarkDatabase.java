@@ -0,0 +1,114 @@
+package bench;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Параметры подключения к локальной PostgreSQL для бенчмарков.
+// С -Dbench.embedded=true сервер запускается внутри процесса бенчмарка (embedded-postgres) на порту
+// -Dbench.embeddedPort (по умолчанию 5432 - этот порт зашит в строки подключения хранимых функций):
+// создается база trainings, в нее загружается stored_functions.sql (-Dbench.storedFunctions), DBManager
+// направляется на этот сервер через db.url. Сервер останавливается вместе с процессом.
+final class BenchmarkDatabase {
+    private static final boolean EMBEDDED = Boolean.getBoolean("bench.embedded");
+    private static final int EMBEDDED_PORT = Integer.getInteger("bench.embeddedPort", 5432);
+
+    static final String URL = System.getProperty("bench.url", "jdbc:postgresql://localhost:"
+            + (EMBEDDED ? EMBEDDED_PORT : 5432) + "/trainings");
+    static final String SUPERUSER = System.getProperty("bench.superuser", "postgres");
+    static final String SUPERUSER_PASSWORD = System.getProperty("bench.superuserPassword", "CHocolate75%");
+
+    static {
+        if (EMBEDDED) {
+            try {
+                startEmbedded();
+            } catch (IOException | SQLException e) {
+                throw new IllegalStateException("Не удалось запустить встроенный сервер PostgreSQL", e);
+            }
+        }
+    }
+
+    private BenchmarkDatabase() {
+    }
+
+    private static void startEmbedded() throws IOException, SQLException {
+        EmbeddedPostgres postgres = EmbeddedPostgres.builder().setPort(EMBEDDED_PORT).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                postgres.close();
+            } catch (IOException e) {
+                System.out.println("Ошибка при остановке сервера: " + e.getMessage());
+            }
+        }));
+        if (System.getProperty("db.url") == null) {
+            System.setProperty("db.url", "jdbc:postgresql://localhost:" + EMBEDDED_PORT + "/");
+        }
+        try (Connection conn = postgres.getPostgresDatabase().getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE DATABASE trainings");
+        }
+        Path storedFunctions = Path.of(System.getProperty("bench.storedFunctions", "../stored_functions.sql"));
+        try (Connection conn = superuserConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            if (Files.exists(storedFunctions)) {
+                stmt.execute(Files.readString(storedFunctions));
+            } else {
+                // Без хранимых функций работает только режим DIRECT
+                System.out.println("Файл " + storedFunctions + " не найден, хранимые функции не загружены");
+                stmt.execute("CREATE TABLE users (id SERIAL PRIMARY KEY, username VARCHAR(50) UNIQUE NOT NULL, "
+                        + "password VARCHAR(255) NOT NULL, role VARCHAR(10) NOT NULL)");
+            }
+        }
+    }
+
+    static Connection superuserConnection() throws SQLException {
+        return DriverManager.getConnection(URL, SUPERUSER, SUPERUSER_PASSWORD);
+    }
+
+    // Таблица trainings (та же структура, что создает create_table), заполненная синтетическими занятиями
+    static void seedTrainings(int rows) throws SQLException {
+        try (Connection conn = superuserConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS trainings ("
+                    + "class_id SERIAL PRIMARY KEY, title VARCHAR(255) NOT NULL, date DATE NOT NULL, "
+                    + "start_time TIME NOT NULL, duration INTERVAL NOT NULL, "
+                    + "max_participants INT CHECK (max_participants > 0), "
+                    + "current_participants INT CHECK (current_participants >= 0), "
+                    + "difficulty_level VARCHAR(20) CHECK (difficulty_level IN ('начальный', 'смешанный', 'продвинутый')), "
+                    + "trainer_name VARCHAR(255) NOT NULL, price DECIMAL(10, 2))");
+            try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM trainings")) {
+                rs.next();
+                if (rs.getInt(1) == rows) {
+                    return;
+                }
+            }
+            stmt.execute("TRUNCATE TABLE trainings RESTART IDENTITY");
+            // Каждый тренер ведет не более одного занятия в час, поэтому пересечений нет
+            stmt.execute("INSERT INTO trainings (title, date, start_time, duration, max_participants, "
+                    + "current_participants, difficulty_level, trainer_name, price) "
+                    + "SELECT 'Тренировка ' || g, DATE '2024-01-01' + (g / 1200), "
+                    + "make_time(8 + (g / 100) % 12, 0, 0), INTERVAL '50 minutes', 12, g % 12, "
+                    + "(ARRAY['начальный', 'смешанный', 'продвинутый'])[1 + g % 3], 'Тренер ' || (g % 100), "
+                    + "500 + g % 1000 FROM generate_series(0, " + (rows - 1) + ") AS g");
+            stmt.execute("ANALYZE trainings");
+        }
+    }
+
+    // Запись в таблице users для аутентификации (без создания роли PostgreSQL)
+    static void ensureUserRow(String username, String password, String role) throws SQLException {
+        try (Connection conn = superuserConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO users(username, password, role) VALUES (?, ?, ?) ON CONFLICT (username) DO NOTHING")) {
+            stmt.setString(1, username);
+            stmt.setString(2, password);
+            stmt.setString(3, role);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package bench;
+
+import db.AccessMode;
+import db.DBManager;
+import db.MutationResult;
+import db.Training;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Нагрузочная проверка записи на занятия: 16 потоков записывают и отменяют места на hot занятий по capacity мест,
+// так что занятия все время заполнены почти до предела. Каждая успешная запись и отмена учитывается на клиенте;
+// после прогона число участников в базе сверяется с учтенным. Для bookTraining и bookTrainings расхождение или
+// превышение max_participants - ошибка (IllegalStateException); readModifyWrite (чтение числа участников и запись
+// нового значения через updateTrainingByField, как приходилось делать раньше) только выводит найденные расхождения.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(16)
+@Fork(1)
+public class BookingBenchmark {
+    private static final int BATCH = 3;
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"8"})
+    public int hot;
+
+    @Param({"20"})
+    public int capacity;
+
+    // Учтенное на клиенте число участников занятий 1..hot
+    private AtomicIntegerArray booked;
+
+    @State(Scope.Thread)
+    public static class Reader {
+        Connection connection;
+        PreparedStatement select;
+
+        @Setup
+        public void setUp() throws SQLException {
+            connection = BenchmarkDatabase.superuserConnection();
+            select = connection.prepareStatement("SELECT current_participants, max_participants FROM trainings WHERE class_id = ?");
+        }
+
+        @TearDown
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        DBManager.setAccessMode(AccessMode.DIRECT);
+        try (Connection conn = BenchmarkDatabase.superuserConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE trainings SET current_participants = 0, max_participants = ? WHERE class_id <= ?")) {
+            stmt.setInt(1, capacity);
+            stmt.setInt(2, hot);
+            stmt.executeUpdate();
+        }
+        booked = new AtomicIntegerArray(hot + 1);
+    }
+
+    @TearDown
+    public void verify(BenchmarkParams params) throws SQLException {
+        int mismatched = 0;
+        int overbooked = 0;
+        try (Connection conn = BenchmarkDatabase.superuserConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT class_id, current_participants, max_participants FROM trainings WHERE class_id <= ? ORDER BY class_id")) {
+            stmt.setInt(1, hot);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    int current = rs.getInt(2);
+                    // Превышение - больше подтвержденных клиентам мест, чем max_participants (или такое значение в базе)
+                    if (Math.max(current, booked.get(id)) > rs.getInt(3) || current < 0) {
+                        overbooked++;
+                    }
+                    if (current != booked.get(id)) {
+                        mismatched++;
+                    }
+                }
+            }
+        }
+        String summary = "Занятий с превышением мест: " + overbooked + ", с расхождением учета: " + mismatched;
+        System.out.println(summary);
+        if (!params.getBenchmark().endsWith("readModifyWrite") && (overbooked > 0 || mismatched > 0)) {
+            throw new IllegalStateException(summary);
+        }
+    }
+
+    @Benchmark
+    public int bookTraining() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = 1 + random.nextInt(hot);
+        int seats = 1 + random.nextInt(2);
+        // Записей немного больше, чем отмен, - занятия держатся у предела
+        boolean book = random.nextInt(10) < 6;
+        MutationResult result = book
+                ? DBManager.bookTraining("trainings", id, seats, BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD)
+                : DBManager.cancelBooking("trainings", id, seats, BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+        if (result.status() > 0) {
+            booked.addAndGet(id, book ? seats : -seats);
+        }
+        return result.status();
+    }
+
+    @Benchmark
+    public int bookTrainings() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(10) < 4) {
+            int id = 1 + random.nextInt(hot);
+            MutationResult result = DBManager.cancelBooking("trainings", id, 1,
+                    BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+            if (result.status() > 0) {
+                booked.decrementAndGet(id);
+            }
+            return result.status();
+        }
+        Map<Integer, Integer> seatsById = new HashMap<>();
+        while (seatsById.size() < BATCH) {
+            seatsById.put(1 + random.nextInt(hot), 1);
+        }
+        MutationResult result = DBManager.bookTrainings("trainings", seatsById,
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+        if (result.rowsKnown()) {
+            for (Training training : result.rows()) {
+                booked.incrementAndGet(training.id());
+            }
+        }
+        return result.status();
+    }
+
+    @Benchmark
+    public int readModifyWrite(Reader reader) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = 1 + random.nextInt(hot);
+        int seats = random.nextInt(10) < 6 ? 1 + random.nextInt(2) : -(1 + random.nextInt(2));
+        int current;
+        int max;
+        reader.select.setInt(1, id);
+        try (ResultSet rs = reader.select.executeQuery()) {
+            rs.next();
+            current = rs.getInt(1);
+            max = rs.getInt(2);
+        }
+        if (current + seats < 0 || current + seats > max) {
+            return 0;
+        }
+        int status = DBManager.updateTrainingByField("trainings", id, "current_participants", String.valueOf(current + seats),
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD).status();
+        if (status > 0) {
+            booked.addAndGet(id, seats);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,103 @@
+package bench;
+
+import db.AccessMode;
+import db.DBManager;
+import db.Training;
+import db.TrainingQuery;
+import db.TrainingsCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Обновление показанной таблицы после изменения одной строки: полная перезагрузка (как делал refreshTrainingsTable)
+// против разницы из TrainingsCache, пришедшей по LISTEN/NOTIFY (время от UPDATE до получения разницы)
+// и против строки, которую возвращает сам UPDATE (DBManager.updateTrainingByField).
+// Для сравнения чтений - расписание тренера из кэша и запросом к базе. Метрики кэша выводятся в конце.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class CacheBenchmark {
+    @Param({"100000"})
+    public int rows;
+
+    private TrainingsCache cache;
+    private final Semaphore deltas = new Semaphore(0);
+    private Connection connection;
+    private PreparedStatement update;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        DBManager.setAccessMode(AccessMode.DIRECT);
+        System.out.println(DBManager.createChangeTriggers("trainings",
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD));
+        cache = new TrainingsCache("trainings", BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+        cache.getAll();
+        cache.addListener(delta -> deltas.release());
+
+        connection = BenchmarkDatabase.superuserConnection();
+        update = connection.prepareStatement("UPDATE trainings SET current_participants = (current_participants + 1) % 12 "
+                + "WHERE class_id = ?");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        System.out.println(cache.stats());
+        cache.close();
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Training> updateThenFullReload() throws SQLException {
+        updateRandomRow();
+        return DBManager.getAllTrainings("trainings", BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public boolean updateThenCacheDelta() throws SQLException, InterruptedException {
+        updateRandomRow();
+        return deltas.tryAcquire(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public List<Training> updateReturningRow() {
+        return DBManager.updateTrainingByField("trainings", 1 + ThreadLocalRandom.current().nextInt(rows), "current_participants",
+                String.valueOf(ThreadLocalRandom.current().nextInt(12)), BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD).rows();
+    }
+
+    @Benchmark
+    public List<Training> trainerScheduleFromCache() throws SQLException {
+        return cache.getByTrainer("Тренер " + ThreadLocalRandom.current().nextInt(100));
+    }
+
+    @Benchmark
+    public List<Training> trainerScheduleFromDatabase() {
+        return DBManager.findTrainings("trainings", new TrainingQuery().trainer("Тренер " + ThreadLocalRandom.current().nextInt(100)),
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    private void updateRandomRow() throws SQLException {
+        update.setInt(1, 1 + ThreadLocalRandom.current().nextInt(rows));
+        update.executeUpdate();
+    }
+}
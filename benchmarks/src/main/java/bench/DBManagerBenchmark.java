@@ -0,0 +1,126 @@
+package bench;
+
+import db.AccessMode;
+import db.DBManager;
+import db.MutationResult;
+import db.Training;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Основные операции DBManager на таблице из rows синтетических занятий (10 тыс., 100 тыс., 1 млн):
+// пропускная способность (Throughput), задержка по процентилям p50/p99 (SampleTime) и - при запуске
+// через bench.Main - скорость выделения памяти. Режим доступа задается параметром accessMode;
+// STORED_FUNCTIONS требует хранимых функций из stored_functions.sql в базе trainings.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class DBManagerBenchmark {
+    private static final String DB_NAME = "trainings";
+    private static final String USERNAME = "bench_admin";
+    private static final String PASSWORD = "bench_admin";
+    // Добавленные и удаляемые бенчмарком занятия: отдельные тренеры, даты после синтетического расписания
+    private static final String ADDED_TRAINER = "Бенчмарк ";
+    private static final String DELETED_TITLE = "Удаляемое занятие ";
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"DIRECT"})
+    public AccessMode accessMode;
+
+    private int next;
+    private Connection connection;
+    private PreparedStatement insertToDelete;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        BenchmarkDatabase.ensureUserRow(USERNAME, PASSWORD, "admin");
+        DBManager.setAccessMode(accessMode);
+        System.out.println(DBManager.createIndexes(DB_NAME, BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD));
+        connection = BenchmarkDatabase.superuserConnection();
+        insertToDelete = connection.prepareStatement("INSERT INTO trainings (title, date, start_time, duration, "
+                + "max_participants, current_participants, difficulty_level, trainer_name, price) "
+                + "VALUES (?, DATE '2100-01-01', TIME '10:00', INTERVAL '1 hour', 10, 0, 'смешанный', 'Удаление', 500)");
+    }
+
+    // Добавленные за итерацию занятия удаляются, чтобы размер таблицы оставался около rows
+    @TearDown(Level.Iteration)
+    public void removeAdded() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM trainings WHERE trainer_name LIKE '" + ADDED_TRAINER + "%'");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public MutationResult addTraining() {
+        // У каждого занятия свой тренер, поэтому пересечений расписания нет
+        return DBManager.addTraining(DB_NAME, "Новое занятие", Date.valueOf("2100-01-01"), Time.valueOf("10:00:00"),
+                "1 hour", 10, 0, "смешанный", ADDED_TRAINER + next++, 500,
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public List<Training> getAllTrainings() {
+        return DBManager.getAllTrainings(DB_NAME, BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public List<Training> searchTrainingByField() {
+        return DBManager.searchTrainingByField(DB_NAME, "trainer_name", "Тренер " + ThreadLocalRandom.current().nextInt(100),
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public MutationResult updateTrainingByField() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return DBManager.updateTrainingByField(DB_NAME, 1 + random.nextInt(rows), "price", String.valueOf(500 + random.nextInt(1000)),
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    // Каждая операция удаляет одно занятие, вставленное перед ней отдельным соединением (в замер входит
+    // эта вставка - однострочный INSERT, порядок его стоимости показывает addTraining)
+    @Benchmark
+    public MutationResult deleteTrainingByField() throws SQLException {
+        String title = DELETED_TITLE + String.format("%09d", next++) + ".";
+        insertToDelete.setString(1, title);
+        insertToDelete.executeUpdate();
+        return DBManager.deleteTrainingByField(DB_NAME, "title", title,
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    // После первого вызова роль берется из кэша; запрос к базе без кэша - AuthenticationBenchmark
+    @Benchmark
+    public String authenticateUser() {
+        return DBManager.authenticateUser(USERNAME, PASSWORD);
+    }
+}
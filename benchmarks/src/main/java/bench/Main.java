@@ -0,0 +1,45 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Запуск JMH с профилировщиком gc (скорость выделения памяти, gc.alloc.rate.norm - байт на операцию)
+// для всех бенчмарков. Свойства -Dbench.* и -Ddb.* передаются в дочерние JVM: JMH не наследует их,
+// если в @Fork заданы свои jvmArgs. Ключи -h, -l, -lp и т.п. обрабатывает стандартный org.openjdk.jmh.Main
+public final class Main {
+    private Main() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+                || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        List<String> jvmArgs = new ArrayList<>(cmd.getJvmArgsAppend().orElse(List.of()));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("bench.") || name.startsWith("db.")) {
+                jvmArgs.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd)
+                .jvmArgsAppend(jvmArgs.toArray(new String[0]));
+        boolean gcRequested = false;
+        for (ProfilerConfig profiler : cmd.getProfilers()) {
+            gcRequested |= profiler.getKlass().equals(GCProfiler.class.getName()) || profiler.getKlass().equals("gc");
+        }
+        if (!gcRequested) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+}
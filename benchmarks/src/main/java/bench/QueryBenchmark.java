@@ -0,0 +1,100 @@
+package bench;
+
+import db.AccessMode;
+import db.DBManager;
+import db.Training;
+import db.TrainingQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+// Выборка по нескольким условиям на таблице из rows занятий: DBManager.findTrainings (один запрос по индексам)
+// против загрузки всей таблицы и фильтрации в памяти. План запроса выводится при запуске.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class QueryBenchmark {
+    private static final LocalDate FROM = LocalDate.of(2024, 6, 3);
+    private static final int LIMIT = 50;
+
+    public enum Scenario {
+        // Занятия смешанного уровня на неделю с ценой не выше 800 и свободными местами
+        WEEK_MIXED_CHEAP(new TrainingQuery().dateBetween(FROM, FROM.plusDays(6)).difficulty("смешанный")
+                .maxPrice(new BigDecimal("800")).withFreeSpots().limit(LIMIT),
+                t -> !t.date().isBefore(FROM) && !t.date().isAfter(FROM.plusDays(6))
+                        && "смешанный".equals(t.difficultyLevel()) && t.price().compareTo(new BigDecimal("800")) <= 0
+                        && t.currentParticipants() < t.maxParticipants()),
+        // Расписание одного тренера на месяц
+        TRAINER_MONTH(new TrainingQuery().trainer("Тренер 42").dateBetween(FROM, FROM.plusDays(29)),
+                t -> "Тренер 42".equals(t.trainerName()) && !t.date().isBefore(FROM) && !t.date().isAfter(FROM.plusDays(29))),
+        // Самые дешевые занятия
+        CHEAPEST(new TrainingQuery().maxPrice(new BigDecimal("505")).orderBy(TrainingQuery.Order.PRICE).limit(LIMIT),
+                t -> t.price().compareTo(new BigDecimal("505")) <= 0);
+
+        final TrainingQuery query;
+        final Predicate<Training> filter;
+
+        Scenario(TrainingQuery query, Predicate<Training> filter) {
+            this.query = query;
+            this.filter = filter;
+        }
+    }
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"WEEK_MIXED_CHEAP", "TRAINER_MONTH", "CHEAPEST"})
+    public Scenario scenario;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        DBManager.setAccessMode(AccessMode.DIRECT);
+        System.out.println(DBManager.createIndexes("trainings",
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD));
+        System.out.println(scenario + ": " + query().size() + " строк");
+        try (Connection conn = BenchmarkDatabase.superuserConnection();
+             PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + scenario.query.toSql())) {
+            scenario.query.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    System.out.println(rs.getString(1));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Training> query() {
+        return DBManager.findTrainings("trainings", scenario.query,
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public List<Training> loadAllAndFilter() {
+        return DBManager.getAllTrainings("trainings", BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD)
+                .stream().filter(scenario.filter).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import db.Training;
+import db.TrainingMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// Преобразование строк результата: прежний String[] (String.format, toString) против Training.
+// Результат запроса целиком в памяти драйвера, поэтому измеряется только преобразование.
+// Выделение памяти на строку: запуск с -prof gc, метрика gc.alloc.rate.norm делится на rows.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+    @Param({"1000"})
+    public int rows;
+
+    private Connection connection;
+    private Statement statement;
+    private ResultSet rs;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        connection = BenchmarkDatabase.superuserConnection();
+        statement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        rs = statement.executeQuery("SELECT class_id AS id, title, date, start_time, duration, max_participants, "
+                + "current_participants, difficulty_level, trainer_name, price FROM trainings ORDER BY class_id");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void stringRows(Blackhole blackhole) throws SQLException {
+        rs.beforeFirst();
+        while (rs.next()) {
+            blackhole.consume(toStringRow(rs));
+        }
+    }
+
+    @Benchmark
+    public void typedTrainings(Blackhole blackhole) throws SQLException {
+        rs.beforeFirst();
+        TrainingMapper mapper = new TrainingMapper(rs);
+        while (rs.next()) {
+            Training training = mapper.map(rs);
+            blackhole.consume(training);
+        }
+    }
+
+    // Прежнее преобразование из DBManager.toRow (для сравнения)
+    private static String[] toStringRow(ResultSet rs) throws SQLException {
+        String[] row = new String[10];
+        row[0] = String.valueOf(rs.getInt("id"));
+        row[1] = rs.getString("title");
+        row[2] = rs.getDate("date").toString();
+        row[3] = rs.getTime("start_time").toString();
+        row[4] = rs.getString("duration");
+        row[5] = rs.wasNull() ? "N/A" : String.valueOf(rs.getInt("max_participants"));
+        row[6] = rs.wasNull() ? "N/A" : String.valueOf(rs.getInt("current_participants"));
+        row[7] = rs.getString("difficulty_level") != null ? rs.getString("difficulty_level") : "N/A";
+        row[8] = rs.getString("trainer_name");
+        row[9] = rs.wasNull() ? "0.0" : String.format("%.2f", rs.getDouble("price"));
+        return row;
+    }
+}
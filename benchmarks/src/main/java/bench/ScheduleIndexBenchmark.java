@@ -0,0 +1,101 @@
+package bench;
+
+import db.ScheduleIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Проверки пересечения занятий тренера в секунду: индекс в памяти против запроса OVERLAPS к базе
+// (тот же запрос, что выполняет add_new_training, без dblink). Индекс заполняется из таблицы
+// на rows занятий; время заполнения выводится при запуске.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ScheduleIndexBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private ScheduleIndex index;
+    private Connection connection;
+    private PreparedStatement overlapQuery;
+
+    private final String[] trainers = new String[QUERIES];
+    private final LocalDate[] dates = new LocalDate[QUERIES];
+    private final LocalTime[] startTimes = new LocalTime[QUERIES];
+    private final Duration[] durations = new Duration[QUERIES];
+    private int next;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        connection = BenchmarkDatabase.superuserConnection();
+        long start = System.nanoTime();
+        index = ScheduleIndex.load(connection);
+        System.out.println("Индекс заполнен: " + index.size() + " занятий за "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " мс");
+
+        overlapQuery = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM trainings WHERE date = ? "
+                + "AND trainer_name = ? AND (?::time, ?::time + ?::interval) OVERLAPS (start_time, start_time + duration))");
+
+        // Случайные занятия в пределах заполненных дней: примерно половина пересекается с существующими
+        Random random = new Random(42);
+        int days = Math.max(1, rows / 1200);
+        for (int i = 0; i < QUERIES; i++) {
+            trainers[i] = "Тренер " + random.nextInt(100);
+            dates[i] = LocalDate.of(2024, 1, 1).plusDays(random.nextInt(days));
+            startTimes[i] = LocalTime.of(6 + random.nextInt(16), random.nextInt(4) * 15);
+            durations[i] = Duration.ofMinutes(15 + random.nextInt(4) * 15);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public boolean inMemoryIndex() {
+        int i = next++ & (QUERIES - 1);
+        return index.hasConflict(trainers[i], dates[i], startTimes[i], durations[i], 0);
+    }
+
+    @Benchmark
+    public boolean databaseQuery() throws SQLException {
+        int i = next++ & (QUERIES - 1);
+        overlapQuery.setDate(1, Date.valueOf(dates[i]));
+        overlapQuery.setString(2, trainers[i]);
+        overlapQuery.setTime(3, Time.valueOf(startTimes[i]));
+        overlapQuery.setTime(4, Time.valueOf(startTimes[i]));
+        overlapQuery.setString(5, durations[i].getSeconds() + " seconds");
+        try (ResultSet rs = overlapQuery.executeQuery()) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+}
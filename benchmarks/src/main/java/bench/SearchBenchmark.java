@@ -0,0 +1,154 @@
+package bench;
+
+import db.DBManager;
+import db.MatchType;
+import db.Training;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Время поиска по названию (limit 20) на таблице из rows занятий: запрос через индексы из create_table
+// против того же запроса с запрещенными индексными планами. Перед замером проверяется по EXPLAIN,
+// что индексный запрос не читает таблицу целиком.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int LIMIT = 20;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"CONTAINS", "PREFIX", "EXACT", "FUZZY"})
+    public MatchType matchType;
+
+    private String value;
+    private Connection connection;
+    private PreparedStatement seqScanQuery;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.seedTrainings(rows);
+        System.out.println(DBManager.createIndexes("trainings",
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD));
+        value = searchValue(matchType, rows);
+
+        connection = BenchmarkDatabase.superuserConnection();
+        String plan = explain(connection);
+        System.out.println(plan);
+        if (plan.contains("Seq Scan on trainings")) {
+            throw new IllegalStateException("Поиск " + matchType + " не использует индекс");
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("SET enable_indexscan = off");
+            stmt.execute("SET enable_bitmapscan = off");
+        }
+        seqScanQuery = prepare(connection, "");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Training> indexed() {
+        return DBManager.searchTrainingByField("trainings", "title", value, matchType, LIMIT,
+                BenchmarkDatabase.SUPERUSER, BenchmarkDatabase.SUPERUSER_PASSWORD);
+    }
+
+    @Benchmark
+    public void seqScan(Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = seqScanQuery.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(rs.getInt("class_id"));
+            }
+        }
+    }
+
+    // Значение, находящее несколько строк из середины таблицы (названия вида 'Тренировка N')
+    private static String searchValue(MatchType matchType, int rows) {
+        int middle = rows / 2;
+        switch (matchType) {
+            case PREFIX:
+            case EXACT:
+                return "Тренировка " + middle / 10;
+            case FUZZY:
+                return "Тренеровка " + middle;
+            default:
+                return String.valueOf(middle);
+        }
+    }
+
+    private String explain(Connection conn) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement stmt = prepare(conn, "EXPLAIN "); ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    // Те же условия, что строит DirectAccess.searchSql для поля title
+    private PreparedStatement prepare(Connection conn, String prefix) throws SQLException {
+        String where;
+        String orderBy;
+        switch (matchType) {
+            case PREFIX:
+                where = "lower(title) LIKE lower(?)";
+                orderBy = "lower(title), class_id";
+                break;
+            case EXACT:
+                where = "lower(title) = lower(?)";
+                orderBy = "class_id";
+                break;
+            case FUZZY:
+                where = "? <% title";
+                orderBy = "? <<-> title, class_id";
+                break;
+            default:
+                where = "title ILIKE ?";
+                orderBy = "class_id";
+        }
+        PreparedStatement stmt = conn.prepareStatement(prefix + "SELECT * FROM trainings WHERE " + where
+                + " ORDER BY " + orderBy + " LIMIT " + LIMIT);
+        switch (matchType) {
+            case PREFIX:
+                stmt.setString(1, value + "%");
+                break;
+            case FUZZY:
+                stmt.setString(1, value);
+                stmt.setString(2, value);
+                break;
+            case EXACT:
+                stmt.setString(1, value);
+                break;
+            default:
+                stmt.setString(1, "%" + value + "%");
+        }
+        return stmt;
+    }
+}
@@ -0,0 +1,13 @@
+package db;
+
+// Способ обращения DBManager к таблице trainings
+public enum AccessMode {
+    // Хранимые функции из stored_functions.sql (dblink, проверки схемы на каждом вызове)
+    STORED_FUNCTIONS,
+    // Подготовленные запросы к таблице напрямую через пул, схема проверяется один раз
+    DIRECT;
+
+    static AccessMode fromProperty(String value) {
+        return value != null && value.equalsIgnoreCase("direct") ? DIRECT : STORED_FUNCTIONS;
+    }
+}
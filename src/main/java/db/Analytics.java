@@ -0,0 +1,118 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Показатели заполняемости и выручки одним запросом GROUP BY на сервере - клиент получает только строки групп.
+// При -Ddb.analytics.materialized=true запросы читают материализованное представление trainings_daily_stats
+// (итоги по дню, тренеру и уровню), которое создает и обновляет AnalyticsRefresher; пока его нет - таблицу
+final class Analytics {
+    static final boolean MATERIALIZED = "true".equalsIgnoreCase(System.getProperty("db.analytics.materialized"));
+    static final String VIEW = "trainings_daily_stats";
+
+    // Пустой уровень хранится как '' - уникальный индекс для REFRESH ... CONCURRENTLY не должен содержать NULL
+    private static final String CREATE_VIEW = "CREATE MATERIALIZED VIEW IF NOT EXISTS " + VIEW + " AS "
+            + "SELECT date, trainer_name, coalesce(difficulty_level, '') AS difficulty_level, count(*) AS trainings, "
+            + "coalesce(sum(current_participants), 0) AS participants, coalesce(sum(max_participants), 0) AS capacity, "
+            + "coalesce(sum(price * current_participants), 0) AS revenue "
+            + "FROM trainings GROUP BY date, trainer_name, coalesce(difficulty_level, '')";
+    private static final String CREATE_VIEW_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS " + VIEW + "_key_idx ON "
+            + VIEW + " (date, trainer_name, difficulty_level)";
+
+    private static final String TABLE_TOTALS = "count(*), coalesce(sum(current_participants), 0), "
+            + "coalesce(sum(max_participants), 0), coalesce(sum(price * current_participants), 0) FROM trainings";
+    private static final String VIEW_TOTALS = "sum(trainings), sum(participants), sum(capacity), sum(revenue) FROM " + VIEW;
+
+    // Базы, в которых представление уже есть: проверка не повторяется при каждом запросе
+    private static final Set<String> VIEWS = ConcurrentHashMap.newKeySet();
+
+    private Analytics() {
+    }
+
+    // from / to - границы дат включительно, null - без границы
+    static AnalyticsResult query(String dbName, AnalyticsGroup group, LocalDate from, LocalDate to,
+                                 String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (MATERIALIZED && (VIEWS.contains(dbName) || viewExists(conn))) {
+                VIEWS.add(dbName);
+                try {
+                    return new AnalyticsResult(1, select(conn, group, from, to, true), true);
+                } catch (SQLException e) {
+                    if (!"42P01".equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    // Представление удалено - дальше по таблице, пока AnalyticsRefresher не создаст его снова
+                    VIEWS.remove(dbName);
+                }
+            }
+            return new AnalyticsResult(1, select(conn, group, from, to, false), false);
+        } catch (SQLException e) {
+            return new AnalyticsResult(DirectAccess.schemaErrorCode(dbName, e), List.of(), false);
+        }
+    }
+
+    private static List<AnalyticsRow> select(Connection conn, AnalyticsGroup group, LocalDate from, LocalDate to,
+                                             boolean fromView) throws SQLException {
+        String key = group == AnalyticsGroup.LEVEL && fromView ? "nullif(difficulty_level, '')" : group.expression;
+        StringBuilder sql = new StringBuilder("SELECT ").append(key).append("::text AS grp, ")
+                .append(fromView ? VIEW_TOTALS : TABLE_TOTALS);
+        if (from != null || to != null) {
+            sql.append(" WHERE ");
+            if (from != null) {
+                sql.append("date >= ?");
+            }
+            if (to != null) {
+                sql.append(from != null ? " AND " : "").append("date <= ?");
+            }
+        }
+        sql.append(" GROUP BY 1 ORDER BY 1");
+        List<AnalyticsRow> rows = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            if (from != null) {
+                stmt.setDate(index++, Date.valueOf(from));
+            }
+            if (to != null) {
+                stmt.setDate(index, Date.valueOf(to));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                Metrics.mappingStarted();
+                while (rs.next()) {
+                    rows.add(new AnalyticsRow(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getBigDecimal(5)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static boolean viewExists(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT to_regclass('public." + VIEW + "') IS NOT NULL")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    // Первый вызов создает представление (уже заполненным), следующие обновляют его CONCURRENTLY - чтение
+    // показателей во время обновления не блокируется
+    static void refreshView(String dbName, String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password);
+             Statement stmt = conn.createStatement()) {
+            if (viewExists(conn)) {
+                stmt.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY " + VIEW);
+            } else {
+                stmt.execute(CREATE_VIEW);
+                stmt.execute(CREATE_VIEW_INDEX);
+            }
+            VIEWS.add(dbName);
+        }
+    }
+}
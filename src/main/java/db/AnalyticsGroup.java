@@ -0,0 +1,24 @@
+package db;
+
+// Группировка показателей DBManager.getAnalytics: по тренеру, уровню сложности или по дню, неделе (с понедельника),
+// месяцу даты занятия. expression - ключ группы в GROUP BY
+public enum AnalyticsGroup {
+    TRAINER("Тренер", "trainer_name"),
+    LEVEL("Уровень сложности", "difficulty_level"),
+    DAY("День", "date"),
+    WEEK("Неделя", "date_trunc('week', date)::date"),
+    MONTH("Месяц", "date_trunc('month', date)::date");
+
+    private final String label;
+    final String expression;
+
+    AnalyticsGroup(String label, String expression) {
+        this.label = label;
+        this.expression = expression;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,58 @@
+package db;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Обновление материализованного представления показателей (-Ddb.analytics.materialized=true) раз в
+// -Ddb.analytics.refreshMillis мс (по умолчанию раз в 5 минут); первый запуск создает представление.
+// Без -Ddb.analytics.materialized ничего не делает - показатели считаются по таблице
+public class AnalyticsRefresher implements AutoCloseable {
+    private static final long REFRESH_MILLIS = Long.getLong("db.analytics.refreshMillis", 300_000);
+
+    private final String dbName;
+    private final String username;
+    private final String password;
+    private ScheduledExecutorService scheduler;
+
+    public AnalyticsRefresher(String dbName, String username, String password) {
+        this.dbName = dbName;
+        this.username = username;
+        this.password = password;
+    }
+
+    public static boolean isEnabled() {
+        return Analytics.MATERIALIZED;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || !isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "analytics-refresher-" + dbName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (SQLException e) {
+                System.out.println("Ошибка при обновлении показателей (" + dbName + "): " + e.getMessage());
+            }
+        }, 0, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void refresh() throws SQLException {
+        Analytics.refreshView(dbName, username, password);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package db;
+
+import java.util.List;
+
+// Результат DBManager.getAnalytics: status 1 - успех, -2 нет базы, -1 нет таблицы, -555 ошибка SQL.
+// fromView - показатели посчитаны по материализованному представлению (могут отставать на период его обновления)
+public record AnalyticsResult(int status, List<AnalyticsRow> rows, boolean fromView) {
+}
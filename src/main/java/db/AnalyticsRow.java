@@ -0,0 +1,12 @@
+package db;
+
+import java.math.BigDecimal;
+
+// Показатели одной группы: число занятий, сумма записанных участников и мест, выручка (цена × участники).
+// group - значение ключа (тренер, уровень или первый день периода), null - пустое значение
+public record AnalyticsRow(String group, long trainings, long participants, long capacity, BigDecimal revenue) {
+    // Заполняемость - доля занятых мест от всех мест группы (0..1)
+    public double occupancy() {
+        return capacity == 0 ? 0 : (double) participants / capacity;
+    }
+}
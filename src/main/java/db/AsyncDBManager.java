@@ -0,0 +1,208 @@
+package db;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+// Асинхронный фасад над DBManager: каждый вызов выполняется в фоновом потоке и возвращает CompletableFuture.
+// Результаты в Swing доставляются через thenAcceptAsync(..., SwingUtilities::invokeLater).
+public class AsyncDBManager {
+    private static final int FALLBACK_THREADS = Integer.getInteger("db.async.threads", 16);
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private AsyncDBManager() {
+    }
+
+    // Виртуальные потоки, если JVM их поддерживает (Java 21+), иначе ограниченный пул потоков-демонов
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS, r -> {
+                Thread thread = new Thread(r, "db-async");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Запуск задачи; cancel(true) у результата прерывает поток, выполняющий задачу
+    public static <T> CompletableFuture<T> submit(Callable<T> task) {
+        CancellableFuture<T> result = new CancellableFuture<>();
+        result.task = EXECUTOR.submit(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Проверка учетных данных: соединение берется из пула и сразу возвращается
+    public static CompletableFuture<Void> checkConnection(String username, String password) {
+        return submit(() -> {
+            DBManager.getConnection(username, password).close();
+            return null;
+        });
+    }
+
+    public static CompletableFuture<String> authenticateUser(String username, String password) {
+        return submit(() -> DBManager.authenticateUser(username, password));
+    }
+
+    public static CompletableFuture<String> createDatabase(String dbName, String username, String password) {
+        return submit(() -> DBManager.createDatabase(dbName, username, password));
+    }
+
+    public static CompletableFuture<String> createTable(String dbName, String username, String password) {
+        return submit(() -> DBManager.createTable(dbName, username, password));
+    }
+
+    public static CompletableFuture<String> createTable(String dbName, boolean partitioned, String username, String password) {
+        return submit(() -> DBManager.createTable(dbName, partitioned, username, password));
+    }
+
+    public static CompletableFuture<BootstrapResult> bootstrapSchema(String dbName, boolean partitioned) {
+        return submit(() -> DBManager.bootstrapSchema(dbName, partitioned));
+    }
+
+    public static CompletableFuture<int[]> createUsers(List<UserAccount> accounts) {
+        return submit(() -> DBManager.createUsers(accounts));
+    }
+
+    public static CompletableFuture<AnalyticsResult> getAnalytics(String dbName, AnalyticsGroup group, LocalDate from,
+                                                                 LocalDate to, String username, String password) {
+        return submit(() -> DBManager.getAnalytics(dbName, group, from, to, username, password));
+    }
+
+    public static CompletableFuture<String> dropDatabase(String dbName, String username, String password) {
+        return submit(() -> DBManager.dropDatabase(dbName, username, password));
+    }
+
+    public static CompletableFuture<String> clearDatabase(String dbName, String username, String password) {
+        return submit(() -> DBManager.clearDatabase(dbName, username, password));
+    }
+
+    public static CompletableFuture<MutationResult> addTraining(String dbName, String title, Date date, Time startTime, String duration,
+                                                                int maxParticipants, int currentParticipants, String difficultyLevel,
+                                                                String trainerName, double price, String username, String password) {
+        return submit(() -> DBManager.addTraining(dbName, title, date, startTime, duration, maxParticipants,
+                currentParticipants, difficultyLevel, trainerName, price, username, password));
+    }
+
+    public static CompletableFuture<ImportResult> importTrainingsFromCsv(String dbName, Path csvFile,
+                                                                       String username, String password) {
+        return submit(() -> DBManager.importTrainingsFromCsv(dbName, csvFile, username, password));
+    }
+
+    // Отмена (cancel) прерывает выгрузку, недописанный файл удаляется
+    public static CompletableFuture<ExportResult> exportTrainings(String dbName, TrainingQuery filter, Path file, ExportFormat format,
+                                                                  boolean gzip, LongConsumer progress,
+                                                                  String username, String password) {
+        return submit(() -> DBManager.exportTrainings(dbName, filter, file, format, gzip, progress, username, password));
+    }
+
+    public static CompletableFuture<List<Training>> searchTrainingByField(String dbName, String fieldName, String searchValue,
+                                                                          String username, String password) {
+        return submit(() -> DBManager.searchTrainingByField(dbName, fieldName, searchValue, username, password));
+    }
+
+    public static CompletableFuture<List<Training>> searchTrainingByField(String dbName, String fieldName, String searchValue,
+                                                                          MatchType matchType, int limit,
+                                                                          String username, String password) {
+        return submit(() -> DBManager.searchTrainingByField(dbName, fieldName, searchValue, matchType, limit, username, password));
+    }
+
+    public static CompletableFuture<List<Training>> findTrainings(String dbName, TrainingQuery query,
+                                                                  String username, String password) {
+        return submit(() -> DBManager.findTrainings(dbName, query, username, password));
+    }
+
+    public static CompletableFuture<MutationResult> deleteTrainingByField(String dbName, String fieldName, String searchValue,
+                                                                          String username, String password) {
+        return submit(() -> DBManager.deleteTrainingByField(dbName, fieldName, searchValue, username, password));
+    }
+
+    public static CompletableFuture<MutationResult> updateTrainingByField(String dbName, int id, String fieldName, String newValue,
+                                                                          String username, String password) {
+        return submit(() -> DBManager.updateTrainingByField(dbName, id, fieldName, newValue, username, password));
+    }
+
+    public static CompletableFuture<MutationResult> updateTrainingRecord(String dbName, int id, String title, Date date, Time startTime,
+                                                                         String duration, Integer maxParticipants,
+                                                                         Integer currentParticipants, String difficultyLevel,
+                                                                         String trainerName, Double price, String username, String password) {
+        return submit(() -> DBManager.updateTrainingRecord(dbName, id, title, date, startTime, duration, maxParticipants,
+                currentParticipants, difficultyLevel, trainerName, price, username, password));
+    }
+
+    public static CompletableFuture<MutationResult> bookTraining(String dbName, int id, int seats,
+                                                                 String username, String password) {
+        return submit(() -> DBManager.bookTraining(dbName, id, seats, username, password));
+    }
+
+    public static CompletableFuture<MutationResult> cancelBooking(String dbName, int id, int seats,
+                                                                  String username, String password) {
+        return submit(() -> DBManager.cancelBooking(dbName, id, seats, username, password));
+    }
+
+    public static CompletableFuture<MutationResult> bookTrainings(String dbName, Map<Integer, Integer> seatsById,
+                                                                  String username, String password) {
+        return submit(() -> DBManager.bookTrainings(dbName, seatsById, username, password));
+    }
+
+    public static CompletableFuture<Integer> flushUpdates(String dbName, String username, String password) {
+        return submit(() -> DBManager.flushUpdates(dbName, username, password));
+    }
+
+    public static CompletableFuture<Integer> syncUpdates(String dbName, String username, String password) {
+        return submit(() -> DBManager.syncUpdates(dbName, username, password));
+    }
+
+    public static CompletableFuture<PipelineResult> executePipeline(String dbName, Pipeline pipeline,
+                                                                    String username, String password) {
+        return submit(() -> DBManager.executePipeline(dbName, pipeline, username, password));
+    }
+
+    public static CompletableFuture<List<Training>> getAllTrainings(String dbName, String username, String password) {
+        return submit(() -> DBManager.getAllTrainings(dbName, username, password));
+    }
+
+    public static CompletableFuture<List<Training>> getTrainingsPage(String dbName, int afterId, int pageSize,
+                                                                     String username, String password) {
+        return submit(() -> DBManager.getTrainingsPage(dbName, afterId, pageSize, username, password));
+    }
+
+    public static CompletableFuture<Integer> countTrainings(String dbName, String username, String password) {
+        return submit(() -> DBManager.countTrainings(dbName, username, password));
+    }
+
+    private static final class CancellableFuture<T> extends CompletableFuture<T> {
+        private volatile Future<?> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> running = task;
+            if (cancelled && running != null) {
+                running.cancel(true);
+            }
+            return cancelled;
+        }
+    }
+}
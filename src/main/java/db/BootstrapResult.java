@@ -0,0 +1,11 @@
+package db;
+
+import java.util.List;
+
+// Результат DBManager.bootstrapSchema: status 0 - схема в актуальной версии version (applied - примененные
+// сейчас версии, пустой список - все уже было применено раньше), -555 - ошибка, версия откатилась целиком
+public record BootstrapResult(int status, int version, List<Integer> applied, String message) {
+    public boolean upToDate() {
+        return status == 0 && applied.isEmpty();
+    }
+}
@@ -0,0 +1,345 @@
+package db;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Массовая загрузка тренировок: строки частями передаются через COPY во временную таблицу,
+// проверки add_new_training (уровень сложности, участники, пересечение занятий тренера) выполняются
+// для всей пачки несколькими запросами, затем корректные строки вставляются одним INSERT ... SELECT.
+// Все выполняется в одной транзакции.
+final class BulkImport {
+    static final int CHUNK_SIZE = Integer.getInteger("db.import.chunkSize", 1000);
+
+    // Код для строк, которые не удалось разобрать или в которых не заполнены обязательные поля
+    static final int INVALID_ROW = -11;
+
+    // Во временной таблице - типы без ограничений длины, чтобы COPY не прерывался на одной плохой строке
+    private static final String CREATE_STAGING = "CREATE TEMP TABLE import_trainings (row_number INT PRIMARY KEY, "
+            + "title TEXT, date DATE, start_time TIME, duration INTERVAL, max_participants INT, "
+            + "current_participants INT, difficulty_level TEXT, trainer_name TEXT, price NUMERIC, "
+            + "error INT, conflict_row INT) ON COMMIT DROP";
+
+    private static final String COPY_STAGING = "COPY import_trainings (row_number, title, date, start_time, duration, "
+            + "max_participants, current_participants, difficulty_level, trainer_name, price) FROM STDIN WITH (FORMAT csv)";
+
+    private static final String VALIDATE = "UPDATE import_trainings SET error = CASE "
+            + "WHEN title IS NULL OR date IS NULL OR start_time IS NULL OR duration IS NULL OR trainer_name IS NULL "
+            + "OR length(title) > 255 OR length(trainer_name) > 255 OR abs(price) >= 100000000 THEN " + INVALID_ROW + " "
+            + "WHEN max_participants <= 0 THEN -3 "
+            + "WHEN current_participants < 0 THEN -4 "
+            + "WHEN difficulty_level IS NULL OR difficulty_level NOT IN ('начальный', 'смешанный', 'продвинутый') THEN -5 "
+            + "END";
+
+    private static final String OVERLAPS_EXISTING = "UPDATE import_trainings i SET error = -6 WHERE error IS NULL "
+            + "AND EXISTS (SELECT 1 FROM trainings t WHERE t.date = i.date AND t.trainer_name = i.trainer_name "
+            + "AND (i.start_time, i.start_time + i.duration) OVERLAPS (t.start_time, t.start_time + t.duration))";
+
+    // Пересечение внутри пачки с тем же результатом, что последовательные вызовы add_new_training:
+    // строка отклоняется, если пересекается с более ранней принятой строкой. Построчно (в порядке номеров)
+    // перепроверяются только строки, у которых есть хоть одно пересечение внутри пачки, - обычно их немного
+    private static final String BATCH_OVERLAP_CONDITION = "e.date = l.date AND e.trainer_name = l.trainer_name "
+            + "AND e.row_number < l.row_number AND e.error IS NULL "
+            + "AND (l.start_time, l.start_time + l.duration) OVERLAPS (e.start_time, e.start_time + e.duration)";
+
+    private static final String OVERLAPS_BATCH = "DO $$ DECLARE candidate INT; BEGIN "
+            + "FOR candidate IN SELECT DISTINCT l.row_number FROM import_trainings l JOIN import_trainings e ON "
+            + BATCH_OVERLAP_CONDITION + " WHERE l.error IS NULL ORDER BY l.row_number LOOP "
+            + "UPDATE import_trainings i SET error = -6, conflict_row = c.row_number "
+            + "FROM (SELECT min(e.row_number) AS row_number FROM import_trainings l, import_trainings e "
+            + "WHERE l.row_number = candidate AND " + BATCH_OVERLAP_CONDITION + ") c "
+            + "WHERE i.row_number = candidate AND c.row_number IS NOT NULL; "
+            + "END LOOP; END $$";
+
+    private static final String INSERT_VALID = "INSERT INTO trainings (title, date, start_time, duration, "
+            + "max_participants, current_participants, difficulty_level, trainer_name, price) "
+            + "SELECT title, date, start_time, duration, max_participants, current_participants, difficulty_level, "
+            + "trainer_name, price FROM import_trainings WHERE error IS NULL ORDER BY row_number "
+            + "RETURNING class_id, trainer_name, date, start_time, duration";
+
+    private static final String SELECT_REJECTED = "SELECT row_number, error, trainer_name, conflict_row "
+            + "FROM import_trainings WHERE error IS NOT NULL ORDER BY row_number";
+
+    private BulkImport() {
+    }
+
+    // Входная строка: тренировка или описание ошибки разбора (такие строки в базу не передаются)
+    record Row(int rowNumber, Training training, String error) {
+    }
+
+    static ImportResult importRows(String dbName, Iterator<Row> rows, String username, String password) throws SQLException {
+        List<ImportResult.RowError> errors = new ArrayList<>();
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!DirectAccess.tableExists(conn, dbName)) {
+                return new ImportResult(-1, 0, errors);
+            }
+            conn.setAutoCommit(false);
+            List<Training> inserted = new ArrayList<>();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(CREATE_STAGING);
+                copyRows(conn.unwrap(PGConnection.class).getCopyAPI(), rows, errors);
+
+                stmt.execute("CREATE INDEX ON import_trainings (trainer_name, date)");
+                stmt.execute("ANALYZE import_trainings");
+                stmt.executeUpdate(VALIDATE);
+                // Блокировка не дает параллельным вставкам создать пересечение между проверкой и вставкой
+                stmt.execute("LOCK TABLE trainings IN SHARE ROW EXCLUSIVE MODE");
+                stmt.executeUpdate(OVERLAPS_EXISTING);
+                stmt.executeUpdate(OVERLAPS_BATCH);
+                try (ResultSet rs = stmt.executeQuery(INSERT_VALID)) {
+                    while (rs.next()) {
+                        inserted.add(new Training(rs.getInt(1), null, TrainingMapper.parseDate(rs.getString(3)),
+                                TrainingMapper.parseTime(rs.getString(4)), TrainingMapper.parseInterval(rs.getString(5)),
+                                Training.NOT_SET, Training.NOT_SET, null, rs.getString(2), null));
+                    }
+                }
+
+                try (ResultSet rs = stmt.executeQuery(SELECT_REJECTED)) {
+                    while (rs.next()) {
+                        int code = rs.getInt(2);
+                        int conflictRow = rs.getInt(4);
+                        String message = code == -6 && !rs.wasNull()
+                                ? "Ошибка: время проведения занятия у тренера " + rs.getString(3)
+                                + " пересекается с занятием в строке " + conflictRow + "."
+                                : describe(code, dbName, rs.getString(3));
+                        errors.add(new ImportResult.RowError(rs.getInt(1), code, message));
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+            // Новые занятия попадают в индекс расписания, если он уже заполнен
+            ScheduleIndex index = ScheduleIndex.ifLoaded(dbName);
+            if (index != null) {
+                for (Training training : inserted) {
+                    index.put(training.id(), training.trainerName(), training.date(), training.startTime(), training.duration());
+                }
+            }
+            errors.sort(Comparator.comparingInt(ImportResult.RowError::rowNumber));
+            return new ImportResult(0, inserted.size(), errors);
+        } catch (SQLException e) {
+            return new ImportResult(DirectAccess.schemaErrorCode(dbName, e), 0, errors);
+        }
+    }
+
+    // Передача строк в COPY частями по CHUNK_SIZE: память расходуется только на одну часть
+    private static void copyRows(CopyManager copy, Iterator<Row> rows, List<ImportResult.RowError> errors) throws SQLException {
+        StringBuilder chunk = new StringBuilder();
+        int rowsInChunk = 0;
+        while (rows.hasNext()) {
+            Row row = rows.next();
+            if (row.error() != null) {
+                errors.add(new ImportResult.RowError(row.rowNumber(), INVALID_ROW, row.error()));
+                continue;
+            }
+            appendCsv(chunk, row.rowNumber(), row.training());
+            if (++rowsInChunk == CHUNK_SIZE) {
+                copyChunk(copy, chunk);
+                rowsInChunk = 0;
+            }
+        }
+        if (rowsInChunk > 0) {
+            copyChunk(copy, chunk);
+        }
+    }
+
+    private static void copyChunk(CopyManager copy, StringBuilder chunk) throws SQLException {
+        try {
+            copy.copyIn(COPY_STAGING, new StringReader(chunk.toString()));
+        } catch (IOException e) {
+            throw new SQLException("Ошибка передачи данных COPY: " + e.getMessage(), e);
+        }
+        chunk.setLength(0);
+    }
+
+    // Строка в формате CSV для COPY: пустое значение без кавычек - NULL
+    private static void appendCsv(StringBuilder out, int rowNumber, Training training) {
+        out.append(rowNumber).append(',');
+        appendQuoted(out, training.title());
+        out.append(',');
+        if (training.date() != null) {
+            out.append(training.date());
+        }
+        out.append(',');
+        if (training.startTime() != null) {
+            out.append(training.startTime());
+        }
+        out.append(',');
+        if (training.duration() != null) {
+            out.append(training.duration()); // ISO 8601 (PT1H30M), PostgreSQL принимает этот формат
+        }
+        out.append(',');
+        if (training.maxParticipants() != Training.NOT_SET) {
+            out.append(training.maxParticipants());
+        }
+        out.append(',');
+        if (training.currentParticipants() != Training.NOT_SET) {
+            out.append(training.currentParticipants());
+        }
+        out.append(',');
+        appendQuoted(out, training.difficultyLevel());
+        out.append(',');
+        appendQuoted(out, training.trainerName());
+        out.append(',');
+        if (training.price() != null) {
+            out.append(training.price().toPlainString());
+        }
+        out.append('\n');
+    }
+
+    private static void appendQuoted(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static String describe(int code, String dbName, String trainerName) {
+        if (code == INVALID_ROW) {
+            return "Ошибка: не заполнены обязательные поля или значения превышают допустимую длину.";
+        }
+        return DBManager.describeAddTrainingCode(code, dbName, trainerName);
+    }
+
+    // Строки тренировок, пронумерованные с 1
+    static Iterator<Row> numbered(Iterator<Training> trainings) {
+        return new Iterator<>() {
+            private int rowNumber;
+
+            @Override
+            public boolean hasNext() {
+                return trainings.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                return new Row(++rowNumber, trainings.next(), null);
+            }
+        };
+    }
+
+    // Чтение CSV по мере загрузки. Столбцы: title, date, start_time, duration, max_participants,
+    // current_participants, difficulty_level, trainer_name, price; разделитель - запятая,
+    // значения с запятыми и кавычками заключаются в кавычки (переводы строк внутри значений не поддерживаются).
+    // Первая строка пропускается, если это заголовок. Номер строки Row - номер строки файла.
+    static Iterator<Row> csvRows(BufferedReader reader) {
+        return new Iterator<>() {
+            private int lineNumber;
+            private String line = readLine();
+
+            private String readLine() {
+                try {
+                    String next;
+                    do {
+                        next = reader.readLine();
+                        lineNumber++;
+                    } while (next != null && next.isBlank());
+                    if (next != null && lineNumber == 1 && next.regionMatches(true, 0, "title", 0, 5)) {
+                        return readLine();
+                    }
+                    return next;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return line != null;
+            }
+
+            @Override
+            public Row next() {
+                if (line == null) {
+                    throw new NoSuchElementException();
+                }
+                Row row = parseCsvLine(lineNumber, line);
+                line = readLine();
+                return row;
+            }
+        };
+    }
+
+    static Row parseCsvLine(int lineNumber, String line) {
+        List<String> values = splitCsv(line);
+        if (values.size() != 9) {
+            return new Row(lineNumber, null, "Ошибка: ожидается 9 значений, получено " + values.size() + ".");
+        }
+        try {
+            Training training = new Training(0, values.get(0),
+                    values.get(1) == null ? null : LocalDate.parse(values.get(1)),
+                    values.get(2) == null ? null : LocalTime.parse(values.get(2)),
+                    TrainingMapper.parseInterval(values.get(3)),
+                    values.get(4) == null ? Training.NOT_SET : Integer.parseInt(values.get(4)),
+                    values.get(5) == null ? Training.NOT_SET : Integer.parseInt(values.get(5)),
+                    values.get(6), values.get(7),
+                    values.get(8) == null ? null : new BigDecimal(values.get(8)));
+            return new Row(lineNumber, training, null);
+        } catch (RuntimeException | SQLException e) {
+            return new Row(lineNumber, null, "Ошибка разбора строки: " + e.getMessage());
+        }
+    }
+
+    // Значения строки CSV; пустое значение без кавычек - null
+    private static List<String> splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                values.add(csvValue(value, wasQuoted));
+                value.setLength(0);
+                wasQuoted = false;
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(csvValue(value, wasQuoted));
+        return values;
+    }
+
+    private static String csvValue(StringBuilder value, boolean wasQuoted) {
+        String text = wasQuoted ? value.toString() : value.toString().trim();
+        return !wasQuoted && text.isEmpty() ? null : text;
+    }
+}
@@ -0,0 +1,484 @@
+package db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Пул соединений: отдельный пул на каждую пару (url, пользователь, пароль)
+public class ConnectionPool {
+    // Параметры пула можно переопределить через системные свойства (-Ddb.pool.maxSize=20 и т.д.)
+    private static final int MAX_SIZE = Integer.getInteger("db.pool.maxSize", 10);
+    private static final long BORROW_TIMEOUT_MILLIS = Long.getLong("db.pool.borrowTimeoutMillis", 30_000);
+    private static final long IDLE_TIMEOUT_MILLIS = Long.getLong("db.pool.idleTimeoutMillis", 300_000);
+    private static final long LEAK_THRESHOLD_MILLIS = Long.getLong("db.pool.leakThresholdMillis", 60_000);
+    // Стек места получения соединения для сообщения об утечке снимается только при -Ddb.pool.leakTraces=true
+    // (это заметная работа на каждой выдаче); без него сообщение содержит время получения и поток
+    private static final boolean LEAK_TRACES = "true".equalsIgnoreCase(System.getProperty("db.pool.leakTraces"));
+    private static final long MAINTENANCE_PERIOD_MILLIS = Long.getLong("db.pool.maintenancePeriodMillis", 30_000);
+    // Соединение, проверенное (isValid) или использованное не раньше чем db.pool.validationIntervalMillis мс
+    // назад, выдается без проверки: проверка - отдельное обращение к серверу перед операцией. Простаивающие
+    // соединения проверяются и в фоне - при обслуживании пула и сразу после ошибки соединения в одном из
+    // сеансов (например, после перезапуска сервера). Сеансы с ошибкой соединения в пул не возвращаются
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long VALIDATION_INTERVAL_MILLIS = Long.getLong("db.pool.validationIntervalMillis", 10_000);
+    // Вызовы хранимых функций (prepareCall) кэшируются в каждом соединении: close() у такого запроса возвращает
+    // его в кэш, и следующий prepareCall с тем же текстом получает тот же объект. Драйвер переходит на
+    // подготовленный на сервере запрос после prepareThreshold выполнений одного запроса (у pgjdbc по умолчанию 5,
+    // меняется свойством -Ddb.pool.prepareThreshold); 0 в db.pool.statementCacheSize отключает кэш
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("db.pool.statementCacheSize", 32);
+    private static final Integer PREPARE_THRESHOLD = Integer.getInteger("db.pool.prepareThreshold");
+
+    // Методы соединения и запросов, которые ждут ответа сервера
+    private static final Set<String> ROUND_TRIP_METHODS = Set.of("execute", "executeQuery", "executeUpdate",
+            "executeBatch", "executeLargeUpdate", "executeLargeBatch", "commit", "rollback", "isValid");
+
+    private static final Map<Key, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService MAINTENANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "connection-pool-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        MAINTENANCE.scheduleWithFixedDelay(ConnectionPool::maintainAll,
+                MAINTENANCE_PERIOD_MILLIS, MAINTENANCE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final Key key;
+    private final Semaphore permits = new Semaphore(MAX_SIZE, true);
+    private final Deque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledHandler> borrowed = ConcurrentHashMap.newKeySet();
+    // Кэш вызовов по физическому соединению; с каждым кэшем одновременно работает только получивший соединение
+    private final Map<Connection, Map<String, CallableStatement>> statementCaches = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    private ConnectionPool(Key key) {
+        this.key = key;
+    }
+
+    // Пул для указанных учетных данных (создается при первом обращении)
+    public static ConnectionPool forCredentials(String url, String username, String password) {
+        return POOLS.computeIfAbsent(new Key(url, username, password), ConnectionPool::new);
+    }
+
+    // Получение соединения; close() у полученного соединения возвращает его в пул
+    public Connection borrow() throws SQLException {
+        long waitStart = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения из пула прервано.", e);
+        }
+        waitNanos.add(System.nanoTime() - waitStart);
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLException("Нет свободных соединений в пуле за " + BORROW_TIMEOUT_MILLIS + " мс.");
+        }
+
+        try {
+            Connection physical = takeValidIdle();
+            if (physical != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                physical = connect();
+            }
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", key.username);
+        properties.setProperty("password", key.password);
+        if (PREPARE_THRESHOLD != null) {
+            properties.setProperty("prepareThreshold", PREPARE_THRESHOLD.toString());
+        }
+        return DriverManager.getConnection(key.url, properties);
+    }
+
+    // Соединение из пула: давно не проверенное проверяется при выдаче, невалидные закрываются и отбрасываются
+    private Connection takeValidIdle() {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            try {
+                if (System.currentTimeMillis() - candidate.validatedAt < VALIDATION_INTERVAL_MILLIS) {
+                    if (!candidate.connection.isClosed()) {
+                        return candidate.connection;
+                    }
+                } else {
+                    Metrics.roundTrip();
+                    if (candidate.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                        return candidate.connection;
+                    }
+                }
+            } catch (SQLException ignored) {
+                // Соединение считается битым
+            }
+            evictions.increment();
+            discard(candidate.connection);
+        }
+        return null;
+    }
+
+    // Проверка простаивающих соединений: на время проверки соединение изымается из пула, битые закрываются
+    private void validateIdle() {
+        for (IdleConnection candidate : idle.toArray(new IdleConnection[0])) {
+            if (!idle.removeFirstOccurrence(candidate)) {
+                continue; // Уже выдано
+            }
+            boolean valid;
+            try {
+                valid = candidate.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                valid = false;
+            }
+            if (valid) {
+                idle.offerLast(new IdleConnection(candidate.connection, candidate.idleSince, System.currentTimeMillis()));
+            } else {
+                evictions.increment();
+                discard(candidate.connection);
+            }
+        }
+    }
+
+    private Connection wrap(Connection physical) {
+        PooledHandler handler = new PooledHandler(physical);
+        borrowed.add(handler);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+    }
+
+    // Возврат соединения в пул (вызывается из close() прокси)
+    private void giveBack(PooledHandler handler) {
+        borrowed.remove(handler);
+        Connection physical = handler.physical;
+        try {
+            if (handler.broken || physical.isClosed()) {
+                discard(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            long now = System.currentTimeMillis();
+            idle.offerFirst(new IdleConnection(physical, now, now));
+        } catch (SQLException e) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Вытеснение простаивающих соединений, их проверка и поиск утечек
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        Iterator<IdleConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            IdleConnection candidate = it.next();
+            if (now - candidate.idleSince >= IDLE_TIMEOUT_MILLIS && idle.removeLastOccurrence(candidate)) {
+                evictions.increment();
+                discard(candidate.connection);
+            }
+        }
+
+        validateIdle();
+
+        for (PooledHandler handler : borrowed) {
+            if (!handler.leakReported && now - handler.borrowedAt >= LEAK_THRESHOLD_MILLIS) {
+                handler.leakReported = true;
+                leaks.increment();
+                System.out.println("Возможная утечка соединения (" + key.username + "): не возвращено в пул "
+                        + (now - handler.borrowedAt) + " мс, получено в потоке " + handler.thread + "."
+                        + (handler.origin != null ? " Место получения:" : ""));
+                if (handler.origin != null) {
+                    handler.origin.printStackTrace(System.out);
+                }
+            }
+        }
+    }
+
+    private static void maintainAll() {
+        for (ConnectionPool pool : POOLS.values()) {
+            pool.maintain();
+        }
+    }
+
+    // Закрытие всех простаивающих соединений во всех пулах
+    public static void closeAll() {
+        for (ConnectionPool pool : POOLS.values()) {
+            IdleConnection candidate;
+            while ((candidate = pool.idle.pollFirst()) != null) {
+                pool.discard(candidate.connection);
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), waitNanos.sum(), timeouts.sum(), evictions.sum(), leaks.sum(),
+                borrowed.size(), idle.size(), statementHits.sum(), statementMisses.sum());
+    }
+
+    // Статистика всех пулов, ключ - "пользователь@url"
+    public static Map<String, Stats> allStats() {
+        Map<String, Stats> result = new TreeMap<>();
+        for (ConnectionPool pool : POOLS.values()) {
+            result.merge(pool.key.username + "@" + pool.key.url, pool.stats(), Stats::plus);
+        }
+        return result;
+    }
+
+    // Закрытие физического соединения вместе с его кэшем вызовов (запросы закрывает сам драйвер)
+    private void discard(Connection physical) {
+        statementCaches.remove(physical);
+        closeQuietly(physical);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Соединение уже недоступно
+        }
+    }
+
+    // statementHits/statementMisses - prepareCall, получившие вызов из кэша соединения и подготовленные заново
+    public record Stats(long hits, long misses, long waitNanos, long timeouts, long evictions, long leaks,
+                        int active, int idle, long statementHits, long statementMisses) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        public double statementHitRatio() {
+            long total = statementHits + statementMisses;
+            return total == 0 ? 0.0 : (double) statementHits / total;
+        }
+
+        Stats plus(Stats other) {
+            return new Stats(hits + other.hits, misses + other.misses, waitNanos + other.waitNanos,
+                    timeouts + other.timeouts, evictions + other.evictions, leaks + other.leaks,
+                    active + other.active, idle + other.idle, statementHits + other.statementHits,
+                    statementMisses + other.statementMisses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRatio=%.2f waitMs=%d timeouts=%d evictions=%d leaks=%d active=%d idle=%d "
+                            + "statementHits=%d statementMisses=%d statementHitRatio=%.2f",
+                    hits, misses, hitRatio(), TimeUnit.NANOSECONDS.toMillis(waitNanos), timeouts, evictions, leaks,
+                    active, idle, statementHits, statementMisses, statementHitRatio());
+        }
+    }
+
+    private record Key(String url, String username, String password) {
+    }
+
+    // validatedAt - время последней проверки или последнего использования соединения
+    private record IdleConnection(Connection connection, long idleSince, long validatedAt) {
+    }
+
+    // Прокси соединения: close() возвращает физическое соединение в пул
+    private final class PooledHandler implements InvocationHandler {
+        private final Connection physical;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final String thread = Thread.currentThread().getName();
+        private final Throwable origin = LEAK_TRACES ? new Throwable("Соединение получено здесь") : null;
+        private volatile boolean closed;
+        private volatile boolean broken;
+        private volatile boolean leakReported;
+
+        private PooledHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + physical + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Соединение уже возвращено в пул.");
+            }
+            if (STATEMENT_CACHE_SIZE > 0 && method.getName().equals("prepareCall") && args.length == 1) {
+                return cachedCall(method, args, proxy);
+            }
+            Object result = invokeTracked(physical, method, args);
+            if (result instanceof Statement) {
+                return wrapStatement((Statement) result, method.getReturnType(), proxy);
+            }
+            return result;
+        }
+
+        // Сеанс не возвращается в пул после ошибки соединения (класс 08, остановка сервера 57P01), внутренней
+        // ошибки сервера (XX000) и ошибки вызова хранимой функции - в сеансе может остаться именованное
+        // соединение dblink в неизвестном состоянии. После остальных ошибок (данные, ограничения) сеанс
+        // пригоден: незавершенную транзакцию откатывает giveBack. Ошибка соединения запускает проверку
+        // остальных соединений пула. Вызовы, которые ждут ответа сервера, считаются в метриках текущей операции
+        private Object invokeTracked(Object target, Method method, Object[] args) throws Throwable {
+            if (ROUND_TRIP_METHODS.contains(method.getName())) {
+                Metrics.roundTrip();
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    String state = ((SQLException) e.getCause()).getSQLState();
+                    boolean connectionLost = state != null && (state.startsWith("08") || state.equals("57P01"));
+                    if (connectionLost || "XX000".equals(state) || target instanceof CallableStatement) {
+                        broken = true;
+                    }
+                    if (connectionLost) {
+                        MAINTENANCE.execute(ConnectionPool.this::validateIdle);
+                    }
+                }
+                throw e.getCause();
+            }
+        }
+
+        private Object cachedCall(Method method, Object[] args, Object connectionProxy) throws Throwable {
+            String sql = (String) args[0];
+            Map<String, CallableStatement> cache = statementCaches.computeIfAbsent(physical,
+                    connection -> new LinkedHashMap<>(16, 0.75f, true));
+            CallableStatement statement = cache.remove(sql);
+            if (statement != null && !statement.isClosed()) {
+                statementHits.increment();
+            } else {
+                statementMisses.increment();
+                statement = (CallableStatement) invokeTracked(physical, method, args);
+            }
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{CallableStatement.class},
+                    new CachedCallHandler(sql, statement, connectionProxy));
+        }
+
+        // Возврат вызова в кэш соединения: параметры и результат сбрасываются, самый давно не использованный
+        // вызов сверх STATEMENT_CACHE_SIZE закрывается
+        private void giveBackCall(String sql, CallableStatement statement) {
+            Map<String, CallableStatement> cache = statementCaches.get(physical);
+            try {
+                if (closed || broken || cache == null) {
+                    statement.close();
+                    return;
+                }
+                ResultSet rs = statement.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+                statement.clearParameters();
+                CallableStatement previous = cache.put(sql, statement);
+                if (previous != null) {
+                    previous.close();
+                }
+                if (cache.size() > STATEMENT_CACHE_SIZE) {
+                    Iterator<CallableStatement> eldest = cache.values().iterator();
+                    CallableStatement evicted = eldest.next();
+                    eldest.remove();
+                    evicted.close();
+                }
+            } catch (SQLException e) {
+                broken = true;
+            }
+        }
+
+        // Прокси вызова из кэша: close() возвращает его в кэш соединения
+        private final class CachedCallHandler implements InvocationHandler {
+            private final String sql;
+            private final CallableStatement statement;
+            private final Object connectionProxy;
+            private boolean callClosed;
+
+            private CachedCallHandler(String sql, CallableStatement statement, Object connectionProxy) {
+                this.sql = sql;
+                this.statement = statement;
+                this.connectionProxy = connectionProxy;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!callClosed) {
+                            callClosed = true;
+                            giveBackCall(sql, statement);
+                        }
+                        return null;
+                    case "isClosed":
+                        return callClosed || statement.isClosed();
+                    case "getConnection":
+                        return connectionProxy;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                if (callClosed) {
+                    throw new SQLException("Запрос уже закрыт.");
+                }
+                return invokeTracked(statement, method, args);
+            }
+        }
+
+        private Object wrapStatement(Statement statement, Class<?> type, Object connectionProxy) {
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("getConnection")) {
+                            return connectionProxy;
+                        }
+                        return invokeTracked(statement, method, args);
+                    });
+        }
+    }
+}
@@ -1,35 +1,144 @@
 package db;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 public class DBManager {
-    private static final String BASE_URL = "jdbc:postgresql://localhost:5432/";
+    // Адрес сервера (-Ddb.url), к нему добавляется имя базы данных
+    private static final String BASE_URL = System.getProperty("db.url", "jdbc:postgresql://localhost:5432/");
     private static final String DATABASE_NAME  = "trainings";
+    private static final String SUPERUSER_NAME = "postgres";
+    private static final String SUPERUSER_PASSWORD = "CHocolate75%";
+
+    // Режим доступа: хранимые функции через dblink (по умолчанию) или прямые запросы к таблице
+    private static volatile AccessMode accessMode = AccessMode.fromProperty(System.getProperty("db.accessMode"));
+
+    // Соединение из пула (close() возвращает его в пул)
+    public static Connection getConnection(String username, String password) throws SQLException {
+        return getConnection(DATABASE_NAME, username, password);
+    }
+
+    // Соединение из пула с указанной базой данных
+    static Connection getConnection(String dbName, String username, String password) throws SQLException {
+        long started = System.nanoTime();
+        Connection connection = ConnectionPool.forCredentials(BASE_URL + dbName, username, password).borrow();
+        Metrics.acquired(System.nanoTime() - started);
+        return connection;
+    }
+
+    // Отдельное соединение вне пула - для сеанса, который держится долго (LISTEN в TrainingsCache)
+    static Connection openConnection(String dbName, String username, String password) throws SQLException {
+        return DriverManager.getConnection(BASE_URL + dbName, username, password);
+    }
+
+    public static AccessMode getAccessMode() {
+        return accessMode;
+    }
+
+    public static void setAccessMode(AccessMode mode) {
+        accessMode = mode;
+        ScheduleIndex.invalidateAll();
+    }
+
+    // Статистика пулов соединений (попадания/промахи, время ожидания)
+    public static Map<String, ConnectionPool.Stats> getPoolStats() {
+        return ConnectionPool.allStats();
+    }
+
+    // Метрики операций (время по этапам, коды возврата, число строк) и пулов в текстовом формате Prometheus;
+    // те же данные доступны через JMX (db:type=DBManager) и по HTTP при заданном -Ddb.metrics.port
+    public static String getMetricsText() {
+        return Metrics.prometheusText();
+    }
+
+    // Подготовленные на сервере запросы одного сеанса из пула (того, что выдан для этого вызова): вызовы
+    // хранимых функций, которые драйвер подготовил после prepareThreshold выполнений, и запросы функций
+    // в их соединении dblink (trainings_link_stats). У каждого - сколько раз использован план из кэша
+    public static List<PlanCacheStats> getPlanCacheStats(String username, String password) {
+        List<PlanCacheStats> stats = new ArrayList<>();
+        try (Connection conn = getConnection(username, password);
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT statement, generic_plans, custom_plans FROM pg_prepared_statements "
+                             + "UNION ALL SELECT 'trainings_link: ' || name, generic_plans, custom_plans FROM trainings_link_stats()");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                stats.add(new PlanCacheStats(rs.getString(1), rs.getLong(2), rs.getLong(3)));
+            }
+        } catch (SQLException e) {
+            System.out.println("Ошибка при получении статистики планов: " + e.getMessage());
+        }
+        return stats;
+    }
+
+    // Определение роли пользователя; при попадании в кэш обращения к БД нет
+    public static String authenticateUser(String username, String password) {
+        long started = Metrics.start();
+        String role = RoleCache.lookup(username, password);
+        if (role != null) {
+            return Metrics.done(Metrics.Operation.AUTHENTICATE_USER, started, 1, 0, role);
+        }
+        try (Connection conn = getConnection(SUPERUSER_NAME, SUPERUSER_PASSWORD);
+             PreparedStatement stmt = conn.prepareStatement("SELECT role FROM users WHERE username = ? AND password = ?")) {
+            stmt.setString(1, username);
+            stmt.setString(2, password);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    role = rs.getString("role");
+                    RoleCache.put(username, password, role);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Ошибка при аутентификации: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.AUTHENTICATE_USER, started, null);
+        }
+        return Metrics.done(Metrics.Operation.AUTHENTICATE_USER, started, role == null ? 0 : 1, role == null ? 0 : 1, role);
+    }
+
+    // Сброс кэша ролей (например, после изменения пользователей в обход createUser)
+    public static void invalidateAuthCache() {
+        RoleCache.invalidateAll();
+    }
 
     // Создание базы данных
     public static String createDatabase(String dbName, String username, String password) {
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);
+        long started = Metrics.start();
+        try (Connection conn = getConnection(username, password);
              CallableStatement stmt = conn.prepareCall("{ call create_database(?) }")) {
             stmt.setString(1, dbName); // Передаем имя БД
             stmt.execute();
-            return "База данных " + dbName + " создана (или уже существовала).";
+            return Metrics.done(Metrics.Operation.CREATE_DATABASE, started, 1, 0,
+                    "База данных " + dbName + " создана (или уже существовала).");
         } catch (SQLException e) {
-            return "Ошибка при создании базы данных: " + e.getMessage();
+            return Metrics.failed(Metrics.Operation.CREATE_DATABASE, started, "Ошибка при создании базы данных: " + e.getMessage());
         }
     }
 
     // Вызов хранимой процедуры для создания таблицы в training_schedule
     public static String createTable(String dbName, String username, String password) {
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);
+        long started = Metrics.start();
+        try (Connection conn = getConnection(username, password);
              CallableStatement stmt = conn.prepareCall("{ CALL create_table(?, ?) }")) {
+            DirectAccess.invalidateSchema(dbName);
             stmt.setString(1, dbName);
             stmt.registerOutParameter(2, java.sql.Types.INTEGER);
             stmt.execute();
 
             int tableCreatedCode = stmt.getInt(2);
+            Metrics.record(Metrics.Operation.CREATE_TABLE, started, tableCreatedCode, 0);
             if (tableCreatedCode == -2) {
                 return "База данных training_schedule не была создана.";
             } else if (tableCreatedCode == -1) {
@@ -38,19 +147,53 @@ public class DBManager {
                 return "Таблица trainings успешно создана!";
             }
         } catch (SQLException e) {
-            return "Ошибка при создании таблицы: " + e.getMessage();
+            return Metrics.failed(Metrics.Operation.CREATE_TABLE, started, "Ошибка при создании таблицы: " + e.getMessage());
+        }
+    }
+
+    // partitioned - таблица, разбитая на секции по месяцам даты занятия: создается напрямую в базе dbName
+    // (при любом режиме доступа) с теми же индексами и триггерами, что у create_table, и сразу получает секции
+    // на ближайшие месяцы. Дальше секции создает и отсоединяет PartitionMaintainer
+    public static String createTable(String dbName, boolean partitioned, String username, String password) {
+        return partitioned ? createPartitionedTable(dbName, username, password) : createTable(dbName, username, password);
+    }
+
+    private static String createPartitionedTable(String dbName, String username, String password) {
+        long started = Metrics.start();
+        DirectAccess.invalidateSchema(dbName);
+        try {
+            try (Connection conn = getConnection(dbName, username, password)) {
+                if (DirectAccess.tableExists(conn, dbName)) {
+                    return Metrics.done(Metrics.Operation.CREATE_TABLE, started, -1, 0, "Таблица trainings уже существует.");
+                }
+                PartitionMaintainer.createTable(conn);
+            } finally {
+                DirectAccess.invalidateSchema(dbName);
+            }
+            DirectAccess.createIndexes(dbName, username, password);
+            PartitionMaintainer.Result partitions = new PartitionMaintainer(dbName, username, password).maintain();
+            return Metrics.done(Metrics.Operation.CREATE_TABLE, started, 1, 0,
+                    "Таблица trainings успешно создана с секциями по месяцам: " + String.join(", ", partitions.created()) + ".");
+        } catch (SQLException e) {
+            if ("3D000".equals(e.getSQLState())) {
+                return Metrics.done(Metrics.Operation.CREATE_TABLE, started, -2, 0, "База данных " + dbName + " не была создана.");
+            }
+            return Metrics.failed(Metrics.Operation.CREATE_TABLE, started, "Ошибка при создании таблицы: " + e.getMessage());
         }
     }
 
     // Удаление базы данных
     public static String dropDatabase(String dbName, String username, String password) {
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);
+        long started = Metrics.start();
+        try (Connection conn = getConnection(username, password);
              CallableStatement stmt = conn.prepareCall("{ call drop_database(?, ?) }")) {
+            DirectAccess.invalidateSchema(dbName);
             stmt.setString(1, dbName);
             stmt.registerOutParameter(2, java.sql.Types.INTEGER);
             stmt.execute();
 
             int result = stmt.getInt(2);
+            Metrics.record(Metrics.Operation.DROP_DATABASE, started, result, 0);
             if (result == 1) {
                 return "База данных " + dbName + " успешно удалена.";
             } else if (result == -2) {
@@ -59,13 +202,14 @@ public class DBManager {
                 return "Неизвестный результат удаления базы данных: " + result;
             }
         } catch (SQLException e) {
-            return "Ошибка при удалении базы данных: " + e.getMessage();
+            return Metrics.failed(Metrics.Operation.DROP_DATABASE, started, "Ошибка при удалении базы данных: " + e.getMessage());
         }
     }
 
     // Метод для создания пользователя
     public static void createUser(String username, String password, String role) {
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, "postgres", "CHocolate75%"); // Используем суперпользователя
+        long started = Metrics.start();
+        try (Connection conn = getConnection(SUPERUSER_NAME, SUPERUSER_PASSWORD); // Используем суперпользователя
              CallableStatement stmt = conn.prepareCall("{ ? = call create_user(?, ?, ?) }")) {
             stmt.registerOutParameter(1, java.sql.Types.INTEGER);
             stmt.setString(2, username);
@@ -74,6 +218,7 @@ public class DBManager {
 
             stmt.execute();
             int result = stmt.getInt(1);
+            Metrics.record(Metrics.Operation.CREATE_USER, started, result, 0);
             switch (result) {
                 case -2:
                     System.out.println("Ошибка: база данных не существует.");
@@ -91,19 +236,59 @@ public class DBManager {
                     System.out.println("Пользователь " + username + " создан с ролью " + role);
             }
         } catch (SQLException e) {
+            Metrics.record(Metrics.Operation.CREATE_USER, started, -555, 0);
             System.out.println("Ошибка при создании пользователя: " + e.getMessage());
+        } finally {
+            RoleCache.invalidate(username);
+        }
+    }
+
+    // Подготовка базы студии одной операцией вместо createDatabase + createTable + createIndexes: база создается,
+    // если ее нет, и получает недостающие версии схемы (SchemaBootstrap) - таблицу, индексы, групповые роли
+    // с правами. Если схема уже в последней версии, выполняется один запрос. partitioned - как у createTable
+    public static BootstrapResult bootstrapSchema(String dbName, boolean partitioned) {
+        long started = Metrics.start();
+        BootstrapResult result = SchemaBootstrap.bootstrap(dbName, partitioned, SUPERUSER_NAME, SUPERUSER_PASSWORD);
+        if (result.applied().contains(1)) {
+            // Новая таблица с секциями сразу получает секции на ближайшие месяцы
+            try {
+                new PartitionMaintainer(dbName, SUPERUSER_NAME, SUPERUSER_PASSWORD).maintain();
+            } catch (SQLException e) {
+                System.out.println("Ошибка при создании секций (" + dbName + "): " + e.getMessage());
+            }
+        }
+        return Metrics.done(Metrics.Operation.BOOTSTRAP_SCHEMA, started, result.status(), result.applied().size(), result);
+    }
+
+    // Создание многих пользователей одним пакетом: группа admin/guest дает права в базах, подготовленных
+    // bootstrapSchema. Коды - по порядку записей, как у createUser; -555 у всех - транзакция откатилась
+    public static int[] createUsers(List<UserAccount> accounts) {
+        long started = Metrics.start();
+        try {
+            int[] codes = SchemaBootstrap.createUsers(accounts, SUPERUSER_NAME, SUPERUSER_PASSWORD);
+            int created = 0;
+            for (int code : codes) {
+                if (code == 1) {
+                    created++;
+                }
+            }
+            return Metrics.done(Metrics.Operation.CREATE_USERS, started, 1, created, codes);
+        } catch (SQLException e) {
+            System.out.println("Ошибка при создании пользователей: " + e.getMessage());
+            int[] codes = new int[accounts.size()];
+            Arrays.fill(codes, -555);
+            return Metrics.failed(Metrics.Operation.CREATE_USERS, started, codes);
         }
     }
 
     // Очистка базы данных
     public static String clearDatabase(String dbName, String username, String password) {
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);
-             CallableStatement stmt = conn.prepareCall("{ ? = CALL clear_database(?) }")) {
-            stmt.registerOutParameter(1, java.sql.Types.INTEGER);
-            stmt.setString(2, dbName);
-            stmt.execute();
-
-            int result = stmt.getInt(1);
+        long started = Metrics.start();
+        try {
+            int result = accessMode == AccessMode.DIRECT
+                    ? DirectAccess.clearDatabase(dbName, username, password)
+                    : callClearDatabase(dbName, username, password);
+            Metrics.record(Metrics.Operation.CLEAR_DATABASE, started, result, Math.max(result, 0));
 
             if (result == -2) {
                 return "Ошибка: база данных " + dbName + " не существует.";
@@ -113,15 +298,70 @@ public class DBManager {
                 return "База данных " + dbName + " успешно очищена! Удалено " + result + " записей.";
             }
         } catch (SQLException e) {
-            return "Ошибка при очистке базы данных: " + e.getMessage();
+            return Metrics.failed(Metrics.Operation.CLEAR_DATABASE, started, "Ошибка при очистке базы данных: " + e.getMessage());
+        }
+    }
+
+    private static int callClearDatabase(String dbName, String username, String password) throws SQLException {
+        // Изменения через хранимые функции идут мимо индекса расписания
+        ScheduleIndex.invalidateAll();
+        try (Connection conn = getConnection(username, password);
+             CallableStatement stmt = conn.prepareCall("{ ? = CALL clear_database(?) }")) {
+            stmt.registerOutParameter(1, java.sql.Types.INTEGER);
+            stmt.setString(2, dbName);
+            stmt.execute();
+            return stmt.getInt(1);
+        }
+    }
+
+    // Добавление новых данных; при прямом доступе результат содержит добавленную строку
+    public static MutationResult addTraining(String dbName, String title, Date date, Time startTime, String duration,
+                                             int maxParticipants, int currentParticipants, String difficultyLevel,
+                                             String trainerName, double price, String username, String password) {
+        long started = Metrics.start();
+        try {
+            MutationResult result = accessMode == AccessMode.DIRECT
+                    ? DirectAccess.addTraining(dbName, title, date, startTime, duration, maxParticipants,
+                    currentParticipants, difficultyLevel, trainerName, price, username, password)
+                    : MutationResult.fromStoredFunction(callAddNewTraining(dbName, title, date, startTime, duration,
+                    maxParticipants, currentParticipants, difficultyLevel, trainerName, price, username, password));
+
+            // Обработка возможных кодов ошибок
+            Metrics.done(Metrics.Operation.ADD_TRAINING, started, result);
+            return result.withMessage(describeAddTrainingCode(result.status(), dbName, trainerName));
+        } catch (SQLException e) {
+            return Metrics.done(Metrics.Operation.ADD_TRAINING, started,
+                    MutationResult.code(-555).withMessage("Ошибка при добавлении тренировки: " + e.getMessage()));
+        }
+    }
+
+    // Сообщение для кода add_new_training (используется и при массовой загрузке и в Pipeline)
+    static String describeAddTrainingCode(int code, String dbName, String trainerName) {
+        if (code > 0) {
+            return "Тренировка успешно добавлена с ID " + code;
+        } else if (code == -2) {
+            return "Ошибка: база данных " + dbName + " не существует.";
+        } else if (code == -1) {
+            return "Ошибка: таблица trainings не существует.";
+        } else if (code == -3) {
+            return "Ошибка: максимальное количество участников должно быть положительным.";
+        } else if (code == -4) {
+            return "Ошибка: текущее количество участников должно быть неотрицательным.";
+        } else if (code == -5) {
+            return "Ошибка: некорректный уровень сложности. Допустимы только: \"смешанный\", \"начальный\" и \"продвинутый\"";
+        } else if (code == -6) {
+            return "Ошибка: время проведения занятия у тренера " + trainerName + " пересекается с его другим занятием.";
+        } else {
+            return "Неизвестная ошибка при добавлении тренировки.";
         }
     }
 
-    // Добавление новых данных
-    public static String addTraining(String dbName, String title, Date date, Time startTime, String duration,
-                                     int maxParticipants, int currentParticipants, String difficultyLevel,
-                                     String trainerName, double price, String username, String password) {
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);
+    private static int callAddNewTraining(String dbName, String title, Date date, Time startTime, String duration,
+                                          int maxParticipants, int currentParticipants, String difficultyLevel,
+                                          String trainerName, double price, String username, String password) throws SQLException {
+        // Изменения через хранимые функции идут мимо индекса расписания
+        ScheduleIndex.invalidateAll();
+        try (Connection conn = getConnection(username, password);
              CallableStatement stmt = conn.prepareCall("{ ? = call add_new_training(?, ?, ?, ?, ?, ?, ?, ?, ?, ?) }")) {
             stmt.registerOutParameter(1, java.sql.Types.INTEGER);
             stmt.setString(2, dbName);
@@ -136,108 +376,296 @@ public class DBManager {
             stmt.setBigDecimal(11, BigDecimal.valueOf(price));
 
             stmt.execute();
-            int newTrainingId = stmt.getInt(1);
+            return stmt.getInt(1);
+        }
+    }
 
-            // Обработка возможных кодов ошибок
-            if (newTrainingId == -2) {
-                return "Ошибка: база данных " + dbName + " не существует.";
-            } else if (newTrainingId == -1) {
-                return "Ошибка: таблица trainings не существует.";
-            } else if (newTrainingId == -3) {
-                return "Ошибка: максимальное количество участников должно быть положительным.";
-            } else if (newTrainingId == -4) {
-                return "Ошибка: текущее количество участников должно быть неотрицательным.";
-            } else if (newTrainingId == -5) {
-                return "Ошибка: некорректный уровень сложности. Допустимы только: \"смешанный\", \"начальный\" и \"продвинутый\"";
-            } else if (newTrainingId == -6) {
-                return "Ошибка: время проведения занятия у тренера " + trainerName + " пересекается с его другим занятием.";
-            } else if (newTrainingId > 0) {
-                return "Тренировка успешно добавлена с ID " + newTrainingId;
-            } else {
-                return "Неизвестная ошибка при добавлении тренировки.";
+    // Массовая загрузка тренировок одной транзакцией: COPY во временную таблицу частями по
+    // -Ddb.import.chunkSize строк, проверки для всей пачки сразу. Работает напрямую с таблицей в базе dbName
+    // при любом режиме доступа. Некорректные строки пропускаются и перечисляются в результате.
+    public static ImportResult importTrainings(String dbName, Stream<Training> trainings, String username, String password) {
+        return importRows(dbName, BulkImport.numbered(trainings.iterator()), username, password);
+    }
+
+    public static ImportResult importTrainings(String dbName, List<Training> trainings, String username, String password) {
+        return importTrainings(dbName, trainings.stream(), username, password);
+    }
+
+    // Загрузка из CSV-файла (UTF-8); файл читается по мере передачи строк в базу
+    public static ImportResult importTrainingsFromCsv(String dbName, Path csvFile, String username, String password) {
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            return importRows(dbName, BulkImport.csvRows(reader), username, password);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Ошибка при чтении файла " + csvFile + ": " + e.getMessage());
+            return new ImportResult(-17, 0, List.of());
+        }
+    }
+
+    private static ImportResult importRows(String dbName, Iterator<BulkImport.Row> rows, String username, String password) {
+        long started = Metrics.start();
+        ImportResult result;
+        try {
+            result = BulkImport.importRows(dbName, rows, username, password);
+        } catch (SQLException e) {
+            System.out.println("Ошибка при загрузке тренировок: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.IMPORT_TRAININGS, started, new ImportResult(-555, 0, List.of()));
+        }
+        Metrics.record(Metrics.Operation.IMPORT_TRAININGS, started, result.status() < 0 ? result.status() : 1, result.inserted());
+        if (result.status() == -2) {
+            System.out.println("Ошибка: база данных " + dbName + " не существует.");
+        } else if (result.status() == -1) {
+            System.out.println("Ошибка: таблица trainings не существует.");
+        } else {
+            System.out.println("Загружено " + result.inserted() + " тренировок, отклонено строк: " + result.errors().size());
+        }
+        return result;
+    }
+
+    // Выгрузка таблицы в файл (CSV для importTrainingsFromCsv или JSON, при gzip - сжатый) с постоянным расходом
+    // памяти при любом числе строк: без условий CSV передается через COPY TO STDOUT, иначе строки читаются курсором
+    // по -Ddb.export.fetchSize. filter == null - вся таблица; progress получает число выгруженных строк.
+    // Как и подбор, работает напрямую с таблицей в базе dbName при любом режиме доступа
+    public static ExportResult exportTrainings(String dbName, TrainingQuery filter, Path file, ExportFormat format, boolean gzip,
+                                               LongConsumer progress, String username, String password) {
+        long started = Metrics.start();
+        ExportResult result;
+        try {
+            result = Export.export(dbName, filter, file, format, gzip, progress, username, password);
+        } catch (SQLException e) {
+            System.out.println("Ошибка при выгрузке тренировок: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.EXPORT_TRAININGS, started, new ExportResult(-555, 0, 0));
+        } catch (IOException e) {
+            System.out.println("Ошибка при записи файла " + file + ": " + e.getMessage());
+            return Metrics.done(Metrics.Operation.EXPORT_TRAININGS, started, -17, 0, new ExportResult(-17, 0, 0));
+        }
+        Metrics.record(Metrics.Operation.EXPORT_TRAININGS, started, result.status() < 0 ? result.status() : 1, (int) result.rows());
+        if (result.status() == -2) {
+            System.out.println("Ошибка: база данных " + dbName + " не существует.");
+        } else if (result.status() == -1) {
+            System.out.println("Ошибка: таблица trainings не существует.");
+        } else {
+            System.out.println("Выгружено " + result.rows() + " тренировок в файл " + file + " (" + result.bytes() + " байт)");
+        }
+        return result;
+    }
+
+    // Заполняемость и выручка по группам (тренер, уровень, день, неделя, месяц) за период from..to (null - без
+    // границы): один запрос GROUP BY, клиент получает только итоги групп. Как и подбор, работает напрямую
+    // с таблицей в базе dbName; при -Ddb.analytics.materialized=true - с представлением (AnalyticsRefresher)
+    public static AnalyticsResult getAnalytics(String dbName, AnalyticsGroup group, LocalDate from, LocalDate to,
+                                               String username, String password) {
+        long started = Metrics.start();
+        try {
+            AnalyticsResult result = Analytics.query(dbName, group, from, to, username, password);
+            if (result.status() == -2) {
+                System.out.println("Ошибка: база данных " + dbName + " не существует.");
+            } else if (result.status() == -1) {
+                System.out.println("Ошибка: таблица trainings не существует.");
             }
+            return Metrics.done(Metrics.Operation.GET_ANALYTICS, started, result.status(), result.rows().size(), result);
         } catch (SQLException e) {
-            return "Ошибка при добавлении тренировки: " + e.getMessage();
+            System.out.println("Ошибка при расчете показателей: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.GET_ANALYTICS, started, new AnalyticsResult(-555, List.of(), false));
         }
     }
 
     // Поиск тренировок по текстовому полю
-    public static List<String[]> searchTrainingByField(String dbName, String fieldName, String searchValue, String username, String password) {
-        List<String[]> results = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);
+    // Пустой список, если записи не найдены или произошла ошибка (сообщение выводится в консоль)
+    public static List<Training> searchTrainingByField(String dbName, String fieldName, String searchValue, String username, String password) {
+        long started = Metrics.start();
+        List<Training> results;
+        try {
+            results = accessMode == AccessMode.DIRECT
+                    ? DirectAccess.searchTrainingByField(dbName, fieldName, searchValue, MatchType.CONTAINS, 0, username, password)
+                    : callSearchTrainingByField(dbName, fieldName, searchValue, username, password);
+
+            if (results.isEmpty()) {
+                System.out.println("Записи не найдены по полю '" + fieldName + "' со значением '" + searchValue + "'");
+            }
+        } catch (SQLException e) {
+            System.out.println("Ошибка при поиске тренировок: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.SEARCH_TRAINING_BY_FIELD, started, new ArrayList<>());
+        }
+        return Metrics.done(Metrics.Operation.SEARCH_TRAINING_BY_FIELD, started, results);
+    }
+
+    // Поиск с выбором способа сравнения и ограничением количества строк (limit <= 0 - без ограничения).
+    // Хранимая функция умеет только поиск подстроки, поэтому запрос выполняется напрямую к таблице в базе dbName
+    public static List<Training> searchTrainingByField(String dbName, String fieldName, String searchValue, MatchType matchType,
+                                                       int limit, String username, String password) {
+        long started = Metrics.start();
+        try {
+            return Metrics.done(Metrics.Operation.SEARCH_TRAINING_BY_FIELD, started,
+                    DirectAccess.searchTrainingByField(dbName, fieldName, searchValue, matchType, limit, username, password));
+        } catch (SQLException e) {
+            System.out.println("Ошибка при поиске тренировок: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.SEARCH_TRAINING_BY_FIELD, started, new ArrayList<>());
+        }
+    }
+
+    // Выборка тренировок по нескольким условиям (диапазоны дат и цен, уровни, тренер, свободные места).
+    // Хранимых функций для нее нет, поэтому запрос выполняется напрямую к таблице в базе dbName;
+    // пустой список, если записи не найдены или произошла ошибка
+    public static List<Training> findTrainings(String dbName, TrainingQuery query, String username, String password) {
+        long started = Metrics.start();
+        try {
+            return Metrics.done(Metrics.Operation.FIND_TRAININGS, started, DirectAccess.findTrainings(dbName, query, username, password));
+        } catch (SQLException e) {
+            System.out.println("Ошибка при выборке тренировок: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.FIND_TRAININGS, started, new ArrayList<>());
+        }
+    }
+
+    // Триггеры уведомлений об изменениях (для TrainingsCache) в таблице, созданной до их появления в create_table
+    public static String createChangeTriggers(String dbName, String username, String password) {
+        long started = Metrics.start();
+        try (Connection conn = getConnection(dbName, username, password)) {
+            TrainingsCache.createTriggers(conn);
+            return Metrics.done(Metrics.Operation.CREATE_CHANGE_TRIGGERS, started, 1, 0, "Триггеры уведомлений об изменениях созданы.");
+        } catch (SQLException e) {
+            return Metrics.failed(Metrics.Operation.CREATE_CHANGE_TRIGGERS, started, "Ошибка при создании триггеров: " + e.getMessage());
+        }
+    }
+
+    // Индексы для поиска и выборки в таблице, созданной до их появления в create_table
+    public static String createIndexes(String dbName, String username, String password) {
+        long started = Metrics.start();
+        try {
+            DirectAccess.createIndexes(dbName, username, password);
+            return Metrics.done(Metrics.Operation.CREATE_INDEXES, started, 1, 0, "Индексы созданы.");
+        } catch (SQLException e) {
+            return Metrics.failed(Metrics.Operation.CREATE_INDEXES, started, "Ошибка при создании индексов: " + e.getMessage());
+        }
+    }
+
+    private static List<Training> callSearchTrainingByField(String dbName, String fieldName, String searchValue,
+                                                            String username, String password) throws SQLException {
+        List<Training> results = new ArrayList<>();
+        try (Connection conn = getConnection(username, password);
              CallableStatement stmt = conn.prepareCall("{ call search_training_by_field(?, ?, ?) }")) {
             stmt.setString(1, dbName);
             stmt.setString(2, fieldName);
             stmt.setString(3, searchValue);
 
             ResultSet rs = stmt.executeQuery();
-            boolean hasResults = false; // Флаг для проверки наличия данных
-
+            TrainingMapper mapper = new TrainingMapper(rs);
             while (rs.next()) {
-                hasResults = true;
-                String[] row = new String[10]; // Количество столбцов в таблице
-                row[0] = String.valueOf(rs.getInt("id")); // ID
-                row[1] = rs.getString("title"); // Название
-                row[2] = rs.getDate("date").toString(); // Дата
-                row[3] = rs.getTime("start_time").toString(); // Время
-                row[4] = rs.getString("duration"); // Длительность
-                row[5] = rs.wasNull() ? "N/A" : String.valueOf(rs.getInt("max_participants")); // Макс. участников
-                row[6] = rs.wasNull() ? "N/A" : String.valueOf(rs.getInt("current_participants")); // Текущие участники
-                row[7] = rs.getString("difficulty_level") != null ? rs.getString("difficulty_level") : "N/A"; // Уровень сложности
-                row[8] = rs.getString("trainer_name"); // Тренер
-                row[9] = rs.wasNull() ? "0.0" : String.format("%.2f", rs.getDouble("price")); // Цена
-                results.add(row);
+                results.add(mapper.map(rs));
             }
-
-            // Если записей не нашлось, добавляем сообщение
-            if (!hasResults) {
-                results.add(new String[]{"Записи не найдены по полю '" + fieldName + "' со значением '" + searchValue + "'"});
-            }
-        } catch (SQLException e) {
-            System.out.println("Ошибка при поиске тренировок: " + e.getMessage());
-            results.add(new String[]{"Ошибка при поиске тренировок: " + e.getMessage()});
         }
         return results;
     }
 
-    // Удаление тренировок по полю
-    public static int deleteTrainingByField(String dbName, String fieldName, String searchValue, String username, String password) {
-        int rowsDeleted;
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);             CallableStatement stmt = conn.prepareCall("{ ? = call delete_trainings_by_field(?, ?, ?) }")) {
+    // Удаление тренировок по полю; status - количество удаленных записей или код ошибки,
+    // при прямом доступе результат содержит удаленные строки
+    public static MutationResult deleteTrainingByField(String dbName, String fieldName, String searchValue, String username, String password) {
+        long started = Metrics.start();
+        MutationResult result;
+        try {
+            result = accessMode == AccessMode.DIRECT
+                    ? DirectAccess.deleteTrainingByField(dbName, fieldName, searchValue, username, password)
+                    : MutationResult.fromStoredFunction(callDeleteTrainingsByField(dbName, fieldName, searchValue, username, password));
+
+            // Обрабатываем возможные коды возврата
+            result = reportDelete(result, dbName, fieldName);
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return Metrics.done(Metrics.Operation.DELETE_TRAINING_BY_FIELD, started,
+                    MutationResult.code(-555).withMessage(e.getMessage())); // Код ошибки при исключении
+        }
+        return Metrics.done(Metrics.Operation.DELETE_TRAINING_BY_FIELD, started, result);
+    }
+
+    static MutationResult reportDelete(MutationResult result, String dbName, String fieldName) {
+        int rowsDeleted = result.status();
+        String message;
+        if (rowsDeleted == -2) {
+            message = "Ошибка: база данных " + dbName + " не существует.";
+        } else if (rowsDeleted == -1) {
+            message = "Ошибка: таблица trainings не существует.";
+        } else if (rowsDeleted == -7) {
+            message = "Ошибка: Поле " + fieldName + " не существует или не является текстовым.";
+        } else if (rowsDeleted == -8) {
+            message = "Ошибка: Значение для удаления не может быть пустым.";
+        } else if (rowsDeleted == 0) {
+            message = "Записи не найдены.";
+        } else {
+            message = "Удалено " + rowsDeleted + " записей.";
+        }
+        System.out.println(message);
+        return result.withMessage(message);
+    }
+
+    private static int callDeleteTrainingsByField(String dbName, String fieldName, String searchValue,
+                                                  String username, String password) throws SQLException {
+        // Изменения через хранимые функции идут мимо индекса расписания
+        ScheduleIndex.invalidateAll();
+        try (Connection conn = getConnection(username, password);
+             CallableStatement stmt = conn.prepareCall("{ ? = call delete_trainings_by_field(?, ?, ?) }")) {
             stmt.registerOutParameter(1, Types.INTEGER);
             stmt.setString(2, dbName);
             stmt.setString(3, fieldName);
             stmt.setString(4, searchValue);
 
             stmt.execute();
-            rowsDeleted = stmt.getInt(1); // Получаем результат удаления
+            return stmt.getInt(1); // Получаем результат удаления
+        }
+    }
 
+    // Обновление определенного поля тренировки по ID; при прямом доступе результат содержит обновленную строку
+    public static MutationResult updateTrainingByField(String dbName, int id, String fieldName, String newValue, String username, String password) {
+        long started = Metrics.start();
+        if (WriteBehindQueue.ENABLED) {
+            // Отложенная запись: изменение в очереди, в базу оно попадет вместе с другими (см. WriteBehindQueue)
+            MutationResult queued = WriteBehindQueue.offer(dbName, id, fieldName, newValue, username, password);
+            if (queued != null) {
+                System.out.println(queued.message());
+                return Metrics.done(Metrics.Operation.UPDATE_TRAINING_BY_FIELD, started, queued);
+            }
+        }
+        MutationResult result;
+        try {
+            result = accessMode == AccessMode.DIRECT
+                    ? DirectAccess.updateTrainingByField(dbName, id, fieldName, newValue, username, password)
+                    : MutationResult.fromStoredFunction(callUpdateTrainingField(dbName, id, fieldName, newValue, username, password));
             // Обрабатываем возможные коды возврата
-            if (rowsDeleted == -2) {
-                System.out.println("Ошибка: база данных " + dbName + " не существует.");
-            } else if (rowsDeleted == -1) {
-                System.out.println("Ошибка: таблица trainings не существует.");
-            } else if (rowsDeleted == -7) {
-                System.out.println("Ошибка: Поле " + fieldName + " не существует или не является текстовым.");
-            } else if (rowsDeleted == -8) {
-                System.out.println("Ошибка: Значение для удаления не может быть пустым.");
-            } else if (rowsDeleted == 0) {
-                System.out.println("Записи не найдены.");
+            int status = result.status();
+            String message;
+            if (status == -2) {
+                message = "Ошибка: база данных " + dbName + " не существует.";
+            } else if (status == -1) {
+                message = "Ошибка: таблица trainings не существует.";
+            } else if (status == -7) {
+                message = "Ошибка: Поле " + fieldName + " не существует или не является текстовым.";
+            }
+            else if (status == -9) {
+                message = "Ошибка: Некорректный ID";
+            } else if (status == -10) {
+                message = "Ошибка: Значение для обновления не может быть пустым.";
+            } else if (status == -6) {
+                message = "Ошибка: новое время занятия пересекается с другим занятием тренера.";
+            } else if (status == 0) {
+                message = "Запись с ID " + id + " не найдена.";
             } else {
-                System.out.println("Удалено " + rowsDeleted + " записей.");
+                message = "Запись успешно обновлена!";
             }
-        }
-        catch (SQLException e) {
+            System.out.println(message);
+            result = result.withMessage(message);
+        } catch (SQLException e) {
             System.out.println(e.getMessage());
-            return -555; // Код ошибки при исключении
+            return Metrics.done(Metrics.Operation.UPDATE_TRAINING_BY_FIELD, started,
+                    MutationResult.code(-555).withMessage(e.getMessage())); // Код ошибки при исключении
         }
-        return rowsDeleted;
+        return Metrics.done(Metrics.Operation.UPDATE_TRAINING_BY_FIELD, started, result);
     }
 
-    // Обновление определенного поля тренировки по ID
-    public static int updateTrainingByField(String dbName, int id, String fieldName, String newValue, String username, String password) {
-        int result;
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);             CallableStatement stmt = conn.prepareCall("{ ? = call update_training_field(?, ?, ?, ?) }")) {
+    private static int callUpdateTrainingField(String dbName, int id, String fieldName, String newValue,
+                                               String username, String password) throws SQLException {
+        // Изменения через хранимые функции идут мимо индекса расписания
+        ScheduleIndex.invalidateAll();
+        try (Connection conn = getConnection(username, password);
+             CallableStatement stmt = conn.prepareCall("{ ? = call update_training_field(?, ?, ?, ?) }")) {
             stmt.registerOutParameter(1, Types.INTEGER);
             stmt.setString(2, dbName);
             stmt.setInt(3, id);
@@ -245,37 +673,61 @@ public class DBManager {
             stmt.setString(5, newValue);
 
             stmt.execute();
-            result = stmt.getInt(1);
+            return stmt.getInt(1);
+        }
+    }
+
+    // Полное обновление тренировки по ID; при прямом доступе результат содержит обновленную строку
+    public static MutationResult updateTrainingRecord(String dbName, int id, String title, Date date, Time startTime, String duration,
+                                                      Integer maxParticipants, Integer currentParticipants, String difficultyLevel,
+                                                      String trainerName, Double price, String username, String password) {
+        long started = Metrics.start();
+        MutationResult result;
+        try {
+            result = accessMode == AccessMode.DIRECT
+                    ? DirectAccess.updateTrainingRecord(dbName, id, title, date, startTime, duration, maxParticipants,
+                    currentParticipants, difficultyLevel, trainerName, price, username, password)
+                    : MutationResult.fromStoredFunction(callUpdateTrainingRecord(dbName, id, title, date, startTime,
+                    duration, maxParticipants, currentParticipants, difficultyLevel, trainerName, price, username, password));
             // Обрабатываем возможные коды возврата
-            if (result == -2) {
-                System.out.println("Ошибка: база данных " + dbName + " не существует.");
-            } else if (result == -1) {
-                System.out.println("Ошибка: таблица trainings не существует.");
-            } else if (result == -7) {
-                System.out.println("Ошибка: Поле " + fieldName + " не существует или не является текстовым.");
-            }
-            else if (result == -9) {
-                System.out.println("Ошибка: Некорректный ID");
-            } else if (result == -10) {
-                System.out.println("Ошибка: Значение для обновления не может быть пустым.");
-            } else if (result == 0) {
-                System.out.println("Запись с ID " + id + " не найдена.");
-            } else {
-                System.out.println("Запись успешно обновлена!");
-            }
+            result = reportRecordUpdate(result, dbName, id);
         } catch (SQLException e) {
             System.out.println(e.getMessage());
-            return -555; // Код ошибки при исключении
+            return Metrics.done(Metrics.Operation.UPDATE_TRAINING_RECORD, started,
+                    MutationResult.code(-555).withMessage(e.getMessage())); // Код ошибки при исключении
         }
-        return result;
+        return Metrics.done(Metrics.Operation.UPDATE_TRAINING_RECORD, started, result);
+    }
+
+    static MutationResult reportRecordUpdate(MutationResult result, String dbName, int id) {
+        int status = result.status();
+        String message;
+        if (status == -2) {
+            message = "Ошибка: база данных " + dbName + " не существует.";
+        } else if (status == -1) {
+            message = "Ошибка: таблица trainings не существует.";
+        } else if (status == -9) {
+            message = "Ошибка: Некорректный ID";
+        } else if (status == -10) {
+            message = "Ошибка: Нет данных для обновления.";
+        } else if (status == -6) {
+            message = "Ошибка: новое время занятия пересекается с другим занятием тренера.";
+        } else if (status == 0) {
+            message = "Запись с ID " + id + " не найдена.";
+        } else {
+            message = "Запись с ID " + id + " успешно обновлена.";
+        }
+        System.out.println(message);
+        return result.withMessage(message);
     }
 
-    // Полное обновление тренировки по ID
-    public static int updateTrainingRecord(String dbName, int id, String title, Date date, Time startTime, String duration,
-                                           Integer maxParticipants, Integer currentParticipants, String difficultyLevel,
-                                           String trainerName, Double price, String username, String password) {
-        int result;
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);             CallableStatement stmt = conn.prepareCall("{ ? = call update_training_record(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)}")) {
+    private static int callUpdateTrainingRecord(String dbName, int id, String title, Date date, Time startTime, String duration,
+                                                Integer maxParticipants, Integer currentParticipants, String difficultyLevel,
+                                                String trainerName, Double price, String username, String password) throws SQLException {
+        // Изменения через хранимые функции идут мимо индекса расписания
+        ScheduleIndex.invalidateAll();
+        try (Connection conn = getConnection(username, password);
+             CallableStatement stmt = conn.prepareCall("{ ? = call update_training_record(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)}")) {
             stmt.registerOutParameter(1, Types.INTEGER);
             stmt.setString(2, dbName);
             stmt.setInt(3, id);
@@ -290,54 +742,215 @@ public class DBManager {
             stmt.setBigDecimal(12, BigDecimal.valueOf(price));
 
             stmt.execute();
-            result = stmt.getInt(1);
-            // Обрабатываем возможные коды возврата
-            if (result == -2) {
+            return stmt.getInt(1);
+        }
+    }
+
+    // Запись на занятие: seats мест занимается, только если они свободны. Проверка и изменение выполняются
+    // одним условным UPDATE прямо в таблице базы dbName (хранимой функции для записи нет), поэтому параллельные
+    // записи не могут превысить max_participants. status - id занятия, 0 если его нет, -14 если свободных мест
+    // меньше seats; результат содержит строку занятия после записи
+    public static MutationResult bookTraining(String dbName, int id, int seats, String username, String password) {
+        long started = Metrics.start();
+        if (seats <= 0) {
+            return Metrics.done(Metrics.Operation.BOOK_TRAINING, started, reportParticipantsChange(MutationResult.code(-13), dbName, id));
+        }
+        return Metrics.done(Metrics.Operation.BOOK_TRAINING, started, changeParticipants(dbName, id, seats, username, password));
+    }
+
+    // Отмена записи на seats мест; -15, если на занятие записано меньше seats участников
+    public static MutationResult cancelBooking(String dbName, int id, int seats, String username, String password) {
+        long started = Metrics.start();
+        if (seats <= 0) {
+            return Metrics.done(Metrics.Operation.CANCEL_BOOKING, started, reportParticipantsChange(MutationResult.code(-13), dbName, id));
+        }
+        return Metrics.done(Metrics.Operation.CANCEL_BOOKING, started, changeParticipants(dbName, id, -seats, username, password));
+    }
+
+    // Запись на несколько занятий одним запросом: seatsById - число мест по id занятия. Занятия записываются
+    // независимо друг от друга; status - число занятий, на которые удалось записаться, rows - их строки
+    // (занятий, которых нет в rows, нет в таблице или на них не хватило мест)
+    public static MutationResult bookTrainings(String dbName, Map<Integer, Integer> seatsById, String username, String password) {
+        long started = Metrics.start();
+        for (int seats : seatsById.values()) {
+            if (seats <= 0) {
+                return Metrics.done(Metrics.Operation.BOOK_TRAININGS, started, reportParticipantsChange(MutationResult.code(-13), dbName, 0));
+            }
+        }
+        try {
+            MutationResult result = DirectAccess.changeParticipants(dbName, seatsById, username, password);
+            Metrics.done(Metrics.Operation.BOOK_TRAININGS, started, result);
+            if (result.status() < 0) {
+                return reportParticipantsChange(result, dbName, 0);
+            }
+            String message = "Запись выполнена на " + result.status() + " из " + seatsById.size() + " занятий.";
+            System.out.println(message);
+            return result.withMessage(message);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return Metrics.done(Metrics.Operation.BOOK_TRAININGS, started,
+                    MutationResult.code(-555).withMessage(e.getMessage())); // Код ошибки при исключении
+        }
+    }
+
+    private static MutationResult changeParticipants(String dbName, int id, int seats, String username, String password) {
+        try {
+            MutationResult result = DirectAccess.changeParticipants(dbName, Map.of(id, seats), username, password);
+            if (result.status() > 0) {
+                result = new MutationResult(id, result.rows(), null);
+            }
+            return reportParticipantsChange(result, dbName, id);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return MutationResult.code(-555).withMessage(e.getMessage()); // Код ошибки при исключении
+        }
+    }
+
+    static MutationResult reportParticipantsChange(MutationResult result, String dbName, int id) {
+        int status = result.status();
+        String message;
+        if (status == -2) {
+            message = "Ошибка: база данных " + dbName + " не существует.";
+        } else if (status == -1) {
+            message = "Ошибка: таблица trainings не существует.";
+        } else if (status == -9) {
+            message = "Ошибка: Некорректный ID";
+        } else if (status == -10) {
+            message = "Ошибка: Не выбрано ни одного занятия.";
+        } else if (status == -13) {
+            message = "Ошибка: число мест должно быть положительным.";
+        } else if (status == -14) {
+            message = "Ошибка: на занятие с ID " + id + " недостаточно свободных мест.";
+        } else if (status == -15) {
+            message = "Ошибка: на занятие с ID " + id + " записано меньше участников, чем отменяется.";
+        } else if (status == 0) {
+            message = "Запись с ID " + id + " не найдена.";
+        } else {
+            Training training = result.rows().get(0);
+            message = "Занятие с ID " + id + ": участников " + training.currentParticipants()
+                    + " из " + training.maxParticipants() + ".";
+        }
+        System.out.println(message);
+        return result.withMessage(message);
+    }
+
+    // Запись очереди отложенных изменений в базу одной транзакцией (при -Ddb.writeBehind=true); первый вызов
+    // восстанавливает очередь из журнала, оставшегося после сбоя. Количество измененных строк, 0 - очередь пуста
+    // или отложенная запись выключена, -2 нет базы, -1 нет таблицы, -555 ошибка - изменения остаются в очереди
+    public static int flushUpdates(String dbName, String username, String password) {
+        if (!WriteBehindQueue.ENABLED) {
+            return 0;
+        }
+        long started = Metrics.start();
+        try {
+            int updated = WriteBehindQueue.forDatabase(dbName, username, password).flush();
+            if (updated == -2) {
                 System.out.println("Ошибка: база данных " + dbName + " не существует.");
-            } else if (result == -1) {
+            } else if (updated == -1) {
                 System.out.println("Ошибка: таблица trainings не существует.");
-            } else if (result == -9) {
-                System.out.println("Ошибка: Некорректный ID");
-            } else if (result == -10) {
-                System.out.println("Ошибка: Нет данных для обновления.");
-            } else if (result == 0) {
-                System.out.println("Запись с ID " + id + " не найдена.");
-            } else {
-                System.out.println("Запись с ID " + id + " успешно обновлена.");
             }
+            return Metrics.done(Metrics.Operation.FLUSH_UPDATES, started, updated, Math.max(updated, 0), updated);
+        } catch (IOException | SQLException e) {
+            System.out.println("Ошибка при записи отложенных изменений: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.FLUSH_UPDATES, started, -555);
+        }
+    }
+
+    // Сброс журнала отложенных изменений на диск: после него очередь переживает и сбой системы.
+    // 1 - успешно (или отложенная запись выключена), -555 - журнал недоступен
+    public static int syncUpdates(String dbName, String username, String password) {
+        if (!WriteBehindQueue.ENABLED) {
+            return 1;
+        }
+        try {
+            WriteBehindQueue.forDatabase(dbName, username, password).sync();
+            return 1;
+        } catch (IOException e) {
+            System.out.println("Ошибка при сбросе журнала отложенных изменений: " + e.getMessage());
+            return -555;
+        }
+    }
+
+    // Несколько изменений и чтение таблицы одним запросом в одной транзакции (см. Pipeline);
+    // результаты шагов возвращаются вместе, при ошибке SQL не выполняется ни один шаг
+    public static PipelineResult executePipeline(String dbName, Pipeline pipeline, String username, String password) {
+        long started = Metrics.start();
+        try {
+            PipelineResult result = pipeline.execute(dbName, username, password);
+            return Metrics.done(Metrics.Operation.EXECUTE_PIPELINE, started, result.status(), result.rowCount(), result);
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
-            return -555; // Код ошибки при исключении
+            System.out.println("Ошибка при выполнении пакета операций: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.EXECUTE_PIPELINE, started,
+                    new PipelineResult(-555, List.of(), null, "Ошибка при выполнении пакета операций: " + e.getMessage()));
         }
-        return result;
     }
 
     // Просмотр тренировок
-    public static List<String[]> getAllTrainings(String dbName, String username, String password) {
-        List<String[]> results = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password);
+    public static List<Training> getAllTrainings(String dbName, String username, String password) {
+        long started = Metrics.start();
+        if (accessMode == AccessMode.DIRECT) {
+            try {
+                return Metrics.done(Metrics.Operation.GET_ALL_TRAININGS, started, DirectAccess.getAllTrainings(dbName, username, password));
+            } catch (SQLException e) {
+                System.out.println("Ошибка при загрузке тренировок: " + e.getMessage());
+                return Metrics.failed(Metrics.Operation.GET_ALL_TRAININGS, started, new ArrayList<>());
+            }
+        }
+        List<Training> results = new ArrayList<>();
+        try (Connection conn = getConnection(username, password);
              CallableStatement stmt = conn.prepareCall("{ call get_all_trainings(?) }")) {
             stmt.setString(1, dbName);
             ResultSet rs = stmt.executeQuery();
 
+            TrainingMapper mapper = new TrainingMapper(rs);
             while (rs.next()) {
-                String[] row = new String[10]; // Количество столбцов в таблице
-                row[0] = String.valueOf(rs.getInt("id")); // ID
-                row[1] = rs.getString("title"); // Название
-                row[2] = rs.getDate("date").toString(); // Дата
-                row[3] = rs.getTime("start_time").toString(); // Время
-                row[4] = rs.getString("duration"); // Длительность
-                row[5] = rs.wasNull() ? "N/A" : String.valueOf(rs.getInt("max_participants")); // Макс. участников
-                row[6] = rs.wasNull() ? "N/A" : String.valueOf(rs.getInt("current_participants")); // Текущие участники
-                row[7] = rs.getString("difficulty_level") != null ? rs.getString("difficulty_level") : "N/A"; // Уровень сложности
-                row[8] = rs.getString("trainer_name"); // Тренер
-                row[9] = rs.wasNull() ? "0.0" : String.format("%.2f", rs.getDouble("price")); // Цена
-                results.add(row);
+                results.add(mapper.map(rs));
             }
         } catch (SQLException e) {
             System.out.println("Ошибка при загрузке тренировок: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.GET_ALL_TRAININGS, started, results);
+        }
+        return Metrics.done(Metrics.Operation.GET_ALL_TRAININGS, started, results);
+    }
+
+    // Постраничная загрузка по ключу (class_id > afterId), без выборки всей таблицы
+    public static List<Training> getTrainingsPage(String dbName, int afterId, int pageSize, String username, String password) {
+        long started = Metrics.start();
+        try {
+            return Metrics.done(Metrics.Operation.GET_TRAININGS_PAGE, started,
+                    DirectAccess.getTrainingsPage(dbName, afterId, pageSize, username, password));
+        } catch (SQLException e) {
+            System.out.println("Ошибка при загрузке страницы тренировок: " + e.getMessage());
+            return Metrics.failed(Metrics.Operation.GET_TRAININGS_PAGE, started, new ArrayList<>());
+        }
+    }
+
+    // Количество тренировок в таблице (-1 при ошибке)
+    public static int countTrainings(String dbName, String username, String password) {
+        long started = Metrics.start();
+        try {
+            int count = DirectAccess.countTrainings(dbName, username, password);
+            Metrics.record(Metrics.Operation.COUNT_TRAININGS, started, 1, 1);
+            return count;
+        } catch (SQLException e) {
+            System.out.println("Ошибка при подсчете тренировок: " + e.getMessage());
+            Metrics.record(Metrics.Operation.COUNT_TRAININGS, started, -555, 0);
+            return -1;
+        }
+    }
+
+    // ID тренировки с порядковым номером offset (для перехода к произвольной странице), -1 если такой строки нет
+    public static int findTrainingIdAtOffset(String dbName, int offset, String username, String password) {
+        long started = Metrics.start();
+        try {
+            int id = DirectAccess.findIdAtOffset(dbName, offset, username, password);
+            Metrics.record(Metrics.Operation.FIND_TRAINING_ID_AT_OFFSET, started, id, id > 0 ? 1 : 0);
+            return id;
+        } catch (SQLException e) {
+            System.out.println("Ошибка при поиске начала страницы: " + e.getMessage());
+            Metrics.record(Metrics.Operation.FIND_TRAINING_ID_AT_OFFSET, started, -555, 0);
+            return -1;
         }
-        return results;
     }
 
 }
@@ -0,0 +1,751 @@
+package db;
+
+import org.postgresql.PGStatement;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Прямой доступ к таблице trainings подготовленными запросами, без dblink и хранимых функций.
+// Коды возврата совпадают с кодами хранимых функций, поэтому DBManager обрабатывает их одинаково.
+final class DirectAccess {
+    static final String SELECT_TRAININGS = "SELECT class_id AS id, title, date, start_time, duration, max_participants, "
+            + "current_participants, difficulty_level, trainer_name, price FROM trainings";
+
+    // Столбцы строки в RETURNING под теми же именами, что в SELECT_TRAININGS (%1$s - псевдоним таблицы с точкой)
+    static final String RETURNING_TRAINING = " RETURNING %1$sclass_id AS id, %1$stitle, %1$sdate, %1$sstart_time, "
+            + "%1$sduration, %1$smax_participants, %1$scurrent_participants, %1$sdifficulty_level, %1$strainer_name, %1$sprice";
+
+    static final Set<String> TEXT_FIELDS = Set.of("title", "difficulty_level", "trainer_name");
+    static final Set<String> UPDATABLE_FIELDS = Set.of("title", "date", "start_time", "duration", "max_participants",
+            "current_participants", "difficulty_level", "trainer_name", "price");
+    static final Set<String> DIFFICULTY_LEVELS = Set.of("начальный", "смешанный", "продвинутый");
+
+    // NOT EXISTS видит только строки, зафиксированные до начала команды: две вставки или переноса к одному тренеру
+    // на один день в параллельных транзакциях (READ COMMITTED) не видят друг друга. Поэтому первой командой того же
+    // запроса берется транзакционная рекомендательная блокировка (тренер, день): вторая транзакция ждет фиксации
+    // первой, и ее проверка, начатая после этого, видит новое занятие. Команды выполняются в явной транзакции
+    // (executeGuarded): драйвер разделяет подготовленные на сервере команды запроса отдельными Sync, и без
+    // транзакции блокировка снималась бы до вставки
+    private static final String LOCK_SCHEDULE = "SELECT pg_advisory_xact_lock(hashtext(?), ?::date - DATE '1970-01-01'); ";
+    // Блокировка для изменения занятия по ID: новые тренер и день, null - прежние значения строки
+    private static final String LOCK_SCHEDULE_OF_ID = "SELECT pg_advisory_xact_lock(hashtext(COALESCE(?, trainer_name)), "
+            + "COALESCE(?::date, date) - DATE '1970-01-01') FROM trainings WHERE class_id = ?; ";
+
+    // Результаты: блокировка, затем вставленная строка (см. executeGuarded)
+    static final String INSERT_TRAINING = LOCK_SCHEDULE
+            + "INSERT INTO trainings (title, date, start_time, duration, max_participants, current_participants, "
+                    + "difficulty_level, trainer_name, price) "
+                    + "SELECT ?, ?, ?, ?::interval, ?, ?, ?, ?, ? "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM trainings WHERE date = ? AND trainer_name = ? "
+                    + "AND (?::time, ?::time + ?::interval) OVERLAPS (start_time, start_time + duration))"
+                    + String.format(RETURNING_TRAINING, "");
+
+    // Поля, от которых зависит пересечение занятий тренера
+    static final Set<String> SCHEDULE_FIELDS = Set.of("date", "start_time", "duration", "trainer_name");
+
+    // Обновление с проверкой пересечения в самом запросе: новые значения строки вычисляются в CTE new
+    // (строка блокируется), UPDATE выполняется, только если новое время не пересекается с другими занятиями
+    // тренера. Пустой результат при существующей строке означает пересечение
+    private static final String GUARDED_UPDATE = " UPDATE trainings t SET %s FROM new WHERE t.class_id = new.class_id "
+            + "AND NOT EXISTS (SELECT 1 FROM trainings o WHERE o.class_id <> new.class_id AND o.date = new.date "
+            + "AND o.trainer_name = new.trainer_name "
+            + "AND (new.start_time, new.start_time + new.duration) OVERLAPS (o.start_time, o.start_time + o.duration))"
+            + String.format(RETURNING_TRAINING, "t.");
+
+    // Результаты: блокировка, затем обновленная строка
+    static final String UPDATE_RECORD = LOCK_SCHEDULE_OF_ID
+            + "WITH new AS (SELECT class_id, COALESCE(?, title) AS title, COALESCE(?, date) AS date, "
+                    + "COALESCE(?, start_time) AS start_time, COALESCE(?::interval, duration) AS duration, "
+                    + "COALESCE(?, max_participants) AS max_participants, "
+                    + "COALESCE(?, current_participants) AS current_participants, "
+                    + "COALESCE(?, difficulty_level) AS difficulty_level, COALESCE(?, trainer_name) AS trainer_name, "
+                    + "COALESCE(?, price) AS price FROM trainings WHERE class_id = ? FOR UPDATE)"
+                    + String.format(GUARDED_UPDATE, "title = new.title, date = new.date, start_time = new.start_time, "
+                    + "duration = new.duration, max_participants = new.max_participants, "
+                    + "current_participants = new.current_participants, difficulty_level = new.difficulty_level, "
+                    + "trainer_name = new.trainer_name, price = new.price");
+
+    // Запись на занятия и отмена записи одним условным UPDATE для всей пачки, без явных блокировок: условие
+    // проверяется на строке, которую блокирует сам UPDATE, а при параллельном изменении той же строки PostgreSQL
+    // перепроверяет его на новой версии - участников не становится больше максимума или меньше нуля
+    static final String CHANGE_PARTICIPANTS =
+            "UPDATE trainings t SET current_participants = COALESCE(t.current_participants, 0) + c.seats "
+                    + "FROM unnest(?::int[], ?::int[]) AS c(class_id, seats) WHERE t.class_id = c.class_id "
+                    + "AND COALESCE(t.current_participants, 0) + c.seats BETWEEN 0 AND t.max_participants"
+                    + String.format(RETURNING_TRAINING, "t.");
+    // Повторы пачки, прерванной взаимной блокировкой с другой пачкой
+    static final int DEADLOCK_RETRIES = 3;
+
+    private static final Map<String, String> SCHEDULE_FIELD_TYPES = Map.of("date", "date", "start_time", "time",
+            "duration", "interval", "trainer_name", "varchar");
+
+    // Проверка схемы выполняется один раз на базу данных; результат сбрасывается при ошибках схемы
+    private static final Map<String, Boolean> TABLE_EXISTS = new ConcurrentHashMap<>();
+
+    private DirectAccess() {
+    }
+
+    static void invalidateSchema(String dbName) {
+        TABLE_EXISTS.remove(dbName);
+        ScheduleIndex.invalidate(dbName);
+    }
+
+    static boolean tableExists(Connection conn, String dbName) throws SQLException {
+        Boolean cached = TABLE_EXISTS.get(dbName);
+        if (cached != null) {
+            return cached;
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT to_regclass('public.trainings') IS NOT NULL")) {
+            rs.next();
+            boolean exists = rs.getBoolean(1);
+            TABLE_EXISTS.put(dbName, exists);
+            return exists;
+        }
+    }
+
+    // Перевод ошибок схемы в коды хранимых функций: -2 нет базы, -1 нет таблицы
+    static int schemaErrorCode(String dbName, SQLException e) throws SQLException {
+        if ("3D000".equals(e.getSQLState())) {
+            invalidateSchema(dbName);
+            return -2;
+        }
+        if ("42P01".equals(e.getSQLState())) {
+            invalidateSchema(dbName);
+            return -1;
+        }
+        throw e;
+    }
+
+    static MutationResult addTraining(String dbName, String title, Date date, Time startTime, String duration,
+                                      int maxParticipants, int currentParticipants, String difficultyLevel,
+                                      String trainerName, double price, String username, String password) throws SQLException {
+        if (maxParticipants <= 0) {
+            return MutationResult.code(-3);
+        }
+        if (currentParticipants < 0) {
+            return MutationResult.code(-4);
+        }
+        if (!DIFFICULTY_LEVELS.contains(difficultyLevel)) {
+            return MutationResult.code(-5);
+        }
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return MutationResult.code(-1);
+            }
+            ScheduleIndex index = ScheduleIndex.forDatabase(conn, dbName);
+            if (indexConflictOnInsert(index, trainerName, date, startTime, duration)) {
+                return MutationResult.code(-6);
+            }
+            // Блокировка расписания, проверка пересечения в базе и вставка выполняются одним запросом
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_TRAINING)) {
+                bindInsert(stmt, 1, title, date, startTime, duration, maxParticipants, currentParticipants,
+                        difficultyLevel, trainerName, price);
+                List<Training> rows = executeGuarded(conn, stmt);
+                if (rows.isEmpty()) {
+                    refreshIndex(conn, index, dbName, 0, trainerName, date == null ? null : date.toLocalDate());
+                    return MutationResult.code(-6);
+                }
+                indexRow(index, rows.get(0));
+                return new MutationResult(rows.get(0).id(), rows, null);
+            }
+        } catch (SQLException e) {
+            return MutationResult.code(schemaErrorCode(dbName, e));
+        }
+    }
+
+    // Параметры INSERT_TRAINING начиная с index; возвращает номер следующего параметра
+    static int bindInsert(PreparedStatement stmt, int index, String title, Date date, Time startTime, String duration,
+                          int maxParticipants, int currentParticipants, String difficultyLevel, String trainerName,
+                          double price) throws SQLException {
+        stmt.setString(index, trainerName);
+        stmt.setDate(index + 1, date);
+        index += 2;
+        stmt.setString(index, title);
+        stmt.setDate(index + 1, date);
+        stmt.setTime(index + 2, startTime);
+        stmt.setString(index + 3, duration);
+        stmt.setInt(index + 4, maxParticipants);
+        stmt.setInt(index + 5, currentParticipants);
+        stmt.setString(index + 6, difficultyLevel);
+        stmt.setString(index + 7, trainerName);
+        stmt.setBigDecimal(index + 8, BigDecimal.valueOf(price));
+        stmt.setDate(index + 9, date);
+        stmt.setString(index + 10, trainerName);
+        stmt.setTime(index + 11, startTime);
+        stmt.setTime(index + 12, startTime);
+        stmt.setString(index + 13, duration);
+        return index + 14;
+    }
+
+    // Параметры UPDATE_RECORD начиная с index; возвращает номер следующего параметра
+    static int bindUpdateRecord(PreparedStatement stmt, int index, int id, String title, Date date, Time startTime,
+                                String duration, Integer maxParticipants, Integer currentParticipants,
+                                String difficultyLevel, String trainerName, Double price) throws SQLException {
+        stmt.setString(index, trainerName);
+        stmt.setDate(index + 1, date);
+        stmt.setInt(index + 2, id);
+        index += 3;
+        stmt.setString(index, title);
+        stmt.setDate(index + 1, date);
+        stmt.setTime(index + 2, startTime);
+        stmt.setString(index + 3, duration);
+        stmt.setObject(index + 4, maxParticipants, Types.INTEGER);
+        stmt.setObject(index + 5, currentParticipants, Types.INTEGER);
+        stmt.setString(index + 6, difficultyLevel);
+        stmt.setString(index + 7, trainerName);
+        stmt.setBigDecimal(index + 8, price == null ? null : BigDecimal.valueOf(price));
+        stmt.setInt(index + 9, id);
+        return index + 10;
+    }
+
+    // Строки, возвращенные RETURNING
+    private static List<Training> executeReturning(PreparedStatement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            return mapRows(rs);
+        }
+    }
+
+    // Строки, возвращенные RETURNING запроса с блокировкой расписания (LOCK_SCHEDULE) первой командой.
+    // Блокировка держится до фиксации транзакции
+    private static List<Training> executeGuarded(Connection conn, PreparedStatement stmt) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            stmt.execute();
+            stmt.getMoreResults();
+            List<Training> rows;
+            try (ResultSet rs = stmt.getResultSet()) {
+                rows = mapRows(rs);
+            }
+            conn.commit();
+            return rows;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    static List<Training> mapRows(ResultSet rs) throws SQLException {
+        List<Training> rows = new ArrayList<>();
+        TrainingMapper mapper = new TrainingMapper(rs);
+        while (rs.next()) {
+            rows.add(mapper.map(rs));
+        }
+        return rows;
+    }
+
+    // Пересечение по индексу для новой тренировки: отказ без запроса к базе
+    static boolean indexConflictOnInsert(ScheduleIndex index, String trainerName, Date date, Time startTime,
+                                         String duration) {
+        return index != null && index.hasConflict(trainerName, date == null ? null : date.toLocalDate(),
+                startTime == null ? null : startTime.toLocalTime(), parseDurationOrNull(duration), 0);
+    }
+
+    // Пересечение по индексу после обновления записи id (null - поле не меняется)
+    static boolean indexConflictOnRecordUpdate(ScheduleIndex index, int id, String trainerName, Date date,
+                                               Time startTime, String duration) {
+        Duration parsedDuration = parseDurationOrNull(duration);
+        boolean scheduleChanged = trainerName != null || date != null || startTime != null || duration != null;
+        // Нераспознанную длительность проверяет только база
+        return index != null && scheduleChanged && (duration == null || parsedDuration != null)
+                && index.hasConflictAfterUpdate(id, trainerName, date == null ? null : date.toLocalDate(),
+                startTime == null ? null : startTime.toLocalTime(), parsedDuration);
+    }
+
+    // База нашла пересечение, которого нет в индексе (занятие добавили или перенесли в обход индекса): день тренера
+    // перечитывается. id - обновляемое занятие (0 - новое), null - значение не менялось. Если перечитать не удалось,
+    // индекс сбрасывается и заполнится заново при следующем обращении
+    static void refreshIndex(Connection conn, ScheduleIndex index, String dbName, int id, String trainerName,
+                             LocalDate date) {
+        if (index == null) {
+            return;
+        }
+        try {
+            index.refreshDay(conn, id, trainerName, date);
+        } catch (SQLException e) {
+            ScheduleIndex.invalidate(dbName);
+        }
+    }
+
+    // Новое время занятия в индексе расписания (строки без даты, времени или длительности в индекс не попадают)
+    static void indexRow(ScheduleIndex index, Training training) {
+        if (index != null && training.date() != null && training.startTime() != null && training.duration() != null) {
+            index.put(training.id(), training.trainerName(), training.date(), training.startTime(), training.duration());
+        }
+    }
+
+    static List<Training> getAllTrainings(String dbName, String username, String password) throws SQLException {
+        List<Training> results = new ArrayList<>();
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return results;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT_TRAININGS + " ORDER BY class_id");
+                 ResultSet rs = stmt.executeQuery()) {
+                TrainingMapper mapper = new TrainingMapper(rs);
+                while (rs.next()) {
+                    results.add(mapper.map(rs));
+                }
+            }
+        } catch (SQLException e) {
+            schemaErrorCode(dbName, e);
+        }
+        return results;
+    }
+
+    // Страница по ключу: строки с class_id > afterId; fetchSize ограничивает объем одной выборки драйвера
+    static List<Training> getTrainingsPage(String dbName, int afterId, int pageSize,
+                                           String username, String password) throws SQLException {
+        List<Training> results = new ArrayList<>(pageSize);
+        try (Connection conn = DBManager.getConnection(dbName, username, password);
+             PreparedStatement stmt = conn.prepareStatement(SELECT_TRAININGS + " WHERE class_id > ? ORDER BY class_id LIMIT ?")) {
+            stmt.setFetchSize(pageSize);
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, pageSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                TrainingMapper mapper = new TrainingMapper(rs);
+                while (rs.next()) {
+                    results.add(mapper.map(rs));
+                }
+            }
+        }
+        return results;
+    }
+
+    static int countTrainings(String dbName, String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM trainings")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // class_id строки с порядковым номером offset (по индексу первичного ключа) или -1
+    static int findIdAtOffset(String dbName, int offset, String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password);
+             PreparedStatement stmt = conn.prepareStatement("SELECT class_id FROM trainings ORDER BY class_id OFFSET ? LIMIT 1")) {
+            stmt.setInt(1, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    // Поиск с учетом способа сравнения; limit <= 0 - без ограничения. Для подстроки и начала строки
+    // символы % и _ во введенном значении экранируются и ищутся буквально
+    static List<Training> searchTrainingByField(String dbName, String fieldName, String searchValue, MatchType matchType,
+                                                int limit, String username, String password) throws SQLException {
+        List<Training> results = new ArrayList<>();
+        if (!TEXT_FIELDS.contains(fieldName) || searchValue == null || searchValue.trim().isEmpty()) {
+            return results;
+        }
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return results;
+            }
+            // Имя поля проверено по списку допустимых, значение передается параметром
+            try (PreparedStatement stmt = conn.prepareStatement(searchSql(fieldName, matchType, limit))) {
+                // Без серверной подготовки: общий план не видит значения и выбирает обход по class_id вместо индекса
+                stmt.unwrap(PGStatement.class).setPrepareThreshold(0);
+                stmt.setString(1, searchParameter(searchValue, matchType));
+                if (matchType == MatchType.FUZZY) {
+                    stmt.setString(2, searchValue);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    TrainingMapper mapper = new TrainingMapper(rs);
+                    while (rs.next()) {
+                        results.add(mapper.map(rs));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            schemaErrorCode(dbName, e);
+        }
+        return results;
+    }
+
+    // Условия записаны так, чтобы их покрывали индексы из create_table (см. stored_functions.sql);
+    // регистр приводит сервер, чтобы значение сравнивалось с тем же выражением, что хранится в индексе
+    private static String searchSql(String fieldName, MatchType matchType, int limit) {
+        String sql;
+        switch (matchType) {
+            case PREFIX:
+                sql = SELECT_TRAININGS + " WHERE lower(" + fieldName + ") LIKE lower(?) ORDER BY lower(" + fieldName + "), class_id";
+                break;
+            case EXACT:
+                sql = SELECT_TRAININGS + " WHERE lower(" + fieldName + ") = lower(?) ORDER BY class_id";
+                break;
+            case FUZZY:
+                sql = SELECT_TRAININGS + " WHERE ? <% " + fieldName + " ORDER BY ? <<-> " + fieldName + ", class_id";
+                break;
+            default:
+                sql = SELECT_TRAININGS + " WHERE " + fieldName + " ILIKE ? ORDER BY class_id";
+                break;
+        }
+        return limit > 0 ? sql + " LIMIT " + limit : sql;
+    }
+
+    private static String searchParameter(String searchValue, MatchType matchType) {
+        switch (matchType) {
+            case PREFIX:
+                return escapeLike(searchValue) + "%";
+            case EXACT:
+            case FUZZY:
+                return searchValue;
+            default:
+                return "%" + escapeLike(searchValue) + "%";
+        }
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Выборка по условиям TrainingQuery одним запросом
+    static List<Training> findTrainings(String dbName, TrainingQuery query, String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return new ArrayList<>();
+            }
+            return queryTrainings(conn, query, 0);
+        } catch (SQLException e) {
+            schemaErrorCode(dbName, e);
+        }
+        return new ArrayList<>();
+    }
+
+    // То же для TenantRouter: запрос отменяется сервером через timeoutSeconds (SQLState 57014), ошибки схемы
+    // (нет базы или таблицы) не заменяются пустым списком, а передаются вызывающему
+    static List<Training> findTrainings(String dbName, TrainingQuery query, int timeoutSeconds,
+                                        String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            return queryTrainings(conn, query, timeoutSeconds);
+        }
+    }
+
+    private static List<Training> queryTrainings(Connection conn, TrainingQuery query, int timeoutSeconds) throws SQLException {
+        List<Training> results = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(query.toSql())) {
+            // Как и при поиске: выбор индекса зависит от значений диапазонов, поэтому план строится для каждого запроса
+            stmt.unwrap(PGStatement.class).setPrepareThreshold(0);
+            stmt.setQueryTimeout(timeoutSeconds);
+            query.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                TrainingMapper mapper = new TrainingMapper(rs);
+                while (rs.next()) {
+                    results.add(mapper.map(rs));
+                }
+            }
+        }
+        return results;
+    }
+
+    // Индексы для поиска и выборки по условиям (те же, что создает create_table): триграммные и по lower(...)
+    // для текстовых полей, составные для выборки по условиям; их же применяет SchemaBootstrap
+    static final String[] CREATE_INDEXES = {
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+            "CREATE INDEX IF NOT EXISTS trainings_title_trgm_idx ON trainings USING gin (title gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS trainings_trainer_name_trgm_idx ON trainings USING gin (trainer_name gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS trainings_difficulty_level_trgm_idx ON trainings USING gin (difficulty_level gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS trainings_title_lower_idx ON trainings (lower(title) text_pattern_ops)",
+            "CREATE INDEX IF NOT EXISTS trainings_trainer_name_lower_idx ON trainings (lower(trainer_name) text_pattern_ops)",
+            "CREATE INDEX IF NOT EXISTS trainings_date_start_time_idx ON trainings (date, start_time)",
+            "CREATE INDEX IF NOT EXISTS trainings_trainer_name_date_idx ON trainings (trainer_name, date, start_time)",
+            "CREATE INDEX IF NOT EXISTS trainings_difficulty_level_date_idx ON trainings (difficulty_level, date, start_time)",
+            "CREATE INDEX IF NOT EXISTS trainings_price_idx ON trainings (price)",
+            "CREATE INDEX IF NOT EXISTS trainings_free_spots_date_idx ON trainings (date, start_time) "
+                    + "WHERE current_participants < max_participants"
+    };
+
+    // Индексы для таблиц, созданных раньше
+    static void createIndexes(String dbName, String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password);
+             Statement stmt = conn.createStatement()) {
+            for (String sql : CREATE_INDEXES) {
+                stmt.execute(sql);
+            }
+            stmt.execute("ANALYZE trainings");
+        }
+    }
+
+    static MutationResult deleteTrainingByField(String dbName, String fieldName, String searchValue,
+                                                String username, String password) throws SQLException {
+        if (!TEXT_FIELDS.contains(fieldName)) {
+            return MutationResult.code(-7);
+        }
+        if (searchValue == null || searchValue.trim().isEmpty()) {
+            return MutationResult.code(-8);
+        }
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return MutationResult.code(-1);
+            }
+            // Один DELETE вместо COUNT(*) + DELETE, удаленные строки возвращаются им же;
+            // их id убираются из индекса расписания
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM trainings WHERE " + fieldName + " ILIKE ?" + String.format(RETURNING_TRAINING, ""))) {
+                // Образец - как у поиска подстроки: % и _ в значении ищутся буквально
+                stmt.setString(1, "%" + escapeLike(searchValue) + "%");
+                List<Training> rows = executeReturning(stmt);
+                ScheduleIndex index = ScheduleIndex.ifLoaded(dbName);
+                if (index != null) {
+                    for (Training training : rows) {
+                        index.remove(training.id());
+                    }
+                }
+                return new MutationResult(rows.size(), rows, null);
+            }
+        } catch (SQLException e) {
+            return MutationResult.code(schemaErrorCode(dbName, e));
+        }
+    }
+
+    static MutationResult updateTrainingByField(String dbName, int id, String fieldName, String newValue,
+                                                String username, String password) throws SQLException {
+        if (!UPDATABLE_FIELDS.contains(fieldName)) {
+            return MutationResult.code(-7);
+        }
+        if (id <= 0) {
+            return MutationResult.code(-9);
+        }
+        if (newValue == null || newValue.trim().isEmpty()) {
+            return MutationResult.code(-10);
+        }
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return MutationResult.code(-1);
+            }
+            if (SCHEDULE_FIELDS.contains(fieldName)) {
+                return updateScheduleField(conn, dbName, id, fieldName, newValue);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE trainings SET " + fieldName + " = ? WHERE class_id = ?" + String.format(RETURNING_TRAINING, ""))) {
+                // Тип значения определяет сервер по типу столбца, как и для литерала в update_training_field
+                stmt.setObject(1, newValue, Types.OTHER);
+                stmt.setInt(2, id);
+                List<Training> rows = executeReturning(stmt);
+                return new MutationResult(rows.isEmpty() ? 0 : id, rows, null);
+            }
+        } catch (SQLException e) {
+            return MutationResult.code(schemaErrorCode(dbName, e));
+        }
+    }
+
+    // Изменение даты, времени, длительности или тренера: проверка пересечения в индексе, затем UPDATE с проверкой в базе
+    private static MutationResult updateScheduleField(Connection conn, String dbName, int id, String fieldName,
+                                                      String newValue) throws SQLException {
+        ScheduleIndex index = ScheduleIndex.forDatabase(conn, dbName);
+        if (index != null && hasConflictAfterFieldUpdate(index, id, fieldName, newValue)) {
+            return MutationResult.code(-6);
+        }
+        StringBuilder columns = new StringBuilder("class_id");
+        for (String column : new String[]{"trainer_name", "date", "start_time", "duration"}) {
+            columns.append(", ").append(column.equals(fieldName)
+                    ? "?::" + SCHEDULE_FIELD_TYPES.get(column) + " AS " + column : column);
+        }
+        String sql = LOCK_SCHEDULE_OF_ID + "WITH new AS (SELECT " + columns + " FROM trainings WHERE class_id = ? FOR UPDATE)"
+                + String.format(GUARDED_UPDATE, fieldName + " = new." + fieldName);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, fieldName.equals("trainer_name") ? newValue : null);
+            stmt.setString(2, fieldName.equals("date") ? newValue : null);
+            stmt.setInt(3, id);
+            stmt.setString(4, newValue);
+            stmt.setInt(5, id);
+            return executeGuardedUpdate(conn, stmt, dbName, id, index,
+                    fieldName.equals("trainer_name") ? newValue : null,
+                    fieldName.equals("date") ? parseDateOrNull(newValue) : null);
+        }
+    }
+
+    // Значение поля из строки для проверки в индексе; если значение не разбирается, проверка остается за базой
+    private static boolean hasConflictAfterFieldUpdate(ScheduleIndex index, int id, String fieldName, String newValue) {
+        try {
+            switch (fieldName) {
+                case "trainer_name":
+                    return index.hasConflictAfterUpdate(id, newValue, null, null, null);
+                case "date":
+                    return index.hasConflictAfterUpdate(id, null, LocalDate.parse(newValue.trim()), null, null);
+                case "start_time":
+                    return index.hasConflictAfterUpdate(id, null, null, LocalTime.parse(newValue.trim()), null);
+                default:
+                    Duration duration = parseDurationOrNull(newValue);
+                    return duration != null && index.hasConflictAfterUpdate(id, null, null, null, duration);
+            }
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // Обновленная строка (индекс получает ее новое время), -6 при пересечении, 0 если строки нет.
+    // trainerName и date - новые значения для индекса (null - не менялись)
+    private static MutationResult executeGuardedUpdate(Connection conn, PreparedStatement stmt, String dbName, int id,
+                                                       ScheduleIndex index, String trainerName, LocalDate date)
+            throws SQLException {
+        List<Training> rows = executeGuarded(conn, stmt);
+        if (!rows.isEmpty()) {
+            indexRow(index, rows.get(0));
+            return new MutationResult(id, rows, null);
+        }
+        try (PreparedStatement exists = conn.prepareStatement("SELECT 1 FROM trainings WHERE class_id = ?")) {
+            exists.setInt(1, id);
+            try (ResultSet rs = exists.executeQuery()) {
+                if (!rs.next()) {
+                    return MutationResult.code(0);
+                }
+            }
+        }
+        refreshIndex(conn, index, dbName, id, trainerName, date);
+        return MutationResult.code(-6);
+    }
+
+    private static LocalDate parseDateOrNull(String date) {
+        try {
+            return LocalDate.parse(date.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Duration parseDurationOrNull(String duration) {
+        try {
+            return TrainingMapper.parseInterval(duration);
+        } catch (SQLException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static MutationResult updateTrainingRecord(String dbName, int id, String title, Date date, Time startTime, String duration,
+                                               Integer maxParticipants, Integer currentParticipants, String difficultyLevel,
+                                               String trainerName, Double price, String username, String password) throws SQLException {
+        if (id <= 0) {
+            return MutationResult.code(-9);
+        }
+        if (title == null && date == null && startTime == null && duration == null && maxParticipants == null
+                && currentParticipants == null && difficultyLevel == null && trainerName == null && price == null) {
+            return MutationResult.code(-10);
+        }
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return MutationResult.code(-1);
+            }
+            ScheduleIndex index = ScheduleIndex.forDatabase(conn, dbName);
+            if (indexConflictOnRecordUpdate(index, id, trainerName, date, startTime, duration)) {
+                return MutationResult.code(-6);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_RECORD)) {
+                bindUpdateRecord(stmt, 1, id, title, date, startTime, duration, maxParticipants, currentParticipants,
+                        difficultyLevel, trainerName, price);
+                return executeGuardedUpdate(conn, stmt, dbName, id, index, trainerName,
+                        date == null ? null : date.toLocalDate());
+            }
+        } catch (SQLException e) {
+            return MutationResult.code(schemaErrorCode(dbName, e));
+        }
+    }
+
+    // Изменение числа участников: seatsById - id занятия и число мест (отрицательное - отмена записи).
+    // Каждое занятие пачки меняется, только если после изменения участников от 0 до max_participants;
+    // status - число измененных занятий, rows - их строки. Для одного занятия при отказе status - 0 (занятия нет),
+    // -14 (не хватает свободных мест) или -15 (отменяется больше мест, чем занято)
+    static MutationResult changeParticipants(String dbName, Map<Integer, Integer> seatsById,
+                                             String username, String password) throws SQLException {
+        if (seatsById.isEmpty()) {
+            return MutationResult.code(-10);
+        }
+        // Занятия идут по возрастанию id, чтобы пачки, пересекающиеся по занятиям, блокировали строки в одном порядке
+        Map<Integer, Integer> sorted = new TreeMap<>(seatsById);
+        Integer[] ids = sorted.keySet().toArray(new Integer[0]);
+        Integer[] seats = sorted.values().toArray(new Integer[0]);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null || ids[i] <= 0) {
+                return MutationResult.code(-9);
+            }
+            if (seats[i] == null || seats[i] == 0) {
+                return MutationResult.code(-13);
+            }
+        }
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return MutationResult.code(-1);
+            }
+            List<Training> rows = null;
+            try (PreparedStatement stmt = conn.prepareStatement(CHANGE_PARTICIPANTS)) {
+                stmt.setArray(1, conn.createArrayOf("integer", ids));
+                stmt.setArray(2, conn.createArrayOf("integer", seats));
+                for (int attempt = 1; rows == null; attempt++) {
+                    try {
+                        rows = executeReturning(stmt);
+                    } catch (SQLException e) {
+                        if (!"40P01".equals(e.getSQLState()) || attempt == DEADLOCK_RETRIES) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+            if (!rows.isEmpty() || ids.length > 1) {
+                return new MutationResult(rows.size(), rows, null);
+            }
+            // Причина отказа для одного занятия
+            try (PreparedStatement exists = conn.prepareStatement("SELECT 1 FROM trainings WHERE class_id = ?")) {
+                exists.setInt(1, ids[0]);
+                try (ResultSet rs = exists.executeQuery()) {
+                    if (!rs.next()) {
+                        return MutationResult.code(0);
+                    }
+                }
+            }
+            return MutationResult.code(seats[0] > 0 ? -14 : -15);
+        } catch (SQLException e) {
+            return MutationResult.code(schemaErrorCode(dbName, e));
+        }
+    }
+
+    static int clearDatabase(String dbName, String username, String password) throws SQLException {
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!tableExists(conn, dbName)) {
+                return -1;
+            }
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("LOCK TABLE trainings IN ACCESS EXCLUSIVE MODE");
+                int deleted;
+                try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM trainings")) {
+                    rs.next();
+                    deleted = rs.getInt(1);
+                }
+                stmt.execute("TRUNCATE TABLE trainings RESTART IDENTITY");
+                conn.commit();
+                ScheduleIndex index = ScheduleIndex.ifLoaded(dbName);
+                if (index != null) {
+                    index.clear();
+                }
+                return deleted;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            return schemaErrorCode(dbName, e);
+        }
+    }
+}
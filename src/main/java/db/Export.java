@@ -0,0 +1,220 @@
+package db;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPOutputStream;
+
+// Выгрузка таблицы в файл с постоянным расходом памяти: вся таблица в CSV передается сервером через
+// COPY ... TO STDOUT и пишется в файл построчно, выборка по условиям и JSON читаются курсором частями
+// по -Ddb.export.fetchSize строк. Файл пишется через буферизованный канал FileChannel (при gzip - со сжатием)
+// во временный файл рядом и переименовывается после успешного завершения
+final class Export {
+    static final int FETCH_SIZE = Integer.getInteger("db.export.fetchSize", 1000);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    static final String CSV_HEADER = "title,date,start_time,duration,max_participants,current_participants,"
+            + "difficulty_level,trainer_name,price\n";
+
+    private static final String COPY_ALL = "COPY (SELECT title, date, start_time, duration, max_participants, "
+            + "current_participants, difficulty_level, trainer_name, price FROM trainings ORDER BY class_id) "
+            + "TO STDOUT WITH (FORMAT csv)";
+
+    // Имена полей JSON в порядке столбцов SELECT_TRAININGS; числовые значения пишутся без кавычек
+    private static final String[] JSON_FIELDS = {"id", "title", "date", "startTime", "duration", "maxParticipants",
+            "currentParticipants", "difficultyLevel", "trainerName", "price"};
+    private static final boolean[] JSON_NUMBERS = {true, false, false, false, false, true, true, false, false, true};
+
+    private Export() {
+    }
+
+    // filter == null - вся таблица по возрастанию id; progress получает число выгруженных строк
+    // после каждых FETCH_SIZE строк и в конце
+    static ExportResult export(String dbName, TrainingQuery filter, Path file, ExportFormat format, boolean gzip,
+                               LongConsumer progress, String username, String password) throws SQLException, IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        long rows;
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!DirectAccess.tableExists(conn, dbName)) {
+                return new ExportResult(-1, 0, 0);
+            }
+            try (OutputStream out = open(partial, gzip)) {
+                rows = format == ExportFormat.CSV && filter == null
+                        ? copyCsv(conn, out, progress)
+                        : queryRows(conn, filter, format, out, progress);
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (SQLException e) {
+            Files.deleteIfExists(partial);
+            return new ExportResult(DirectAccess.schemaErrorCode(dbName, e), 0, 0);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        progress.accept(rows);
+        return new ExportResult(0, rows, Files.size(file));
+    }
+
+    private static OutputStream open(Path file, boolean gzip) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        return gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+    }
+
+    // Строки CSV приходят от сервера готовыми, клиент только переписывает байты в файл
+    private static long copyCsv(Connection conn, OutputStream out, LongConsumer progress) throws SQLException, IOException {
+        out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        CopyOut copy = conn.unwrap(PGConnection.class).getCopyAPI().copyOut(COPY_ALL);
+        long rows = 0;
+        try {
+            byte[] row;
+            while ((row = copy.readFromCopy()) != null) {
+                out.write(row);
+                if (++rows % FETCH_SIZE == 0) {
+                    checkInterrupted();
+                    progress.accept(rows);
+                }
+            }
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+        return rows;
+    }
+
+    // Курсор на сервере (fetchSize работает только внутри транзакции); значения пишутся в текстовом виде
+    // PostgreSQL - так же, как их выводит COPY, без разбора в Training
+    private static long queryRows(Connection conn, TrainingQuery filter, ExportFormat format, OutputStream stream,
+                                  LongConsumer progress) throws SQLException, IOException {
+        String sql = filter == null ? DirectAccess.SELECT_TRAININGS + " ORDER BY class_id" : filter.toSql();
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        conn.setAutoCommit(false);
+        long rows = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            if (filter != null) {
+                filter.bind(stmt);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                Metrics.mappingStarted();
+                out.write(format == ExportFormat.CSV ? CSV_HEADER : "[");
+                while (rs.next()) {
+                    if (format == ExportFormat.CSV) {
+                        writeCsvRow(out, rs);
+                    } else {
+                        if (rows > 0) {
+                            out.write(",\n");
+                        }
+                        writeJsonRow(out, rs);
+                    }
+                    if (++rows % FETCH_SIZE == 0) {
+                        checkInterrupted();
+                        progress.accept(rows);
+                    }
+                }
+                if (format == ExportFormat.JSON) {
+                    out.write("]\n");
+                }
+            }
+        } finally {
+            conn.rollback();
+        }
+        out.flush();
+        return rows;
+    }
+
+    // Столбцы 2..10 SELECT_TRAININGS (без id), пустое значение - NULL, как в COPY
+    private static void writeCsvRow(Writer out, ResultSet rs) throws SQLException, IOException {
+        for (int column = 2; column <= 10; column++) {
+            if (column > 2) {
+                out.write(',');
+            }
+            String value = rs.getString(column);
+            if (value != null) {
+                writeCsvValue(out, value);
+            }
+        }
+        out.write('\n');
+    }
+
+    // Кавычки - только при необходимости, как в COPY; пустая строка в кавычках отличается от NULL
+    private static void writeCsvValue(Writer out, String value) throws IOException {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static void writeJsonRow(Writer out, ResultSet rs) throws SQLException, IOException {
+        out.write('{');
+        for (int i = 0; i < JSON_FIELDS.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write('"');
+            out.write(JSON_FIELDS[i]);
+            out.write("\":");
+            String value = rs.getString(i + 1);
+            if (value == null) {
+                out.write("null");
+            } else if (JSON_NUMBERS[i]) {
+                out.write(value);
+            } else {
+                writeJsonString(out, value);
+            }
+        }
+        out.write('}');
+    }
+
+    private static void writeJsonString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    // Отмена из интерфейса прерывает поток: выгрузка останавливается, временный файл удаляется
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Выгрузка отменена");
+        }
+    }
+}
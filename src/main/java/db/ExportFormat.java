@@ -0,0 +1,8 @@
+package db;
+
+// Формат выгрузки таблицы: CSV в формате загрузки (importTrainingsFromCsv, без id) или массив JSON-объектов
+// с теми же полями, что у Training
+public enum ExportFormat {
+    CSV,
+    JSON
+}
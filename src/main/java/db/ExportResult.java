@@ -0,0 +1,6 @@
+package db;
+
+// Результат выгрузки: status 0 - файл записан, -2 нет базы, -1 нет таблицы, -555 ошибка SQL,
+// -17 ошибка записи файла или выгрузка отменена (файл тогда не создается); bytes - размер файла
+public record ExportResult(int status, long rows, long bytes) {
+}
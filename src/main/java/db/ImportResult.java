@@ -0,0 +1,11 @@
+package db;
+
+import java.util.List;
+
+// Результат массовой загрузки: status 0 - транзакция зафиксирована (отклоненные строки перечислены в errors),
+// отрицательный status - загрузка отменена целиком (-2 нет базы, -1 нет таблицы, -555 ошибка SQL, -17 ошибка чтения файла)
+public record ImportResult(int status, int inserted, List<RowError> errors) {
+    // rowNumber - номер строки во входных данных (для CSV - номер строки файла), code - код как у addTraining
+    public record RowError(int rowNumber, int code, String message) {
+    }
+}
@@ -0,0 +1,13 @@
+package db;
+
+// Способ сравнения значения при поиске по текстовому полю (регистр не учитывается)
+public enum MatchType {
+    // Подстрока (ILIKE '%...%'), триграммный индекс
+    CONTAINS,
+    // Начало строки, индекс по lower(поле)
+    PREFIX,
+    // Точное совпадение, индекс по lower(поле)
+    EXACT,
+    // Нечеткое совпадение по триграммам (pg_trgm, word_similarity), сначала наиболее похожие
+    FUZZY
+}
@@ -0,0 +1,283 @@
+package db;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+// Метрики операций DBManager: гистограммы времени (всего и по этапам - получение соединения, выполнение
+// запроса, разбор строк), счетчики кодов возврата, числа строк и обращений к серверу. Доступны через JMX (OperationMetricsMXBean),
+// текстом в формате Prometheus (DBManager.getMetricsText) и по HTTP на localhost:-Ddb.metrics.port/metrics.
+// Операции дольше -Ddb.metrics.slowMillis мс (по умолчанию 1000, 0 - не выводить) выводятся в консоль.
+// Запись вызова не выделяет памяти: время этапов копится в объекте потока, счетчики созданы заранее.
+// -Ddb.metrics=false отключает сбор.
+final class Metrics {
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("db.metrics"));
+    private static final long SLOW_NANOS = Long.getLong("db.metrics.slowMillis", 1_000) * 1_000_000;
+    private static final Integer HTTP_PORT = Integer.getInteger("db.metrics.port");
+
+    enum Operation {
+        AUTHENTICATE_USER("authenticateUser"),
+        CREATE_DATABASE("createDatabase"),
+        CREATE_TABLE("createTable"),
+        DROP_DATABASE("dropDatabase"),
+        CREATE_USER("createUser"),
+        CREATE_USERS("createUsers"),
+        BOOTSTRAP_SCHEMA("bootstrapSchema"),
+        CLEAR_DATABASE("clearDatabase"),
+        ADD_TRAINING("addTraining"),
+        IMPORT_TRAININGS("importTrainings"),
+        EXPORT_TRAININGS("exportTrainings"),
+        GET_ANALYTICS("getAnalytics"),
+        SEARCH_TRAINING_BY_FIELD("searchTrainingByField"),
+        FIND_TRAININGS("findTrainings"),
+        FIND_TRAININGS_IN_TENANTS("findTrainingsInTenants"),
+        CREATE_CHANGE_TRIGGERS("createChangeTriggers"),
+        CREATE_INDEXES("createIndexes"),
+        DELETE_TRAINING_BY_FIELD("deleteTrainingByField"),
+        UPDATE_TRAINING_BY_FIELD("updateTrainingByField"),
+        FLUSH_UPDATES("flushUpdates"),
+        UPDATE_TRAINING_RECORD("updateTrainingRecord"),
+        BOOK_TRAINING("bookTraining"),
+        CANCEL_BOOKING("cancelBooking"),
+        BOOK_TRAININGS("bookTrainings"),
+        EXECUTE_PIPELINE("executePipeline"),
+        GET_ALL_TRAININGS("getAllTrainings"),
+        GET_TRAININGS_PAGE("getTrainingsPage"),
+        COUNT_TRAININGS("countTrainings"),
+        FIND_TRAINING_ID_AT_OFFSET("findTrainingIdAtOffset");
+
+        final OperationMetrics metrics;
+
+        Operation(String name) {
+            metrics = new OperationMetrics(name);
+        }
+    }
+
+    // Этапы текущей операции потока; start() сбрасывает их, поэтому отметки вне операций ни на что не влияют
+    private static final class Span {
+        long started;
+        long acquireNanos;
+        long mappingStarted;
+        int roundTrips;
+    }
+
+    private static final ThreadLocal<Span> SPAN = ThreadLocal.withInitial(Span::new);
+
+    static {
+        if (ENABLED) {
+            registerMBeans();
+            if (HTTP_PORT != null) {
+                startHttpServer(HTTP_PORT);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // Начало операции; возвращаемое время передается в done/failed
+    static long start() {
+        long now = System.nanoTime();
+        if (ENABLED) {
+            Span span = SPAN.get();
+            span.started = now;
+            span.acquireNanos = 0;
+            span.mappingStarted = 0;
+            span.roundTrips = 0;
+        }
+        return now;
+    }
+
+    // Время получения соединения из пула (вызывается из DBManager.getConnection)
+    static void acquired(long nanos) {
+        if (ENABLED) {
+            SPAN.get().acquireNanos += nanos;
+        }
+    }
+
+    // Обращение к серверу по соединению из пула (выполнение запроса, commit/rollback, проверка соединения);
+    // вызывается из ConnectionPool. Догрузка строк курсором и COPY не считаются
+    static void roundTrip() {
+        if (ENABLED) {
+            SPAN.get().roundTrips++;
+        }
+    }
+
+    // Начало разбора строк результата (вызывается из TrainingMapper); все, что после, - этап разбора.
+    // При выборке частями (fetchSize) сюда же попадает догрузка следующих частей
+    static void mappingStarted() {
+        if (ENABLED) {
+            Span span = SPAN.get();
+            if (span.mappingStarted == 0) {
+                span.mappingStarted = System.nanoTime();
+            }
+        }
+    }
+
+    static void record(Operation operation, long started, int status, int rows) {
+        if (!ENABLED) {
+            return;
+        }
+        long finished = System.nanoTime();
+        long total = finished - started;
+        Span span = SPAN.get();
+        long acquire = 0;
+        long mapping = 0;
+        int roundTrips = 0;
+        if (span.started == started) {
+            acquire = span.acquireNanos;
+            mapping = span.mappingStarted == 0 ? 0 : finished - span.mappingStarted;
+            roundTrips = span.roundTrips;
+        }
+        boolean slow = SLOW_NANOS > 0 && total >= SLOW_NANOS;
+        operation.metrics.record(total, acquire, mapping, status, rows, roundTrips, slow);
+        if (slow) {
+            System.out.printf(Locale.ROOT, "Медленная операция %s: %.1f мс (соединение %.1f мс, запрос %.1f мс, "
+                            + "разбор строк %.1f мс), код %d, строк %d, обращений к серверу %d%n", operation.metrics.name,
+                    total / 1e6, acquire / 1e6, Math.max(0, total - acquire - mapping) / 1e6, mapping / 1e6, status, rows,
+                    roundTrips);
+        }
+    }
+
+    // Завершение операции: результат возвращается без изменений, чтобы запись умещалась в return
+    static MutationResult done(Operation operation, long started, MutationResult result) {
+        record(operation, started, result.status(), result.rowsKnown() ? result.rows().size() : 0);
+        return result;
+    }
+
+    static <T> T done(Operation operation, long started, int status, int rows, T result) {
+        record(operation, started, status, rows);
+        return result;
+    }
+
+    static <T> List<T> done(Operation operation, long started, List<T> rows) {
+        record(operation, started, 1, rows.size());
+        return rows;
+    }
+
+    // Завершение операции исключением (код -555)
+    static <T> T failed(Operation operation, long started, T result) {
+        record(operation, started, -555, 0);
+        return result;
+    }
+
+    private static void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Operation operation : Operation.values()) {
+                ObjectName name = new ObjectName("db:type=DBManager,operation=" + operation.metrics.name);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(operation.metrics, name);
+                }
+            }
+        } catch (JMException e) {
+            System.out.println("Метрики не зарегистрированы в JMX: " + e.getMessage());
+        }
+    }
+
+    private static void startHttpServer(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = prometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            System.out.println("Метрики доступны по адресу http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.out.println("Не удалось открыть порт метрик " + port + ": " + e.getMessage());
+        }
+    }
+
+    // Метрики в текстовом формате Prometheus; операции без вызовов пропускаются
+    static String prometheusText() {
+        StringBuilder out = new StringBuilder();
+        out.append("# TYPE db_operation_duration_seconds histogram\n");
+        for (Operation operation : Operation.values()) {
+            OperationMetrics metrics = operation.metrics;
+            if (metrics.getCalls() == 0) {
+                continue;
+            }
+            appendHistogram(out, metrics.name, "total", metrics.total);
+            appendHistogram(out, metrics.name, "acquire", metrics.acquire);
+            appendHistogram(out, metrics.name, "execute", metrics.execute);
+            appendHistogram(out, metrics.name, "mapping", metrics.mapping);
+        }
+        out.append("# TYPE db_operation_calls_total counter\n");
+        for (Operation operation : Operation.values()) {
+            OperationMetrics metrics = operation.metrics;
+            for (int i = 0; i < OperationMetrics.CODE_LABELS.length; i++) {
+                long count = metrics.codeCount(i);
+                if (count > 0) {
+                    out.append("db_operation_calls_total{operation=\"").append(metrics.name)
+                            .append("\",code=\"").append(OperationMetrics.CODE_LABELS[i]).append("\"} ").append(count).append('\n');
+                }
+            }
+        }
+        appendPerOperation(out, "db_operation_slow_total", "counter", OperationMetrics::getSlowCalls);
+        appendPerOperation(out, "db_operation_rows_total", "counter", OperationMetrics::rowsTotal);
+        appendPerOperation(out, "db_operation_rows_last", "gauge", OperationMetrics::getLastRows);
+        appendPerOperation(out, "db_operation_rows_max", "gauge", OperationMetrics::getMaxRows);
+        appendPerOperation(out, "db_operation_round_trips_total", "counter", OperationMetrics::roundTripsTotal);
+        appendPerOperation(out, "db_operation_round_trips_last", "gauge", OperationMetrics::getLastRoundTrips);
+        Map<String, ConnectionPool.Stats> pools = ConnectionPool.allStats();
+        appendPerPool(out, pools, "db_pool_hits_total", "counter", ConnectionPool.Stats::hits);
+        appendPerPool(out, pools, "db_pool_misses_total", "counter", ConnectionPool.Stats::misses);
+        appendPerPool(out, pools, "db_pool_wait_nanoseconds_total", "counter", ConnectionPool.Stats::waitNanos);
+        appendPerPool(out, pools, "db_pool_timeouts_total", "counter", ConnectionPool.Stats::timeouts);
+        appendPerPool(out, pools, "db_pool_active", "gauge", ConnectionPool.Stats::active);
+        appendPerPool(out, pools, "db_pool_idle", "gauge", ConnectionPool.Stats::idle);
+        appendPerPool(out, pools, "db_pool_statement_hits_total", "counter", ConnectionPool.Stats::statementHits);
+        appendPerPool(out, pools, "db_pool_statement_misses_total", "counter", ConnectionPool.Stats::statementMisses);
+        return out.toString();
+    }
+
+    private static void appendPerOperation(StringBuilder out, String metric, String type, ToLongFunction<OperationMetrics> value) {
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+        for (Operation operation : Operation.values()) {
+            OperationMetrics metrics = operation.metrics;
+            if (metrics.getCalls() > 0) {
+                out.append(metric).append("{operation=\"").append(metrics.name).append("\"} ")
+                        .append(value.applyAsLong(metrics)).append('\n');
+            }
+        }
+    }
+
+    private static void appendPerPool(StringBuilder out, Map<String, ConnectionPool.Stats> pools, String metric, String type,
+                                      ToLongFunction<ConnectionPool.Stats> value) {
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+        for (Map.Entry<String, ConnectionPool.Stats> entry : pools.entrySet()) {
+            out.append(metric).append("{pool=\"").append(entry.getKey().replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\"} ").append(value.applyAsLong(entry.getValue())).append('\n');
+        }
+    }
+
+    private static void appendHistogram(StringBuilder out, String operation, String phase, OperationMetrics.Histogram histogram) {
+        String labels = "operation=\"" + operation + "\",phase=\"" + phase + "\"";
+        long cumulative = 0;
+        for (int i = 0; i < OperationMetrics.Histogram.BUCKETS; i++) {
+            cumulative += histogram.bucketCount(i);
+            double bound = OperationMetrics.Histogram.upperBoundSeconds(i);
+            out.append("db_operation_duration_seconds_bucket{").append(labels).append(",le=\"")
+                    .append(Double.isInfinite(bound) ? "+Inf" : String.valueOf(bound)).append("\"} ").append(cumulative).append('\n');
+        }
+        out.append("db_operation_duration_seconds_sum{").append(labels).append("} ").append(histogram.sumNanos() / 1e9).append('\n');
+        out.append("db_operation_duration_seconds_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+}
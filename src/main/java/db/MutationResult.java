@@ -0,0 +1,26 @@
+package db;
+
+import java.util.List;
+
+// Результат добавления, обновления или удаления: status - как у хранимых функций (id новой или обновленной строки,
+// количество удаленных строк, 0 или отрицательный код ошибки), rows - строки из RETURNING того же запроса
+// (добавленная, обновленная или удаленные), message - текст для пользователя.
+// rows == null, если строки неизвестны: хранимые функции возвращают только код, таблицу тогда нужно перечитать
+public record MutationResult(int status, List<Training> rows, String message) {
+    static MutationResult code(int status) {
+        return new MutationResult(status, List.of(), null);
+    }
+
+    // Результат хранимой функции: при успехе известен только код, строки нужно перечитать
+    static MutationResult fromStoredFunction(int status) {
+        return new MutationResult(status, status > 0 ? null : List.of(), null);
+    }
+
+    MutationResult withMessage(String message) {
+        return new MutationResult(status, rows, message);
+    }
+
+    public boolean rowsKnown() {
+        return rows != null;
+    }
+}
@@ -0,0 +1,255 @@
+package db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счетчики одной операции DBManager. Все массивы и счетчики создаются заранее: запись вызова
+// только увеличивает их и ничего не выделяет
+final class OperationMetrics implements OperationMetricsMXBean {
+    // Коды возврата: положительный (успех), 0, -1..-16, -555 (исключение) и прочие
+    static final String[] CODE_LABELS = {"ok", "0", "-1", "-2", "-3", "-4", "-5", "-6", "-7", "-8", "-9", "-10",
+            "-11", "-12", "-13", "-14", "-15", "-16", "-555", "other"};
+    private static final int MIN_CODE = -16;
+
+    final String name;
+    final Histogram total = new Histogram();
+    final Histogram acquire = new Histogram();
+    final Histogram execute = new Histogram();
+    final Histogram mapping = new Histogram();
+    private final LongAdder[] codes = new LongAdder[CODE_LABELS.length];
+    private final LongAdder rows = new LongAdder();
+    private final AtomicLong lastRows = new AtomicLong();
+    private final AtomicLong maxRows = new AtomicLong();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder roundTrips = new LongAdder();
+    private final AtomicLong lastRoundTrips = new AtomicLong();
+
+    OperationMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = new LongAdder();
+        }
+    }
+
+    void record(long totalNanos, long acquireNanos, long mappingNanos, int status, int rowCount, int roundTripCount,
+                boolean slow) {
+        total.record(totalNanos);
+        acquire.record(acquireNanos);
+        execute.record(Math.max(0, totalNanos - acquireNanos - mappingNanos));
+        mapping.record(mappingNanos);
+        codes[codeIndex(status)].increment();
+        rows.add(rowCount);
+        lastRows.set(rowCount);
+        long max;
+        while (rowCount > (max = maxRows.get()) && !maxRows.compareAndSet(max, rowCount)) {
+            // Повтор при одновременном обновлении максимума
+        }
+        roundTrips.add(roundTripCount);
+        lastRoundTrips.set(roundTripCount);
+        if (slow) {
+            slowCalls.increment();
+        }
+    }
+
+    static int codeIndex(int status) {
+        if (status > 0) {
+            return 0;
+        } else if (status >= MIN_CODE) {
+            return 1 - status;
+        } else if (status == -555) {
+            return CODE_LABELS.length - 2;
+        }
+        return CODE_LABELS.length - 1;
+    }
+
+    long codeCount(int index) {
+        return codes[index].sum();
+    }
+
+    long rowsTotal() {
+        return rows.sum();
+    }
+
+    long roundTripsTotal() {
+        return roundTrips.sum();
+    }
+
+    @Override
+    public long getCalls() {
+        return total.count();
+    }
+
+    @Override
+    public long getSlowCalls() {
+        return slowCalls.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return total.meanMillis();
+    }
+
+    @Override
+    public double getP50Millis() {
+        return total.quantileMillis(0.5);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return total.quantileMillis(0.99);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return total.maxNanos() / 1e6;
+    }
+
+    @Override
+    public double getAcquireMeanMillis() {
+        return acquire.meanMillis();
+    }
+
+    @Override
+    public double getExecuteMeanMillis() {
+        return execute.meanMillis();
+    }
+
+    @Override
+    public double getMappingMeanMillis() {
+        return mapping.meanMillis();
+    }
+
+    @Override
+    public long getLastRows() {
+        return lastRows.get();
+    }
+
+    @Override
+    public long getMaxRows() {
+        return maxRows.get();
+    }
+
+    @Override
+    public double getMeanRows() {
+        long calls = getCalls();
+        return calls == 0 ? 0.0 : (double) rows.sum() / calls;
+    }
+
+    @Override
+    public long getLastRoundTrips() {
+        return lastRoundTrips.get();
+    }
+
+    @Override
+    public double getMeanRoundTrips() {
+        long calls = getCalls();
+        return calls == 0 ? 0.0 : (double) roundTrips.sum() / calls;
+    }
+
+    @Override
+    public Map<String, Long> getReturnCodes() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < codes.length; i++) {
+            long count = codes[i].sum();
+            if (count > 0) {
+                result.put(CODE_LABELS[i], count);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        total.reset();
+        acquire.reset();
+        execute.reset();
+        mapping.reset();
+        for (LongAdder code : codes) {
+            code.reset();
+        }
+        rows.reset();
+        lastRows.set(0);
+        maxRows.set(0);
+        slowCalls.reset();
+        roundTrips.reset();
+        lastRoundTrips.set(0);
+    }
+
+    // Гистограмма времени с интервалами по степеням двойки микросекунд: интервал i - меньше 2^i мкс
+    // (до 2^25 мкс, около 33 с), последний - все, что больше
+    static final class Histogram {
+        static final int BUCKETS = 27;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+            counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            sumNanos.add(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // Повтор при одновременном обновлении максимума
+            }
+        }
+
+        // Верхняя граница интервала в секундах (для последнего - бесконечность)
+        static double upperBoundSeconds(int bucket) {
+            return bucket == BUCKETS - 1 ? Double.POSITIVE_INFINITY : (1L << bucket) / 1e6;
+        }
+
+        long bucketCount(int bucket) {
+            return counts.get(bucket);
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        long sumNanos() {
+            return sumNanos.sum();
+        }
+
+        long maxNanos() {
+            return maxNanos.get();
+        }
+
+        double meanMillis() {
+            long count = count();
+            return count == 0 ? 0.0 : sumNanos.sum() / 1e6 / count;
+        }
+
+        // Граница интервала, в котором набирается доля q вызовов (не больше максимума)
+        double quantileMillis(double q) {
+            long count = count();
+            if (count == 0) {
+                return 0.0;
+            }
+            long target = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += counts.get(i);
+                if (seen >= target) {
+                    return Math.min(upperBoundSeconds(i) * 1e3, maxNanos.get() / 1e6);
+                }
+            }
+            return maxNanos.get() / 1e6;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            sumNanos.reset();
+            maxNanos.set(0);
+        }
+    }
+}
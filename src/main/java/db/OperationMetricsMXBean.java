@@ -0,0 +1,42 @@
+package db;
+
+import java.util.Map;
+
+// Показатели одной операции DBManager в JMX (db:type=DBManager,operation=...): время в миллисекундах,
+// процентили - оценка по границам интервалов гистограммы (степени двойки микросекунд)
+public interface OperationMetricsMXBean {
+    long getCalls();
+
+    long getSlowCalls();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    // Средние времена этапов: получение соединения, выполнение запроса, разбор строк результата
+    double getAcquireMeanMillis();
+
+    double getExecuteMeanMillis();
+
+    double getMappingMeanMillis();
+
+    long getLastRows();
+
+    long getMaxRows();
+
+    double getMeanRows();
+
+    // Обращения к серверу за вызов: запросы, commit/rollback и проверки соединений из пула
+    long getLastRoundTrips();
+
+    double getMeanRoundTrips();
+
+    // Количество вызовов по кодам возврата ("ok" - положительный код или успешный вызов без кода)
+    Map<String, Long> getReturnCodes();
+
+    void reset();
+}
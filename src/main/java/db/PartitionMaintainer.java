@@ -0,0 +1,245 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Обслуживание таблицы trainings, разбитой на секции по месяцам (DBManager.createTable(..., true, ...)):
+// заранее создает секции на -Ddb.partitions.monthsAhead месяцев вперед (по умолчанию 3), переносит строки
+// из секции по умолчанию в месячные секции и отсоединяет секции старше -Ddb.partitions.retentionMonths месяцев
+// (0 - хранить все). Отсоединенная секция переносится в схему trainings_archive или, при
+// -Ddb.partitions.archive=false, удаляется; в обоих случаях строки не удаляются по одной.
+// start() повторяет обслуживание раз в -Ddb.partitions.checkMillis мс (по умолчанию раз в час).
+// Для таблицы без секций обслуживание ничего не делает
+public class PartitionMaintainer implements AutoCloseable {
+    private static final int MONTHS_AHEAD = Integer.getInteger("db.partitions.monthsAhead", 3);
+    private static final int RETENTION_MONTHS = Integer.getInteger("db.partitions.retentionMonths", 0);
+    private static final boolean ARCHIVE = !"false".equalsIgnoreCase(System.getProperty("db.partitions.archive"));
+    private static final long CHECK_MILLIS = Long.getLong("db.partitions.checkMillis", 3_600_000);
+
+    static final String DEFAULT_PARTITION = "trainings_default";
+    static final String ARCHIVE_SCHEMA = "trainings_archive";
+    private static final String PARTITION_PREFIX = "trainings_p";
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    // Та же таблица, что в create_table, но первичный ключ включает ключ секционирования (date),
+    // как требует PostgreSQL; class_id по-прежнему выдается последовательностью
+    private static final String CREATE_PARTITIONED = "CREATE TABLE trainings ("
+            + "class_id SERIAL, "
+            + "title VARCHAR(255) NOT NULL, "
+            + "date DATE NOT NULL, "
+            + "start_time TIME NOT NULL, "
+            + "duration INTERVAL NOT NULL, "
+            + "max_participants INT CHECK (max_participants > 0), "
+            + "current_participants INT CHECK (current_participants >= 0), "
+            + "difficulty_level VARCHAR(20) CHECK (difficulty_level IN ('начальный', 'смешанный', 'продвинутый')), "
+            + "trainer_name VARCHAR(255) NOT NULL, "
+            + "price DECIMAL(10, 2), "
+            + "PRIMARY KEY (class_id, date)"
+            + ") PARTITION BY RANGE (date)";
+
+    // Таблица и секция по умолчанию для дат вне созданных месячных секций
+    static final String[] CREATE_STATEMENTS = {
+            CREATE_PARTITIONED,
+            "CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF trainings DEFAULT"
+    };
+
+    // Результат обслуживания: созданные и отсоединенные секции
+    public record Result(List<String> created, List<String> detached) {
+        public boolean isEmpty() {
+            return created.isEmpty() && detached.isEmpty();
+        }
+    }
+
+    private final String dbName;
+    private final String username;
+    private final String password;
+    private ScheduledExecutorService scheduler;
+
+    public PartitionMaintainer(String dbName, String username, String password) {
+        this.dbName = dbName;
+        this.username = username;
+        this.password = password;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "partition-maintainer-" + dbName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                Result result = maintain();
+                if (!result.isEmpty()) {
+                    System.out.println("Секции таблицы trainings (" + dbName + "): создано " + result.created()
+                            + ", отсоединено " + result.detached());
+                }
+            } catch (SQLException e) {
+                System.out.println("Ошибка при обслуживании секций (" + dbName + "): " + e.getMessage());
+            }
+        }, 0, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public Result maintain() throws SQLException {
+        return maintain(LocalDate.now());
+    }
+
+    // today - для проверки обслуживания на любую дату
+    public Result maintain(LocalDate today) throws SQLException {
+        List<String> created = new ArrayList<>();
+        List<String> detached = new ArrayList<>();
+        try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+            if (!isPartitioned(conn)) {
+                return new Result(created, detached);
+            }
+            YearMonth current = YearMonth.from(today);
+            TreeSet<YearMonth> existing = existingPartitions(conn);
+            TreeSet<YearMonth> wanted = new TreeSet<>(monthsInDefaultPartition(conn));
+            for (int i = 0; i <= MONTHS_AHEAD; i++) {
+                wanted.add(current.plusMonths(i));
+            }
+            wanted.removeAll(existing);
+            for (YearMonth month : wanted) {
+                createPartition(conn, month);
+                created.add(partitionName(month));
+                existing.add(month);
+            }
+
+            if (RETENTION_MONTHS > 0) {
+                YearMonth oldestKept = current.minusMonths(RETENTION_MONTHS);
+                for (YearMonth month : existing.headSet(oldestKept)) {
+                    detachPartition(conn, month);
+                    detached.add(partitionName(month));
+                }
+            }
+        }
+        if (!detached.isEmpty()) {
+            // Строки отсоединенных секций пропали из таблицы без DELETE: индекс расписания строится заново
+            ScheduleIndex.invalidate(dbName);
+        }
+        return new Result(created, detached);
+    }
+
+    // Таблица без строк с секцией по умолчанию; индексы и триггеры уведомлений те же, что у create_table
+    // (на секционированной таблице они создаются для каждой секции)
+    static void createTable(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : CREATE_STATEMENTS) {
+                stmt.execute(sql);
+            }
+            TrainingsCache.createTriggers(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static boolean isPartitioned(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass('public.trainings')")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    // Месячные секции определяются по имени (trainings_pГГГГММ) - так их называет createPartition
+    private static TreeSet<YearMonth> existingPartitions(Connection conn) throws SQLException {
+        TreeSet<YearMonth> months = new TreeSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                     + "WHERE i.inhparent = 'trainings'::regclass")) {
+            while (rs.next()) {
+                String name = rs.getString(1);
+                if (name.startsWith(PARTITION_PREFIX) && name.length() == PARTITION_PREFIX.length() + 6) {
+                    months.add(YearMonth.parse(name.substring(PARTITION_PREFIX.length()), MONTH_SUFFIX));
+                }
+            }
+        }
+        return months;
+    }
+
+    // Месяцы строк, попавших в секцию по умолчанию (например, после загрузки истории)
+    private static List<YearMonth> monthsInDefaultPartition(Connection conn) throws SQLException {
+        List<YearMonth> months = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT date_trunc('month', date)::date FROM " + DEFAULT_PARTITION)) {
+            while (rs.next()) {
+                months.add(YearMonth.from(rs.getDate(1).toLocalDate()));
+            }
+        }
+        return months;
+    }
+
+    // Секция создается отдельной таблицей, в нее переносятся строки этого месяца из секции по умолчанию,
+    // затем она присоединяется к trainings - все в одной транзакции. Строки сохраняют class_id, поэтому кэш
+    // таблицы уведомлять не нужно
+    private static void createPartition(Connection conn, YearMonth month) throws SQLException {
+        String name = partitionName(month);
+        String from = month.atDay(1).toString();
+        String to = month.plusMonths(1).atDay(1).toString();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE " + name + " (LIKE trainings INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            stmt.execute("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE date >= DATE '" + from
+                    + "' AND date < DATE '" + to + "' RETURNING *) INSERT INTO " + name + " SELECT * FROM moved");
+            stmt.execute("ALTER TABLE trainings ATTACH PARTITION " + name + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Отсоединение меняет только каталог; клиентский кэш перечитывает таблицу по уведомлению, как после TRUNCATE
+    private static void detachPartition(Connection conn, YearMonth month) throws SQLException {
+        String name = partitionName(month);
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE trainings DETACH PARTITION " + name);
+            if (ARCHIVE) {
+                stmt.execute("CREATE SCHEMA IF NOT EXISTS " + ARCHIVE_SCHEMA);
+                stmt.execute("ALTER TABLE " + name + " SET SCHEMA " + ARCHIVE_SCHEMA);
+            } else {
+                stmt.execute("DROP TABLE " + name);
+            }
+            stmt.execute("SELECT pg_notify('" + TrainingsCache.CHANNEL + "', 'TRUNCATE')");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + MONTH_SUFFIX.format(month);
+    }
+}
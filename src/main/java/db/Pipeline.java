@@ -0,0 +1,339 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.List;
+
+// Несколько изменений таблицы и ее чтение одним запросом в одной транзакции, например:
+//   new Pipeline().addTraining(...).bookTraining(id, 2).reload()
+// DBManager.executePipeline отправляет запросы всех шагов одним подготовленным запросом из нескольких команд:
+// команды выполняются в одной явной транзакции (подготовленные на сервере команды драйвер разделяет отдельными
+// Sync, и неявная транзакция охватывала бы одну команду) - ошибка SQL в любом шаге отменяет весь пакет. Отказ шага по данным (пересечение занятий, нет мест, нет строки) - код
+// в его результате, остальные шаги выполняются. Параметры проверяются до отправки: шаг с неверными параметрами
+// получает код ошибки и не отправляется. Работает напрямую с таблицей в базе dbName при любом режиме доступа
+// (интерфейс вне режима DIRECT выполняет изменения через хранимые функции); индекс расписания проверяется
+// и обновляется так же, как в DirectAccess: шаг, для которого индекс нашел пересечение, получает -6 и не отправляется.
+public class Pipeline {
+    // Есть ли строка - для различения причин пустого результата UPDATE
+    private static final String EXISTS = "SELECT EXISTS (SELECT 1 FROM trainings WHERE class_id = ?)";
+
+    private final List<Step> steps = new ArrayList<>();
+    private boolean read;
+    private TrainingQuery query;
+
+    // Добавление тренировки; коды - как у DBManager.addTraining
+    public Pipeline addTraining(String title, Date date, Time startTime, String duration, int maxParticipants,
+                                int currentParticipants, String difficultyLevel, String trainerName, double price) {
+        int code = maxParticipants <= 0 ? -3 : currentParticipants < 0 ? -4
+                : !DirectAccess.DIFFICULTY_LEVELS.contains(difficultyLevel) ? -5 : 0;
+        steps.add(new Step(code, DirectAccess.INSERT_TRAINING) {
+            @Override
+            boolean conflictsInIndex(ScheduleIndex index) {
+                return DirectAccess.indexConflictOnInsert(index, trainerName, date, startTime, duration);
+            }
+
+            @Override
+            int bind(Connection conn, PreparedStatement stmt, int index) throws SQLException {
+                return DirectAccess.bindInsert(stmt, index, title, date, startTime, duration, maxParticipants,
+                        currentParticipants, difficultyLevel, trainerName, price);
+            }
+
+            @Override
+            MutationResult read(PreparedStatement stmt, String dbName) throws SQLException {
+                skipLock(stmt);
+                List<Training> rows = nextRows(stmt);
+                if (rows.isEmpty()) {
+                    DirectAccess.refreshIndex(stmt.getConnection(), ScheduleIndex.ifLoaded(dbName), dbName, 0,
+                            trainerName, date == null ? null : date.toLocalDate());
+                    return MutationResult.code(-6);
+                }
+                DirectAccess.indexRow(ScheduleIndex.ifLoaded(dbName), rows.get(0));
+                return new MutationResult(rows.get(0).id(), rows, null);
+            }
+
+            @Override
+            MutationResult report(MutationResult result, String dbName) {
+                return result.withMessage(DBManager.describeAddTrainingCode(result.status(), dbName, trainerName));
+            }
+        });
+        return this;
+    }
+
+    // Полное обновление по ID (null - поле не меняется); коды - как у DBManager.updateTrainingRecord
+    public Pipeline updateTrainingRecord(int id, String title, Date date, Time startTime, String duration,
+                                         Integer maxParticipants, Integer currentParticipants, String difficultyLevel,
+                                         String trainerName, Double price) {
+        int code = id <= 0 ? -9 : title == null && date == null && startTime == null && duration == null
+                && maxParticipants == null && currentParticipants == null && difficultyLevel == null
+                && trainerName == null && price == null ? -10 : 0;
+        // Пустой результат UPDATE - пересечение или отсутствие строки: их различает EXISTS в том же пакете
+        steps.add(new Step(code, DirectAccess.UPDATE_RECORD + "; " + EXISTS) {
+            @Override
+            boolean conflictsInIndex(ScheduleIndex index) {
+                return DirectAccess.indexConflictOnRecordUpdate(index, id, trainerName, date, startTime, duration);
+            }
+
+            @Override
+            int bind(Connection conn, PreparedStatement stmt, int index) throws SQLException {
+                index = DirectAccess.bindUpdateRecord(stmt, index, id, title, date, startTime, duration,
+                        maxParticipants, currentParticipants, difficultyLevel, trainerName, price);
+                stmt.setInt(index, id);
+                return index + 1;
+            }
+
+            @Override
+            MutationResult read(PreparedStatement stmt, String dbName) throws SQLException {
+                skipLock(stmt);
+                List<Training> rows = nextRows(stmt);
+                boolean exists = nextExists(stmt);
+                if (rows.isEmpty() && !exists) {
+                    return MutationResult.code(0);
+                }
+                if (rows.isEmpty()) {
+                    DirectAccess.refreshIndex(stmt.getConnection(), ScheduleIndex.ifLoaded(dbName), dbName, id,
+                            trainerName, date == null ? null : date.toLocalDate());
+                    return MutationResult.code(-6);
+                }
+                DirectAccess.indexRow(ScheduleIndex.ifLoaded(dbName), rows.get(0));
+                return new MutationResult(id, rows, null);
+            }
+
+            @Override
+            MutationResult report(MutationResult result, String dbName) {
+                return DBManager.reportRecordUpdate(result, dbName, id);
+            }
+        });
+        return this;
+    }
+
+    // Удаление по вхождению значения в текстовое поле; коды - как у DBManager.deleteTrainingByField
+    public Pipeline deleteTrainingByField(String fieldName, String searchValue) {
+        int code = !DirectAccess.TEXT_FIELDS.contains(fieldName) ? -7
+                : searchValue == null || searchValue.trim().isEmpty() ? -8 : 0;
+        String sql = code != 0 ? null : "DELETE FROM trainings WHERE " + fieldName + " ILIKE ?"
+                + String.format(DirectAccess.RETURNING_TRAINING, "");
+        steps.add(new Step(code, sql) {
+            @Override
+            int bind(Connection conn, PreparedStatement stmt, int index) throws SQLException {
+                stmt.setString(index, "%" + DirectAccess.escapeLike(searchValue) + "%");
+                return index + 1;
+            }
+
+            @Override
+            MutationResult read(PreparedStatement stmt, String dbName) throws SQLException {
+                List<Training> rows = nextRows(stmt);
+                ScheduleIndex index = ScheduleIndex.ifLoaded(dbName);
+                if (index != null) {
+                    for (Training training : rows) {
+                        index.remove(training.id());
+                    }
+                }
+                return new MutationResult(rows.size(), rows, null);
+            }
+
+            @Override
+            MutationResult report(MutationResult result, String dbName) {
+                return DBManager.reportDelete(result, dbName, fieldName);
+            }
+        });
+        return this;
+    }
+
+    // Запись на занятие и отмена записи; коды - как у DBManager.bookTraining / cancelBooking
+    public Pipeline bookTraining(int id, int seats) {
+        return changeParticipants(id, seats, seats);
+    }
+
+    public Pipeline cancelBooking(int id, int seats) {
+        return changeParticipants(id, seats, -seats);
+    }
+
+    private Pipeline changeParticipants(int id, int seats, int change) {
+        int code = seats <= 0 ? -13 : id <= 0 ? -9 : 0;
+        steps.add(new Step(code, DirectAccess.CHANGE_PARTICIPANTS + "; " + EXISTS) {
+            @Override
+            int bind(Connection conn, PreparedStatement stmt, int index) throws SQLException {
+                stmt.setArray(index, conn.createArrayOf("integer", new Integer[]{id}));
+                stmt.setArray(index + 1, conn.createArrayOf("integer", new Integer[]{change}));
+                stmt.setInt(index + 2, id);
+                return index + 3;
+            }
+
+            @Override
+            MutationResult read(PreparedStatement stmt, String dbName) throws SQLException {
+                List<Training> rows = nextRows(stmt);
+                boolean exists = nextExists(stmt);
+                if (rows.isEmpty()) {
+                    return MutationResult.code(!exists ? 0 : change > 0 ? -14 : -15);
+                }
+                return new MutationResult(id, rows, null);
+            }
+
+            @Override
+            MutationResult report(MutationResult result, String dbName) {
+                return DBManager.reportParticipantsChange(result, dbName, id);
+            }
+        });
+        return this;
+    }
+
+    // Чтение всей таблицы (по class_id) после изменений пакета
+    public Pipeline reload() {
+        read = true;
+        query = null;
+        return this;
+    }
+
+    // Чтение по условиям после изменений пакета
+    public Pipeline find(TrainingQuery query) {
+        read = true;
+        this.query = query;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return steps.isEmpty() && !read;
+    }
+
+    // Шаг изменения: запрос (одна или несколько команд через ";"), его параметры и разбор его результатов
+    private abstract static class Step {
+        // Код отказа до отправки; 0 - шаг отправляется
+        final int code;
+        final String sql;
+        Step(int code, String sql) {
+            this.code = code;
+            this.sql = sql;
+        }
+
+        // Пересечение по индексу расписания до отправки (для шагов, меняющих расписание): отказ -6 без запроса
+        boolean conflictsInIndex(ScheduleIndex index) {
+            return false;
+        }
+
+        // Параметры шага начиная с index; возвращает номер следующего параметра
+        abstract int bind(Connection conn, PreparedStatement stmt, int index) throws SQLException;
+
+        // Результаты команд шага по порядку
+        abstract MutationResult read(PreparedStatement stmt, String dbName) throws SQLException;
+
+        // Сообщение для пользователя по коду
+        abstract MutationResult report(MutationResult result, String dbName);
+    }
+
+    PipelineResult execute(String dbName, String username, String password) throws SQLException {
+        int[] codes = new int[steps.size()];
+        boolean send = read;
+        for (int i = 0; i < steps.size(); i++) {
+            codes[i] = steps.get(i).code;
+            send |= codes[i] == 0;
+        }
+
+        MutationResult[] results = new MutationResult[steps.size()];
+        List<Training> trainings = null;
+        if (send) {
+            try (Connection conn = DBManager.getConnection(dbName, username, password)) {
+                List<Step> sent = new ArrayList<>();
+                StringBuilder sql = new StringBuilder();
+                ScheduleIndex scheduleIndex = null;
+                for (int i = 0; i < steps.size(); i++) {
+                    Step step = steps.get(i);
+                    if (codes[i] != 0) {
+                        continue;
+                    }
+                    if (scheduleIndex == null) {
+                        scheduleIndex = ScheduleIndex.forDatabase(conn, dbName);
+                    }
+                    if (step.conflictsInIndex(scheduleIndex)) {
+                        codes[i] = -6;
+                        continue;
+                    }
+                    sent.add(step);
+                    sql.append(sql.length() == 0 ? "" : "; ").append(step.sql);
+                }
+                if (read) {
+                    sql.append(sql.length() == 0 ? "" : "; ")
+                            .append(query == null ? DirectAccess.SELECT_TRAININGS + " ORDER BY class_id" : query.toSql());
+                }
+                if (sql.length() > 0) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                        int index = 1;
+                        for (Step step : sent) {
+                            index = step.bind(conn, stmt, index);
+                        }
+                        if (query != null) {
+                            query.bind(stmt, index);
+                        }
+                        // Пакет выполняется в одной транзакции: блокировки расписания держатся до конца пакета.
+                        // Пакет, прерванный взаимной блокировкой, откатывается целиком и повторяется
+                        conn.setAutoCommit(false);
+                        try {
+                            for (int attempt = 1; ; attempt++) {
+                                try {
+                                    stmt.execute();
+                                    break;
+                                } catch (SQLException e) {
+                                    conn.rollback();
+                                    if (!"40P01".equals(e.getSQLState()) || attempt == DirectAccess.DEADLOCK_RETRIES) {
+                                        throw e;
+                                    }
+                                }
+                            }
+                            conn.commit();
+                        } finally {
+                            conn.setAutoCommit(true);
+                        }
+                        // Результаты всех команд уже получены драйвером; перечитывание дня тренера - после фиксации
+                        for (int i = 0, s = 0; i < steps.size(); i++) {
+                            if (codes[i] == 0) {
+                                results[i] = sent.get(s++).read(stmt, dbName);
+                            }
+                        }
+                        if (read) {
+                            trainings = nextRows(stmt);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                int status = DirectAccess.schemaErrorCode(dbName, e);
+                return new PipelineResult(status, List.of(), null, status == -2
+                        ? "Ошибка: база данных " + dbName + " не существует."
+                        : "Ошибка: таблица trainings не существует.");
+            }
+        }
+        List<MutationResult> reported = new ArrayList<>(steps.size());
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            reported.add(step.report(codes[i] == 0 ? results[i] : MutationResult.code(codes[i]), dbName));
+        }
+        return new PipelineResult(1, reported, trainings, null);
+    }
+
+    // Строки текущего результата пакета; затем переход к следующему
+    private static List<Training> nextRows(PreparedStatement stmt) throws SQLException {
+        List<Training> rows;
+        try (ResultSet rs = stmt.getResultSet()) {
+            rows = DirectAccess.mapRows(rs);
+        }
+        stmt.getMoreResults();
+        return rows;
+    }
+
+    // Результат блокировки расписания перед вставкой или обновлением (DirectAccess.INSERT_TRAINING, UPDATE_RECORD)
+    private static void skipLock(PreparedStatement stmt) throws SQLException {
+        stmt.getMoreResults();
+    }
+
+    private static boolean nextExists(PreparedStatement stmt) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = stmt.getResultSet()) {
+            exists = rs.next() && rs.getBoolean(1);
+        }
+        stmt.getMoreResults();
+        return exists;
+    }
+}
@@ -0,0 +1,18 @@
+package db;
+
+import java.util.List;
+
+// Результат DBManager.executePipeline: status 1 - пакет выполнен, результаты шагов изменения - в results в порядке
+// добавления (коды и сообщения - как у одиночных операций DBManager); -2 нет базы, -1 нет таблицы, -555 ошибка SQL -
+// тогда не выполнен ни один шаг, results пуст, message - описание ошибки.
+// trainings - строки чтения после изменений (reload или find), null - чтения в пакете не было
+public record PipelineResult(int status, List<MutationResult> results, List<Training> trainings, String message) {
+    // Все строки результата: измененные и прочитанные (для метрик)
+    int rowCount() {
+        int rows = trainings == null ? 0 : trainings.size();
+        for (MutationResult result : results) {
+            rows += result.rowsKnown() ? result.rows().size() : 0;
+        }
+        return rows;
+    }
+}
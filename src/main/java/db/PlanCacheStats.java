@@ -0,0 +1,14 @@
+package db;
+
+// Подготовленный на сервере запрос и сколько раз он выполнен с общим планом из кэша (genericPlans)
+// и с планом, построенным заново для значений параметров (customPlans)
+public record PlanCacheStats(String statement, long genericPlans, long customPlans) {
+    public long executions() {
+        return genericPlans + customPlans;
+    }
+
+    public double hitRatio() {
+        long total = executions();
+        return total == 0 ? 0.0 : (double) genericPlans / total;
+    }
+}
@@ -0,0 +1,59 @@
+package db;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Кэш ролей пользователей: пароль хранится только в виде соленого хэша
+class RoleCache {
+    private static final long TTL_MILLIS = Long.getLong("db.auth.ttlMillis", 300_000);
+    private static final byte[] SALT = new byte[16];
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    static {
+        new SecureRandom().nextBytes(SALT);
+    }
+
+    private RoleCache() {
+    }
+
+    // Роль из кэша или null, если записи нет, она устарела или пароль не совпадает
+    static String lookup(String username, String password) {
+        Entry entry = ENTRIES.get(username);
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()
+                || !MessageDigest.isEqual(entry.passwordHash, hash(username, password))) {
+            return null;
+        }
+        return entry.role;
+    }
+
+    static void put(String username, String password, String role) {
+        ENTRIES.put(username, new Entry(hash(username, password), role, System.currentTimeMillis() + TTL_MILLIS));
+    }
+
+    static void invalidate(String username) {
+        ENTRIES.remove(username);
+    }
+
+    static void invalidateAll() {
+        ENTRIES.clear();
+    }
+
+    private static byte[] hash(String username, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SALT);
+            digest.update(username.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    private record Entry(byte[] passwordHash, String role, long expiresAt) {
+    }
+}
@@ -0,0 +1,338 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Индекс расписания в памяти: занятия каждого тренера по дням, отсортированные по началу.
+// Проверка пересечения - поиск корзины (тренер, день) в хэш-таблице и двоичный поиск внутри нее,
+// без обращения к базе: найденное пересечение - отказ (-6) без запроса, иначе изменение проверяет база.
+// Индекс видит изменения этого процесса; пересечение, которое нашла только база, перечитывает день тренера.
+public final class ScheduleIndex {
+    // Отключение индекса: -Ddb.scheduleIndex=false (проверки выполняет только база)
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("db.scheduleIndex"));
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final int LOAD_FETCH_SIZE = 10_000;
+
+    private static final Map<String, ScheduleIndex> INDEXES = new ConcurrentHashMap<>();
+    // Заполнение индекса одной базы не задерживает обращения к другим
+    private static final Map<String, Object> LOAD_LOCKS = new ConcurrentHashMap<>();
+
+    private final Map<DayKey, DaySchedule> days = new ConcurrentHashMap<>();
+    private final Map<Integer, DayKey> dayOfId = new ConcurrentHashMap<>();
+
+    // Индекс базы dbName, при первом обращении заполняется из таблицы; null, если индекс отключен
+    static ScheduleIndex forDatabase(Connection conn, String dbName) throws SQLException {
+        if (!ENABLED) {
+            return null;
+        }
+        ScheduleIndex index = INDEXES.get(dbName);
+        if (index == null) {
+            synchronized (LOAD_LOCKS.computeIfAbsent(dbName, name -> new Object())) {
+                index = INDEXES.get(dbName);
+                if (index == null) {
+                    index = load(conn);
+                    INDEXES.put(dbName, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    // Индекс базы dbName, только если он уже заполнен (для удаления строк прогревать его незачем)
+    static ScheduleIndex ifLoaded(String dbName) {
+        return INDEXES.get(dbName);
+    }
+
+    static void invalidate(String dbName) {
+        INDEXES.remove(dbName);
+    }
+
+    static void invalidateAll() {
+        INDEXES.clear();
+    }
+
+    // Заполнение из таблицы trainings; строки читаются курсором частями, а не целиком.
+    // Занятия сначала собираются по дням, затем каждый день сортируется один раз
+    public static ScheduleIndex load(Connection conn) throws SQLException {
+        Map<DayKey, DayBuilder> builders = new HashMap<>();
+        Map<String, String> trainerNames = new HashMap<>();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false); // fetchSize работает только внутри транзакции
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(LOAD_FETCH_SIZE);
+            // Конец занятия считает сервер (start_time + duration по модулю суток), длительность берется как разность
+            try (ResultSet rs = stmt.executeQuery("SELECT class_id, trainer_name, date - DATE '1970-01-01', "
+                    + "extract(epoch FROM start_time)::int, extract(epoch FROM start_time + duration)::int FROM trainings")) {
+                while (rs.next()) {
+                    // Одно имя тренера на все его дни
+                    String trainerName = trainerNames.computeIfAbsent(rs.getString(2), name -> name);
+                    DayKey key = new DayKey(trainerName, rs.getInt(3));
+                    int start = rs.getInt(4);
+                    builders.computeIfAbsent(key, k -> new DayBuilder())
+                            .add(rs.getInt(1), start, Math.floorMod(rs.getInt(5) - start, SECONDS_PER_DAY));
+                }
+            }
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        ScheduleIndex index = new ScheduleIndex();
+        for (Map.Entry<DayKey, DayBuilder> entry : builders.entrySet()) {
+            DaySchedule schedule = entry.getValue().build();
+            index.days.put(entry.getKey(), schedule);
+            for (int id : schedule.ids) {
+                index.dayOfId.put(id, entry.getKey());
+            }
+        }
+        return index;
+    }
+
+    // Занятия тренера за день заново из таблицы. id - обновляемое занятие (0 - новое), null - значение
+    // не менялось и берется из индекса; если тренер или день неизвестны, индекс не меняется
+    void refreshDay(Connection conn, int id, String trainerName, LocalDate date) throws SQLException {
+        DayKey known = dayOfId.get(id);
+        if ((trainerName == null || date == null) && known == null) {
+            return;
+        }
+        DayKey key = new DayKey(trainerName != null ? trainerName : known.trainerName,
+                date != null ? date.toEpochDay() : known.epochDay);
+        DayBuilder builder = new DayBuilder();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT class_id, extract(epoch FROM start_time)::int, "
+                + "extract(epoch FROM start_time + duration)::int FROM trainings WHERE trainer_name = ? AND date = ?")) {
+            stmt.setString(1, key.trainerName);
+            stmt.setObject(2, LocalDate.ofEpochDay(key.epochDay));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int start = rs.getInt(2);
+                    builder.add(rs.getInt(1), start, Math.floorMod(rs.getInt(3) - start, SECONDS_PER_DAY));
+                }
+            }
+        }
+        DaySchedule schedule = builder.build();
+        DaySchedule previous = days.put(key, schedule);
+        if (previous != null) {
+            for (int oldId : previous.ids) {
+                dayOfId.remove(oldId, key);
+            }
+        }
+        for (int newId : schedule.ids) {
+            DayKey oldKey = dayOfId.put(newId, key);
+            if (oldKey != null && !oldKey.equals(key)) {
+                days.computeIfPresent(oldKey, (k, old) -> old.without(newId));
+            }
+        }
+    }
+
+    // Добавление занятия или перенос уже известного (по id)
+    public void put(int id, String trainerName, LocalDate date, LocalTime startTime, Duration duration) {
+        remove(id);
+        DayKey key = new DayKey(trainerName, date.toEpochDay());
+        int start = startTime.toSecondOfDay();
+        int length = (int) duration.getSeconds();
+        days.compute(key, (k, schedule) -> (schedule == null ? DaySchedule.EMPTY : schedule).with(id, start, length));
+        dayOfId.put(id, key);
+    }
+
+    public void remove(int id) {
+        DayKey key = dayOfId.remove(id);
+        if (key != null) {
+            days.computeIfPresent(key, (k, schedule) -> schedule.without(id));
+        }
+    }
+
+    public void clear() {
+        days.clear();
+        dayOfId.clear();
+    }
+
+    public int size() {
+        return dayOfId.size();
+    }
+
+    // Пересекается ли занятие с другими занятиями тренера в этот день (занятие excludeId не учитывается)
+    public boolean hasConflict(String trainerName, LocalDate date, LocalTime startTime, Duration duration, int excludeId) {
+        if (trainerName == null || date == null || startTime == null || duration == null) {
+            return false;
+        }
+        DaySchedule schedule = days.get(new DayKey(trainerName, date.toEpochDay()));
+        return schedule != null && schedule.conflicts(startTime.toSecondOfDay(), (int) duration.getSeconds(), excludeId);
+    }
+
+    // Проверка для обновления занятия id: null - значение поля не меняется. Если занятия нет в индексе,
+    // возвращается false и решение остается за базой
+    public boolean hasConflictAfterUpdate(int id, String trainerName, LocalDate date, LocalTime startTime, Duration duration) {
+        DayKey key = dayOfId.get(id);
+        DaySchedule schedule = key == null ? null : days.get(key);
+        int position = schedule == null ? -1 : schedule.positionOf(id);
+        if (position < 0) {
+            return false;
+        }
+        return hasConflict(trainerName != null ? trainerName : key.trainerName,
+                date != null ? date : LocalDate.ofEpochDay(key.epochDay),
+                startTime != null ? startTime : LocalTime.ofSecondOfDay(schedule.starts[position]),
+                duration != null ? duration : Duration.ofSeconds(schedule.lengths[position]), id);
+    }
+
+    private record DayKey(String trainerName, long epochDay) {
+    }
+
+    // Накопление занятий дня при заполнении индекса
+    private static final class DayBuilder {
+        private long[] entries = new long[4];
+        private int size;
+
+        void add(int id, int start, int length) {
+            if (size == entries.length / 2) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[2 * size] = ((long) DaySchedule.low(start, length) << 32) | (id & 0xFFFFFFFFL);
+            entries[2 * size + 1] = ((long) start << 32) | (length & 0xFFFFFFFFL);
+            size++;
+        }
+
+        DaySchedule build() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(entries[2 * a], entries[2 * b]));
+            int[] ids = new int[size];
+            int[] starts = new int[size];
+            int[] lengths = new int[size];
+            int[] lows = new int[size];
+            int[] highs = new int[size];
+            for (int i = 0; i < size; i++) {
+                int from = order[i];
+                ids[i] = (int) entries[2 * from];
+                lows[i] = (int) (entries[2 * from] >>> 32);
+                starts[i] = (int) (entries[2 * from + 1] >>> 32);
+                lengths[i] = (int) entries[2 * from + 1];
+                highs[i] = DaySchedule.high(starts[i], lengths[i]);
+            }
+            return new DaySchedule(ids, starts, lengths, lows, highs);
+        }
+    }
+
+    // Занятия тренера за день, упорядоченные по нижней границе интервала; массивы не изменяются после создания.
+    // Интервал строится как в PostgreSQL: start_time + duration берется по модулю суток, а OVERLAPS
+    // меняет границы местами, если конец раньше начала
+    private static final class DaySchedule {
+        static final DaySchedule EMPTY = new DaySchedule(new int[0], new int[0], new int[0], new int[0], new int[0]);
+
+        final int[] ids;
+        final int[] starts;
+        final int[] lengths;
+        final int[] lows;
+        final int[] highs;
+        // maxHighs[i] - наибольшая верхняя граница среди интервалов 0..i
+        final int[] maxHighs;
+
+        DaySchedule(int[] ids, int[] starts, int[] lengths, int[] lows, int[] highs) {
+            this.ids = ids;
+            this.starts = starts;
+            this.lengths = lengths;
+            this.lows = lows;
+            this.highs = highs;
+            this.maxHighs = new int[highs.length];
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < highs.length; i++) {
+                max = Math.max(max, highs[i]);
+                maxHighs[i] = max;
+            }
+        }
+
+        static int low(int start, int length) {
+            return Math.min(start, Math.floorMod(start + length, SECONDS_PER_DAY));
+        }
+
+        static int high(int start, int length) {
+            return Math.max(start, Math.floorMod(start + length, SECONDS_PER_DAY));
+        }
+
+        // Интервалы пересекаются, если начала совпадают или low1 < high2 и low2 < high1 (как OVERLAPS)
+        boolean conflicts(int start, int length, int excludeId) {
+            int low = low(start, length);
+            int high = high(start, length);
+            for (int i = lowerBound(low); i < lows.length && lows[i] == low; i++) {
+                if (ids[i] != excludeId) {
+                    return true;
+                }
+            }
+            // Кандидаты - интервалы, начинающиеся до high; идем назад, пока среди них есть конец позже low
+            for (int i = lowerBound(high) - 1; i >= 0 && maxHighs[i] > low; i--) {
+                if (highs[i] > low && ids[i] != excludeId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Первая позиция с lows[i] >= value
+        private int lowerBound(int value) {
+            int from = 0;
+            int to = lows.length;
+            while (from < to) {
+                int middle = (from + to) >>> 1;
+                if (lows[middle] < value) {
+                    from = middle + 1;
+                } else {
+                    to = middle;
+                }
+            }
+            return from;
+        }
+
+        int positionOf(int id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        DaySchedule with(int id, int start, int length) {
+            int low = low(start, length);
+            int position = lowerBound(low);
+            return new DaySchedule(insert(ids, position, id), insert(starts, position, start),
+                    insert(lengths, position, length), insert(lows, position, low), insert(highs, position, high(start, length)));
+        }
+
+        // null - день опустел, запись удаляется из карты
+        DaySchedule without(int id) {
+            int position = positionOf(id);
+            if (position < 0) {
+                return this;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            return new DaySchedule(delete(ids, position), delete(starts, position), delete(lengths, position),
+                    delete(lows, position), delete(highs, position));
+        }
+
+        private static int[] insert(int[] values, int position, int value) {
+            int[] result = Arrays.copyOf(values, values.length + 1);
+            System.arraycopy(values, position, result, position + 1, values.length - position);
+            result[position] = value;
+            return result;
+        }
+
+        private static int[] delete(int[] values, int position) {
+            int[] result = new int[values.length - 1];
+            System.arraycopy(values, 0, result, 0, position);
+            System.arraycopy(values, position + 1, result, position, values.length - position - 1);
+            return result;
+        }
+    }
+}
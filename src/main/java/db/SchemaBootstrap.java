@@ -0,0 +1,268 @@
+package db;
+
+import org.postgresql.core.Utils;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Версионная схема базы студии: таблица trainings с триггерами уведомлений, индексы, групповые роли
+// trainings_admin / trainings_guest и их права. Каждая версия применяется одним пакетом команд в своей
+// транзакции и записывается в schema_version; если база уже в последней версии, выполняется один запрос.
+// Сотрудники (createUsers) входят в групповые роли, поэтому отдельные GRANT для каждого не нужны
+final class SchemaBootstrap {
+    static final String ADMIN_ROLE = "trainings_admin";
+    static final String GUEST_ROLE = "trainings_guest";
+    static final int LATEST_VERSION = 3;
+
+    // Одновременные запуски для одной базы применяют версии по очереди
+    private static final long LOCK_KEY = 0x7472_6169_6e69_6e67L;
+
+    private static final String CREATE_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version ("
+            + "version INT PRIMARY KEY, "
+            + "description TEXT NOT NULL, "
+            + "applied_at TIMESTAMPTZ NOT NULL DEFAULT now())";
+
+    // Та же таблица, что в create_table; уже существующая таблица (созданная раньше create_table) остается как есть
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS trainings ("
+            + "class_id SERIAL PRIMARY KEY, "
+            + "title VARCHAR(255) NOT NULL, "
+            + "date DATE NOT NULL, "
+            + "start_time TIME NOT NULL, "
+            + "duration INTERVAL NOT NULL, "
+            + "max_participants INT CHECK (max_participants > 0), "
+            + "current_participants INT CHECK (current_participants >= 0), "
+            + "difficulty_level VARCHAR(20) CHECK (difficulty_level IN ('начальный', 'смешанный', 'продвинутый')), "
+            + "trainer_name VARCHAR(255) NOT NULL, "
+            + "price DECIMAL(10, 2))";
+
+    // Групповые роли общие для всего сервера: создаются, если их еще нет (в том числе одновременно из другой базы)
+    private static final String[] CREATE_GROUP_ROLES = {
+            "DO $$BEGIN CREATE ROLE " + ADMIN_ROLE + " NOLOGIN; "
+                    + "EXCEPTION WHEN duplicate_object OR unique_violation THEN NULL; END$$",
+            "DO $$BEGIN CREATE ROLE " + GUEST_ROLE + " NOLOGIN; "
+                    + "EXCEPTION WHEN duplicate_object OR unique_violation THEN NULL; END$$"
+    };
+
+    private record Migration(int version, String description, List<String> statements) {
+    }
+
+    private SchemaBootstrap() {
+    }
+
+    // partitioned - новая таблица создается с секциями по месяцам (как DBManager.createTable(..., true, ...));
+    // на уже существующую таблицу не влияет. Ошибка откатывает только версию, на которой она произошла
+    static BootstrapResult bootstrap(String dbName, boolean partitioned, String username, String password) {
+        List<Integer> applied = new ArrayList<>();
+        int version = 0;
+        try (Connection conn = connectOrCreate(dbName, username, password)) {
+            version = currentVersion(conn);
+            if (version >= LATEST_VERSION) {
+                return new BootstrapResult(0, version, applied, "Схема базы " + dbName + " уже в версии " + version + ".");
+            }
+            boolean createPartitioned = partitioned && version < 1 && !DirectAccess.tableExists(conn, dbName);
+            for (Migration migration : migrations(dbName, createPartitioned)) {
+                if (migration.version() > version && apply(conn, migration)) {
+                    applied.add(migration.version());
+                }
+                version = Math.max(version, migration.version());
+            }
+        } catch (SQLException e) {
+            return new BootstrapResult(-555, version, applied, "Ошибка при подготовке схемы базы " + dbName
+                    + " (версия " + (version + 1) + "): " + e.getMessage());
+        } finally {
+            DirectAccess.invalidateSchema(dbName);
+        }
+        return new BootstrapResult(0, version, applied, applied.isEmpty()
+                ? "Схема базы " + dbName + " уже в версии " + version + "."
+                : "Схема базы " + dbName + " обновлена до версии " + version + " (применены версии " + applied + ").");
+    }
+
+    private static List<Migration> migrations(String dbName, boolean partitioned) throws SQLException {
+        List<String> table = new ArrayList<>(partitioned ? List.of(PartitionMaintainer.CREATE_STATEMENTS) : List.of(CREATE_TABLE));
+        table.addAll(List.of(TrainingsCache.CREATE_TRIGGERS));
+
+        List<String> indexes = new ArrayList<>(List.of(DirectAccess.CREATE_INDEXES));
+        indexes.add("ANALYZE trainings");
+
+        // Те же права, что create_user выдает каждому пользователю, но один раз - групповым ролям
+        String database = Utils.escapeIdentifier(null, dbName).toString();
+        List<String> roles = new ArrayList<>(List.of(CREATE_GROUP_ROLES));
+        roles.add("GRANT ALL PRIVILEGES ON DATABASE " + database + " TO " + ADMIN_ROLE);
+        roles.add("GRANT ALL PRIVILEGES ON SCHEMA public TO " + ADMIN_ROLE);
+        roles.add("GRANT ALL PRIVILEGES ON ALL TABLES IN SCHEMA public TO " + ADMIN_ROLE);
+        roles.add("GRANT ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA public TO " + ADMIN_ROLE);
+        roles.add("ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT ALL PRIVILEGES ON TABLES TO " + ADMIN_ROLE);
+        roles.add("ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT ALL PRIVILEGES ON SEQUENCES TO " + ADMIN_ROLE);
+        roles.add("GRANT CONNECT ON DATABASE " + database + " TO " + GUEST_ROLE);
+        roles.add("GRANT USAGE ON SCHEMA public TO " + GUEST_ROLE);
+        roles.add("GRANT SELECT ON ALL TABLES IN SCHEMA public TO " + GUEST_ROLE);
+        roles.add("ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT SELECT ON TABLES TO " + GUEST_ROLE);
+
+        return List.of(
+                new Migration(1, partitioned ? "таблица trainings с секциями по месяцам" : "таблица trainings", table),
+                new Migration(2, "индексы поиска и выборки по условиям", indexes),
+                new Migration(3, "групповые роли " + ADMIN_ROLE + " и " + GUEST_ROLE, roles));
+    }
+
+    // Базы нет - она создается (CREATE DATABASE не выполняется в транзакции, поэтому отдельно от версий)
+    private static Connection connectOrCreate(String dbName, String username, String password) throws SQLException {
+        try {
+            return DBManager.getConnection(dbName, username, password);
+        } catch (SQLException e) {
+            if (!"3D000".equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+        try (Connection conn = DBManager.getConnection(username, password);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE DATABASE " + Utils.escapeIdentifier(null, dbName));
+        } catch (SQLException e) {
+            // База уже создана другим запуском
+            if (!"42P04".equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+        return DBManager.getConnection(dbName, username, password);
+    }
+
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT coalesce(max(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            if ("42P01".equals(e.getSQLState())) {
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    // Версия применяется под блокировкой после повторной проверки: ее мог уже применить другой запуск.
+    // Команды версии и запись о ней уходят на сервер одним пакетом
+    private static boolean apply(Connection conn, Migration migration) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")");
+            stmt.execute(CREATE_VERSION_TABLE);
+            if (currentVersion(conn) >= migration.version()) {
+                conn.rollback();
+                return false;
+            }
+            for (String sql : migration.statements()) {
+                stmt.addBatch(sql);
+            }
+            stmt.addBatch("INSERT INTO schema_version (version, description) VALUES (" + migration.version() + ", '"
+                    + Utils.escapeLiteral(null, migration.description(), true) + "')");
+            stmt.executeBatch();
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Все учетные записи - в одной транзакции базы trainings: одна проверка существующих ролей сервера,
+    // одна вставка в users и один пакет CREATE USER ... IN ROLE, сколько бы записей ни было.
+    // Коды по порядку записей, как у create_user: 1 - создан, -11 - неверная роль, -12 - роль с таким именем
+    // уже есть на сервере, -13 - пользователь уже есть в users (или повторяется в списке)
+    static int[] createUsers(List<UserAccount> accounts, String username, String password) throws SQLException {
+        int[] codes = new int[accounts.size()];
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            UserAccount account = accounts.get(i);
+            if (!"admin".equals(account.role()) && !"guest".equals(account.role())) {
+                codes[i] = -11;
+            } else if (pending.putIfAbsent(account.username(), i) != null) {
+                codes[i] = -13;
+            }
+        }
+        if (pending.isEmpty()) {
+            return codes;
+        }
+        try (Connection conn = DBManager.getConnection(username, password)) {
+            conn.setAutoCommit(false);
+            try {
+                Array names = conn.createArrayOf("text", pending.keySet().toArray());
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT rolname FROM pg_roles WHERE rolname = ANY(?)")) {
+                    stmt.setArray(1, names);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            codes[pending.remove(rs.getString(1))] = -12;
+                        }
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    Set<String> inserted = insertUsers(conn, accounts, pending);
+                    try (Statement stmt = conn.createStatement()) {
+                        for (String sql : CREATE_GROUP_ROLES) {
+                            stmt.addBatch(sql);
+                        }
+                        for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+                            UserAccount account = accounts.get(entry.getValue());
+                            if (!inserted.contains(entry.getKey())) {
+                                codes[entry.getValue()] = -13;
+                                continue;
+                            }
+                            codes[entry.getValue()] = 1;
+                            stmt.addBatch("CREATE USER " + Utils.escapeIdentifier(null, account.username())
+                                    + " WITH PASSWORD '" + Utils.escapeLiteral(null, account.password(), true) + "' IN ROLE "
+                                    + ("admin".equals(account.role()) ? ADMIN_ROLE : GUEST_ROLE));
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            for (UserAccount account : accounts) {
+                RoleCache.invalidate(account.username());
+            }
+        }
+        return codes;
+    }
+
+    // Одна вставка всех записей массивами; уже существующие пропускаются
+    private static Set<String> insertUsers(Connection conn, List<UserAccount> accounts, Map<String, Integer> pending)
+            throws SQLException {
+        List<String> names = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        List<String> roles = new ArrayList<>();
+        for (int index : pending.values()) {
+            UserAccount account = accounts.get(index);
+            names.add(account.username());
+            passwords.add(account.password());
+            roles.add(account.role());
+        }
+        Set<String> inserted = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO users (username, password, role) "
+                + "SELECT * FROM unnest(?::text[], ?::text[], ?::text[]) ON CONFLICT (username) DO NOTHING RETURNING username")) {
+            stmt.setArray(1, conn.createArrayOf("text", names.toArray()));
+            stmt.setArray(2, conn.createArrayOf("text", passwords.toArray()));
+            stmt.setArray(3, conn.createArrayOf("text", roles.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    inserted.add(rs.getString(1));
+                }
+            }
+        }
+        return inserted;
+    }
+}
@@ -0,0 +1,19 @@
+package db;
+
+import java.util.List;
+
+// Результат запроса к одной студии (базе данных tenant): status 1 - успех, -2 нет базы, -1 нет таблицы,
+// -16 истекло время ожидания, -555 ошибка SQL (текст в message)
+public record TenantResult(String tenant, int status, List<Training> trainings, String message) {
+    static TenantResult ok(String tenant, List<Training> trainings) {
+        return new TenantResult(tenant, 1, trainings, null);
+    }
+
+    static TenantResult failed(String tenant, int status, String message) {
+        return new TenantResult(tenant, status, List.of(), message);
+    }
+
+    public boolean isOk() {
+        return status > 0;
+    }
+}
@@ -0,0 +1,129 @@
+package db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Маршрутизация по студиям: у каждой студии своя база данных (tenant), список задается -Ddb.tenants через
+// запятую (по умолчанию training_schedule). Пул соединений для каждой базы создает ConnectionPool (ключ - адрес базы).
+// Запросы ко всем студиям сразу выполняются параллельно в ограниченном пуле потоков (-Ddb.tenants.threads),
+// результат каждой студии передается по мере готовности. Студия, не ответившая за -Ddb.tenants.timeoutMillis
+// (отсчет от начала запроса), получает код -16 и не задерживает остальные; ее запрос отменяется сервером
+public final class TenantRouter {
+    private static final List<String> TENANTS = parseTenants(System.getProperty("db.tenants", "training_schedule"));
+    private static final long TIMEOUT_MILLIS = Long.getLong("db.tenants.timeoutMillis", 5_000);
+    private static final int THREADS = Integer.getInteger("db.tenants.threads", 8);
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread thread = new Thread(r, "db-tenant");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private TenantRouter() {
+    }
+
+    private static List<String> parseTenants(String value) {
+        Set<String> tenants = new LinkedHashSet<>();
+        for (String tenant : value.split(",")) {
+            if (!tenant.isBlank()) {
+                tenants.add(tenant.trim());
+            }
+        }
+        if (tenants.isEmpty()) {
+            tenants.add("training_schedule");
+        }
+        return List.copyOf(tenants);
+    }
+
+    public static List<String> tenants() {
+        return TENANTS;
+    }
+
+    // База данных, с которой работает приложение, пока студия не выбрана
+    public static String defaultTenant() {
+        return TENANTS.get(0);
+    }
+
+    // Выборка по условиям query во всех студиях
+    public static CompletableFuture<List<TenantResult>> findTrainings(TrainingQuery query, String username, String password,
+                                                                      Consumer<TenantResult> onResult) {
+        return findTrainings(TENANTS, query, username, password, onResult);
+    }
+
+    // Выборка по условиям query в каждой из tenants. onResult вызывается для каждой студии сразу по ее завершении
+    // (в фоновом потоке, порядок - по готовности); итоговый список - в порядке tenants. Отмена итогового
+    // результата снимает запросы студий, которые еще не начали выполняться
+    public static CompletableFuture<List<TenantResult>> findTrainings(List<String> tenants, TrainingQuery query, String username,
+                                                                      String password, Consumer<TenantResult> onResult) {
+        long started = Metrics.start();
+        // sources - результаты, которые проверяют задачи пула (отмена доходит до них), parts - с вызовом onResult
+        List<CompletableFuture<TenantResult>> sources = new ArrayList<>(tenants.size());
+        List<CompletableFuture<TenantResult>> parts = new ArrayList<>(tenants.size());
+        for (String tenant : tenants) {
+            CompletableFuture<TenantResult> part = new CompletableFuture<>();
+            sources.add(part);
+            EXECUTOR.execute(() -> {
+                if (!part.isDone()) {
+                    part.complete(findInTenant(tenant, query, username, password));
+                }
+            });
+            part.completeOnTimeout(TenantResult.failed(tenant, -16, "истекло время ожидания (" + TIMEOUT_MILLIS + " мс)"),
+                    TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            parts.add(part.thenApply(result -> {
+                onResult.accept(result);
+                return result;
+            }));
+        }
+        CompletableFuture<List<TenantResult>> all = CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<TenantResult> results = new ArrayList<>(parts.size());
+                    int status = 1;
+                    int rows = 0;
+                    for (CompletableFuture<TenantResult> part : parts) {
+                        TenantResult result = part.join();
+                        results.add(result);
+                        rows += result.trainings().size();
+                        if (status > 0 && !result.isOk()) {
+                            status = result.status();
+                        }
+                    }
+                    Metrics.record(Metrics.Operation.FIND_TRAININGS_IN_TENANTS, started, status, rows);
+                    return results;
+                });
+        all.whenComplete((results, error) -> {
+            if (all.isCancelled()) {
+                for (CompletableFuture<TenantResult> part : sources) {
+                    part.cancel(false);
+                }
+            }
+        });
+        return all;
+    }
+
+    // Запрос к одной студии; ошибки переводятся в код результата, чтобы сбой одной студии не прерывал остальные
+    private static TenantResult findInTenant(String tenant, TrainingQuery query, String username, String password) {
+        int timeoutSeconds = (int) Math.max(1, (TIMEOUT_MILLIS + 999) / 1000);
+        try {
+            return TenantResult.ok(tenant, DirectAccess.findTrainings(tenant, query, timeoutSeconds, username, password));
+        } catch (SQLException e) {
+            if ("57014".equals(e.getSQLState())) {
+                return TenantResult.failed(tenant, -16, e.getMessage());
+            }
+            try {
+                int code = DirectAccess.schemaErrorCode(tenant, e);
+                return TenantResult.failed(tenant, code, code == -2 ? "база данных " + tenant + " не существует"
+                        : "таблица trainings не существует");
+            } catch (SQLException other) {
+                System.out.println("Ошибка при выборке тренировок (" + tenant + "): " + other.getMessage());
+                return TenantResult.failed(tenant, -555, other.getMessage());
+            }
+        }
+    }
+}
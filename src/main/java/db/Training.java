@@ -0,0 +1,15 @@
+package db;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Строка таблицы trainings. Необязательные числовые поля без значения хранятся как NOT_SET,
+// строки и цена - как null; в текст значения превращаются только при отрисовке таблицы.
+public record Training(int id, String title, LocalDate date, LocalTime startTime, Duration duration,
+                       int maxParticipants, int currentParticipants, String difficultyLevel,
+                       String trainerName, BigDecimal price) {
+    // Значение для пустых max_participants / current_participants (в таблице они не бывают отрицательными)
+    public static final int NOT_SET = -1;
+}
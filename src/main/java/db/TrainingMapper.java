@@ -0,0 +1,149 @@
+package db;
+
+import org.postgresql.util.PGInterval;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Преобразование строк ResultSet в Training. Индексы столбцов ищутся по именам один раз на ResultSet,
+// дальше значения читаются по индексу; дата, время и интервал разбираются из текста без форматирования.
+public final class TrainingMapper {
+    private final int id;
+    private final int title;
+    private final int date;
+    private final int startTime;
+    private final int duration;
+    private final int maxParticipants;
+    private final int currentParticipants;
+    private final int difficultyLevel;
+    private final int trainerName;
+    private final int price;
+
+    public TrainingMapper(ResultSet rs) throws SQLException {
+        Metrics.mappingStarted();
+        id = rs.findColumn("id");
+        title = rs.findColumn("title");
+        date = rs.findColumn("date");
+        startTime = rs.findColumn("start_time");
+        duration = rs.findColumn("duration");
+        maxParticipants = rs.findColumn("max_participants");
+        currentParticipants = rs.findColumn("current_participants");
+        difficultyLevel = rs.findColumn("difficulty_level");
+        trainerName = rs.findColumn("trainer_name");
+        price = rs.findColumn("price");
+    }
+
+    public Training map(ResultSet rs) throws SQLException {
+        return new Training(
+                rs.getInt(id),
+                rs.getString(title),
+                parseDate(rs.getString(date)),
+                parseTime(rs.getString(startTime)),
+                parseInterval(rs.getString(duration)),
+                getIntOrNotSet(rs, maxParticipants),
+                getIntOrNotSet(rs, currentParticipants),
+                rs.getString(difficultyLevel),
+                rs.getString(trainerName),
+                rs.getBigDecimal(price));
+    }
+
+    // wasNull() относится к последнему прочитанному столбцу, поэтому проверяется сразу после getInt
+    private static int getIntOrNotSet(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? Training.NOT_SET : value;
+    }
+
+    // Дата в формате ISO ("гггг-мм-дд"); getObject(LocalDate) драйвера разбирает строку заметно дороже
+    static LocalDate parseDate(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+            long year = parseDigits(text, 0, 4);
+            long month = parseDigits(text, 5, 7);
+            long day = parseDigits(text, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of((int) year, (int) month, (int) day);
+            }
+        }
+        return LocalDate.parse(text);
+    }
+
+    // Время "чч:мм:сс" (дробная часть секунд - через LocalTime.parse)
+    static LocalTime parseTime(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (text.length() == 8 && text.charAt(2) == ':' && text.charAt(5) == ':') {
+            long hours = parseDigits(text, 0, 2);
+            long minutes = parseDigits(text, 3, 5);
+            long seconds = parseDigits(text, 6, 8);
+            if (hours >= 0 && minutes >= 0 && seconds >= 0) {
+                return LocalTime.of((int) hours, (int) minutes, (int) seconds);
+            }
+        }
+        return LocalTime.parse(text);
+    }
+
+    // Интервал в формате PostgreSQL по умолчанию: "[N day[s] ]HH:MM:SS[.ffffff]".
+    // Частый случай разбирается вручную, остальные форматы (месяцы, годы, отрицательные) - через PGInterval.
+    static Duration parseInterval(String text) throws SQLException {
+        if (text == null) {
+            return null;
+        }
+        int length = text.length();
+        if (length >= 8 && text.charAt(length - 3) == ':' && text.charAt(length - 6) == ':' && text.indexOf('-') < 0
+                && text.indexOf('.') < 0) {
+            int timeStart = length - 8;
+            long days = 0;
+            if (timeStart > 0) {
+                int space = text.indexOf(' ');
+                if (space <= 0 || !text.startsWith("day", space + 1)) {
+                    return parseWithDriver(text);
+                }
+                days = parseDigits(text, 0, space);
+                if (days < 0) {
+                    return parseWithDriver(text);
+                }
+            }
+            long hours = parseDigits(text, timeStart, timeStart + 2);
+            long minutes = parseDigits(text, timeStart + 3, timeStart + 5);
+            long seconds = parseDigits(text, timeStart + 6, length);
+            if (hours >= 0 && minutes >= 0 && seconds >= 0) {
+                return Duration.ofSeconds(((days * 24 + hours) * 60 + minutes) * 60 + seconds);
+            }
+        }
+        return parseWithDriver(text);
+    }
+
+    // Неотрицательное число из символов [from, to) или -1, если там не только цифры
+    private static long parseDigits(String text, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Месяц считается равным 30 дням, год - 365 дням (как в justify_interval)
+    private static Duration parseWithDriver(String text) throws SQLException {
+        PGInterval interval = new PGInterval(text);
+        long days = interval.getYears() * 365L + interval.getMonths() * 30L + interval.getDays();
+        long wholeSeconds = (long) interval.getSeconds();
+        return Duration.ofDays(days)
+                .plusHours(interval.getHours())
+                .plusMinutes(interval.getMinutes())
+                .plusSeconds(wholeSeconds)
+                .plusNanos(Math.round((interval.getSeconds() - wholeSeconds) * 1_000_000_000L));
+    }
+}
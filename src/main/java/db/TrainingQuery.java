@@ -0,0 +1,187 @@
+package db;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Выборка тренировок по нескольким условиям, например:
+//   new TrainingQuery().dateBetween(monday, sunday).difficulty("смешанный").maxPrice(price).withFreeSpots().limit(50)
+// Условия объединяются через AND и передаются в базу одним параметризованным запросом (DBManager.findTrainings).
+// Неуказанные условия не ограничивают выборку; границы диапазонов включаются.
+public class TrainingQuery {
+    // Порядок строк; class_id в конце делает порядок однозначным
+    public enum Order {
+        DATE("date, start_time, class_id"),
+        DATE_DESC("date DESC, start_time DESC, class_id DESC"),
+        PRICE("price, date, start_time, class_id"),
+        PRICE_DESC("price DESC, date, start_time, class_id"),
+        ID("class_id");
+
+        private final String sql;
+
+        Order(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private LocalDate dateFrom;
+    private LocalDate dateTo;
+    private LocalTime startTimeFrom;
+    private LocalTime startTimeTo;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private final Set<String> difficultyLevels = new LinkedHashSet<>();
+    private String trainerName;
+    private boolean freeSpotsOnly;
+    private Order order = Order.DATE;
+    private int limit;
+
+    public TrainingQuery dateFrom(LocalDate from) {
+        dateFrom = from;
+        return this;
+    }
+
+    public TrainingQuery dateTo(LocalDate to) {
+        dateTo = to;
+        return this;
+    }
+
+    public TrainingQuery dateBetween(LocalDate from, LocalDate to) {
+        return dateFrom(from).dateTo(to);
+    }
+
+    // Время начала занятия в пределах дня (например, только вечерние занятия)
+    public TrainingQuery startTimeBetween(LocalTime from, LocalTime to) {
+        startTimeFrom = from;
+        startTimeTo = to;
+        return this;
+    }
+
+    public TrainingQuery minPrice(BigDecimal price) {
+        minPrice = price;
+        return this;
+    }
+
+    public TrainingQuery maxPrice(BigDecimal price) {
+        maxPrice = price;
+        return this;
+    }
+
+    // Любой из перечисленных уровней; повторный вызов добавляет уровни к уже выбранным
+    public TrainingQuery difficulty(String... levels) {
+        for (String level : levels) {
+            difficultyLevels.add(level);
+        }
+        return this;
+    }
+
+    public TrainingQuery trainer(String name) {
+        trainerName = name;
+        return this;
+    }
+
+    // Только занятия со свободными местами (current_participants < max_participants)
+    public TrainingQuery withFreeSpots() {
+        freeSpotsOnly = true;
+        return this;
+    }
+
+    public TrainingQuery orderBy(Order order) {
+        this.order = order;
+        return this;
+    }
+
+    // limit <= 0 - без ограничения
+    public TrainingQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    // Текст запроса: в него попадают только заданные условия, значения передаются параметрами в bind.
+    // Оба метода открыты для выполнения запроса на своем соединении (например, EXPLAIN в бенчмарках).
+    // Условия повторяют столбцы индексов из create_table: (date, start_time), (trainer_name, date, start_time),
+    // (difficulty_level, date, start_time), (price) и частичный индекс по свободным местам
+    public String toSql() {
+        List<String> conditions = new ArrayList<>();
+        if (dateFrom != null) {
+            conditions.add("date >= ?");
+        }
+        if (dateTo != null) {
+            conditions.add("date <= ?");
+        }
+        if (startTimeFrom != null) {
+            conditions.add("start_time >= ?");
+        }
+        if (startTimeTo != null) {
+            conditions.add("start_time <= ?");
+        }
+        if (minPrice != null) {
+            conditions.add("price >= ?");
+        }
+        if (maxPrice != null) {
+            conditions.add("price <= ?");
+        }
+        if (!difficultyLevels.isEmpty()) {
+            conditions.add("difficulty_level IN (" + String.join(", ", Collections.nCopies(difficultyLevels.size(), "?")) + ")");
+        }
+        if (trainerName != null) {
+            conditions.add("trainer_name = ?");
+        }
+        if (freeSpotsOnly) {
+            conditions.add("current_participants < max_participants");
+        }
+
+        StringBuilder sql = new StringBuilder(DirectAccess.SELECT_TRAININGS);
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY ").append(order.sql);
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        return sql.toString();
+    }
+
+    // Значения параметров в том же порядке, что и условия в toSql
+    public void bind(PreparedStatement stmt) throws SQLException {
+        bind(stmt, 1);
+    }
+
+    // То же, начиная с параметра index (запрос в пакете из нескольких); возвращает номер следующего параметра
+    int bind(PreparedStatement stmt, int index) throws SQLException {
+        if (dateFrom != null) {
+            stmt.setDate(index++, Date.valueOf(dateFrom));
+        }
+        if (dateTo != null) {
+            stmt.setDate(index++, Date.valueOf(dateTo));
+        }
+        if (startTimeFrom != null) {
+            stmt.setTime(index++, Time.valueOf(startTimeFrom));
+        }
+        if (startTimeTo != null) {
+            stmt.setTime(index++, Time.valueOf(startTimeTo));
+        }
+        if (minPrice != null) {
+            stmt.setBigDecimal(index++, minPrice);
+        }
+        if (maxPrice != null) {
+            stmt.setBigDecimal(index++, maxPrice);
+        }
+        for (String level : difficultyLevels) {
+            stmt.setString(index++, level);
+        }
+        if (trainerName != null) {
+            stmt.setString(index++, trainerName);
+        }
+        return index;
+    }
+}
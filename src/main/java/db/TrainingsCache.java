@@ -0,0 +1,496 @@
+package db;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Кэш таблицы trainings на стороне клиента: заполняется один раз, дальше обновляется по изменениям.
+// Изменения приходят уведомлениями LISTEN/NOTIFY от триггеров на таблице (createTriggers) - перечитываются
+// только измененные строки. Если триггеров нет или соединение для уведомлений потеряно, кэш раз в
+// -Ddb.cache.pollMillis опрашивает счетчики изменений таблицы (pg_stat_user_tables) и при их изменении
+// перечитывает таблицу. Подписчики (addListener) получают только разницу со старым содержимым.
+public class TrainingsCache implements AutoCloseable {
+    static final String CHANNEL = "trainings_changes";
+    private static final long POLL_MILLIS = Long.getLong("db.cache.pollMillis", 5_000);
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    private static final Comparator<Training> BY_SCHEDULE = Comparator.comparing(Training::date)
+            .thenComparing(Training::startTime).thenComparingInt(Training::id);
+
+    // Триггеры уровня оператора: одно уведомление на каждые 500 измененных строк ("INSERT:1,2,3"),
+    // поэтому массовая загрузка не порождает уведомление на каждую строку. class_id не изменяется,
+    // поэтому для UPDATE достаточно новых значений строк
+    static final String[] CREATE_TRIGGERS = {
+            "CREATE OR REPLACE FUNCTION notify_trainings_change() RETURNS trigger AS $fn$\n"
+                    + "DECLARE\n"
+                    + "    ids text;\n"
+                    + "BEGIN\n"
+                    + "    IF TG_OP = 'TRUNCATE' THEN\n"
+                    + "        PERFORM pg_notify('" + CHANNEL + "', 'TRUNCATE');\n"
+                    + "        RETURN NULL;\n"
+                    + "    END IF;\n"
+                    + "    FOR ids IN SELECT string_agg(class_id::text, ',') FROM (\n"
+                    + "            SELECT class_id, (row_number() OVER () - 1) / 500 AS chunk FROM changed_rows) numbered\n"
+                    + "        GROUP BY chunk\n"
+                    + "    LOOP\n"
+                    + "        PERFORM pg_notify('" + CHANNEL + "', TG_OP || ':' || ids);\n"
+                    + "    END LOOP;\n"
+                    + "    RETURN NULL;\n"
+                    + "END;\n"
+                    + "$fn$ LANGUAGE plpgsql",
+            "DROP TRIGGER IF EXISTS trainings_insert_notify ON trainings",
+            "CREATE TRIGGER trainings_insert_notify AFTER INSERT ON trainings REFERENCING NEW TABLE AS changed_rows "
+                    + "FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change()",
+            "DROP TRIGGER IF EXISTS trainings_update_notify ON trainings",
+            "CREATE TRIGGER trainings_update_notify AFTER UPDATE ON trainings REFERENCING NEW TABLE AS changed_rows "
+                    + "FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change()",
+            "DROP TRIGGER IF EXISTS trainings_delete_notify ON trainings",
+            "CREATE TRIGGER trainings_delete_notify AFTER DELETE ON trainings REFERENCING OLD TABLE AS changed_rows "
+                    + "FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change()",
+            "DROP TRIGGER IF EXISTS trainings_truncate_notify ON trainings",
+            "CREATE TRIGGER trainings_truncate_notify AFTER TRUNCATE ON trainings "
+                    + "FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change()"
+    };
+
+    private final String dbName;
+    private final String username;
+    private final String password;
+
+    // Чтение по id без блокировки; изменения и вторичные представления - под блокировкой this
+    private final Map<Integer, Training> byId = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> idsByTrainer = new HashMap<>();
+    private final Map<LocalDate, Set<Integer>> idsByDate = new HashMap<>();
+    private final List<Consumer<Delta>> listeners = new CopyOnWriteArrayList<>();
+    private final Object pollSignal = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder appliedChanges = new LongAdder();
+    private final LongAdder fullReloads = new LongAdder();
+
+    private Connection changesConnection;
+    private String statsFingerprint;
+    private volatile boolean loaded;
+    private volatile boolean listening;
+    private volatile boolean closed;
+    private volatile boolean syncRequested;
+    private volatile long lastSyncMillis;
+    private Thread worker;
+
+    public TrainingsCache(String dbName, String username, String password) {
+        this.dbName = dbName;
+        this.username = username;
+        this.password = password;
+    }
+
+    // Изменения в кэше: новые и измененные строки, удаленные id; reloaded - кэш перечитан целиком
+    public record Delta(List<Training> upserted, Set<Integer> removed, boolean reloaded) {
+        public boolean isEmpty() {
+            return upserted.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    public record Stats(long hits, long misses, long notifications, long appliedChanges, long fullReloads,
+                        boolean listening, long stalenessMillis, int size) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRatio=%.2f notifications=%d appliedChanges=%d fullReloads=%d "
+                            + "mode=%s stalenessMs=%d size=%d", hits, misses, hitRatio(), notifications, appliedChanges,
+                    fullReloads, listening ? "listen" : "poll", stalenessMillis, size);
+        }
+    }
+
+    // Запуск фонового потока, который получает изменения; первое заполнение выполняется в нем же
+    public synchronized void start() {
+        if (worker != null || closed) {
+            return;
+        }
+        worker = new Thread(this::run, "trainings-cache-" + dbName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void addListener(Consumer<Delta> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Delta> listener) {
+        listeners.remove(listener);
+    }
+
+    // Тренировка по id; null, если такой нет
+    public Training get(int id) throws SQLException {
+        ensureLoaded();
+        return byId.get(id);
+    }
+
+    // Все тренировки по возрастанию id
+    public List<Training> getAll() throws SQLException {
+        ensureLoaded();
+        List<Training> result = new ArrayList<>(byId.values());
+        result.sort(Comparator.comparingInt(Training::id));
+        return result;
+    }
+
+    // Занятия тренера по дате и времени начала
+    public List<Training> getByTrainer(String trainerName) throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return collect(idsByTrainer.get(trainerName));
+        }
+    }
+
+    // Занятия за день по времени начала
+    public List<Training> getByDate(LocalDate date) throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return collect(idsByDate.get(date));
+        }
+    }
+
+    // Проверка изменений без ожидания очередного опроса (например, сразу после своего изменения)
+    public void syncNow() {
+        syncRequested = true;
+        synchronized (pollSignal) {
+            pollSignal.notifyAll();
+        }
+    }
+
+    public Stats stats() {
+        long staleness = lastSyncMillis == 0 ? -1 : System.currentTimeMillis() - lastSyncMillis;
+        return new Stats(hits.sum(), misses.sum(), notifications.sum(), appliedChanges.sum(), fullReloads.sum(),
+                listening, staleness, byId.size());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread current;
+        synchronized (this) {
+            current = worker;
+            closeChangesConnection();
+        }
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    // Создание триггеров, рассылающих уведомления об изменениях таблицы (их создает и create_table)
+    static void createTriggers(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : CREATE_TRIGGERS) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    // Попадание - кэш уже заполнен; промах - чтение ждет первого заполнения из базы
+    private void ensureLoaded() throws SQLException {
+        if (loaded) {
+            hits.increment();
+            return;
+        }
+        misses.increment();
+        connect();
+        start();
+    }
+
+    // Соединение для уведомлений: сначала LISTEN, затем чтение таблицы, чтобы не пропустить изменения между ними
+    private synchronized void connect() throws SQLException {
+        if (changesConnection != null || closed) {
+            return;
+        }
+        Connection conn = DBManager.openConnection(dbName, username, password);
+        try {
+            listening = triggersInstalled(conn);
+            if (listening) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+            }
+            statsFingerprint = readStatsFingerprint(conn);
+            reload(conn);
+        } catch (SQLException e) {
+            conn.close();
+            listening = false;
+            throw e;
+        }
+        changesConnection = conn;
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                connect();
+                if (listening) {
+                    waitForNotifications();
+                } else {
+                    pollStatistics();
+                }
+                lastSyncMillis = System.currentTimeMillis();
+            } catch (SQLException e) {
+                if (closed) {
+                    return;
+                }
+                // Соединение потеряно: после переподключения таблица перечитывается, пропущенные изменения не теряются
+                System.out.println("Кэш тренировок: ошибка получения изменений: " + e.getMessage());
+                synchronized (this) {
+                    closeChangesConnection();
+                }
+                if (!pause()) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void waitForNotifications() throws SQLException {
+        Connection conn = changesConnection;
+        if (conn == null) {
+            return;
+        }
+        // Ожидание до POLL_MILLIS; за один раз забираются все накопившиеся уведомления
+        PGNotification[] received = conn.unwrap(PGConnection.class).getNotifications((int) POLL_MILLIS);
+        syncRequested = false;
+        if (received == null || received.length == 0) {
+            return;
+        }
+        notifications.add(received.length);
+        Set<Integer> changed = new LinkedHashSet<>();
+        Set<Integer> deleted = new HashSet<>();
+        for (PGNotification notification : received) {
+            String payload = notification.getParameter();
+            if (payload.equals("TRUNCATE")) {
+                changed.clear();
+                deleted.clear();
+                reload(conn);
+                continue;
+            }
+            int separator = payload.indexOf(':');
+            boolean delete = payload.startsWith("DELETE");
+            for (String id : payload.substring(separator + 1).split(",")) {
+                Integer classId = Integer.valueOf(id);
+                if (delete) {
+                    changed.remove(classId);
+                    deleted.add(classId);
+                } else {
+                    deleted.remove(classId);
+                    changed.add(classId);
+                }
+            }
+        }
+        applyChanges(conn, changed, deleted);
+    }
+
+    private void pollStatistics() throws SQLException, InterruptedException {
+        synchronized (pollSignal) {
+            if (!syncRequested) {
+                pollSignal.wait(POLL_MILLIS);
+            }
+        }
+        syncRequested = false;
+        Connection conn = changesConnection;
+        if (conn == null) {
+            return;
+        }
+        String fingerprint = readStatsFingerprint(conn);
+        if (!fingerprint.equals(statsFingerprint)) {
+            statsFingerprint = fingerprint;
+            reload(conn);
+        }
+    }
+
+    // Перечитывание измененных строк одним запросом; строки, которых уже нет, удаляются из кэша
+    private void applyChanges(Connection conn, Set<Integer> changed, Set<Integer> deleted) throws SQLException {
+        List<Training> upserted = new ArrayList<>(changed.size());
+        if (!changed.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(DirectAccess.SELECT_TRAININGS + " WHERE class_id = ANY(?)")) {
+                Array ids = conn.createArrayOf("integer", changed.toArray());
+                stmt.setArray(1, ids);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    TrainingMapper mapper = new TrainingMapper(rs);
+                    while (rs.next()) {
+                        Training training = mapper.map(rs);
+                        upserted.add(training);
+                        changed.remove(training.id());
+                    }
+                }
+            }
+            deleted.addAll(changed);
+        }
+        Set<Integer> removed = new HashSet<>();
+        synchronized (this) {
+            for (Training training : upserted) {
+                put(training);
+            }
+            for (Integer id : deleted) {
+                if (remove(id)) {
+                    removed.add(id);
+                }
+            }
+        }
+        appliedChanges.add(upserted.size() + removed.size());
+        publish(new Delta(upserted, removed, false));
+    }
+
+    // Полное перечитывание таблицы; подписчикам передается только разница со старым содержимым
+    private void reload(Connection conn) throws SQLException {
+        Map<Integer, Training> fresh = new HashMap<>();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false); // fetchSize работает только внутри транзакции
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(LOAD_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(DirectAccess.SELECT_TRAININGS)) {
+                TrainingMapper mapper = new TrainingMapper(rs);
+                while (rs.next()) {
+                    Training training = mapper.map(rs);
+                    fresh.put(training.id(), training);
+                }
+            }
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        List<Training> upserted = new ArrayList<>();
+        Set<Integer> removed = new HashSet<>();
+        synchronized (this) {
+            for (Training training : fresh.values()) {
+                if (!training.equals(byId.get(training.id()))) {
+                    put(training);
+                    upserted.add(training);
+                }
+            }
+            for (Integer id : new ArrayList<>(byId.keySet())) {
+                if (!fresh.containsKey(id)) {
+                    remove(id);
+                    removed.add(id);
+                }
+            }
+            loaded = true;
+        }
+        fullReloads.increment();
+        lastSyncMillis = System.currentTimeMillis();
+        publish(new Delta(upserted, removed, true));
+    }
+
+    private void put(Training training) {
+        Training previous = byId.put(training.id(), training);
+        if (previous != null) {
+            unindex(previous);
+        }
+        idsByTrainer.computeIfAbsent(training.trainerName(), k -> new HashSet<>()).add(training.id());
+        idsByDate.computeIfAbsent(training.date(), k -> new HashSet<>()).add(training.id());
+    }
+
+    private boolean remove(Integer id) {
+        Training previous = byId.remove(id);
+        if (previous == null) {
+            return false;
+        }
+        unindex(previous);
+        return true;
+    }
+
+    private void unindex(Training training) {
+        removeId(idsByTrainer, training.trainerName(), training.id());
+        removeId(idsByDate, training.date(), training.id());
+    }
+
+    private static <K> void removeId(Map<K, Set<Integer>> view, K key, int id) {
+        Set<Integer> ids = view.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            view.remove(key);
+        }
+    }
+
+    private List<Training> collect(Collection<Integer> ids) {
+        List<Training> result = new ArrayList<>();
+        if (ids != null) {
+            for (Integer id : ids) {
+                result.add(byId.get(id));
+            }
+        }
+        result.sort(BY_SCHEDULE);
+        return result;
+    }
+
+    private void publish(Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        for (Consumer<Delta> listener : listeners) {
+            listener.accept(delta);
+        }
+    }
+
+    private static boolean triggersInstalled(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM pg_trigger WHERE tgrelid = 'trainings'::regclass "
+                     + "AND tgname LIKE 'trainings\\_%\\_notify'")) {
+            rs.next();
+            return rs.getInt(1) == 4;
+        }
+    }
+
+    // Счетчики вставок, изменений и удалений строк таблицы: изменились - значит, изменилась и таблица.
+    // У таблицы с секциями строки хранятся в секциях, поэтому счетчики суммируются вместе с их числом
+    private static String readStatsFingerprint(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT sum(n_tup_ins), sum(n_tup_upd), sum(n_tup_del), sum(n_live_tup), count(*) "
+                     + "FROM pg_stat_user_tables WHERE relid = 'trainings'::regclass "
+                     + "OR relid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = 'trainings'::regclass)")) {
+            return rs.next() ? rs.getLong(1) + "/" + rs.getLong(2) + "/" + rs.getLong(3) + "/" + rs.getLong(4)
+                    + "/" + rs.getLong(5) : "";
+        }
+    }
+
+    private void closeChangesConnection() {
+        if (changesConnection != null) {
+            try {
+                changesConnection.close();
+            } catch (SQLException ignored) {
+                // Соединение уже недоступно
+            }
+            changesConnection = null;
+        }
+    }
+
+    // Пауза перед переподключением; false - кэш закрыт
+    private boolean pause() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+            return !closed;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
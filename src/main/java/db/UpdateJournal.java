@@ -0,0 +1,149 @@
+package db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Журнал очереди WriteBehindQueue в файле, отображенном в память. Изменение дописывается в журнал до возврата
+// из вызова: страницы остаются в кэше ОС и после аварийного завершения клиента; sync() сбрасывает их на диск -
+// тогда журнал переживает и сбой системы.
+// Формат: заголовок [метка][позиция первого не записанного в базу изменения], затем записи
+// [длина][CRC32][class_id][номер поля][значение UTF-8]; после последней записи - длина 0
+final class UpdateJournal implements AutoCloseable {
+    private static final int MAGIC = 0x54574231;
+    private static final int CHECKPOINT = 4;
+    private static final int HEADER = 8;
+    // Длина, CRC32 и метка конца после записи; class_id и номер поля
+    private static final int RECORD_OVERHEAD = 12;
+    private static final int ENTRY_FIELDS = 5;
+
+    // Изменение из журнала
+    interface Entry {
+        void accept(int id, int field, String value);
+    }
+
+    // Изменения, еще не записанные в базу, для сжатия журнала
+    interface Entries {
+        void forEach(Entry entry);
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private int position = HEADER;
+
+    UpdateJournal(Path file, int capacity) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(HEADER, 0);
+            buffer.putInt(CHECKPOINT, HEADER);
+            buffer.putInt(0, MAGIC);
+        }
+    }
+
+    // Изменения, не записанные в базу, по порядку; новые записи дописываются после них.
+    // Недописанная при сбое запись (неверная длина или CRC) считается концом журнала
+    void replay(Entry entry) {
+        int pos = buffer.getInt(CHECKPOINT);
+        if (pos < HEADER || pos > buffer.capacity() - 4) {
+            pos = HEADER;
+        }
+        while (pos + RECORD_OVERHEAD <= buffer.capacity()) {
+            int length = buffer.getInt(pos);
+            if (length < ENTRY_FIELDS || pos + RECORD_OVERHEAD + length > buffer.capacity()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(pos + 8, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                break;
+            }
+            int id = buffer.getInt(pos + 8);
+            int field = buffer.get(pos + 12);
+            entry.accept(id, field, new String(payload, ENTRY_FIELDS, length - ENTRY_FIELDS, StandardCharsets.UTF_8));
+            pos += 8 + length;
+        }
+        position = pos;
+        buffer.putInt(position, 0);
+    }
+
+    // false - запись не помещается в журнал
+    boolean append(int id, int field, String value) {
+        int next = write(position, buffer.capacity(), id, field, value);
+        if (next < 0) {
+            return false;
+        }
+        position = next;
+        return true;
+    }
+
+    // Запись с позиции pos и метка конца после нее, не дальше limit; позиция следующей записи или -1, если
+    // запись не помещается. Длина пишется последней: до этого запись не видна при чтении журнала
+    private int write(int pos, int limit, int id, int field, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = ENTRY_FIELDS + bytes.length;
+        if ((long) pos + RECORD_OVERHEAD + length > limit) {
+            return -1;
+        }
+        byte[] payload = ByteBuffer.allocate(length).putInt(id).put((byte) field).put(bytes).array();
+        buffer.put(pos + 8, payload);
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(pos + 4, (int) crc.getValue());
+        buffer.putInt(pos + 8 + length, 0);
+        buffer.putInt(pos, length);
+        return pos + 8 + length;
+    }
+
+    int position() {
+        return position;
+    }
+
+    // Изменения до pos записаны в базу
+    void checkpoint(int pos) {
+        buffer.putInt(CHECKPOINT, pos);
+    }
+
+    // Сжатие после checkpoint: изменения, еще не записанные в базу, переписываются в начало журнала - на место
+    // уже записанных, до позиции checkpoint (если их нет, журнал просто пишется с начала). Сначала записи и метка
+    // конца, позиция переносится в начало последней: при сбое до этого журнал читается с прежней позиции, где те же
+    // изменения не тронуты. false - изменения туда не помещаются
+    boolean compact(Entries pending) {
+        int limit = buffer.getInt(CHECKPOINT);
+        if (limit < HEADER + 4) {
+            return false;
+        }
+        int[] next = {HEADER};
+        buffer.putInt(HEADER, 0);
+        pending.forEach((id, field, value) -> {
+            if (next[0] >= 0) {
+                next[0] = write(next[0], limit, id, field, value);
+            }
+        });
+        if (next[0] < 0) {
+            return false;
+        }
+        buffer.putInt(CHECKPOINT, HEADER);
+        position = next[0];
+        return true;
+    }
+
+    void sync() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,5 @@
+package db;
+
+// Учетная запись для DBManager.createUsers: role - "admin" или "guest"
+public record UserAccount(String username, String password, String role) {
+}
@@ -0,0 +1,334 @@
+package db;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Отложенная запись изменений полей (-Ddb.writeBehind=true): DBManager.updateTrainingByField ставит изменение
+// в очередь и сразу возвращается. Изменения одного поля одной тренировки схлопываются (записывается последнее),
+// очередь пишется в базу одним UPDATE - одной транзакцией, когда в ней -Ddb.writeBehind.maxPending изменений
+// (по умолчанию 100) или через -Ddb.writeBehind.flushMillis мс после первого (по умолчанию 200).
+// Очередь дублируется в журнале UpdateJournal (каталог -Ddb.writeBehind.dir, размер -Ddb.writeBehind.journalBytes);
+// изменения, оставшиеся в журнале после сбоя клиента, записываются при следующем открытии очереди
+// (DBManager.flushUpdates). Дата, время, длительность и тренер пишутся сразу: на них нужен ответ о пересечении
+final class WriteBehindQueue implements AutoCloseable {
+    static final boolean ENABLED = "true".equalsIgnoreCase(System.getProperty("db.writeBehind"));
+    private static final int MAX_PENDING = Integer.getInteger("db.writeBehind.maxPending", 100);
+    private static final long FLUSH_MILLIS = Long.getLong("db.writeBehind.flushMillis", 200);
+    // Наибольший интервал повтора неудавшейся записи очереди
+    private static final long MAX_RETRY_MILLIS = 30_000;
+    private static final int JOURNAL_BYTES = Integer.getInteger("db.writeBehind.journalBytes", 4 << 20);
+    private static final Path DIRECTORY = Path.of(System.getProperty("db.writeBehind.dir",
+            Path.of(System.getProperty("user.home"), ".trainings", "write-behind").toString()));
+
+    // Поля, изменения которых откладываются; номер поля - его индекс (хранится в журнале)
+    static final List<String> FIELDS = List.of("title", "max_participants", "current_participants",
+            "difficulty_level", "price");
+
+    // Значения приходят текстом и приводятся к типам столбцов на сервере, как в update_training_field;
+    // null - поле тренировки в этой пачке не менялось
+    private static final String GROUP_UPDATE = "UPDATE trainings t SET title = COALESCE(c.title, t.title), "
+            + "max_participants = COALESCE(c.max_participants::int, t.max_participants), "
+            + "current_participants = COALESCE(c.current_participants::int, t.current_participants), "
+            + "difficulty_level = COALESCE(c.difficulty_level, t.difficulty_level), "
+            + "price = COALESCE(c.price::numeric, t.price) "
+            + "FROM unnest(?::int[], ?::text[], ?::text[], ?::text[], ?::text[], ?::text[]) "
+            + "AS c(class_id, title, max_participants, current_participants, difficulty_level, price) "
+            + "WHERE t.class_id = c.class_id";
+
+    private static final Map<String, WriteBehindQueue> QUEUES = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED) {
+            // При обычном завершении программы очереди записываются в базу
+            Runtime.getRuntime().addShutdownHook(new Thread(WriteBehindQueue::closeAll, "write-behind-shutdown"));
+        }
+    }
+
+    private final String dbName;
+    private final String username;
+    private volatile String password;
+    private final UpdateJournal journal;
+    private final ScheduledExecutorService scheduler;
+    private final Object flushLock = new Object();
+    private Map<Key, String> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private boolean retryScheduled;
+    private long retryMillis;
+
+    private WriteBehindQueue(String dbName, String username, String password) throws IOException {
+        this.dbName = dbName;
+        this.username = username;
+        this.password = password;
+        journal = new UpdateJournal(DIRECTORY.resolve(fileName(dbName) + "-" + fileName(username) + ".journal"), JOURNAL_BYTES);
+        journal.replay((id, field, value) -> {
+            if (field >= 0 && field < FIELDS.size()) {
+                pending.remove(new Key(id, field));
+                pending.put(new Key(id, field), value);
+            }
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "write-behind-" + dbName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!pending.isEmpty()) {
+            System.out.println("Из журнала восстановлено отложенных изменений (" + dbName + "): " + pending.size());
+            flushScheduled = true;
+            scheduler.execute(this::flushInBackground);
+        }
+    }
+
+    // Очередь базы и пользователя; первый вызов открывает журнал и восстанавливает из него очередь
+    static synchronized WriteBehindQueue forDatabase(String dbName, String username, String password) throws IOException {
+        String key = dbName + '\u0000' + username;
+        WriteBehindQueue queue = QUEUES.get(key);
+        if (queue == null) {
+            queue = new WriteBehindQueue(dbName, username, password);
+            QUEUES.put(key, queue);
+        }
+        queue.password = password;
+        return queue;
+    }
+
+    // Изменение в очереди или null, если его нужно записать сразу: поле не откладывается, значение может быть
+    // отклонено проверкой или базой (коды и сообщение - у обычного пути) или журнал недоступен
+    static MutationResult offer(String dbName, int id, String fieldName, String newValue, String username, String password) {
+        int field = FIELDS.indexOf(fieldName);
+        if (field < 0 || id <= 0 || newValue == null || !acceptable(fieldName, newValue)) {
+            return null;
+        }
+        try {
+            return forDatabase(dbName, username, password).enqueue(id, field, newValue);
+        } catch (IOException e) {
+            System.out.println("Журнал отложенных изменений недоступен, изменение записывается сразу: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Значение, которое база заведомо примет: приведение к типу столбца и ограничения CHECK таблицы trainings
+    private static boolean acceptable(String fieldName, String value) {
+        String trimmed = value.trim();
+        switch (fieldName) {
+            case "title":
+                return !trimmed.isEmpty() && value.codePointCount(0, value.length()) <= 255;
+            case "max_participants":
+            case "current_participants":
+                if (!trimmed.matches("[+-]?[0-9]{1,10}")) {
+                    return false;
+                }
+                long number = Long.parseLong(trimmed);
+                return number <= Integer.MAX_VALUE && number >= (fieldName.equals("max_participants") ? 1 : 0);
+            case "difficulty_level":
+                return DirectAccess.DIFFICULTY_LEVELS.contains(value);
+            case "price":
+                // DECIMAL(10, 2): не больше 8 цифр до запятой после округления до копеек
+                if (!trimmed.matches("[+]?([0-9]{1,9}(\\.[0-9]{0,9})?|\\.[0-9]{1,9})")) {
+                    return false;
+                }
+                return new BigDecimal(trimmed).setScale(2, RoundingMode.HALF_UP).precision() <= 10;
+            default:
+                return false;
+        }
+    }
+
+    private MutationResult enqueue(int id, int field, String value) {
+        Key key = new Key(id, field);
+        int flushed = 0;
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            synchronized (this) {
+                if (journal.append(id, field, value)) {
+                    pending.remove(key);
+                    pending.put(key, value);
+                    if (pending.size() == 1) {
+                        scheduler.schedule(this::flushInBackground, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    if (pending.size() >= MAX_PENDING && !flushScheduled) {
+                        flushScheduled = true;
+                        scheduler.execute(this::flushInBackground);
+                    }
+                    return new MutationResult(id, List.of(), "Изменение записи с ID " + id + " поставлено в очередь записи.");
+                }
+                // Значение не помещается и в сжатый журнал: оно пишется сразу, более старого значения поля в очереди нет
+                if (attempt > 1 && flushed >= 0 && !pending.containsKey(key)) {
+                    return null;
+                }
+            }
+            if (attempt == 3 || flushed < 0) {
+                break;
+            }
+            // Журнал заполнен: запись очереди в базу освобождает его. Изменения, поставленные во время записи,
+            // могут не поместиться в начало журнала - тогда их освобождает следующая запись
+            try {
+                flushed = flush();
+            } catch (SQLException e) {
+                flushed = -555;
+            }
+        }
+        // Запись в обход очереди была бы затерта более старым значением поля из очереди - изменение не принимается
+        return MutationResult.code(flushed < 0 ? flushed : -555).withMessage("Ошибка: изменение записи с ID " + id
+                + " не принято - журнал отложенной записи заполнен, а очередь не удалось записать в базу.");
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.out.println("Ошибка при записи отложенных изменений (" + dbName + "): " + e.getMessage());
+        }
+    }
+
+    // Запись очереди одной транзакцией; количество измененных строк, -2 нет базы, -1 нет таблицы.
+    // При ошибке изменения остаются в очереди и журнале до следующей записи
+    int flush() throws SQLException {
+        synchronized (flushLock) {
+            Map<Key, String> batch;
+            int end;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                end = journal.position();
+            }
+            int updated;
+            try {
+                updated = apply(batch);
+            } catch (SQLException e) {
+                synchronized (this) {
+                    // Более поздние значения тех же полей, поставленные во время записи, не заменяются
+                    for (Map.Entry<Key, String> entry : batch.entrySet()) {
+                        pending.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                    scheduleRetry();
+                }
+                return DirectAccess.schemaErrorCode(dbName, e);
+            }
+            synchronized (this) {
+                retryMillis = 0;
+                journal.checkpoint(end);
+                // Изменения, поставленные во время записи, переносятся в начало журнала, иначе под постоянной
+                // нагрузкой журнал не освобождается
+                journal.compact(entry -> pending.forEach((key, value) -> entry.accept(key.id, key.field, value)));
+            }
+            return updated;
+        }
+    }
+
+    // Повтор записи после ошибки (база недоступна): интервал удваивается от flushMillis до MAX_RETRY_MILLIS.
+    // Вызывается под блокировкой очереди
+    private void scheduleRetry() {
+        if (retryScheduled || scheduler.isShutdown()) {
+            return;
+        }
+        retryMillis = retryMillis == 0 ? Math.max(FLUSH_MILLIS, 100) : Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        retryScheduled = true;
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                retryScheduled = false;
+            }
+            flushInBackground();
+        }, retryMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Значения по тренировкам: одна строка unnest на тренировку, в ней все ее измененные поля
+    private int apply(Map<Key, String> batch) throws SQLException {
+        Map<Integer, String[]> rows = new LinkedHashMap<>();
+        for (Map.Entry<Key, String> entry : batch.entrySet()) {
+            rows.computeIfAbsent(entry.getKey().id, id -> new String[FIELDS.size()])[entry.getKey().field] = entry.getValue();
+        }
+        try (Connection conn = DBManager.getConnection(dbName, username, password);
+             PreparedStatement stmt = conn.prepareStatement(GROUP_UPDATE)) {
+            try {
+                return update(conn, stmt, new ArrayList<>(rows.keySet()), new ArrayList<>(rows.values()));
+            } catch (SQLException e) {
+                if (!isDataError(e)) {
+                    throw e;
+                }
+            }
+            // Недопустимое значение отменило всю пачку: тренировки записываются по одной, отклоненные пропускаются
+            int updated = 0;
+            for (Map.Entry<Integer, String[]> row : rows.entrySet()) {
+                try {
+                    updated += update(conn, stmt, List.of(row.getKey()), List.<String[]>of(row.getValue()));
+                } catch (SQLException e) {
+                    if (!isDataError(e)) {
+                        throw e;
+                    }
+                    System.out.println("Отложенное изменение записи с ID " + row.getKey() + " отклонено: " + e.getMessage());
+                }
+            }
+            return updated;
+        }
+    }
+
+    private static int update(Connection conn, PreparedStatement stmt, List<Integer> ids, List<String[]> values)
+            throws SQLException {
+        stmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+        for (int field = 0; field < FIELDS.size(); field++) {
+            String[] column = new String[values.size()];
+            for (int i = 0; i < column.length; i++) {
+                column[i] = values.get(i)[field];
+            }
+            stmt.setArray(field + 2, conn.createArrayOf("text", column));
+        }
+        return stmt.executeUpdate();
+    }
+
+    // Ошибка в значениях (класс 22) или нарушение ограничения (класс 23) - виновато изменение, а не соединение
+    private static boolean isDataError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    // Сброс журнала на диск
+    synchronized void sync() {
+        journal.sync();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.out.println("Отложенные изменения остались в журнале (" + dbName + "): " + e.getMessage());
+        }
+        scheduler.shutdownNow();
+        synchronized (this) {
+            journal.sync();
+            try {
+                journal.close();
+            } catch (IOException ignored) {
+                // Журнал уже сброшен на диск
+            }
+        }
+    }
+
+    private static void closeAll() {
+        for (WriteBehindQueue queue : QUEUES.values()) {
+            queue.close();
+        }
+    }
+
+    // Имя базы или пользователя в имени файла журнала
+    private static String fileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private record Key(int id, int field) {
+    }
+}
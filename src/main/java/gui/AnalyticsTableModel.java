@@ -0,0 +1,83 @@
+package gui;
+
+import db.AnalyticsRow;
+
+import javax.swing.JProgressBar;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Итоги групп для панели показателей: заполняемость - доля (0..1), ее рисует OccupancyRenderer полосой
+public class AnalyticsTableModel extends AbstractTableModel {
+    private static final String[] COLUMN_NAMES = {"Группа", "Занятий", "Участников", "Мест", "Заполняемость", "Выручка"};
+    static final int OCCUPANCY_COLUMN = 4;
+
+    private List<AnalyticsRow> rows = new ArrayList<>();
+
+    public void setRows(List<AnalyticsRow> rows) {
+        this.rows = new ArrayList<>(rows);
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == OCCUPANCY_COLUMN ? Double.class : Object.class;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        AnalyticsRow row = rows.get(rowIndex);
+        switch (columnIndex) {
+            case 0:
+                return row.group();
+            case 1:
+                return row.trainings();
+            case 2:
+                return row.participants();
+            case 3:
+                return row.capacity();
+            case 4:
+                return row.occupancy();
+            case 5:
+                return row.revenue();
+            default:
+                throw new IndexOutOfBoundsException("Нет столбца " + columnIndex);
+        }
+    }
+
+    // Заполняемость полосой с процентом
+    static class OccupancyRenderer extends JProgressBar implements TableCellRenderer {
+        OccupancyRenderer() {
+            super(0, 1000);
+            setStringPainted(true);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus,
+                                                       int row, int column) {
+            double occupancy = value == null ? 0 : (Double) value;
+            setValue((int) Math.round(Math.min(occupancy, 1) * 1000));
+            setString(String.format(Locale.ROOT, "%.1f %%", occupancy * 100));
+            return this;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package gui;
+
+import db.AsyncDBManager;
+import db.DBManager;
+import db.Training;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Модель таблицы, загружающая тренировки страницами по мере прокрутки (в фоне, без блокировки EDT).
+// В памяти держится не больше MAX_CACHED_PAGES страниц (LRU), поэтому расход памяти не зависит от размера таблицы.
+public class LazyTrainingsTableModel extends AbstractTableModel {
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 50;
+
+    private final String dbName;
+    private final String username;
+    private final String password;
+
+    private int rowCount;
+    // Первый class_id каждой страницы (0 - еще неизвестен); позволяет грузить страницу по ключу, а не через OFFSET
+    private int[] pageStartIds = new int[0];
+    private final Map<Integer, List<Training>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Training>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    // Страницы, запрошенные в фоне; номер поколения отбрасывает ответы, пришедшие после reload()
+    private final Set<Integer> loading = new HashSet<>();
+    private int generation;
+
+    public LazyTrainingsTableModel(String dbName, String username, String password) {
+        this.dbName = dbName;
+        this.username = username;
+        this.password = password;
+        reload();
+    }
+
+    // Сброс загруженных страниц и пересчет количества строк (после изменений в таблице)
+    public void reload() {
+        int currentGeneration = ++generation;
+        AsyncDBManager.countTrainings(dbName, username, password).thenAcceptAsync(count -> {
+            if (currentGeneration != generation) {
+                return;
+            }
+            pages.clear();
+            loading.clear();
+            rowCount = Math.max(count, 0);
+            pageStartIds = new int[(rowCount + PAGE_SIZE - 1) / PAGE_SIZE];
+            fireTableDataChanged();
+        }, SwingUtilities::invokeLater);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return TrainingsTableModel.COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return TrainingsTableModel.COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int pageIndex = rowIndex / PAGE_SIZE;
+        List<Training> page = pages.get(pageIndex);
+        if (page == null) {
+            // Страница запрашивается в фоне; до ее прихода ячейка пустая
+            requestPage(pageIndex);
+            return "";
+        }
+        int indexInPage = rowIndex % PAGE_SIZE;
+        // Строки могли быть удалены после подсчета - показываем пустую ячейку
+        return indexInPage < page.size() ? TrainingsTableModel.valueAt(page.get(indexInPage), columnIndex) : "";
+    }
+
+    // Загрузка страницы в фоновом потоке; одновременно может грузиться несколько страниц
+    private void requestPage(int pageIndex) {
+        if (!loading.add(pageIndex)) {
+            return;
+        }
+        int currentGeneration = generation;
+        int knownAfterId = afterIdForPage(pageIndex);
+        AsyncDBManager.submit(() -> {
+            int afterId = knownAfterId;
+            if (afterId < 0) {
+                int startId = DBManager.findTrainingIdAtOffset(dbName, pageIndex * PAGE_SIZE, username, password);
+                afterId = startId > 0 ? startId - 1 : Integer.MAX_VALUE;
+            }
+            return DBManager.getTrainingsPage(dbName, afterId, PAGE_SIZE, username, password);
+        }).thenAcceptAsync(page -> {
+            if (currentGeneration != generation) {
+                return;
+            }
+            loading.remove(pageIndex);
+            if (!page.isEmpty()) {
+                pageStartIds[pageIndex] = page.get(0).id();
+                if (page.size() == PAGE_SIZE && pageIndex + 1 < pageStartIds.length) {
+                    pageStartIds[pageIndex + 1] = page.get(page.size() - 1).id() + 1;
+                }
+            }
+            pages.put(pageIndex, page);
+            int firstRow = pageIndex * PAGE_SIZE;
+            fireTableRowsUpdated(firstRow, Math.min(firstRow + PAGE_SIZE, rowCount) - 1);
+        }, SwingUtilities::invokeLater);
+    }
+
+    // Ключ, после которого начинается страница: из известной границы или из соседней страницы;
+    // -1 - границу нужно найти запросом по индексу
+    private int afterIdForPage(int pageIndex) {
+        if (pageIndex == 0) {
+            return 0;
+        }
+        if (pageStartIds[pageIndex] > 0) {
+            return pageStartIds[pageIndex] - 1;
+        }
+        List<Training> previous = pages.get(pageIndex - 1);
+        if (previous != null && !previous.isEmpty()) {
+            return previous.get(previous.size() - 1).id();
+        }
+        return -1;
+    }
+}
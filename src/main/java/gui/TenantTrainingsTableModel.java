@@ -0,0 +1,47 @@
+package gui;
+
+import db.TenantResult;
+import db.Training;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Результаты выборки по всем студиям: первый столбец - студия, остальные как в TrainingsTableModel.
+// Строки студии добавляются в конец, как только она ответила
+public class TenantTrainingsTableModel extends AbstractTableModel {
+    private final List<String> tenants = new ArrayList<>();
+    private final List<Training> trainings = new ArrayList<>();
+
+    public void addResult(TenantResult result) {
+        if (result.trainings().isEmpty()) {
+            return;
+        }
+        int first = trainings.size();
+        for (Training training : result.trainings()) {
+            tenants.add(result.tenant());
+            trainings.add(training);
+        }
+        fireTableRowsInserted(first, trainings.size() - 1);
+    }
+
+    @Override
+    public int getRowCount() {
+        return trainings.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return TrainingsTableModel.COLUMN_NAMES.length + 1;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return column == 0 ? "Студия" : TrainingsTableModel.COLUMN_NAMES[column - 1];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return columnIndex == 0 ? tenants.get(rowIndex) : TrainingsTableModel.valueAt(trainings.get(rowIndex), columnIndex - 1);
+    }
+}
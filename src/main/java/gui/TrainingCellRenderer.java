@@ -0,0 +1,36 @@
+package gui;
+
+import javax.swing.table.DefaultTableCellRenderer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+// Форматирование значений Training при отрисовке ячейки: строки создаются только для видимых ячеек
+public class TrainingCellRenderer extends DefaultTableCellRenderer {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    @Override
+    protected void setValue(Object value) {
+        setText(format(value));
+    }
+
+    static String format(Object value) {
+        if (value == null) {
+            return "N/A";
+        }
+        if (value instanceof LocalTime) {
+            return TIME_FORMAT.format((LocalTime) value);
+        }
+        if (value instanceof Duration) {
+            // Формат как у интервала PostgreSQL: часы могут быть больше 24
+            long seconds = ((Duration) value).getSeconds();
+            return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).setScale(2, RoundingMode.HALF_UP).toPlainString();
+        }
+        return value.toString();
+    }
+}
@@ -1,24 +1,53 @@
 package gui;
 
+import db.AccessMode;
+import db.AnalyticsGroup;
+import db.AnalyticsRefresher;
+import db.AsyncDBManager;
 import db.DBManager;
+import db.ExportFormat;
+import db.ExportResult;
+import db.ImportResult;
+import db.MatchType;
+import db.MutationResult;
+import db.PartitionMaintainer;
+import db.Pipeline;
+import db.TenantResult;
+import db.TenantRouter;
+import db.Training;
+import db.TrainingQuery;
+import db.TrainingsCache;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableColumn;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-
-import static db.DBManager.addTraining;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class TrainingsManager extends JFrame {
-    private static final String BASE_URL = "jdbc:postgresql://localhost:5432/";
-    private static final String DATABASE_NAME  = "trainings";
     private JTable trainingsTable;
-    private DefaultTableModel tableModel;
+    private TrainingsTableModel tableModel;
 
     private JTextField usernameField;
+    private JTextField filterField;
     private JPasswordField passwordField;
     private JTextArea outputArea;
 
@@ -31,8 +60,38 @@ public class TrainingsManager extends JFrame {
     private JButton updateTrainingButton;
     private JButton clearDBButton;
     private JButton dropDBButton;
+    private JButton importTrainingsButton;
+    private JButton filterTrainingsButton;
+    private JButton bookTrainingButton;
+    private JButton exportTrainingsButton;
+    private JButton analyticsButton;
     private JScrollPane tableScrollPane;
 
+    // Индикатор выполняющихся запросов и кнопка их отмены
+    private JProgressBar progressBar;
+    private JButton cancelButton;
+    private final Set<CompletableFuture<?>> inFlight = new HashSet<>();
+
+    // Кэш таблицы (отключается -Ddb.cache=false): просмотр всех тренировок читает его, а изменения
+    // таблицы приходят из него разницей, которая применяется к уже показанным строкам
+    private static final boolean CACHE_ENABLED = !"false".equalsIgnoreCase(System.getProperty("db.cache"));
+    private TrainingsCache trainingsCache;
+    private PartitionMaintainer partitionMaintainer;
+    private AnalyticsRefresher analyticsRefresher;
+    private boolean showingAllTrainings;
+    private boolean loadingAllTrainings;
+    private final List<TrainingsCache.Delta> pendingDeltas = new ArrayList<>();
+
+    // База данных выбранной студии (список студий - -Ddb.tenants, см. TenantRouter)
+    private String dbName = TenantRouter.defaultTenant();
+    private JComboBox<String> tenantBox;
+
+    // Условия последнего подбора тренировок (без ограничения числа строк) - для экспорта по ним
+    private TrainingQuery lastFilterQuery;
+
+    // Наибольшее количество строк в результатах поиска по началу строки, точного и нечеткого
+    private static final int SEARCH_LIMIT = 1000;
+
     public TrainingsManager() {
         setTitle("Role-Based Access Application");
         setSize(800, 500);
@@ -49,6 +108,11 @@ public class TrainingsManager extends JFrame {
         updateTrainingButton = new JButton("Обновить тренировку");
         clearDBButton = new JButton("Очистить базу данных");
         dropDBButton = new JButton("Удалить базу данных");
+        importTrainingsButton = new JButton("Импорт из CSV");
+        filterTrainingsButton = new JButton("Подбор тренировок");
+        bookTrainingButton = new JButton("Запись на тренировку");
+        exportTrainingsButton = new JButton("Экспорт в файл");
+        analyticsButton = new JButton("Показатели");
 
         createDBButton.addActionListener(e -> performActionWithRole("createDatabase"));
         createTableButton.addActionListener(e -> performActionWithRole("createTable"));
@@ -59,10 +123,15 @@ public class TrainingsManager extends JFrame {
         updateTrainingButton.addActionListener(e -> performActionWithRole("updateTraining"));
         clearDBButton.addActionListener(e -> performActionWithRole("clearDatabase"));
         dropDBButton.addActionListener(e -> performActionWithRole("dropDatabase"));
+        importTrainingsButton.addActionListener(e -> performActionWithRole("importTrainings"));
+        filterTrainingsButton.addActionListener(e -> performActionWithRole("filterTrainings"));
+        bookTrainingButton.addActionListener(e -> performActionWithRole("bookTraining"));
+        exportTrainingsButton.addActionListener(e -> performActionWithRole("exportTrainings"));
+        analyticsButton.addActionListener(e -> performActionWithRole("analytics"));
 
 
         JPanel buttonPanel = new JPanel();
-        buttonPanel.setLayout(new GridLayout(3, 3)); // 4 строки, 2 столбца
+        buttonPanel.setLayout(new GridLayout(5, 3));
 
         buttonPanel.add(createDBButton);
         buttonPanel.add(createTableButton);
@@ -73,28 +142,35 @@ public class TrainingsManager extends JFrame {
         buttonPanel.add(updateTrainingButton);
         buttonPanel.add(clearDBButton);
         buttonPanel.add(dropDBButton);
+        buttonPanel.add(importTrainingsButton);
+        buttonPanel.add(filterTrainingsButton);
+        buttonPanel.add(bookTrainingButton);
+        buttonPanel.add(exportTrainingsButton);
+        buttonPanel.add(analyticsButton);
 
         add(buttonPanel, BorderLayout.SOUTH);
 
-        tableModel = new DefaultTableModel();
-        tableModel.addColumn("ID");
-        tableModel.addColumn("Название");
-        tableModel.addColumn("Дата");
-        tableModel.addColumn("Время");
-        tableModel.addColumn("Длительность");
-        tableModel.addColumn("Макс. участников");
-        tableModel.addColumn("Текущие участники");
-        tableModel.addColumn("Уровень сложности");
-        tableModel.addColumn("Тренер");
-        tableModel.addColumn("Цена");
+        tableModel = new TrainingsTableModel();
 
         trainingsTable = new JTable(tableModel);
+        trainingsTable.setDefaultRenderer(Object.class, new TrainingCellRenderer());
+        // Щелчок по заголовку сортирует загруженные строки в памяти (по возрастанию, по убыванию, без сортировки)
+        trainingsTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = trainingsTable.columnAtPoint(e.getPoint());
+                if (column >= 0 && trainingsTable.getModel() == tableModel) {
+                    tableModel.sortBy(trainingsTable.convertColumnIndexToModel(column));
+                    updateColumnHeaders();
+                }
+            }
+        });
         tableScrollPane = new JScrollPane(trainingsTable);
 
         add(tableScrollPane, BorderLayout.CENTER);
 
         JPanel loginPanel = new JPanel();
-        loginPanel.setLayout(new GridLayout(3, 2));
+        loginPanel.setLayout(new GridLayout(5, 2));
 
         loginPanel.add(new JLabel("Username:"));
         usernameField = new JTextField();
@@ -104,10 +180,47 @@ public class TrainingsManager extends JFrame {
         passwordField = new JPasswordField();
         loginPanel.add(passwordField);
 
+        loginPanel.add(new JLabel("Студия:"));
+        tenantBox = new JComboBox<>(TenantRouter.tenants().toArray(new String[0]));
+        tenantBox.addActionListener(e -> selectTenant((String) tenantBox.getSelectedItem()));
+        loginPanel.add(tenantBox);
+
+        // Фильтр по мере ввода: строки выбираются из уже загруженных, без запросов к базе
+        loginPanel.add(new JLabel("Фильтр:"));
+        filterField = new JTextField();
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                tableModel.setFilter(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                tableModel.setFilter(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                tableModel.setFilter(filterField.getText());
+            }
+        });
+        loginPanel.add(filterField);
+
         JButton loginButton = new JButton("Login");
         loginButton.addActionListener(new LoginActionListener());
         loginPanel.add(loginButton);
 
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+        cancelButton = new JButton("Отменить");
+        cancelButton.setVisible(false);
+        cancelButton.addActionListener(e -> cancelAll());
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.add(progressBar, BorderLayout.CENTER);
+        statusPanel.add(cancelButton, BorderLayout.EAST);
+        loginPanel.add(statusPanel);
+
         add(loginPanel, BorderLayout.NORTH);
 
         outputArea = new JTextArea();
@@ -130,6 +243,11 @@ public class TrainingsManager extends JFrame {
         updateTrainingButton.setVisible(isVisible);
         clearDBButton.setVisible(isVisible);
         dropDBButton.setVisible(isVisible);
+        importTrainingsButton.setVisible(isVisible);
+        filterTrainingsButton.setVisible(isVisible);
+        bookTrainingButton.setVisible(isVisible);
+        exportTrainingsButton.setVisible(isVisible);
+        analyticsButton.setVisible(isVisible);
         tableScrollPane.setVisible(isVisible);
     }
 
@@ -140,142 +258,284 @@ public class TrainingsManager extends JFrame {
             String password = new String(passwordField.getPassword());
 
             // Authenticate user and get role
-            String role = authenticateUser(username, password);
-            if (role != null) {
-                outputArea.setText("Login successful! Role: " + role + "\n");
-                // Display appropriate interface based on role
-                if (role.equals("admin")) {
-                    provideAdminAccess(username, password);
+            runAsync(AsyncDBManager.authenticateUser(username, password), role -> {
+                if (role != null) {
+                    outputArea.setText("Login successful! Role: " + role + "\n");
+                    // Display appropriate interface based on role
+                    if (role.equals("admin")) {
+                        provideAdminAccess(username, password);
+                    } else {
+                        provideGuestAccess(username, password);
+                    }
                 } else {
-                    provideGuestAccess(username, password);
+                    outputArea.setText("Login failed! Invalid username or password.\n");
                 }
-            } else {
-                outputArea.setText("Login failed! Invalid username or password.\n");
-            }
+            });
         }
     }
 
-    private String authenticateUser(String username, String password) {
-        String role = null;
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, "postgres", "CHocolate75%");
-             Statement stmt = conn.createStatement()) {
-            String query = "SELECT role FROM users WHERE username = '" + username + "' AND password = '" + password + "'";
-            ResultSet rs = stmt.executeQuery(query);
-            if (rs.next()) {
-                role = rs.getString("role");
+    // Выполнение запроса вне потока EDT: пока запрос выполняется, показывается индикатор,
+    // результат передается в onResult уже в потоке EDT
+    private <T> void runAsync(CompletableFuture<T> future, Consumer<T> onResult) {
+        runAsync(future, onResult, error ->
+                JOptionPane.showMessageDialog(null, "Ошибка при выполнении запроса: " + error.getMessage()));
+    }
+
+    private <T> void runAsync(CompletableFuture<T> future, Consumer<T> onResult, Consumer<Throwable> onError) {
+        inFlight.add(future);
+        updateProgress();
+        future.whenCompleteAsync((result, error) -> {
+            inFlight.remove(future);
+            updateProgress();
+            if (future.isCancelled()) {
+                outputArea.append("Запрос отменен.\n");
+            } else if (error != null) {
+                onError.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                onResult.accept(result);
             }
-        } catch (SQLException ex) {
-            outputArea.append("Error during authentication: " + ex.getMessage() + "\n");
+        }, SwingUtilities::invokeLater);
+    }
+
+    private void updateProgress() {
+        boolean busy = !inFlight.isEmpty();
+        progressBar.setVisible(busy);
+        cancelButton.setVisible(busy);
+    }
+
+    private void cancelAll() {
+        for (CompletableFuture<?> future : new ArrayList<>(inFlight)) {
+            future.cancel(true);
         }
-        return role;
     }
 
     // Метод для предоставления доступа гостя
-    public Connection provideGuestAccess(String username, String password) {
-        Connection connection = null;
-        try {
-            // Установка соединения с базой данных
-            String url = "jdbc:postgresql://localhost:5432/trainings";
-            connection = DriverManager.getConnection(url, username, password);
+    public void provideGuestAccess(String username, String password) {
+        // Соединение берется из пула в фоне и сразу возвращается - это проверка учетных данных
+        runAsync(AsyncDBManager.checkConnection(username, password), ignored -> {
             JOptionPane.showMessageDialog(null, "Успешное подключение к базе данных как гость.");
+            startTrainingsCache(username, password);
             setButtonsVisibility(true);
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(null, "Ошибка подключения к базе данных: " + e.getMessage());
-        }
-        return connection;
+        }, error -> JOptionPane.showMessageDialog(null, "Ошибка подключения к базе данных: " + error.getMessage()));
     }
 
     // Метод для предоставления доступа администратору
-    public Connection provideAdminAccess(String username, String password) {
-        Connection connection = null;
-
-        // Проверка логина и пароля администратора
-        try {
-            // Установка соединения с базой данных с правами администратора
-            String url = "jdbc:postgresql://localhost:5432/trainings";
-            connection = DriverManager.getConnection(url, username, password);
+    public void provideAdminAccess(String username, String password) {
+        // Соединение берется из пула в фоне и сразу возвращается - это проверка учетных данных
+        runAsync(AsyncDBManager.checkConnection(username, password), ignored -> {
             JOptionPane.showMessageDialog(null, "Успешное подключение к базе данных как администратор.");
+            startTrainingsCache(username, password);
+            startMaintenance(username, password);
             setButtonsVisibility(true);
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(null, "Ошибка подключения к базе данных: " + e.getMessage());
-        }
-        return connection;
+        }, error -> JOptionPane.showMessageDialog(null, "Ошибка подключения к базе данных: " + error.getMessage()));
     }
 
     private void performActionWithRole(String action) {
         String username = usernameField.getText().trim();
         String password = new String(passwordField.getPassword());
 
-        String role = authenticateUser(username, password);
+        // Роль берется из кэша DBManager; при промахе запрос к БД выполняется в фоне
+        runAsync(AsyncDBManager.authenticateUser(username, password),
+                role -> performAuthorizedAction(action, role, username, password));
+    }
+
+    private void performAuthorizedAction(String action, String role, String username, String password) {
         if (role == null) {
             JOptionPane.showMessageDialog(null, "Пользователь не аутентифицирован.");
             return;
         }
 
         if (role.equals("guest") && (action.equals("createDatabase") || action.equals("clearDatabase") || action.equals("dropDatabase") ||
-                action.equals("addTraining") || action.equals("deleteTraining") || action.equals("updateTraining") || action.equals("createTable"))) {
+                action.equals("addTraining") || action.equals("deleteTraining") || action.equals("updateTraining") || action.equals("createTable") ||
+                action.equals("importTrainings") || action.equals("bookTraining"))) {
             JOptionPane.showMessageDialog(null, "Ошибка: у вас нет прав для выполнения этого действия.");
             return;
         }
 
-        try (Connection conn = DriverManager.getConnection(BASE_URL + DATABASE_NAME, username, password)) {
-            String resultMessage;
-            switch (action) {
-                case "createDatabase":
-                    resultMessage = DBManager.createDatabase("training_schedule", username, password);
-                    JOptionPane.showMessageDialog(null, resultMessage);
-                    break;
-                case "createTable":
-                    resultMessage = DBManager.createTable("training_schedule", username, password);
-                    JOptionPane.showMessageDialog(null, resultMessage);
-                    break;
-                case "getAllTrainings":
-                    List<String[]> trainings = DBManager.getAllTrainings("training_schedule", username, password);
-                    updateTrainingsTable(trainings); // Обновляем таблицу данными
-                    break;
-                case "addTraining":
-                    openAddTrainingDialog(username, password);
-                    refreshTrainingsTable();
-                    break;
-                case "deleteTraining":
-                    performDeleteTraining(username, password);
-                    refreshTrainingsTable();
+        // Диалоги показываются в потоке EDT, запросы к БД выполняются в фоне;
+        // таблица обновляется после завершения изменяющего запроса
+        switch (action) {
+            case "createDatabase": {
+                // База, таблица, индексы и права создаются одной подготовкой схемы; повторно - без изменений
+                int choice = JOptionPane.showConfirmDialog(null, "Разбить таблицу на секции по месяцам (по дате занятия)?",
+                        "Создать базу данных", JOptionPane.YES_NO_CANCEL_OPTION);
+                if (choice == JOptionPane.CANCEL_OPTION || choice == JOptionPane.CLOSED_OPTION) {
                     break;
-                case "updateTraining":
-                    openUpdateTrainingDialog(username, password);
-                    refreshTrainingsTable();
-                    break;
-                case "searchTraining":
-                    performSearch(username, password);
+                }
+                runAsync(AsyncDBManager.bootstrapSchema(dbName, choice == JOptionPane.YES_OPTION),
+                        result -> JOptionPane.showMessageDialog(null, result.message()));
+                break;
+            }
+            case "createTable": {
+                int choice = JOptionPane.showConfirmDialog(null, "Разбить таблицу на секции по месяцам (по дате занятия)?",
+                        "Создать таблицу", JOptionPane.YES_NO_CANCEL_OPTION);
+                if (choice == JOptionPane.CANCEL_OPTION || choice == JOptionPane.CLOSED_OPTION) {
                     break;
-                case "clearDatabase":
-                    resultMessage = DBManager.clearDatabase("training_schedule", username, password);
+                }
+                runAsync(AsyncDBManager.createTable(dbName, choice == JOptionPane.YES_OPTION, username, password),
+                        resultMessage -> JOptionPane.showMessageDialog(null, resultMessage));
+                break;
+            }
+            case "getAllTrainings":
+                showAllTrainings(username, password);
+                break;
+            case "addTraining":
+                openAddTrainingDialog(username, password);
+                break;
+            case "deleteTraining":
+                performDeleteTraining(username, password);
+                break;
+            case "updateTraining":
+                openUpdateTrainingDialog(username, password);
+                break;
+            case "searchTraining":
+                performSearch(username, password);
+                break;
+            case "importTrainings":
+                performImport(username, password);
+                break;
+            case "filterTrainings":
+                openFilterDialog(username, password);
+                break;
+            case "bookTraining":
+                openBookingDialog(username, password);
+                break;
+            case "exportTrainings":
+                performExport(username, password);
+                break;
+            case "analytics":
+                showAnalytics(username, password);
+                break;
+            case "clearDatabase":
+                runAsync(AsyncDBManager.clearDatabase(dbName, username, password), resultMessage -> {
                     JOptionPane.showMessageDialog(null, resultMessage);
                     refreshTrainingsTable();
-                    break;
-                case "dropDatabase":
-                    resultMessage = DBManager.dropDatabase("training_schedule", username, password);
-                    JOptionPane.showMessageDialog(null, resultMessage);
-                    break;
-                default:
-                    JOptionPane.showMessageDialog(null, "Неизвестное действие.");
-            }
-        } catch (SQLException e) {
-            if (e.getSQLState().equals("42501")) {
-                JOptionPane.showMessageDialog(null, "Ошибка: у вас нет прав для выполнения этого действия.");
-            } else {
-                JOptionPane.showMessageDialog(null, "Ошибка при выполнении запроса: " + e.getMessage());
+                });
+                break;
+            case "dropDatabase":
+                runAsync(AsyncDBManager.dropDatabase(dbName, username, password),
+                        resultMessage -> JOptionPane.showMessageDialog(null, resultMessage));
+                break;
+            default:
+                JOptionPane.showMessageDialog(null, "Неизвестное действие.");
+        }
+    }
+
+    // Переключение на другую студию: кэш и таблица создаются заново для ее базы данных
+    private void selectTenant(String tenant) {
+        if (tenant == null || tenant.equals(dbName)) {
+            return;
+        }
+        dbName = tenant;
+        if (!tableScrollPane.isVisible()) {
+            return;
+        }
+        String username = usernameField.getText().trim();
+        String password = new String(passwordField.getPassword());
+        startTrainingsCache(username, password);
+        if (partitionMaintainer != null) {
+            startMaintenance(username, password);
+        }
+        updateTrainingsTable(new ArrayList<>());
+        showAllTrainings(username, password);
+    }
+
+    // Кэш создается заново для каждого входа, чтобы читать таблицу с правами текущего пользователя
+    private void startTrainingsCache(String username, String password) {
+        if (!CACHE_ENABLED) {
+            return;
+        }
+        if (trainingsCache != null) {
+            trainingsCache.close();
+        }
+        trainingsCache = new TrainingsCache(dbName, username, password);
+        trainingsCache.addListener(delta -> SwingUtilities.invokeLater(() -> applyCacheDelta(delta)));
+        trainingsCache.start();
+    }
+
+    // Секции таблицы и представление показателей обслуживает сеанс администратора; для таблицы без секций
+    // и без -Ddb.analytics.materialized обслуживание ничего не делает. Отложенные изменения, оставшиеся в журнале
+    // после сбоя (-Ddb.writeBehind=true), записываются в базу при входе
+    private void startMaintenance(String username, String password) {
+        AsyncDBManager.flushUpdates(dbName, username, password).thenAccept(updated -> {
+            if (updated > 0) {
+                System.out.println("Записано отложенных изменений: " + updated);
             }
+        });
+        if (partitionMaintainer != null) {
+            partitionMaintainer.close();
+            analyticsRefresher.close();
         }
+        partitionMaintainer = new PartitionMaintainer(dbName, username, password);
+        partitionMaintainer.start();
+        analyticsRefresher = new AnalyticsRefresher(dbName, username, password);
+        analyticsRefresher.start();
     }
 
-    // Обновление таблицы после изменений
-    private void updateTrainingsTable(List<String[]> trainings) {
-        tableModel.setRowCount(0);
+    // Изменения, пришедшие во время загрузки всей таблицы, применяются после нее по порядку
+    private void applyCacheDelta(TrainingsCache.Delta delta) {
+        if (loadingAllTrainings) {
+            pendingDeltas.add(delta);
+        } else if (showingAllTrainings && trainingsTable.getModel() == tableModel) {
+            tableModel.applyChanges(delta.upserted(), delta.removed());
+        }
+    }
+
+    // Просмотр всех тренировок: из кэша, если он включен; при прямом доступе к таблице без кэша -
+    // постраничная загрузка по мере прокрутки
+    private void showAllTrainings(String username, String password) {
+        if (trainingsCache != null) {
+            TrainingsCache cache = trainingsCache;
+            loadingAllTrainings = true;
+            pendingDeltas.clear();
+            CompletableFuture<List<Training>> all = AsyncDBManager.submit(cache::getAll);
+            all.whenCompleteAsync((trainings, error) -> {
+                if (all.isCancelled()) {
+                    loadingAllTrainings = false;
+                    pendingDeltas.clear();
+                }
+            }, SwingUtilities::invokeLater);
+            runAsync(all, trainings -> {
+                loadingAllTrainings = false;
+                updateTrainingsTable(trainings);
+                showingAllTrainings = true;
+                for (TrainingsCache.Delta delta : pendingDeltas) {
+                    tableModel.applyChanges(delta.upserted(), delta.removed());
+                }
+                pendingDeltas.clear();
+            }, error -> {
+                loadingAllTrainings = false;
+                pendingDeltas.clear();
+                JOptionPane.showMessageDialog(null, "Ошибка при загрузке тренировок: " + error.getMessage());
+            });
+        } else if (DBManager.getAccessMode() != AccessMode.DIRECT) {
+            runAsync(AsyncDBManager.getAllTrainings(dbName, username, password), trainings -> {
+                updateTrainingsTable(trainings);
+                showingAllTrainings = true;
+            });
+        } else if (trainingsTable.getModel() instanceof LazyTrainingsTableModel) {
+            ((LazyTrainingsTableModel) trainingsTable.getModel()).reload();
+        } else {
+            trainingsTable.setModel(new LazyTrainingsTableModel(dbName, username, password));
+        }
+    }
+
+    // Заголовки столбцов с отметкой сортировки
+    private void updateColumnHeaders() {
+        for (int column = 0; column < trainingsTable.getColumnCount(); column++) {
+            TableColumn tableColumn = trainingsTable.getColumnModel().getColumn(column);
+            tableColumn.setHeaderValue(tableModel.getColumnName(tableColumn.getModelIndex()));
+        }
+        trainingsTable.getTableHeader().repaint();
+    }
 
-        for (String[] row : trainings) {
-            tableModel.addRow(row);
+    // Обновление таблицы после изменений
+    private void updateTrainingsTable(List<Training> trainings) {
+        showingAllTrainings = false;
+        if (trainingsTable.getModel() != tableModel) {
+            trainingsTable.setModel(tableModel);
         }
+        tableModel.setTrainings(trainings);
 
         trainingsTable.revalidate();
         trainingsTable.repaint();
@@ -286,12 +546,76 @@ public class TrainingsManager extends JFrame {
         String username = usernameField.getText().trim();
         String password = new String(passwordField.getPassword());
 
-        List<String[]> trainings = DBManager.getAllTrainings("training_schedule", username, password);
+        // Если вся таблица уже показана из кэша, изменение придет из него разницей
+        if (trainingsCache != null) {
+            trainingsCache.syncNow();
+            if (showingAllTrainings) {
+                return;
+            }
+        }
+        showAllTrainings(username, password);
+    }
 
-        if (trainings != null) {
-            updateTrainingsTable(trainings);
+    // Изменение и обновление таблицы одним обращением к серверу: если показана вся таблица без кэша, ее чтение
+    // идет в том же пакете, иначе строки из результата изменения подставляются в таблицу (applyMutation).
+    // Пакет работает с таблицей напрямую, поэтому вне режима DIRECT изменение выполняет single - вызов DBManager,
+    // который идет через хранимые функции
+    private void runPipeline(Pipeline pipeline, Supplier<CompletableFuture<MutationResult>> single, boolean deleted,
+                             String username, String password) {
+        if (DBManager.getAccessMode() != AccessMode.DIRECT) {
+            runAsync(single.get(), result -> {
+                JOptionPane.showMessageDialog(null, result.message());
+                if (result.status() > 0) {
+                    applyMutation(result, deleted);
+                }
+            });
+            return;
+        }
+        if (trainingsCache == null && showingAllTrainings && trainingsTable.getModel() == tableModel) {
+            pipeline.reload();
+        }
+        runAsync(AsyncDBManager.executePipeline(dbName, pipeline, username, password), pipelineResult -> {
+            if (pipelineResult.status() < 0) {
+                JOptionPane.showMessageDialog(null, pipelineResult.message());
+                return;
+            }
+            MutationResult result = pipelineResult.results().get(0);
+            JOptionPane.showMessageDialog(null, result.message());
+            if (pipelineResult.trainings() != null) {
+                updateTrainingsTable(pipelineResult.trainings());
+                showingAllTrainings = true;
+            } else if (result.status() > 0) {
+                applyMutation(result, deleted);
+            }
+        });
+    }
+
+    // Изменение после добавления, обновления или удаления: строки из результата подставляются в показанную таблицу
+    // без перезагрузки (в результатах поиска только заменяются и убираются). Таблица перечитывается, если строки
+    // неизвестны (хранимые функции) или загружаются постранично
+    private void applyMutation(MutationResult result, boolean deleted) {
+        if (!result.rowsKnown() || trainingsTable.getModel() != tableModel) {
+            refreshTrainingsTable();
+            return;
+        }
+        if (trainingsCache != null) {
+            trainingsCache.syncNow();
+            if (loadingAllTrainings) {
+                // Загружаемая таблица получит изменение из кэша
+                return;
+            }
+        }
+        List<Training> upserted = deleted ? List.of() : result.rows();
+        Set<Integer> removedIds = new HashSet<>();
+        if (deleted) {
+            for (Training training : result.rows()) {
+                removedIds.add(training.id());
+            }
+        }
+        if (showingAllTrainings) {
+            tableModel.applyChanges(upserted, removedIds);
         } else {
-            JOptionPane.showMessageDialog(null, "Не удалось загрузить данные о тренировках.");
+            tableModel.replaceRows(upserted, removedIds);
         }
     }
 
@@ -310,16 +634,282 @@ public class TrainingsManager extends JFrame {
             return;
         }
 
-        // Выполняем поиск
-        List<String[]> searchResults = DBManager.searchTrainingByField("training_schedule", fieldName, searchValue, username, password);
+        String[] matchTypeNames = {"Содержит", "Начинается с", "Совпадает", "Похоже на"};
+        int matchTypeIndex = JOptionPane.showOptionDialog(null, "Способ поиска:", "Поиск", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE, null, matchTypeNames, matchTypeNames[0]);
+        if (matchTypeIndex < 0) {
+            return;
+        }
+        MatchType matchType = MatchType.values()[matchTypeIndex];
+
+        // Выполняем поиск: подстрока - в текущем режиме доступа, остальные способы - по индексам таблицы
+        CompletableFuture<List<Training>> search = matchType == MatchType.CONTAINS
+                ? AsyncDBManager.searchTrainingByField(dbName, fieldName, searchValue, username, password)
+                : AsyncDBManager.searchTrainingByField(dbName, fieldName, searchValue, matchType,
+                SEARCH_LIMIT, username, password);
+        runAsync(search, searchResults -> {
+            // Если результаты найдены, обновляем таблицу
+            if (!searchResults.isEmpty()) {
+                updateTrainingsTable(searchResults); // Обновляем таблицу данными
+            } else {
+                // Если записи не найдены, показываем сообщение
+                JOptionPane.showMessageDialog(null, "Записи не найдены по полю '" + fieldName + "' со значением '" + searchValue + "'");
+            }
+        });
+    }
 
-        // Если результаты найдены, обновляем таблицу
-        if (!searchResults.isEmpty() && !searchResults.get(0)[0].startsWith("Записи не найдены")) {
-            updateTrainingsTable(searchResults); // Обновляем таблицу данными
-        } else {
-            // Если записи не найдены, показываем сообщение
-            JOptionPane.showMessageDialog(null, searchResults.get(0)[0]);
+    // Подбор тренировок по нескольким условиям; пустые поля не ограничивают выборку
+    private void openFilterDialog(String username, String password) {
+        JTextField dateFromField = new JTextField();
+        JTextField dateToField = new JTextField();
+        JTextField maxPriceField = new JTextField();
+        JTextField trainerNameField = new JTextField();
+        JCheckBox beginnerBox = new JCheckBox("начальный");
+        JCheckBox mixedBox = new JCheckBox("смешанный");
+        JCheckBox advancedBox = new JCheckBox("продвинутый");
+        JCheckBox freeSpotsBox = new JCheckBox("Только со свободными местами", true);
+        JCheckBox allTenantsBox = new JCheckBox("Во всех студиях");
+        allTenantsBox.setEnabled(TenantRouter.tenants().size() > 1);
+
+        JPanel levelsPanel = new JPanel(new GridLayout(1, 3));
+        levelsPanel.add(beginnerBox);
+        levelsPanel.add(mixedBox);
+        levelsPanel.add(advancedBox);
+
+        JPanel panel = new JPanel(new GridLayout(0, 2));
+        panel.add(new JLabel("Дата с (гггг-мм-дд):"));
+        panel.add(dateFromField);
+        panel.add(new JLabel("Дата по (гггг-мм-дд):"));
+        panel.add(dateToField);
+        panel.add(new JLabel("Цена не выше:"));
+        panel.add(maxPriceField);
+        panel.add(new JLabel("Имя тренера:"));
+        panel.add(trainerNameField);
+        panel.add(new JLabel("Уровень сложности:"));
+        panel.add(levelsPanel);
+        panel.add(new JLabel());
+        panel.add(freeSpotsBox);
+        panel.add(new JLabel());
+        panel.add(allTenantsBox);
+
+        int result = JOptionPane.showConfirmDialog(null, panel, "Подбор тренировок", JOptionPane.OK_CANCEL_OPTION);
+        if (result != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        // Одни и те же условия - для показа (не больше SEARCH_LIMIT строк) и для последующего экспорта (без ограничения)
+        TrainingQuery query = new TrainingQuery().limit(SEARCH_LIMIT);
+        TrainingQuery exportQuery = new TrainingQuery();
+        try {
+            for (TrainingQuery target : new TrainingQuery[]{query, exportQuery}) {
+                if (!dateFromField.getText().trim().isEmpty()) {
+                    target.dateFrom(LocalDate.parse(dateFromField.getText().trim()));
+                }
+                if (!dateToField.getText().trim().isEmpty()) {
+                    target.dateTo(LocalDate.parse(dateToField.getText().trim()));
+                }
+                if (!maxPriceField.getText().trim().isEmpty()) {
+                    target.maxPrice(new BigDecimal(maxPriceField.getText().trim()));
+                }
+                if (!trainerNameField.getText().trim().isEmpty()) {
+                    target.trainer(trainerNameField.getText().trim());
+                }
+                for (JCheckBox levelBox : new JCheckBox[]{beginnerBox, mixedBox, advancedBox}) {
+                    if (levelBox.isSelected()) {
+                        target.difficulty(levelBox.getText());
+                    }
+                }
+                if (freeSpotsBox.isSelected()) {
+                    target.withFreeSpots();
+                }
+            }
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            JOptionPane.showMessageDialog(null, "Ошибка ввода данных: " + ex.getMessage());
+            return;
+        }
+        lastFilterQuery = exportQuery;
+
+        if (allTenantsBox.isSelected()) {
+            showTenantResults(query, username, password);
+            return;
+        }
+        runAsync(AsyncDBManager.findTrainings(dbName, query, username, password), trainings -> {
+            if (!trainings.isEmpty()) {
+                updateTrainingsTable(trainings);
+            } else {
+                JOptionPane.showMessageDialog(null, "Подходящие тренировки не найдены.");
+            }
+        });
+    }
+
+    // Выборка по всем студиям в отдельном окне: строки студии появляются, как только она ответила;
+    // студии без ответа или с ошибкой перечисляются под таблицей
+    private void showTenantResults(TrainingQuery query, String username, String password) {
+        TenantTrainingsTableModel model = new TenantTrainingsTableModel();
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(Object.class, new TrainingCellRenderer());
+        JTextArea statusArea = new JTextArea(3, 40);
+        statusArea.setEditable(false);
+
+        JDialog dialog = new JDialog(this, "Подбор тренировок во всех студиях", false);
+        dialog.setLayout(new BorderLayout());
+        dialog.add(new JScrollPane(table), BorderLayout.CENTER);
+        dialog.add(new JScrollPane(statusArea), BorderLayout.SOUTH);
+        dialog.setSize(900, 400);
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+
+        Consumer<TenantResult> onResult = result -> SwingUtilities.invokeLater(() -> {
+            model.addResult(result);
+            statusArea.append(result.tenant() + ": " + (result.isOk()
+                    ? "найдено " + result.trainings().size() : "ошибка " + result.status() + " - " + result.message()) + "\n");
+        });
+        runAsync(TenantRouter.findTrainings(query, username, password, onResult), results -> {
+            long failed = results.stream().filter(result -> !result.isOk()).count();
+            statusArea.append("Готово: студий " + results.size() + ", без ответа или с ошибкой " + failed + "\n");
+        });
+    }
+
+    // Панель показателей: итоги групп считает сервер, строки таблицы в клиент не загружаются
+    private void showAnalytics(String username, String password) {
+        AnalyticsTableModel model = new AnalyticsTableModel();
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(Object.class, new TrainingCellRenderer());
+        table.setDefaultRenderer(Double.class, new AnalyticsTableModel.OccupancyRenderer());
+        JComboBox<AnalyticsGroup> groupBox = new JComboBox<>(AnalyticsGroup.values());
+        JTextField fromField = new JTextField(10);
+        JTextField toField = new JTextField(10);
+        JButton showButton = new JButton("Показать");
+        JLabel statusLabel = new JLabel(" ");
+
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(new JLabel("Группировка:"));
+        filterPanel.add(groupBox);
+        filterPanel.add(new JLabel("С (YYYY-MM-DD):"));
+        filterPanel.add(fromField);
+        filterPanel.add(new JLabel("По:"));
+        filterPanel.add(toField);
+        filterPanel.add(showButton);
+
+        JDialog dialog = new JDialog(this, "Показатели: " + dbName, false);
+        dialog.setLayout(new BorderLayout());
+        dialog.add(filterPanel, BorderLayout.NORTH);
+        dialog.add(new JScrollPane(table), BorderLayout.CENTER);
+        dialog.add(statusLabel, BorderLayout.SOUTH);
+        dialog.setSize(900, 400);
+        dialog.setLocationRelativeTo(this);
+
+        String tenant = dbName;
+        Runnable load = () -> {
+            LocalDate from;
+            LocalDate to;
+            try {
+                from = fromField.getText().trim().isEmpty() ? null : LocalDate.parse(fromField.getText().trim());
+                to = toField.getText().trim().isEmpty() ? null : LocalDate.parse(toField.getText().trim());
+            } catch (DateTimeParseException e) {
+                JOptionPane.showMessageDialog(dialog, "Ошибка: дата должна быть в формате YYYY-MM-DD.");
+                return;
+            }
+            statusLabel.setText("Расчет...");
+            runAsync(AsyncDBManager.getAnalytics(tenant, (AnalyticsGroup) groupBox.getSelectedItem(), from, to, username, password),
+                    result -> {
+                        model.setRows(result.rows());
+                        if (result.status() == -2) {
+                            statusLabel.setText("Ошибка: база данных " + tenant + " не существует.");
+                        } else if (result.status() == -1) {
+                            statusLabel.setText("Ошибка: таблица trainings не существует.");
+                        } else if (result.status() < 0) {
+                            statusLabel.setText("Ошибка при расчете показателей.");
+                        } else {
+                            statusLabel.setText("Групп: " + result.rows().size()
+                                    + (result.fromView() ? " (по представлению, обновляется периодически)" : ""));
+                        }
+                    });
+        };
+        showButton.addActionListener(e -> load.run());
+        groupBox.addActionListener(e -> load.run());
+        dialog.setVisible(true);
+        load.run();
+    }
+
+    // Экспорт в файл: формат - по расширению (.json или CSV, .gz - со сжатием); можно выгрузить только
+    // тренировки по условиям последнего подбора. Ход выгрузки показывается на индикаторе, отмена удаляет файл
+    private void performExport(String username, String password) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File(dbName + ".csv"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = fileChooser.getSelectedFile().toPath();
+        String name = file.getFileName().toString().toLowerCase();
+        boolean gzip = name.endsWith(".gz");
+        ExportFormat format = name.endsWith(".json") || name.endsWith(".json.gz") ? ExportFormat.JSON : ExportFormat.CSV;
+
+        TrainingQuery filter = null;
+        if (lastFilterQuery != null) {
+            int choice = JOptionPane.showConfirmDialog(null, "Выгрузить только тренировки по условиям последнего подбора?",
+                    "Экспорт", JOptionPane.YES_NO_CANCEL_OPTION);
+            if (choice == JOptionPane.CANCEL_OPTION || choice == JOptionPane.CLOSED_OPTION) {
+                return;
+            }
+            filter = choice == JOptionPane.YES_OPTION ? lastFilterQuery : null;
+        }
+
+        progressBar.setStringPainted(true);
+        progressBar.setString("Выгружено 0 строк");
+        CompletableFuture<ExportResult> export = AsyncDBManager.exportTrainings(dbName, filter, file, format, gzip,
+                rows -> SwingUtilities.invokeLater(() -> progressBar.setString("Выгружено " + rows + " строк")),
+                username, password);
+        export.whenCompleteAsync((result, error) -> progressBar.setStringPainted(false), SwingUtilities::invokeLater);
+        runAsync(export, result -> {
+            if (result.status() == -2) {
+                JOptionPane.showMessageDialog(null, "Ошибка: база данных " + dbName + " не существует.");
+            } else if (result.status() == -1) {
+                JOptionPane.showMessageDialog(null, "Ошибка: таблица trainings не существует.");
+            } else if (result.status() == -17) {
+                JOptionPane.showMessageDialog(null, "Ошибка: не удалось записать файл " + file + ".");
+            } else if (result.status() != 0) {
+                JOptionPane.showMessageDialog(null, "Ошибка при выгрузке тренировок.");
+            } else {
+                outputArea.append("Выгружено тренировок: " + result.rows() + " в файл " + file + " (" + result.bytes() + " байт).\n");
+            }
+        });
+    }
+
+    // Массовая загрузка из CSV-файла
+    private void performImport(String username, String password) {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        Path file = fileChooser.getSelectedFile().toPath();
+
+        runAsync(AsyncDBManager.importTrainingsFromCsv(dbName, file, username, password), result -> {
+            if (result.status() == -2) {
+                JOptionPane.showMessageDialog(null, "Ошибка: база данных " + dbName + " не существует.");
+            } else if (result.status() == -1) {
+                JOptionPane.showMessageDialog(null, "Ошибка: таблица trainings не существует.");
+            } else if (result.status() == -17) {
+                JOptionPane.showMessageDialog(null, "Ошибка: не удалось прочитать файл " + file + ".");
+            } else if (result.status() != 0) {
+                JOptionPane.showMessageDialog(null, "Ошибка при загрузке тренировок. Изменения отменены.");
+            } else {
+                String summary = "Загружено тренировок: " + result.inserted() + ". Отклонено строк: " + result.errors().size() + ".";
+                if (result.errors().isEmpty()) {
+                    JOptionPane.showMessageDialog(null, summary);
+                } else {
+                    // Отклоненные строки показываются списком под итогом
+                    StringBuilder details = new StringBuilder();
+                    for (ImportResult.RowError error : result.errors()) {
+                        details.append("Строка ").append(error.rowNumber()).append(": ").append(error.message()).append('\n');
+                    }
+                    JTextArea detailsArea = new JTextArea(details.toString(), 10, 60);
+                    detailsArea.setEditable(false);
+                    JOptionPane.showMessageDialog(null, new Object[]{summary, new JScrollPane(detailsArea)});
+                }
+                refreshTrainingsTable();
+            }
+        });
     }
 
     // Удаление
@@ -337,26 +927,10 @@ public class TrainingsManager extends JFrame {
             return;
         }
 
-        // Выполняем удаление
-        int rowsDeleted = DBManager.deleteTrainingByField("training_schedule", deleteFieldName, deleteValue, username, password);
-
-        // Обрабатываем результат удаления
-        if (rowsDeleted > 0) {
-            JOptionPane.showMessageDialog(null, "Удалено " + rowsDeleted + " записей.");
-            refreshTrainingsTable(); // Обновляем таблицу
-        } else if (rowsDeleted == -2) {
-            JOptionPane.showMessageDialog(null, "Ошибка: база данных training_schedule не существует.");
-        } else if (rowsDeleted == -1) {
-            JOptionPane.showMessageDialog(null, "Ошибка: таблица trainings не существует.");
-        } else if (rowsDeleted == -7) {
-            JOptionPane.showMessageDialog(null, "Ошибка: Поле " + deleteFieldName + " не существует или не является текстовым.");
-        } else if (rowsDeleted == -8) {
-            JOptionPane.showMessageDialog(null, "Ошибка: Значение для удаления не может быть пустым.");
-        } else if (rowsDeleted == 0) {
-            JOptionPane.showMessageDialog(null, "Записи не найдены.");
-        } else {
-            JOptionPane.showMessageDialog(null, "Ошибка при удалении записей.");
-        }
+        // Выполняем удаление; удаленные строки убираются из таблицы
+        runPipeline(new Pipeline().deleteTrainingByField(deleteFieldName, deleteValue),
+                () -> AsyncDBManager.deleteTrainingByField(dbName, deleteFieldName, deleteValue, username, password),
+                true, username, password);
     }
 
     // Обновление
@@ -423,25 +997,11 @@ public class TrainingsManager extends JFrame {
                 String trainerName = trainerNameField.getText();
                 double price = Double.parseDouble(priceField.getText());
 
-                int updateResult = DBManager.updateTrainingRecord("training_schedule", id, title, date, startTime, duration,
-                        maxParticipants, currentParticipants, difficultyLevel, trainerName, price, username, password);
-
-                if (updateResult > 0) {
-                    JOptionPane.showMessageDialog(null, "Запись с ID " + id + " успешно обновлена.");
-                    refreshTrainingsTable(); // Обновляем таблицу
-                } else if (updateResult == -2) {
-                    JOptionPane.showMessageDialog(null, "Ошибка: база данных training_schedule не существует.");
-                } else if (updateResult == -1) {
-                    JOptionPane.showMessageDialog(null, "Ошибка: таблица trainings не существует.");
-                } else if (updateResult == -9) {
-                    JOptionPane.showMessageDialog(null, "Ошибка: Некорректный ID.");
-                } else if (updateResult == -10) {
-                    JOptionPane.showMessageDialog(null, "Ошибка: Нет данных для обновления.");
-                } else if (updateResult == 0) {
-                    JOptionPane.showMessageDialog(null, "Запись с ID " + id + " не найдена.");
-                } else {
-                    JOptionPane.showMessageDialog(null, "Ошибка при обновлении записи.");
-                }
+                runPipeline(new Pipeline().updateTrainingRecord(id, title, date, startTime, duration, maxParticipants,
+                        currentParticipants, difficultyLevel, trainerName, price),
+                        () -> AsyncDBManager.updateTrainingRecord(dbName, id, title, date, startTime, duration,
+                                maxParticipants, currentParticipants, difficultyLevel, trainerName, price, username, password),
+                        false, username, password);
             } catch (IllegalArgumentException ex) {
                 JOptionPane.showMessageDialog(null, "Ошибка ввода данных: " + ex.getMessage());
             }
@@ -494,16 +1054,52 @@ public class TrainingsManager extends JFrame {
                 String trainerName = trainerNameField.getText();
                 double price = Double.parseDouble(priceField.getText());
 
-                String resultMessage = addTraining("training_schedule", title, date, startTime, duration,
-                        maxParticipants, currentParticipants, difficultyLevel, trainerName, price, username, password);
-
-                JOptionPane.showMessageDialog(null, resultMessage);
+                runPipeline(new Pipeline().addTraining(title, date, startTime, duration, maxParticipants,
+                        currentParticipants, difficultyLevel, trainerName, price),
+                        () -> AsyncDBManager.addTraining(dbName, title, date, startTime, duration, maxParticipants,
+                                currentParticipants, difficultyLevel, trainerName, price, username, password),
+                        false, username, password);
             } catch (IllegalArgumentException ex) {
                 JOptionPane.showMessageDialog(null, "Ошибка ввода данных: " + ex.getMessage());
             }
         }
     }
 
+    // Запись на занятие и отмена записи: число участников меняется в базе одним условным запросом,
+    // поэтому одновременная запись с нескольких рабочих мест не превышает максимум участников
+    private void openBookingDialog(String username, String password) {
+        JTextField idField = new JTextField();
+        JTextField seatsField = new JTextField("1");
+        JComboBox<String> operationBox = new JComboBox<>(new String[]{"Записать", "Отменить запись"});
+
+        JPanel panel = new JPanel(new GridLayout(0, 2));
+        panel.add(new JLabel("ID тренировки:"));
+        panel.add(idField);
+        panel.add(new JLabel("Количество мест:"));
+        panel.add(seatsField);
+        panel.add(new JLabel("Действие:"));
+        panel.add(operationBox);
+
+        int result = JOptionPane.showConfirmDialog(null, panel, "Запись на тренировку", JOptionPane.OK_CANCEL_OPTION);
+        if (result != JOptionPane.OK_OPTION) {
+            return;
+        }
+        int id;
+        int seats;
+        try {
+            id = Integer.parseInt(idField.getText().trim());
+            seats = Integer.parseInt(seatsField.getText().trim());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(null, "Неверный формат ID или количества мест.");
+            return;
+        }
+        boolean book = operationBox.getSelectedIndex() == 0;
+        runPipeline(book ? new Pipeline().bookTraining(id, seats) : new Pipeline().cancelBooking(id, seats),
+                () -> book ? AsyncDBManager.bookTraining(dbName, id, seats, username, password)
+                        : AsyncDBManager.cancelBooking(dbName, id, seats, username, password),
+                false, username, password);
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new TrainingsManager());
     }
@@ -0,0 +1,587 @@
+package gui;
+
+import db.Training;
+
+import javax.swing.table.AbstractTableModel;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.Collator;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Модель таблицы с хранением по столбцам: числовые поля - в массивах примитивов (id, день даты от эпохи,
+// секунды начала и длительности, участники, цена в копейках), текстовые - кодами словарей строк.
+// Сортировка по столбцу и фильтр по тексту меняют только перестановку номеров строк (view) - без запросов
+// к базе и без создания объектов на строку. Ячейки отдают типизированные значения, текст из них строит
+// TrainingCellRenderer при отрисовке
+public class TrainingsTableModel extends AbstractTableModel {
+    static final String[] COLUMN_NAMES = {"ID", "Название", "Дата", "Время", "Длительность", "Макс. участников",
+            "Текущие участники", "Уровень сложности", "Тренер", "Цена"};
+    // При большем числе изменений таблица перестраивается целиком - так быстрее, чем по одной строке
+    private static final int MAX_ROW_EVENTS = 1000;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int RADIX_BITS = 16;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private final StringDictionary titles = new StringDictionary();
+    private final StringDictionary levels = new StringDictionary();
+    private final StringDictionary trainers = new StringDictionary();
+
+    // Строки в порядке хранения (для всей таблицы - по возрастанию id)
+    private int size;
+    private int[] ids = new int[0];
+    private int[] dates = new int[0];
+    private int[] startSeconds = new int[0];
+    private int[] durationSeconds = new int[0];
+    private int[] maxParticipants = new int[0];
+    private int[] currentParticipants = new int[0];
+    private long[] priceCents = new long[0];
+    private int[] titleCodes = new int[0];
+    private int[] levelCodes = new int[0];
+    private int[] trainerCodes = new int[0];
+
+    // Порядок показа - номера строк хранилища; null - все строки в порядке хранения.
+    // sorted - все строки в порядке сортировки, фильтр выбирает из него (или из view при уточнении текста)
+    private int[] view;
+    private int viewSize;
+    private int[] sorted;
+    private int sortColumn = -1;
+    private boolean descending;
+    private String filter = "";
+
+    public void setTrainings(List<Training> trainings) {
+        titles.clear();
+        levels.clear();
+        trainers.clear();
+        size = 0;
+        ensureCapacity(trainings.size());
+        for (Training training : trainings) {
+            store(size++, training);
+        }
+        rebuildView();
+        fireTableDataChanged();
+    }
+
+    // Изменение отдельных строк в таблице, упорядоченной по id: новые строки вставляются на свое место,
+    // измененные заменяются, удаленные убираются; без сортировки и фильтра перерисовываются только затронутые строки
+    public void applyChanges(List<Training> upserted, Collection<Integer> removedIds) {
+        if (upserted.size() + removedIds.size() > MAX_ROW_EVENTS) {
+            Map<Integer, Training> changed = new HashMap<>();
+            for (Training training : upserted) {
+                changed.put(training.id(), training);
+            }
+            // Удаленные и замененные строки убираются за один проход, новые значения добавляются в конец,
+            // затем хранилище упорядочивается по id
+            int kept = 0;
+            for (int row = 0; row < size; row++) {
+                if (!removedIds.contains(ids[row]) && !changed.containsKey(ids[row])) {
+                    moveRow(row, kept++);
+                }
+            }
+            size = kept;
+            ensureCapacity(size + changed.size());
+            for (Training training : changed.values()) {
+                store(size++, training);
+            }
+            sortStorageById();
+            rebuildView();
+            fireTableDataChanged();
+            return;
+        }
+        boolean rowEvents = view == null;
+        for (Integer id : removedIds) {
+            int row = indexOf(id);
+            if (row >= 0) {
+                removeRow(row);
+                if (rowEvents) {
+                    fireTableRowsDeleted(row, row);
+                }
+            }
+        }
+        for (Training training : upserted) {
+            int row = indexOf(training.id());
+            if (row >= 0) {
+                store(row, training);
+                if (rowEvents) {
+                    fireTableRowsUpdated(row, row);
+                }
+            } else {
+                int position = -row - 1;
+                insertRow(position);
+                store(position, training);
+                if (rowEvents) {
+                    fireTableRowsInserted(position, position);
+                }
+            }
+        }
+        if (!rowEvents) {
+            rebuildView();
+            fireTableDataChanged();
+        }
+    }
+
+    // Изменение строк в таблице с любым порядком (результаты поиска и подбора): показанные строки заменяются
+    // на месте, удаленные убираются; строки, которых в таблице нет, не добавляются - они могут не подходить
+    // под условия выборки
+    public void replaceRows(List<Training> changed, Collection<Integer> removedIds) {
+        Map<Integer, Training> changedById = new HashMap<>();
+        for (Training training : changed) {
+            changedById.put(training.id(), training);
+        }
+        boolean rowEvents = view == null;
+        // С конца, чтобы удаление строки не сдвигало номера еще не просмотренных
+        for (int row = size - 1; row >= 0; row--) {
+            int id = ids[row];
+            if (removedIds.contains(id)) {
+                removeRow(row);
+                if (rowEvents) {
+                    fireTableRowsDeleted(row, row);
+                }
+            } else if (changedById.containsKey(id)) {
+                store(row, changedById.get(id));
+                if (rowEvents) {
+                    fireTableRowsUpdated(row, row);
+                }
+            }
+        }
+        if (!rowEvents) {
+            rebuildView();
+            fireTableDataChanged();
+        }
+    }
+
+    // Сортировка по столбцу модели: по возрастанию, по убыванию, затем снова порядок хранения
+    public void sortBy(int column) {
+        if (column != sortColumn) {
+            sortColumn = column;
+            descending = false;
+        } else if (!descending) {
+            descending = true;
+        } else {
+            sortColumn = -1;
+        }
+        sorted = null;
+        rebuildView();
+        fireTableDataChanged();
+    }
+
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    // Фильтр по вхождению текста без учета регистра в название, тренера или уровень. Если новый текст
+    // содержит прежний (набор продолжается), проверяются только уже показанные строки
+    public void setFilter(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(filter)) {
+            return;
+        }
+        boolean narrowing = !filter.isEmpty() && normalized.contains(filter) && view != null;
+        filter = normalized;
+        if (narrowing) {
+            viewSize = filterRows(view, viewSize, view);
+        } else {
+            rebuildView();
+        }
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return view == null ? size : viewSize;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        if (column != sortColumn) {
+            return COLUMN_NAMES[column];
+        }
+        return COLUMN_NAMES[column] + (descending ? " ▼" : " ▲");
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int row = view == null ? rowIndex : view[rowIndex];
+        switch (columnIndex) {
+            case 0:
+                return ids[row];
+            case 1:
+                return titles.value(titleCodes[row]);
+            case 2:
+                return dates[row] == NULL_INT ? null : LocalDate.ofEpochDay(dates[row]);
+            case 3:
+                return startSeconds[row] == NULL_INT ? null : LocalTime.ofSecondOfDay(startSeconds[row]);
+            case 4:
+                return durationSeconds[row] == NULL_INT ? null : Duration.ofSeconds(durationSeconds[row]);
+            case 5:
+                return maxParticipants[row] == Training.NOT_SET ? null : maxParticipants[row];
+            case 6:
+                return currentParticipants[row] == Training.NOT_SET ? null : currentParticipants[row];
+            case 7:
+                return levels.value(levelCodes[row]);
+            case 8:
+                return trainers.value(trainerCodes[row]);
+            case 9:
+                return priceCents[row] == NULL_LONG ? null : BigDecimal.valueOf(priceCents[row], 2);
+            default:
+                throw new IndexOutOfBoundsException("Нет столбца " + columnIndex);
+        }
+    }
+
+    // Значение столбца для строки; пустые числовые поля возвращаются как null
+    static Object valueAt(Training training, int columnIndex) {
+        switch (columnIndex) {
+            case 0:
+                return training.id();
+            case 1:
+                return training.title();
+            case 2:
+                return training.date();
+            case 3:
+                return training.startTime();
+            case 4:
+                return training.duration();
+            case 5:
+                return training.maxParticipants() == Training.NOT_SET ? null : training.maxParticipants();
+            case 6:
+                return training.currentParticipants() == Training.NOT_SET ? null : training.currentParticipants();
+            case 7:
+                return training.difficultyLevel();
+            case 8:
+                return training.trainerName();
+            case 9:
+                return training.price();
+            default:
+                throw new IndexOutOfBoundsException("Нет столбца " + columnIndex);
+        }
+    }
+
+    // Время и длительность хранятся с точностью до секунды, цена - в копейках (DECIMAL(10, 2))
+    private void store(int row, Training training) {
+        ids[row] = training.id();
+        dates[row] = training.date() == null ? NULL_INT : (int) training.date().toEpochDay();
+        startSeconds[row] = training.startTime() == null ? NULL_INT : training.startTime().toSecondOfDay();
+        durationSeconds[row] = training.duration() == null ? NULL_INT : (int) training.duration().getSeconds();
+        maxParticipants[row] = training.maxParticipants();
+        currentParticipants[row] = training.currentParticipants();
+        priceCents[row] = training.price() == null ? NULL_LONG
+                : training.price().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        titleCodes[row] = titles.code(training.title());
+        levelCodes[row] = levels.code(training.difficultyLevel());
+        trainerCodes[row] = trainers.code(training.trainerName());
+        sorted = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int length = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, length);
+        dates = Arrays.copyOf(dates, length);
+        startSeconds = Arrays.copyOf(startSeconds, length);
+        durationSeconds = Arrays.copyOf(durationSeconds, length);
+        maxParticipants = Arrays.copyOf(maxParticipants, length);
+        currentParticipants = Arrays.copyOf(currentParticipants, length);
+        priceCents = Arrays.copyOf(priceCents, length);
+        titleCodes = Arrays.copyOf(titleCodes, length);
+        levelCodes = Arrays.copyOf(levelCodes, length);
+        trainerCodes = Arrays.copyOf(trainerCodes, length);
+    }
+
+    // Сдвиг строк: from..size-1 переносятся на from+shift (shift = 1 - вставка, -1 - удаление строки from-1)
+    private void shiftRows(int from, int shift) {
+        int count = size - from;
+        System.arraycopy(ids, from, ids, from + shift, count);
+        System.arraycopy(dates, from, dates, from + shift, count);
+        System.arraycopy(startSeconds, from, startSeconds, from + shift, count);
+        System.arraycopy(durationSeconds, from, durationSeconds, from + shift, count);
+        System.arraycopy(maxParticipants, from, maxParticipants, from + shift, count);
+        System.arraycopy(currentParticipants, from, currentParticipants, from + shift, count);
+        System.arraycopy(priceCents, from, priceCents, from + shift, count);
+        System.arraycopy(titleCodes, from, titleCodes, from + shift, count);
+        System.arraycopy(levelCodes, from, levelCodes, from + shift, count);
+        System.arraycopy(trainerCodes, from, trainerCodes, from + shift, count);
+    }
+
+    private void insertRow(int row) {
+        ensureCapacity(size + 1);
+        shiftRows(row, 1);
+        size++;
+    }
+
+    private void removeRow(int row) {
+        shiftRows(row + 1, -1);
+        size--;
+        sorted = null;
+    }
+
+    private void moveRow(int from, int to) {
+        ids[to] = ids[from];
+        dates[to] = dates[from];
+        startSeconds[to] = startSeconds[from];
+        durationSeconds[to] = durationSeconds[from];
+        maxParticipants[to] = maxParticipants[from];
+        currentParticipants[to] = currentParticipants[from];
+        priceCents[to] = priceCents[from];
+        titleCodes[to] = titleCodes[from];
+        levelCodes[to] = levelCodes[from];
+        trainerCodes[to] = trainerCodes[from];
+    }
+
+    // Упорядочивание хранилища по id: перестановка строится сортировкой упакованных ключей, затем
+    // каждый столбец переставляется по ней
+    private void sortStorageById() {
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = (long) ids[row] << 32 | row;
+        }
+        Arrays.parallelSort(keys);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        ids = permute(ids, order);
+        dates = permute(dates, order);
+        startSeconds = permute(startSeconds, order);
+        durationSeconds = permute(durationSeconds, order);
+        maxParticipants = permute(maxParticipants, order);
+        currentParticipants = permute(currentParticipants, order);
+        titleCodes = permute(titleCodes, order);
+        levelCodes = permute(levelCodes, order);
+        trainerCodes = permute(trainerCodes, order);
+        long[] prices = new long[priceCents.length];
+        for (int i = 0; i < size; i++) {
+            prices[i] = priceCents[order[i]];
+        }
+        priceCents = prices;
+        sorted = null;
+    }
+
+    private int[] permute(int[] column, int[] order) {
+        int[] result = new int[column.length];
+        for (int i = 0; i < size; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    // Номер строки с данным id в хранилище, упорядоченном по id (двоичный поиск), или -(место вставки) - 1
+    private int indexOf(int id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    private void rebuildView() {
+        if (sortColumn < 0 && filter.isEmpty()) {
+            view = null;
+            viewSize = 0;
+            return;
+        }
+        if (sorted == null) {
+            sorted = sortColumn < 0 ? identity() : sortRows(sortColumn, descending);
+        }
+        if (filter.isEmpty()) {
+            view = sorted;
+            viewSize = size;
+        } else {
+            view = new int[size];
+            viewSize = filterRows(sorted, size, view);
+        }
+    }
+
+    private int[] identity() {
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    // Строки source[0..count), подходящие под фильтр, по порядку записываются в target (может совпадать с source).
+    // Совпадения проверяются один раз для каждой строки словаря, строки таблицы сравнивают только коды
+    private int filterRows(int[] source, int count, int[] target) {
+        boolean[] titleMatches = titles.matches(filter);
+        boolean[] levelMatches = levels.matches(filter);
+        boolean[] trainerMatches = trainers.matches(filter);
+        int matched = 0;
+        for (int i = 0; i < count; i++) {
+            int row = source[i];
+            if (matches(titleMatches, titleCodes[row]) || matches(trainerMatches, trainerCodes[row])
+                    || matches(levelMatches, levelCodes[row])) {
+                target[matched++] = row;
+            }
+        }
+        return matched;
+    }
+
+    private static boolean matches(boolean[] codeMatches, int code) {
+        return code >= 0 && codeMatches[code];
+    }
+
+    // Ключ строки - число (для строк - место значения в отсортированном словаре). Ключи приводятся к 0..range
+    // (пустые значения - 0, то есть первыми) и перестановка строится устойчивой поразрядной сортировкой
+    // по 16 бит: ключи - небольшие целые (дни, секунды, места в словаре, копейки), поэтому проходов один-три,
+    // а равные ключи остаются в порядке хранения
+    private int[] sortRows(int column, boolean descending) {
+        long[] keys = new long[size];
+        int[] ranks = column == 1 ? titles.ranks() : column == 7 ? levels.ranks() : column == 8 ? trainers.ranks() : null;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int row = 0; row < size; row++) {
+            long key = key(column, row, ranks);
+            keys[row] = key;
+            if (key != NULL_LONG) {
+                min = Math.min(min, key);
+                max = Math.max(max, key);
+            }
+        }
+        long range = min > max ? 0 : max - min + 1;
+        for (int row = 0; row < size; row++) {
+            long normalized = keys[row] == NULL_LONG ? 0 : keys[row] - min + 1;
+            keys[row] = descending ? range - normalized : normalized;
+        }
+        int[] order = identity();
+        int[] orderBuffer = new int[size];
+        long[] keyBuffer = new long[size];
+        int[] counts = new int[RADIX + 1];
+        for (int shift = 0; shift < 64 - Long.numberOfLeadingZeros(range); shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            int position = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int count = counts[digit];
+                counts[digit] = position;
+                position += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int target = counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+                keyBuffer[target] = keys[i];
+                orderBuffer[target] = order[i];
+            }
+            long[] swappedKeys = keys;
+            keys = keyBuffer;
+            keyBuffer = swappedKeys;
+            int[] swappedOrder = order;
+            order = orderBuffer;
+            orderBuffer = swappedOrder;
+        }
+        return order;
+    }
+
+    private long key(int column, int row, int[] ranks) {
+        switch (column) {
+            case 0:
+                return ids[row];
+            case 1:
+                return rank(ranks, titleCodes[row]);
+            case 2:
+                return intKey(dates[row]);
+            case 3:
+                return intKey(startSeconds[row]);
+            case 4:
+                return intKey(durationSeconds[row]);
+            case 5:
+                return maxParticipants[row] == Training.NOT_SET ? NULL_LONG : maxParticipants[row];
+            case 6:
+                return currentParticipants[row] == Training.NOT_SET ? NULL_LONG : currentParticipants[row];
+            case 7:
+                return rank(ranks, levelCodes[row]);
+            case 8:
+                return rank(ranks, trainerCodes[row]);
+            case 9:
+                return priceCents[row];
+            default:
+                throw new IndexOutOfBoundsException("Нет столбца " + column);
+        }
+    }
+
+    private static long intKey(int value) {
+        return value == NULL_INT ? NULL_LONG : value;
+    }
+
+    private static long rank(int[] ranks, int code) {
+        return code < 0 ? NULL_LONG : ranks[code];
+    }
+
+    // Словарь строк столбца: каждая различная строка хранится один раз, строки таблицы хранят ее код
+    // (-1 - пустое значение). Различных значений немного (названия, тренеры, уровни), поэтому сравнение
+    // и поиск по тексту выполняются над словарем, а не над строками таблицы
+    private static final class StringDictionary {
+        private static final Collator COLLATOR = Collator.getInstance(new Locale("ru"));
+
+        private final List<String> values = new ArrayList<>();
+        private final List<String> lowerValues = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private int[] ranks;
+
+        void clear() {
+            values.clear();
+            lowerValues.clear();
+            codes.clear();
+            ranks = null;
+        }
+
+        int code(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+                lowerValues.add(value.toLowerCase(Locale.ROOT));
+                ranks = null;
+            }
+            return code;
+        }
+
+        String value(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+
+        // Место каждого кода в алфавитном порядке значений
+        int[] ranks() {
+            if (ranks == null) {
+                Integer[] order = new Integer[values.size()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> COLLATOR.compare(values.get(a), values.get(b)));
+                ranks = new int[order.length];
+                for (int rank = 0; rank < order.length; rank++) {
+                    ranks[order[rank]] = rank;
+                }
+            }
+            return ranks;
+        }
+
+        boolean[] matches(String lowerText) {
+            boolean[] result = new boolean[lowerValues.size()];
+            for (int code = 0; code < result.length; code++) {
+                result[code] = lowerValues.get(code).contains(lowerText);
+            }
+            return result;
+        }
+    }
+}
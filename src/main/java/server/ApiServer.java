@@ -0,0 +1,402 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import db.DBManager;
+import db.MatchType;
+import db.MutationResult;
+import db.TenantResult;
+import db.TenantRouter;
+import db.Training;
+import db.TrainingQuery;
+import db.TrainingsCache;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Сервер без интерфейса: операции DBManager по HTTP/JSON для киосков и других клиентов. Все запросы обслуживает
+// один процесс, поэтому пулы соединений, кэш ролей и кэш таблицы (TrainingsCache) общие для всех клиентов.
+// Пользователь передается в заголовке Authorization (Basic) и проверяется DBManager.authenticateUser;
+// как в TrainingsManager, гостю доступно только чтение (GET), изменения - администратору.
+// Студия - параметр tenant (по умолчанию первая из -Ddb.tenants). Запуск: java -cp ... server.ApiServer,
+// адрес - -Dserver.host (по умолчанию localhost) и -Dserver.port (по умолчанию 8080).
+//
+//   GET    /api/tenants                          список студий
+//   GET    /api/trainings                        все тренировки
+//   GET    /api/trainings/search?field=&value=&match=CONTAINS|PREFIX|EXACT|FUZZY&limit=
+//   GET    /api/trainings/find?dateFrom=&dateTo=&minPrice=&maxPrice=&level=a,b&trainer=&freeSpots=true&limit=
+//                                                 (tenant=* - во всех студиях, результат каждой передается по готовности)
+//   POST   /api/trainings                        добавление, тело - JSON с полями Training без id
+//   PATCH  /api/trainings/{id}                   обновление переданных полей
+//   DELETE /api/trainings?field=&value=          удаление по полю
+//   POST   /api/trainings/{id}/book?seats=       запись на занятие
+//   POST   /api/trainings/{id}/cancel?seats=     отмена записи
+public final class ApiServer {
+    private static final String HOST = System.getProperty("server.host", "localhost");
+    private static final int PORT = Integer.getInteger("server.port", 8080);
+    private static final int FALLBACK_THREADS = Integer.getInteger("server.threads", 64);
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final boolean CACHE_ENABLED = !"false".equalsIgnoreCase(System.getProperty("db.cache"));
+
+    // Кэш таблицы на студию и пользователя: читает таблицу с правами этого пользователя
+    private static final Map<String, TrainingsCache> CACHES = new ConcurrentHashMap<>();
+
+    private ApiServer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        HttpServer server = start(HOST, PORT);
+        System.out.println("Сервер запущен: http://" + HOST + ":" + server.getAddress().getPort() + "/api/trainings");
+    }
+
+    public static HttpServer start(String host, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.setExecutor(createExecutor());
+        server.createContext("/api/", ApiServer::handle);
+        server.start();
+        return server;
+    }
+
+    // Виртуальные потоки, если JVM их поддерживает (Java 21+), иначе ограниченный пул потоков
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS, r -> {
+                Thread thread = new Thread(r, "api-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] credentials = credentials(exchange);
+            String role = credentials == null ? null : DBManager.authenticateUser(credentials[0], credentials[1]);
+            if (role == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"trainings\", charset=\"UTF-8\"");
+                send(exchange, 401, Json.error(401, "Пользователь не аутентифицирован."));
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("GET") && !role.equals("admin")) {
+                send(exchange, 403, Json.error(403, "Ошибка: у вас нет прав для выполнения этого действия."));
+                return;
+            }
+            try {
+                route(exchange, credentials[0], credentials[1]);
+            } catch (IllegalArgumentException | DateTimeParseException | ArithmeticException e) {
+                send(exchange, 400, Json.error(400, e.getMessage()));
+            } catch (SQLException e) {
+                System.out.println("Ошибка при обработке запроса " + exchange.getRequestURI() + ": " + e.getMessage());
+                send(exchange, 500, Json.error(-555, e.getMessage()));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ошибка при обработке запроса " + exchange.getRequestURI() + ": " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void route(HttpExchange exchange, String username, String password) throws IOException, SQLException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Map<String, String> params = query(exchange);
+
+        if (path.length == 1 && path[0].equals("tenants") && method.equals("GET")) {
+            StringBuilder out = new StringBuilder("[");
+            for (String tenant : TenantRouter.tenants()) {
+                if (out.length() > 1) {
+                    out.append(',');
+                }
+                Json.writeString(out, tenant);
+            }
+            send(exchange, 200, out.append(']').toString());
+            return;
+        }
+        if (path.length == 0 || !path[0].equals("trainings")) {
+            send(exchange, 404, Json.error(404, "Неизвестный адрес"));
+            return;
+        }
+        if (path.length == 2 && path[1].equals("find") && method.equals("GET") && "*".equals(params.get("tenant"))) {
+            sendAllTenants(exchange, trainingQuery(params), username, password);
+            return;
+        }
+        String tenant = params.getOrDefault("tenant", TenantRouter.defaultTenant());
+        if (!TenantRouter.tenants().contains(tenant)) {
+            send(exchange, 404, Json.error(-2, "Студия " + tenant + " не найдена"));
+            return;
+        }
+
+        if (path.length == 1) {
+            switch (method) {
+                case "GET":
+                    sendTrainings(exchange, allTrainings(tenant, username, password));
+                    return;
+                case "POST":
+                    sendMutation(exchange, tenant, addTraining(tenant, Json.parseObject(body(exchange)), username, password));
+                    return;
+                case "DELETE":
+                    sendMutation(exchange, tenant, DBManager.deleteTrainingByField(tenant, required(params, "field"),
+                            required(params, "value"), username, password));
+                    return;
+                default:
+                    break;
+            }
+        } else if (path.length == 2 && method.equals("GET") && path[1].equals("search")) {
+            MatchType matchType = MatchType.valueOf(params.getOrDefault("match", "CONTAINS").toUpperCase());
+            int limit = Integer.parseInt(params.getOrDefault("limit", "0"));
+            sendTrainings(exchange, DBManager.searchTrainingByField(tenant, required(params, "field"), required(params, "value"),
+                    matchType, limit, username, password));
+            return;
+        } else if (path.length == 2 && method.equals("GET") && path[1].equals("find")) {
+            sendTrainings(exchange, DBManager.findTrainings(tenant, trainingQuery(params), username, password));
+            return;
+        } else if (path.length == 2 && method.equals("PATCH")) {
+            sendMutation(exchange, tenant, updateTraining(tenant, Integer.parseInt(path[1]), Json.parseObject(body(exchange)),
+                    username, password));
+            return;
+        } else if (path.length == 3 && method.equals("POST") && (path[2].equals("book") || path[2].equals("cancel"))) {
+            int id = Integer.parseInt(path[1]);
+            int seats = Integer.parseInt(params.getOrDefault("seats", "1"));
+            sendMutation(exchange, tenant, path[2].equals("book")
+                    ? DBManager.bookTraining(tenant, id, seats, username, password)
+                    : DBManager.cancelBooking(tenant, id, seats, username, password));
+            return;
+        }
+        send(exchange, 404, Json.error(404, "Неизвестный адрес"));
+    }
+
+    // Все тренировки - из общего кэша таблицы, если он включен (-Ddb.cache)
+    private static List<Training> allTrainings(String tenant, String username, String password) throws SQLException {
+        if (!CACHE_ENABLED) {
+            return DBManager.getAllTrainings(tenant, username, password);
+        }
+        TrainingsCache cache = CACHES.computeIfAbsent(tenant + "\n" + username, key -> {
+            TrainingsCache created = new TrainingsCache(tenant, username, password);
+            created.start();
+            return created;
+        });
+        return cache.getAll();
+    }
+
+    private static MutationResult addTraining(String tenant, Map<String, Object> fields, String username, String password) {
+        Integer maxParticipants = intField(fields, "maxParticipants");
+        Integer currentParticipants = intField(fields, "currentParticipants");
+        BigDecimal price = decimalField(fields, "price");
+        return DBManager.addTraining(tenant, requiredField(fields, "title"), Date.valueOf(LocalDate.parse(requiredField(fields, "date"))),
+                Time.valueOf(LocalTime.parse(requiredField(fields, "startTime"))), requiredField(fields, "duration"),
+                maxParticipants == null ? 0 : maxParticipants, currentParticipants == null ? 0 : currentParticipants,
+                requiredField(fields, "difficultyLevel"), requiredField(fields, "trainerName"),
+                price == null ? 0 : price.doubleValue(), username, password);
+    }
+
+    // Поля, которых нет в теле, не меняются
+    private static MutationResult updateTraining(String tenant, int id, Map<String, Object> fields, String username, String password) {
+        BigDecimal price = decimalField(fields, "price");
+        return DBManager.updateTrainingRecord(tenant, id, stringField(fields, "title"), dateField(fields, "date"),
+                timeField(fields, "startTime"), stringField(fields, "duration"), intField(fields, "maxParticipants"),
+                intField(fields, "currentParticipants"), stringField(fields, "difficultyLevel"),
+                stringField(fields, "trainerName"), price == null ? null : price.doubleValue(), username, password);
+    }
+
+    private static TrainingQuery trainingQuery(Map<String, String> params) {
+        TrainingQuery query = new TrainingQuery();
+        if (params.containsKey("dateFrom")) {
+            query.dateFrom(LocalDate.parse(params.get("dateFrom")));
+        }
+        if (params.containsKey("dateTo")) {
+            query.dateTo(LocalDate.parse(params.get("dateTo")));
+        }
+        if (params.containsKey("minPrice")) {
+            query.minPrice(new BigDecimal(params.get("minPrice")));
+        }
+        if (params.containsKey("maxPrice")) {
+            query.maxPrice(new BigDecimal(params.get("maxPrice")));
+        }
+        if (params.containsKey("level")) {
+            query.difficulty(params.get("level").split(","));
+        }
+        if (params.containsKey("trainer")) {
+            query.trainer(params.get("trainer"));
+        }
+        if (Boolean.parseBoolean(params.get("freeSpots"))) {
+            query.withFreeSpots();
+        }
+        if (params.containsKey("limit")) {
+            query.limit(Integer.parseInt(params.get("limit")));
+        }
+        return query;
+    }
+
+    // Ответ по всем студиям: массив TenantResult, каждый элемент отправляется, как только студия ответила
+    private static void sendAllTenants(HttpExchange exchange, TrainingQuery query, String username, String password) throws IOException {
+        List<String> tenants = TenantRouter.tenants();
+        BlockingQueue<TenantResult> ready = new LinkedBlockingQueue<>();
+        TenantRouter.findTrainings(tenants, query, username, password, ready::add);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = writer(exchange)) {
+            out.write('[');
+            for (int i = 0; i < tenants.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Json.writeTenantResult(out, ready.take());
+                out.flush();
+            }
+            out.write(']');
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sendTrainings(HttpExchange exchange, List<Training> trainings) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = writer(exchange)) {
+            Json.writeTrainings(out, trainings);
+        }
+    }
+
+    // Коды результата: -1/-2 (нет таблицы или базы) - 404, -555 - 500, прочие ошибки - 422.
+    // После успешного изменения общий кэш студии сверяется с базой сразу, не дожидаясь уведомления
+    private static void sendMutation(HttpExchange exchange, String tenant, MutationResult result) throws IOException {
+        int status = result.status();
+        if (status >= 0) {
+            for (Map.Entry<String, TrainingsCache> entry : CACHES.entrySet()) {
+                if (entry.getKey().startsWith(tenant + "\n")) {
+                    entry.getValue().syncNow();
+                }
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        Json.writeMutation(out, result);
+        send(exchange, status >= 0 ? 200 : status == -1 || status == -2 ? 404 : status == -555 ? 500 : 422, out.toString());
+    }
+
+    private static void send(HttpExchange exchange, int httpStatus, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(httpStatus, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Writer writer(HttpExchange exchange) {
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+    }
+
+    // Имя и пароль из заголовка Authorization: Basic; null, если заголовка нет или он неверный
+    private static String[] credentials(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+            int colon = decoded.indexOf(':');
+            return colon < 0 ? null : new String[]{decoded.substring(0, colon), decoded.substring(colon + 1)};
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Тело запроса больше " + MAX_BODY_BYTES + " байт");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Не задан параметр " + name);
+        }
+        return value;
+    }
+
+    private static String requiredField(Map<String, Object> fields, String name) {
+        String value = stringField(fields, name);
+        if (value == null) {
+            throw new IllegalArgumentException("Не задано поле " + name);
+        }
+        return value;
+    }
+
+    private static String stringField(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    private static Integer intField(Map<String, Object> fields, String name) {
+        BigDecimal value = decimalField(fields, name);
+        return value == null ? null : value.intValueExact();
+    }
+
+    private static BigDecimal decimalField(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    private static Date dateField(Map<String, Object> fields, String name) {
+        String value = stringField(fields, name);
+        return value == null ? null : Date.valueOf(LocalDate.parse(value));
+    }
+
+    private static Time timeField(Map<String, Object> fields, String name) {
+        String value = stringField(fields, name);
+        return value == null ? null : Time.valueOf(LocalTime.parse(value));
+    }
+}
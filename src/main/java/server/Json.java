@@ -0,0 +1,285 @@
+package server;
+
+import db.MutationResult;
+import db.TenantResult;
+import db.Training;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Минимальный JSON для ApiServer: запись Training и результатов DBManager, разбор плоского объекта
+// из тела запроса (строки, числа, true/false, null - вложенные объекты и массивы не нужны)
+final class Json {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private Json() {
+    }
+
+    // Длительность - в формате интервала PostgreSQL (ЧЧ:ММ:СС), его же принимают addTraining и обновление
+    static void writeTraining(Appendable out, Training training) throws IOException {
+        out.append("{\"id\":").append(String.valueOf(training.id()));
+        out.append(",\"title\":");
+        writeString(out, training.title());
+        out.append(",\"date\":");
+        writeString(out, training.date() == null ? null : training.date().toString());
+        out.append(",\"startTime\":");
+        writeString(out, training.startTime() == null ? null : TIME_FORMAT.format(training.startTime()));
+        out.append(",\"duration\":");
+        writeString(out, training.duration() == null ? null : formatDuration(training.duration()));
+        out.append(",\"maxParticipants\":");
+        writeCount(out, training.maxParticipants());
+        out.append(",\"currentParticipants\":");
+        writeCount(out, training.currentParticipants());
+        out.append(",\"difficultyLevel\":");
+        writeString(out, training.difficultyLevel());
+        out.append(",\"trainerName\":");
+        writeString(out, training.trainerName());
+        out.append(",\"price\":").append(training.price() == null ? "null" : training.price().toPlainString());
+        out.append('}');
+    }
+
+    static void writeTrainings(Appendable out, List<Training> trainings) throws IOException {
+        out.append('[');
+        for (int i = 0; i < trainings.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            writeTraining(out, trainings.get(i));
+        }
+        out.append(']');
+    }
+
+    // rows == null, если строки неизвестны (режим хранимых функций)
+    static void writeMutation(Appendable out, MutationResult result) throws IOException {
+        out.append("{\"status\":").append(String.valueOf(result.status())).append(",\"message\":");
+        writeString(out, result.message());
+        out.append(",\"rows\":");
+        if (result.rowsKnown()) {
+            writeTrainings(out, result.rows());
+        } else {
+            out.append("null");
+        }
+        out.append('}');
+    }
+
+    static void writeTenantResult(Appendable out, TenantResult result) throws IOException {
+        out.append("{\"tenant\":");
+        writeString(out, result.tenant());
+        out.append(",\"status\":").append(String.valueOf(result.status())).append(",\"message\":");
+        writeString(out, result.message());
+        out.append(",\"trainings\":");
+        writeTrainings(out, result.trainings());
+        out.append('}');
+    }
+
+    static String error(int status, String message) {
+        StringBuilder out = new StringBuilder("{\"status\":").append(status).append(",\"message\":");
+        try {
+            writeString(out, message);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.append('}').toString();
+    }
+
+    static void writeString(Appendable out, String value) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static void writeCount(Appendable out, int value) throws IOException {
+        out.append(value == Training.NOT_SET ? "null" : String.valueOf(value));
+    }
+
+    private static String formatDuration(Duration duration) {
+        long seconds = duration.getSeconds();
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    // Плоский объект: значения - String, BigDecimal, Boolean или null; IllegalArgumentException при ошибке синтаксиса
+    static Map<String, Object> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, Object> result = parser.object();
+        parser.skipSpaces();
+        if (parser.position != text.length()) {
+            throw parser.error("лишние символы после объекта");
+        }
+        return result;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            expect('{');
+            skipSpaces();
+            if (peek() == '}') {
+                position++;
+                return result;
+            }
+            while (true) {
+                skipSpaces();
+                String key = string();
+                skipSpaces();
+                expect(':');
+                skipSpaces();
+                result.put(key, value());
+                skipSpaces();
+                char c = next();
+                if (c == '}') {
+                    return result;
+                }
+                if (c != ',') {
+                    throw error("ожидалась ',' или '}'");
+                }
+            }
+        }
+
+        private Object value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            }
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("ожидалось значение");
+            }
+            try {
+                return new BigDecimal(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("неверное число");
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder result = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return result.toString();
+                }
+                if (c != '\\') {
+                    result.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n':
+                        result.append('\n');
+                        break;
+                    case 'r':
+                        result.append('\r');
+                        break;
+                    case 't':
+                        result.append('\t');
+                        break;
+                    case 'b':
+                        result.append('\b');
+                        break;
+                    case 'f':
+                        result.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("неполная escape-последовательность");
+                        }
+                        try {
+                            result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("неверная escape-последовательность");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        result.append(escaped);
+                }
+            }
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw error("неожиданный конец");
+            }
+            return text.charAt(position);
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw error("ожидался символ '" + expected + "'");
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Ошибка JSON в позиции " + position + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Проверки пересечения в индексе расписания должны совпадать с условием OVERLAPS в запросах к базе
+public class ScheduleIndexTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 11, 2);
+
+    private static ScheduleIndex index() {
+        ScheduleIndex index = new ScheduleIndex();
+        index.put(1, "Анна", DAY, LocalTime.of(10, 0), Duration.ofHours(1));
+        index.put(2, "Анна", DAY, LocalTime.of(12, 0), Duration.ofMinutes(90));
+        index.put(3, "Борис", DAY, LocalTime.of(10, 0), Duration.ofHours(1));
+        return index;
+    }
+
+    @Test
+    public void overlappingSessionConflicts() {
+        ScheduleIndex index = index();
+        assertTrue(index.hasConflict("Анна", DAY, LocalTime.of(10, 30), Duration.ofHours(1), 0));
+        assertTrue(index.hasConflict("Анна", DAY, LocalTime.of(9, 30), Duration.ofHours(1), 0));
+        assertTrue(index.hasConflict("Анна", DAY, LocalTime.of(10, 15), Duration.ofMinutes(15), 0));
+        assertTrue(index.hasConflict("Анна", DAY, LocalTime.of(9, 0), Duration.ofHours(6), 0));
+    }
+
+    @Test
+    public void adjacentSessionsDoNotConflict() {
+        ScheduleIndex index = index();
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(11, 0), Duration.ofHours(1), 0));
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(9, 0), Duration.ofHours(1), 0));
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(13, 30), Duration.ofHours(1), 0));
+    }
+
+    @Test
+    public void otherTrainerOrDayDoesNotConflict() {
+        ScheduleIndex index = index();
+        assertFalse(index.hasConflict("Вера", DAY, LocalTime.of(10, 0), Duration.ofHours(1), 0));
+        assertFalse(index.hasConflict("Анна", DAY.plusDays(1), LocalTime.of(10, 0), Duration.ofHours(1), 0));
+        assertTrue(index.hasConflict("Борис", DAY, LocalTime.of(10, 30), Duration.ofHours(1), 0));
+    }
+
+    @Test
+    public void excludedSessionIsIgnored() {
+        ScheduleIndex index = index();
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(10, 30), Duration.ofHours(1), 1));
+        assertTrue(index.hasConflict("Анна", DAY, LocalTime.of(11, 30), Duration.ofHours(1), 1));
+    }
+
+    @Test
+    public void sameStartConflictsEvenWithZeroDuration() {
+        ScheduleIndex index = index();
+        assertTrue(index.hasConflict("Анна", DAY, LocalTime.of(10, 0), Duration.ZERO, 0));
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(11, 0), Duration.ZERO, 0));
+    }
+
+    @Test
+    public void incompleteScheduleIsLeftToDatabase() {
+        ScheduleIndex index = index();
+        assertFalse(index.hasConflict(null, DAY, LocalTime.of(10, 0), Duration.ofHours(1), 0));
+        assertFalse(index.hasConflict("Анна", null, LocalTime.of(10, 0), Duration.ofHours(1), 0));
+        assertFalse(index.hasConflict("Анна", DAY, null, Duration.ofHours(1), 0));
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(10, 0), null, 0));
+    }
+
+    @Test
+    public void removeAndMoveUpdateIndex() {
+        ScheduleIndex index = index();
+        index.remove(1);
+        assertEquals(2, index.size());
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(10, 30), Duration.ofHours(1), 0));
+
+        index.put(2, "Анна", DAY, LocalTime.of(16, 0), Duration.ofHours(1));
+        assertEquals(2, index.size());
+        assertFalse(index.hasConflict("Анна", DAY, LocalTime.of(12, 30), Duration.ofHours(1), 0));
+        assertTrue(index.hasConflict("Анна", DAY, LocalTime.of(16, 30), Duration.ofHours(1), 0));
+    }
+
+    @Test
+    public void conflictAfterUpdateUsesUnchangedFieldsFromIndex() {
+        ScheduleIndex index = index();
+        // Перенос на 11:30 при прежней длительности (1 час) задевает занятие в 12:00
+        assertTrue(index.hasConflictAfterUpdate(1, null, null, LocalTime.of(11, 30), null));
+        assertFalse(index.hasConflictAfterUpdate(1, null, null, LocalTime.of(11, 0), null));
+        // Удлинение занятия 1 до начала занятия 2 - без пересечения, дальше - с пересечением
+        assertFalse(index.hasConflictAfterUpdate(1, null, null, null, Duration.ofHours(2)));
+        assertTrue(index.hasConflictAfterUpdate(1, null, null, null, Duration.ofMinutes(150)));
+        // Смена тренера: у Бориса в это время свое занятие
+        assertTrue(index.hasConflictAfterUpdate(1, "Борис", null, null, null));
+        assertFalse(index.hasConflictAfterUpdate(1, null, DAY.plusDays(1), null, null));
+    }
+
+    @Test
+    public void unknownSessionIsLeftToDatabase() {
+        ScheduleIndex index = index();
+        assertFalse(index.hasConflictAfterUpdate(99, "Анна", DAY, LocalTime.of(10, 0), Duration.ofHours(1)));
+    }
+
+    @Test
+    public void matchesPairwiseOverlapsCheck() {
+        Random random = new Random(42);
+        ScheduleIndex index = new ScheduleIndex();
+        List<int[]> sessions = new ArrayList<>();
+        for (int id = 1; id <= 300; id++) {
+            int start = random.nextInt(24 * 60) * 60;
+            int length = random.nextInt(180) * 60;
+            index.put(id, "Анна", DAY, LocalTime.ofSecondOfDay(start), Duration.ofSeconds(length));
+            sessions.add(new int[]{id, start, length});
+        }
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(24 * 60) * 60;
+            int length = random.nextInt(180) * 60;
+            int excludeId = random.nextInt(320);
+            boolean expected = false;
+            for (int[] session : sessions) {
+                if (session[0] != excludeId && overlaps(start, length, session[1], session[2])) {
+                    expected = true;
+                    break;
+                }
+            }
+            assertEquals(expected, index.hasConflict("Анна", DAY, LocalTime.ofSecondOfDay(start),
+                    Duration.ofSeconds(length), excludeId), "start " + start + ", length " + length);
+        }
+    }
+
+    // OVERLAPS для времени суток: конец за полночью переходит на начало суток, концы интервала меняются местами
+    private static boolean overlaps(int start1, int length1, int start2, int length2) {
+        int end1 = (start1 + length1) % 86_400;
+        int end2 = (start2 + length2) % 86_400;
+        int low1 = Math.min(start1, end1);
+        int high1 = Math.max(start1, end1);
+        int low2 = Math.min(start2, end2);
+        int high2 = Math.max(start2, end2);
+        return low1 == low2 || (low1 < high2 && low2 < high1);
+    }
+}
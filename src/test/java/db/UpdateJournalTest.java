@@ -0,0 +1,181 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Восстановление очереди WriteBehindQueue из журнала: журнал каждый раз открывается заново, как после сбоя клиента
+public class UpdateJournalTest {
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    Path dir;
+
+    private Path file() {
+        return dir.resolve("test.journal");
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> entries = new ArrayList<>();
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> entries.add(id + ":" + field + "=" + value));
+        }
+        return entries;
+    }
+
+    @Test
+    public void emptyJournalReplaysNothing() throws IOException {
+        assertEquals(List.of(), replay());
+    }
+
+    @Test
+    public void replaysAppendedRecordsInOrder() throws IOException {
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            assertTrue(journal.append(1, 0, "Йога"));
+            assertTrue(journal.append(1, 0, "Пилатес"));
+            assertTrue(journal.append(2, 4, "500"));
+        }
+        assertEquals(List.of("1:0=Йога", "1:0=Пилатес", "2:4=500"), replay());
+    }
+
+    @Test
+    public void replayCoalescesToLastWrite() throws IOException {
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            journal.append(1, 0, "a");
+            journal.append(2, 0, "b");
+            journal.append(1, 0, "c");
+            journal.append(1, 4, "10");
+        }
+        // Так очередь собирает изменения из журнала: последнее значение поля заменяет прежние
+        Map<String, String> pending = new LinkedHashMap<>();
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> {
+                pending.remove(id + ":" + field);
+                pending.put(id + ":" + field, value);
+            });
+        }
+        assertEquals(Map.of("2:0", "b", "1:0", "c", "1:4", "10"), pending);
+        assertEquals(List.of("2:0", "1:0", "1:4"), new ArrayList<>(pending.keySet()));
+    }
+
+    @Test
+    public void recordsBeforeCheckpointAreNotReplayed() throws IOException {
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            journal.append(1, 0, "записано");
+            journal.checkpoint(journal.position());
+            journal.append(2, 0, "в очереди");
+        }
+        assertEquals(List.of("2:0=в очереди"), replay());
+    }
+
+    @Test
+    public void compactWithoutPendingEmptiesJournal() throws IOException {
+        int start;
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            start = journal.position();
+            journal.append(1, 0, "старое значение");
+            journal.append(2, 0, "еще одно");
+            journal.checkpoint(journal.position());
+            assertTrue(journal.compact(entry -> { }));
+            assertEquals(start, journal.position());
+        }
+        assertEquals(List.of(), replay());
+
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            journal.append(3, 1, "12");
+        }
+        assertEquals(List.of("3:1=12"), replay());
+    }
+
+    @Test
+    public void compactMovesPendingToStart() throws IOException {
+        int start;
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            start = journal.position();
+            journal.append(1, 0, "записано в базу");
+            journal.append(2, 0, "тоже записано");
+            journal.append(3, 4, "100");
+            journal.checkpoint(start + 2 * 8 + 10 + "записано в базу".getBytes(StandardCharsets.UTF_8).length
+                    + "тоже записано".getBytes(StandardCharsets.UTF_8).length);
+            journal.append(3, 4, "200");
+            // В очереди осталось одно изменение - последнее значение поля
+            assertTrue(journal.compact(entry -> entry.accept(3, 4, "200")));
+            assertEquals(start + 8 + 5 + 3, journal.position());
+            journal.append(4, 0, "после сжатия");
+        }
+        assertEquals(List.of("3:4=200", "4:0=после сжатия"), replay());
+    }
+
+    @Test
+    public void compactFailsWhenPendingDoesNotFitBeforeCheckpoint() throws IOException {
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            journal.append(1, 0, "a");
+            journal.checkpoint(journal.position());
+            journal.append(2, 0, "значение длиннее записанного");
+            assertFalse(journal.compact(entry -> entry.accept(2, 0, "значение длиннее записанного")));
+            journal.append(3, 0, "b");
+        }
+        // Журнал не изменился: очередь читается с прежней позиции
+        assertEquals(List.of("2:0=значение длиннее записанного", "3:0=b"), replay());
+    }
+
+    @Test
+    public void damagedRecordEndsJournal() throws IOException {
+        int damaged;
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            journal.replay((id, field, value) -> { });
+            journal.append(1, 0, "целая запись");
+            damaged = journal.position();
+            journal.append(2, 0, "недописанная запись");
+            journal.append(3, 0, "после нее");
+        }
+        // Последний байт значения второй записи не совпадает с CRC: запись недописана при сбое
+        try (RandomAccessFile raf = new RandomAccessFile(file().toFile(), "rw")) {
+            long last = damaged + 8 + 5 + "недописанная запись".getBytes(StandardCharsets.UTF_8).length - 1;
+            raf.seek(last);
+            int value = raf.read();
+            raf.seek(last);
+            raf.write(value ^ 0xFF);
+        }
+        // Новые записи дописываются после последней целой
+        try (UpdateJournal journal = new UpdateJournal(file(), CAPACITY)) {
+            List<String> entries = new ArrayList<>();
+            journal.replay((id, field, value) -> entries.add(id + ":" + field + "=" + value));
+            assertEquals(List.of("1:0=целая запись"), entries);
+            assertEquals(damaged, journal.position());
+            journal.append(4, 0, "новая");
+        }
+        assertEquals(List.of("1:0=целая запись", "4:0=новая"), replay());
+    }
+
+    @Test
+    public void appendFailsWhenJournalIsFull() throws IOException {
+        try (UpdateJournal journal = new UpdateJournal(file(), 64)) {
+            journal.replay((id, field, value) -> { });
+            assertTrue(journal.append(1, 0, "0123456789"));
+            assertFalse(journal.append(2, 0, "0123456789012345678901234567890123456789"));
+            journal.checkpoint(journal.position());
+            assertTrue(journal.compact(entry -> { }));
+            assertTrue(journal.append(2, 0, "0123456789"));
+        }
+    }
+}
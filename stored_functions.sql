@@ -17,6 +17,71 @@ BEGIN
   END IF;
 END$$;
 
+-- Постоянное соединение dblink с базой trainings: открывается при первом вызове в сеансе и остается открытым
+-- до его конца (соединения из пула живут долго), поэтому функции не подключаются заново при каждом вызове.
+-- Запросы в нем выполняются как подготовленные (trainings_link_prepare), и сервер переиспользует их планы
+CREATE OR REPLACE FUNCTION trainings_link()
+RETURNS TEXT
+AS $$
+BEGIN
+    IF NOT 'trainings_link' = ANY(COALESCE(dblink_get_connections(), '{}')) THEN
+        PERFORM dblink_connect('trainings_link', 'dbname=trainings user=postgres password=CHocolate75% host=localhost');
+        -- Список подготовленных в соединении запросов (",имя1,имя2,")
+        PERFORM set_config('trainings_link.prepared', ',', false);
+    END IF;
+    RETURN 'trainings_link';
+END;
+$$ LANGUAGE plpgsql;
+
+-- Подготовка запроса (PREPARE) в соединении trainings_link один раз за сеанс; значения параметров $1, $2, ...
+-- передаются при выполнении: EXECUTE имя(значения). Возвращает имя подготовленного запроса
+CREATE OR REPLACE FUNCTION trainings_link_prepare(stmt_name TEXT, stmt_sql TEXT)
+RETURNS TEXT
+AS $$
+DECLARE
+    link TEXT := trainings_link();
+BEGIN
+    IF position(',' || stmt_name || ',' IN current_setting('trainings_link.prepared')) = 0 THEN
+        -- Без прерывания при ошибке: запрос может быть уже подготовлен, если отметка о нем откатилась
+        -- вместе с транзакцией
+        PERFORM dblink_exec(link, format('PREPARE %I AS %s', stmt_name, stmt_sql), false);
+        PERFORM set_config('trainings_link.prepared',
+                           current_setting('trainings_link.prepared') || stmt_name || ',', false);
+    END IF;
+    RETURN stmt_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Существует ли таблица trainings в базе trainings
+CREATE OR REPLACE FUNCTION trainings_table_exists()
+RETURNS BOOLEAN
+AS $$
+    SELECT exists FROM dblink(trainings_link(),
+        'EXECUTE ' || trainings_link_prepare('trainings_table_exists',
+            'SELECT to_regclass(''public.trainings'') IS NOT NULL'))
+        AS t(exists BOOLEAN);
+$$ LANGUAGE sql;
+
+-- Тип столбца таблицы trainings (NULL, если такого столбца нет)
+CREATE OR REPLACE FUNCTION trainings_column_type(column_name TEXT)
+RETURNS TEXT
+AS $$
+    SELECT data_type FROM dblink(trainings_link(),
+        format('EXECUTE %I(%L)', trainings_link_prepare('trainings_column_type',
+            'SELECT data_type FROM information_schema.columns WHERE table_schema = ''public'' '
+            'AND table_name = ''trainings'' AND column_name = $1'), column_name))
+        AS t(data_type TEXT);
+$$ LANGUAGE sql;
+
+-- Статистика подготовленных запросов соединения trainings_link в текущем сеансе: сколько раз каждый
+-- выполнен с общим планом (generic - план из кэша) и с частным (custom - план строится заново)
+CREATE OR REPLACE FUNCTION trainings_link_stats()
+RETURNS TABLE(name TEXT, generic_plans BIGINT, custom_plans BIGINT)
+AS $$
+    SELECT * FROM dblink(trainings_link(), 'SELECT name, generic_plans, custom_plans FROM pg_prepared_statements')
+        AS t(name TEXT, generic_plans BIGINT, custom_plans BIGINT);
+$$ LANGUAGE sql;
+
 --1. Создание базы данных
 CREATE OR REPLACE FUNCTION create_database(db_name TEXT)
 RETURNS void 
@@ -49,7 +114,7 @@ BEGIN
   
   	 -- Завершаем соединения с базой данных (выполняем локально)
     for r in (select pid from pg_stat_activity where datname = db_name) loop
-        execute format('SELECT pg_terminate_backend(%s)', r.pid);
+        perform pg_terminate_backend(r.pid);
     end loop;
 		
 	-- Удаляем базу данных
@@ -113,6 +178,55 @@ begin
             price DECIMAL(10, 2)
         )');
 
+    -- Индексы для поиска по текстовым полям: триграммные (ILIKE ''%...%'' и нечеткий поиск)
+    -- и по lower(...) для поиска по началу строки и точного совпадения без учета регистра
+    PERFORM dblink_exec('dbname=training_schedule user=postgres password=CHocolate75%',
+        'CREATE EXTENSION IF NOT EXISTS pg_trgm;
+         CREATE INDEX IF NOT EXISTS trainings_title_trgm_idx ON trainings USING gin (title gin_trgm_ops);
+         CREATE INDEX IF NOT EXISTS trainings_trainer_name_trgm_idx ON trainings USING gin (trainer_name gin_trgm_ops);
+         CREATE INDEX IF NOT EXISTS trainings_difficulty_level_trgm_idx ON trainings USING gin (difficulty_level gin_trgm_ops);
+         CREATE INDEX IF NOT EXISTS trainings_title_lower_idx ON trainings (lower(title) text_pattern_ops);
+         CREATE INDEX IF NOT EXISTS trainings_trainer_name_lower_idx ON trainings (lower(trainer_name) text_pattern_ops)');
+
+    -- Составные индексы для выборки по условиям (DBManager.findTrainings): диапазон дат с сортировкой по дате и времени,
+    -- тренер или уровень вместе с диапазоном дат, диапазон цен и частичный индекс по занятиям со свободными местами
+    PERFORM dblink_exec('dbname=training_schedule user=postgres password=CHocolate75%',
+        'CREATE INDEX IF NOT EXISTS trainings_date_start_time_idx ON trainings (date, start_time);
+         CREATE INDEX IF NOT EXISTS trainings_trainer_name_date_idx ON trainings (trainer_name, date, start_time);
+         CREATE INDEX IF NOT EXISTS trainings_difficulty_level_date_idx ON trainings (difficulty_level, date, start_time);
+         CREATE INDEX IF NOT EXISTS trainings_price_idx ON trainings (price);
+         CREATE INDEX IF NOT EXISTS trainings_free_spots_date_idx ON trainings (date, start_time)
+             WHERE current_participants < max_participants');
+
+    -- Уведомления об изменениях таблицы для кэша на стороне клиента (TrainingsCache): триггеры уровня оператора
+    -- отправляют в канал trainings_changes операцию и id измененных строк, не больше 500 id в одном уведомлении
+    PERFORM dblink_exec('dbname=training_schedule user=postgres password=CHocolate75%',
+        $sql$CREATE OR REPLACE FUNCTION notify_trainings_change() RETURNS trigger AS $fn$
+        DECLARE
+            ids text;
+        BEGIN
+            IF TG_OP = 'TRUNCATE' THEN
+                PERFORM pg_notify('trainings_changes', 'TRUNCATE');
+                RETURN NULL;
+            END IF;
+            FOR ids IN SELECT string_agg(class_id::text, ',') FROM (
+                    SELECT class_id, (row_number() OVER () - 1) / 500 AS chunk FROM changed_rows) numbered
+                GROUP BY chunk
+            LOOP
+                PERFORM pg_notify('trainings_changes', TG_OP || ':' || ids);
+            END LOOP;
+            RETURN NULL;
+        END;
+        $fn$ LANGUAGE plpgsql;
+        CREATE TRIGGER trainings_insert_notify AFTER INSERT ON trainings REFERENCING NEW TABLE AS changed_rows
+            FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change();
+        CREATE TRIGGER trainings_update_notify AFTER UPDATE ON trainings REFERENCING NEW TABLE AS changed_rows
+            FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change();
+        CREATE TRIGGER trainings_delete_notify AFTER DELETE ON trainings REFERENCING OLD TABLE AS changed_rows
+            FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change();
+        CREATE TRIGGER trainings_truncate_notify AFTER TRUNCATE ON trainings
+            FOR EACH STATEMENT EXECUTE FUNCTION notify_trainings_change()$sql$);
+
     RAISE NOTICE 'Таблица trainings создана!';
     table_created := 1;
 END;
@@ -124,48 +238,37 @@ RETURNS INT
 AS $$
 DECLARE 
     db_exists BOOLEAN;
-    table_exists BOOLEAN;
-    connection_string TEXT;
+    link TEXT;
     deleted_rows INT;
 BEGIN
-    -- Проверяем, существует ли база данных через dblink
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('dbname=trainings user=postgres password=CHocolate75% host=localhost',
-                             'SELECT 1 FROM pg_database WHERE datname = ''' || db_name || '''')
-        AS t(exists BOOLEAN)
-    ) INTO db_exists;
+    -- Проверяем, существует ли база данных
+    SELECT EXISTS (SELECT 1 FROM pg_database WHERE datname = db_name) INTO db_exists;
 
     IF NOT db_exists THEN
         RAISE NOTICE 'Ошибка: база данных "%" не существует.', db_name;
         RETURN -2; -- Код ошибки для отсутствующей базы данных
     END IF;
 
-    connection_string := 'dbname=trainings user=postgres password=CHocolate75% host=localhost';
-    perform dblink_connect('myconn', connection_string);
-
     -- Проверяем, существует ли таблица trainings
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-                             'SELECT 1 FROM information_schema.tables WHERE table_schema = ''public'' AND table_name = ''trainings''')
-        AS t(exists BOOLEAN)
-    ) INTO table_exists;
-
-    IF NOT table_exists THEN
+    IF NOT trainings_table_exists() THEN
         RAISE NOTICE 'Ошибка: таблица "trainings" не существует в базе данных "%".', db_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN -1; -- Код ошибки для отсутствующей таблицы
     END IF;
 
-    -- Удаляем строки и получаем количество удаленных
-    SELECT COALESCE(SUM(deleted), 0) INTO deleted_rows FROM dblink('myconn', 
-        'WITH deleted AS (DELETE FROM trainings RETURNING 1) SELECT COUNT(*) FROM deleted'
-    ) AS t(deleted INT);
-	
-    PERFORM dblink_exec('myconn', 'DELETE FROM trainings');
-    PERFORM dblink_exec('myconn', 'TRUNCATE TABLE trainings RESTART IDENTITY');
+    link := trainings_link();
 
-    -- Отключаемся от базы данных
-    PERFORM dblink_disconnect('myconn');
+    -- Количество строк считается под блокировкой, затем таблица очищается TRUNCATE без построчного DELETE
+    -- (у таблицы с секциями - все секции сразу); обе команды - в одной транзакции соединения dblink
+    PERFORM dblink_exec(link, 'BEGIN');
+    BEGIN
+        PERFORM dblink_exec(link, 'LOCK TABLE trainings IN ACCESS EXCLUSIVE MODE');
+        SELECT cnt INTO deleted_rows FROM dblink(link, 'SELECT count(*) FROM trainings') AS t(cnt INT);
+        PERFORM dblink_exec(link, 'TRUNCATE TABLE trainings RESTART IDENTITY');
+        PERFORM dblink_exec(link, 'COMMIT');
+    EXCEPTION WHEN OTHERS THEN
+        PERFORM dblink_exec(link, 'ROLLBACK');
+        RAISE;
+    END;
 
     RAISE NOTICE 'Удалено % строк из базы "%".', deleted_rows, db_name;
     RETURN deleted_rows; -- Возвращаем количество удаленных строк
@@ -189,9 +292,7 @@ RETURNS INT
 AS $$
 DECLARE
     db_exists BOOLEAN;
-    table_exists BOOLEAN;
     conflict_exists BOOLEAN;
-    connection_string TEXT;
     new_training_id INT;
 BEGIN
     -- Проверяем, существует ли база данных
@@ -203,67 +304,51 @@ BEGIN
         RAISE NOTICE 'Ошибка: база данных % не существует.', db_name;
         RETURN -2; -- Код ошибки для отсутствующей базы данных 
     END IF;
-  
-    connection_string := 'dbname=trainings user=postgres password=CHocolate75% host=localhost';
-    PERFORM dblink_connect('myconn', connection_string);
 
     -- Проверяем, существует ли таблица trainings
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-                             'SELECT 1 FROM information_schema.tables WHERE table_name = ''trainings''')
-        AS t(exists BOOLEAN)
-    ) INTO table_exists;
-
-    IF NOT table_exists THEN
+    IF NOT trainings_table_exists() THEN
         RAISE NOTICE 'Ошибка: таблица trainings не существует в базе %.', db_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN -1; -- Код ошибки для отсутствующей таблицы
     END IF;
 
     -- Проверка входных данных
     IF p_max_participants <= 0 THEN
         RAISE NOTICE 'Ошибка: Максимальное количество участников должно быть положительным.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -3;
     END IF;
 
     IF p_current_participants < 0 THEN
         RAISE NOTICE 'Ошибка: Текущее количество участников должно быть неотрицательным.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -4;
     END IF;
 
     IF p_difficulty_level NOT IN ('начальный', 'смешанный', 'продвинутый') THEN
         RAISE NOTICE 'Ошибка: Некорректный уровень сложности.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -5;
     END IF;
 
-    -- Проверяем пересечение времени тренировок у тренера
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-            'SELECT 1 FROM trainings WHERE date = ''' || p_date || ''' 
-             AND trainer_name = ''' || p_coach || ''' 
-             AND (''' || p_start_time || '''::time, (''' || p_start_time || '''::time + ''' || p_duration || '''::interval)) 
-             OVERLAPS (start_time, start_time + duration)')
-        AS t(exists BOOLEAN)
-    ) INTO conflict_exists;
+    -- Проверяем пересечение времени тренировок у тренера (значения передаются параметрами подготовленного запроса)
+    SELECT conflict FROM dblink(trainings_link(), format('EXECUTE %I(%L, %L, %L, %L)',
+        trainings_link_prepare('training_conflict',
+            'SELECT EXISTS (SELECT 1 FROM trainings WHERE date = $1 AND trainer_name = $2
+             AND ($3::time, $3::time + $4::interval) OVERLAPS (start_time, start_time + duration))'),
+        p_date, p_coach, p_start_time, p_duration))
+        AS t(conflict BOOLEAN) INTO conflict_exists;
 
     IF conflict_exists THEN 
         RAISE NOTICE 'Ошибка: Время занятия у тренера % пересекается с другим занятием.', p_coach;
-        PERFORM dblink_disconnect('myconn');
         RETURN -6;
     END IF;
 
     -- Выполняем INSERT через dblink
-    SELECT class_id FROM dblink('myconn', 
-        'INSERT INTO trainings (title, date, start_time, duration, max_participants, 
-                                current_participants, difficulty_level, trainer_name, price) 
-         VALUES (''' || p_title || ''', ''' || p_date || ''', ''' || p_start_time || ''', ''' || p_duration || ''', 
-                 ' || p_max_participants || ', ' || p_current_participants || ', ''' || p_difficulty_level || ''', 
-                 ''' || p_coach || ''', ' || p_price || ') RETURNING class_id')
+    SELECT class_id FROM dblink(trainings_link(), format('EXECUTE %I(%L, %L, %L, %L, %L, %L, %L, %L, %L)',
+        trainings_link_prepare('training_insert',
+            'INSERT INTO trainings (title, date, start_time, duration, max_participants,
+                                    current_participants, difficulty_level, trainer_name, price)
+             VALUES ($1, $2, $3, $4, $5, $6, $7, $8, $9) RETURNING class_id'),
+        p_title, p_date, p_start_time, p_duration, p_max_participants, p_current_participants,
+        p_difficulty_level, p_coach, p_price))
     AS t(class_id INT) INTO new_training_id;
-    PERFORM dblink_disconnect('myconn');
 
     IF new_training_id IS NOT NULL THEN
         RAISE NOTICE 'Тренировка успешно добавлена с ID %', new_training_id;
@@ -297,70 +382,40 @@ RETURNS TABLE(
 AS $$ 
 DECLARE
     db_exists BOOLEAN;
-    table_exists BOOLEAN;
-    field_is_valid BOOLEAN;
-    connection_string TEXT;
-    sql_query TEXT;
 BEGIN
-    -- Проверяем существование базы данных через dblink
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('dbname=trainings user=postgres password=CHocolate75% host=localhost',
-                             'SELECT 1 FROM pg_database WHERE datname = ''' || db_name || '''')
-        AS t(exists BOOLEAN)
-    ) INTO db_exists;
+    -- Проверяем существование базы данных
+    SELECT EXISTS (SELECT 1 FROM pg_database WHERE datname = db_name) INTO db_exists;
 
     IF NOT db_exists THEN
         RAISE NOTICE 'Ошибка: база данных "%" не существует.', db_name; 
         RETURN;
     END IF;
 
-     connection_string := 'dbname=trainings user=postgres password=CHocolate75% host=localhost';
-    PERFORM dblink_connect('myconn', connection_string);
-
     -- Проверяем, существует ли таблица trainings
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-                             'SELECT 1 FROM information_schema.tables WHERE table_schema = ''public'' AND table_name = ''trainings''')
-        AS t(exists BOOLEAN)
-    ) INTO table_exists;
-
-    IF NOT table_exists THEN
+    IF NOT trainings_table_exists() THEN
         RAISE NOTICE 'Ошибка: таблица trainings не существует в базе "%".', db_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN;
     END IF;
 
     -- Проверяем, что поле существует и является текстовым
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-            'SELECT 1 FROM information_schema.columns WHERE table_name = ''trainings'' 
-             AND column_name = ''' || field_name || ''' 
-             AND data_type IN (''character varying'', ''text'')')
-        AS t(exists BOOLEAN)
-    ) INTO field_is_valid;
-
-    IF NOT field_is_valid THEN
+    IF COALESCE(trainings_column_type(field_name), '') NOT IN ('character varying', 'text') THEN
         RAISE NOTICE 'Ошибка: поле "%" не существует или не является текстовым.', field_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN;
     END IF;
 
     -- Проверяем, что значение для поиска не пустое
     IF search_value IS NULL OR TRIM(search_value) = '' THEN
         RAISE NOTICE 'Ошибка: значение для поиска не может быть пустым.';
-        PERFORM dblink_disconnect('myconn');
         RETURN;
     END IF;
 
-    -- Динамически формируем SQL-запрос
-    sql_query := format(
-        'SELECT * FROM trainings WHERE %I ILIKE %L',
-        field_name, '%' || search_value || '%'
-    );
-
-    -- Выполняем запрос через dblink
+    -- Запрос готовится один раз для каждого поля, образец поиска передается параметром
     RETURN QUERY 
-    SELECT * FROM dblink('myconn', sql_query) 
+    SELECT * FROM dblink(trainings_link(), format('EXECUTE %I(%L)',
+        trainings_link_prepare('search_by_' || field_name,
+            format('SELECT class_id, title, date, start_time, duration, max_participants, current_participants,
+                           difficulty_level, trainer_name, price FROM trainings WHERE %I ILIKE $1', field_name)),
+        '%' || search_value || '%'))
         AS t(
             id INT,
             title VARCHAR(255),
@@ -373,8 +428,6 @@ BEGIN
             trainer_name VARCHAR(255),
             price DECIMAL(10,2)
         );
-
-    PERFORM dblink_disconnect('myconn');
 END;
 $$ LANGUAGE plpgsql;
 
@@ -388,80 +441,48 @@ RETURNS INT
 AS $$ 
 DECLARE
     db_exists BOOLEAN;
-    table_exists BOOLEAN;
-    field_exists BOOLEAN;
     rows_deleted INT := 0;
-    connection_string TEXT;
-    sql_query TEXT;
 BEGIN
-    -- Проверяем существование базы данных через dblink
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('dbname=trainings user=postgres password=CHocolate75% host=localhost',
-                             'SELECT 1 FROM pg_database WHERE datname = ''' || db_name || '''')
-        AS t(exists BOOLEAN)
-    ) INTO db_exists;
+    -- Проверяем существование базы данных
+    SELECT EXISTS (SELECT 1 FROM pg_database WHERE datname = db_name) INTO db_exists;
 
     IF NOT db_exists THEN
         RAISE NOTICE 'Ошибка: база данных "%" не существует.', db_name;
         RETURN -2; -- Код ошибки для отсутствующей базы данных
     END IF;
 
-    connection_string := 'dbname=trainings user=postgres password=CHocolate75% host=localhost';
-    PERFORM dblink_connect('myconn', connection_string);
-
     -- Проверяем, существует ли таблица trainings
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-                             'SELECT 1 FROM information_schema.tables WHERE table_schema = ''public'' AND table_name = ''trainings''')
-        AS t(exists BOOLEAN)
-    ) INTO table_exists;
-
-    IF NOT table_exists THEN
+    IF NOT trainings_table_exists() THEN
         RAISE NOTICE 'Ошибка: таблица "trainings" не существует в базе "%".', db_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN -1; -- Код ошибки для отсутствующей таблицы
     END IF;
 
     -- Проверяем существование указанного текстового столбца
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn',
-            'SELECT 1 FROM information_schema.columns WHERE table_name = ''trainings'' 
-             AND column_name = ''' || field_name || ''' 
-             AND data_type IN (''character varying'', ''text'')')
-        AS t(exists BOOLEAN)
-    ) INTO field_exists;
-
-    IF NOT field_exists THEN
+    IF COALESCE(trainings_column_type(field_name), '') NOT IN ('character varying', 'text') THEN
         RAISE NOTICE 'Ошибка: Поле "%" не существует или не является текстовым.', field_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN -7; -- Код ошибки для некорректного поля для удаления
     END IF;
 
     -- Проверяем, что передано корректное значение для удаления
     IF search_value IS NULL OR TRIM(search_value) = '' THEN
         RAISE NOTICE 'Ошибка: Значение для удаления не может быть пустым.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -8; -- Код ошибки для пустого значения
     END IF;
 
-    -- Определяем количество записей, которые будут удалены
-    SELECT count FROM dblink('myconn',
-        format('SELECT COUNT(*) FROM trainings WHERE %I ILIKE %L', field_name, '%' || search_value || '%'))
+    -- Удаляем записи и считаем удаленные одним запросом (без отдельного COUNT по тем же условиям)
+    SELECT count FROM dblink(trainings_link(), format('EXECUTE %I(%L)',
+        trainings_link_prepare('delete_by_' || field_name,
+            format('WITH deleted AS (DELETE FROM trainings WHERE %I ILIKE $1 RETURNING 1) SELECT COUNT(*) FROM deleted',
+                   field_name)),
+        '%' || search_value || '%'))
         AS t(count INT) INTO rows_deleted;
 
     -- Если записей нет, уведомляем и выходим
     IF rows_deleted = 0 THEN
         RAISE NOTICE 'Записи с % = "%" не найдены.', field_name, search_value;
-        PERFORM dblink_disconnect('myconn');
         RETURN 0;
     END IF;
 
-    -- Удаляем записи
-    PERFORM dblink_exec('myconn', 
-        format('DELETE FROM trainings WHERE %I ILIKE %L', field_name, '%' || search_value || '%'));
-	
-    PERFORM dblink_disconnect('myconn');
-
     -- Подтверждаем удаление
     RAISE NOTICE 'Удалено % записей.', rows_deleted;
     RETURN rows_deleted;
@@ -480,77 +501,47 @@ RETURNS INT
 AS $$ 
 DECLARE
     db_exists BOOLEAN;
-    table_exists BOOLEAN;
-    field_exists BOOLEAN;
-    connection_string TEXT;
-    sql_query TEXT;
     updated_id INT;
 BEGIN
-    -- Проверяем существование базы данных через dblink
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('dbname=trainings user=postgres password=CHocolate75% host=localhost',
-                             'SELECT 1 FROM pg_database WHERE datname = ''' || db_name || '''')
-        AS t(exists BOOLEAN)
-    ) INTO db_exists;
+    -- Проверяем существование базы данных
+    SELECT EXISTS (SELECT 1 FROM pg_database WHERE datname = db_name) INTO db_exists;
 
     IF NOT db_exists THEN
         RAISE NOTICE 'Ошибка: база данных "%" не существует.', db_name;
         RETURN -2; -- Код ошибки для отсутствующей базы данных
     END IF;
 
-    connection_string := 'dbname=trainings user=postgres password=CHocolate75% host=localhost';
-    PERFORM dblink_connect('myconn', connection_string);
-
     -- Проверяем существование таблицы trainings
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-                             'SELECT 1 FROM information_schema.tables WHERE table_schema = ''public'' AND table_name = ''trainings''')
-        AS t(exists BOOLEAN)
-    ) INTO table_exists;
-
-    IF NOT table_exists THEN
+    IF NOT trainings_table_exists() THEN
         RAISE NOTICE 'Ошибка: таблица "trainings" не существует в базе "%".', db_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN -1; -- Код ошибки для отсутствующей таблицы
     END IF;
 
     -- Проверяем существование указанного столбца
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn',
-            'SELECT 1 FROM information_schema.columns WHERE table_name = ''trainings'' 
-             AND column_name = ''' || p_field_name || '''')
-        AS t(exists BOOLEAN)
-    ) INTO field_exists;
-
-    IF NOT field_exists THEN
+    IF trainings_column_type(p_field_name) IS NULL THEN
         RAISE NOTICE 'Ошибка: Поле "%" не существует.', p_field_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN -7; -- Код ошибки для некорректного поля
     END IF;
 
     -- Проверяем, что передан корректный ID
     IF p_id IS NULL OR p_id <= 0 THEN
         RAISE NOTICE 'Ошибка: Некорректный ID записи.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -9; -- Код ошибки некорректного ID
     END IF;
 
     -- Проверяем, что передано значение для обновления
     IF p_new_value IS NULL OR TRIM(p_new_value) = '' THEN
         RAISE NOTICE 'Ошибка: Новое значение не может быть пустым.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -10; -- Код ошибки для пустого значения
     END IF;
 
-    -- Формируем SQL-запрос для обновления
-    sql_query := format(
-        'UPDATE trainings SET %I = %L WHERE class_id = %s RETURNING class_id', 
-        p_field_name, p_new_value, p_id
-    );
-	
-    SELECT class_id FROM dblink('myconn', sql_query) AS t(class_id INT) INTO updated_id;
-
-    PERFORM dblink_disconnect('myconn');
+    -- Запрос готовится один раз для каждого поля; тип параметра $1 - тип столбца, текст значения
+    -- приводится к нему на сервере
+    SELECT class_id FROM dblink(trainings_link(), format('EXECUTE %I(%L, %s)',
+        trainings_link_prepare('update_' || p_field_name,
+            format('UPDATE trainings SET %I = $1 WHERE class_id = $2 RETURNING class_id', p_field_name)),
+        p_new_value, p_id))
+        AS t(class_id INT) INTO updated_id;
 
     -- Проверяем, обновилась ли запись
     IF updated_id IS NULL THEN
@@ -581,99 +572,48 @@ RETURNS INT
 AS $$
 DECLARE
 	db_exists BOOLEAN;
-    table_exists BOOLEAN;
-    connection_string TEXT;
-    update_query TEXT := 'UPDATE trainings SET ';
-    updates TEXT := '';
-    is_first BOOLEAN := TRUE;
     rows_updated INT := 0;
 BEGIN
-	-- Проверяем существование базы данных через dblink
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('dbname=trainings user=postgres password=CHocolate75% host=localhost',
-                             'SELECT 1 FROM pg_database WHERE datname = ''' || db_name || '''')
-        AS t(exists BOOLEAN)
-    ) INTO db_exists;
+	-- Проверяем существование базы данных
+    SELECT EXISTS (SELECT 1 FROM pg_database WHERE datname = db_name) INTO db_exists;
 
     IF NOT db_exists THEN
         RAISE NOTICE 'Ошибка: база данных "%" не существует.', db_name;
         RETURN -2; -- Код ошибки для отсутствующей базы данных
     END IF;
 
-    connection_string := 'dbname=trainings user=postgres password=CHocolate75% host=localhost';
-    PERFORM dblink_connect('myconn', connection_string);
-
     -- Проверяем существование таблицы trainings
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-                             'SELECT 1 FROM information_schema.tables WHERE table_schema = ''public'' AND table_name = ''trainings''')
-        AS t(exists BOOLEAN)
-    ) INTO table_exists;
-
-    IF NOT table_exists THEN
+    IF NOT trainings_table_exists() THEN
         RAISE NOTICE 'Ошибка: таблица "trainings" не существует в базе "%".', db_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN -1; -- Код ошибки для отсутствующей таблицы
     END IF;
 
 	 -- Проверяем, что передан корректный ID
     IF p_id IS NULL OR p_id <= 0 THEN
         RAISE NOTICE 'Ошибка: Некорректный ID записи.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -9; -- Код ошибки некорректного ID
     END IF;
-	
-	-- Динамически формируем список полей для обновления
-    IF p_title IS NOT NULL THEN
-        updates := updates || format('%s title = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_title);
-        is_first := FALSE;
-    END IF;
-    IF p_date IS NOT NULL THEN
-        updates := updates || format('%s date = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_date);
-        is_first := FALSE;
-    END IF;
-    IF p_start_time IS NOT NULL THEN
-        updates := updates || format('%s start_time = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_start_time);
-        is_first := FALSE;
-    END IF;
-    IF p_duration IS NOT NULL THEN
-        updates := updates || format('%s duration = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_duration);
-        is_first := FALSE;
-    END IF;
-    IF p_max_participants IS NOT NULL THEN
-        updates := updates || format('%s max_participants = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_max_participants);
-        is_first := FALSE;
-    END IF;
-    IF p_current_participants IS NOT NULL THEN
-        updates := updates || format('%s current_participants = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_current_participants);
-        is_first := FALSE;
-    END IF;
-    IF p_difficulty_level IS NOT NULL THEN
-        updates := updates || format('%s difficulty_level = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_difficulty_level);
-        is_first := FALSE;
-    END IF;
-    IF p_trainer_name IS NOT NULL THEN
-        updates := updates || format('%s trainer_name = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_trainer_name);
-        is_first := FALSE;
-    END IF;
-    IF p_price IS NOT NULL THEN
-        updates := updates || format('%s price = %L', CASE WHEN is_first THEN '' ELSE ', ' END, p_price);
-        is_first := FALSE;
-    END IF;
 
     -- Если обновлять нечего, выходим
-    IF updates = '' THEN
+    IF num_nonnulls(p_title, p_date, p_start_time, p_duration, p_max_participants, p_current_participants,
+                    p_difficulty_level, p_trainer_name, p_price) = 0 THEN
         RAISE NOTICE 'Ошибка: Нет данных для обновления.';
-        PERFORM dblink_disconnect('myconn');
         RETURN -10; -- Код ошибки для пустого обновления
     END IF;
 
-    -- Формируем финальный SQL-запрос
-    update_query := update_query || updates || format(' WHERE class_id = %s RETURNING class_id', p_id);
-
-    SELECT updated_id FROM dblink('myconn', update_query) AS t(updated_id INT) INTO rows_updated;
-
-    PERFORM dblink_disconnect('myconn');
+    -- Один подготовленный запрос для любого набора полей: NULL оставляет прежнее значение
+    SELECT updated_id FROM dblink(trainings_link(), format('EXECUTE %I(%L, %L, %L, %L, %L, %L, %L, %L, %L, %s)',
+        trainings_link_prepare('update_record',
+            'UPDATE trainings SET title = COALESCE($1, title), date = COALESCE($2, date),
+                 start_time = COALESCE($3, start_time), duration = COALESCE($4, duration),
+                 max_participants = COALESCE($5, max_participants),
+                 current_participants = COALESCE($6, current_participants),
+                 difficulty_level = COALESCE($7, difficulty_level), trainer_name = COALESCE($8, trainer_name),
+                 price = COALESCE($9, price)
+             WHERE class_id = $10 RETURNING class_id'),
+        p_title, p_date, p_start_time, p_duration, p_max_participants, p_current_participants,
+        p_difficulty_level, p_trainer_name, p_price, p_id))
+        AS t(updated_id INT) INTO rows_updated;
 
     -- Проверяем, была ли запись обновлена
     IF rows_updated IS NULL OR rows_updated = 0 THEN
@@ -700,50 +640,27 @@ RETURNS TABLE(
     trainer_name VARCHAR(255),
     price DECIMAL(10,2)
 ) AS $$
-DECLARE
-	db_exists BOOLEAN;
-    connection_string TEXT;
-    sql_query TEXT;
-    query_result RECORD;
 BEGIN
-	-- Проверяем, существует ли база данных через dblink
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('dbname=trainings user=postgres password=CHocolate75%',
-                             'SELECT 1 FROM pg_database WHERE datname = ''' || db_name || '''')
-        as t(exists boolean)
-    ) into db_exists;
-
-	IF NOT db_exists THEN
+	-- Проверяем, существует ли база данных
+	IF NOT EXISTS (SELECT 1 FROM pg_database WHERE datname = db_name) THEN
 	    RAISE NOTICE 'Ошибка: база данных % не существует.', db_name;
 		RETURN;
 	END IF;
-	
-   connection_string := 'dbname=trainings user=postgres password=CHocolate75% host=localhost';
-   perform dblink_connect('myconn', connection_string);
 
     -- Проверяем, существует ли таблица trainings
-    SELECT EXISTS (
-        SELECT 1 FROM dblink('myconn', 
-                             'SELECT 1 FROM information_schema.tables WHERE table_name = ''trainings''')
-        AS t(exists BOOLEAN)
-    ) INTO query_result;
-
-    IF NOT query_result.exists THEN
+    IF NOT trainings_table_exists() THEN
         RAISE NOTICE 'Ошибка: таблица trainings не существует в базе %.', db_name;
-        PERFORM dblink_disconnect('myconn');
         RETURN;
     END IF;
 
-    sql_query := 'SELECT class_id, title, date, start_time, duration, max_participants, 
-                         current_participants, difficulty_level, trainer_name, price 
-                  FROM trainings';
     RETURN QUERY 
-    SELECT * FROM dblink('myconn', sql_query) 
+    SELECT * FROM dblink(trainings_link(), 'EXECUTE ' || trainings_link_prepare('all_trainings',
+        'SELECT class_id, title, date, start_time, duration, max_participants, 
+                current_participants, difficulty_level, trainer_name, price 
+         FROM trainings'))
     AS t(class_id INT, title VARCHAR(255), date DATE, start_time TIME, duration INTERVAL, 
          max_participants INT, current_participants INT, difficulty_level VARCHAR(20), 
          trainer_name VARCHAR(255), price DECIMAL(10,2));
-
-    PERFORM dblink_disconnect('myconn');
 END;
 $$ LANGUAGE plpgsql;
 